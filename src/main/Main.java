@@ -4,10 +4,19 @@ import main.utils.GUI;
 import main.enumerations.Role;
 import main.models.Product;
 import main.models.User;
+import main.persistence.FsyncPolicy;
+import main.persistence.ProductCodec;
+import main.persistence.UserCodec;
+import main.persistence.WriteAheadLog;
 import main.repositories.ProductRepository;
 import main.repositories.UserRepository;
 
+import java.nio.file.Path;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 
@@ -15,8 +24,43 @@ public class Main {
 	private static final GUI gui = GUI.getInstance();
 
 	static {
+		// Data survives restarts through a snapshot plus one write-ahead log
+		// per repository; the snapshot is loaded first and only the log records
+		// after it are replayed, before anything is seeded.
+		Path dataDirectory = Path.of(System.getProperty("app.data.dir", "data"));
+		FsyncPolicy fsyncPolicy = FsyncPolicy.parse(System.getProperty("app.fsync", "100"));
+		long snapshotMinutes = Long.parseLong(System.getProperty("app.snapshot.interval", "10"));
+		Path productSnapshot = dataDirectory.resolve("products.snap");
+		Path userSnapshot = dataDirectory.resolve("users.snap");
 		ProductRepository productRepo = ProductRepository.getInstance();
-		if (productRepo.query().count() == 0) {
+		UserRepository userRepo = UserRepository.getInstance();
+		productRepo.loadSnapshot(productSnapshot, new ProductCodec());
+		userRepo.loadSnapshot(userSnapshot, new UserCodec());
+		productRepo.openLog(WriteAheadLog.open(dataDirectory.resolve("products.wal"), new ProductCodec(), fsyncPolicy));
+		userRepo.openLog(WriteAheadLog.open(dataDirectory.resolve("users.wal"), new UserCodec(), fsyncPolicy));
+
+		// Periodic snapshots keep the logs, and so the next startup, short.
+		Runnable snapshot = () -> CompletableFuture.allOf(
+				productRepo.snapshot(productSnapshot, new ProductCodec()),
+				userRepo.snapshot(userSnapshot, new UserCodec())).join();
+		if (snapshotMinutes > 0) {
+			ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "snapshot-scheduler");
+				thread.setDaemon(true);
+				return thread;
+			});
+			scheduler.scheduleWithFixedDelay(snapshot, snapshotMinutes, snapshotMinutes, TimeUnit.MINUTES);
+		}
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			try {
+				snapshot.run();
+			} finally {
+				productRepo.closeLog();
+				userRepo.closeLog();
+			}
+		}));
+
+		if (productRepo.getSize() == 0) {
 			String[] names = {
 					"Wireless Mouse", "Mechanical Keyboard", "Gaming Headset", "USB-C Hub", "Smartphone Stand",
 					"Men's T-Shirt", "Women's Hoodie", "Sneakers", "Leather Belt", "Baseball Cap",
@@ -56,7 +100,6 @@ public class Main {
 			}
 		}
 
-		UserRepository userRepo = UserRepository.getInstance();
 		if (!userRepo.existsByEmail("admin@gmail.com")) {
 			userRepo.add(new User(
 					LocalDateTime.now().toEpochSecond(ZoneOffset.UTC),
@@ -148,6 +191,15 @@ public class Main {
 							System.out.print("\033[H\033[2J");
 							System.out.flush();
 							break;
+						case "6":
+							gui.importProducts(scanner);
+							break;
+						case "7":
+							gui.exportProducts(scanner);
+							break;
+						case "8":
+							gui.showProductsByCategory(scanner);
+							break;
 						case "0":
 							running = false;
 							break;
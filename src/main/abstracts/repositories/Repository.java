@@ -1,8 +1,29 @@
 package main.abstracts.repositories;
 
 import main.models.Entity;
+import main.persistence.EntityCodec;
+import main.persistence.LogRecord;
+import main.persistence.Snapshot;
+import main.persistence.WriteAheadLog;
+import main.utils.CapacityPolicy;
+import main.utils.IgnoreCaseIndex;
+import main.utils.LongIntHashMap;
 import main.utils.Query;
+import main.utils.RankedSkipList;
+import main.utils.SegmentedArray;
+import main.utils.SegmentedLongArray;
+import main.utils.StorageMetrics;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import main.enumerations.SortOrder;
 import main.errors.AppException;
 import main.errors.BadRequestException;
@@ -11,9 +32,47 @@ import main.errors.NotFoundException;
 
 public abstract class Repository<T extends Entity> {
 	protected static final int DEFAULT_CAPACITY = 5;
-	protected T[] datas;
-	protected int size;
+	// Removed slots are left as null tombstones until there are at least this
+	// many and they make up half of the used part of `datas`.
+	protected static final int MIN_COMPACT_TOMBSTONES = 16;
+	// Rough per-slot and per-array costs used by getStorageMetrics, assuming
+	// compressed object references.
+	private static final int REFERENCE_BYTES = 4;
+	private static final int ARRAY_HEADER_BYTES = 16;
+	// Flat by default; segmented when the capacity policy grows in chunks.
+	protected SegmentedArray<T> datas;
+	// Number of live entities. Slots [0, end) are in use, tombstones included.
+	protected volatile int size;
+	protected int end;
 	protected int capacity;
+	protected CapacityPolicy capacityPolicy = CapacityPolicy.DEFAULT;
+	// Writers take the write lock; point reads run optimistically and only
+	// fall back to the read lock when a writer got in between.
+	protected final StampedLock lock = new StampedLock();
+	protected final LongIntHashMap idIndex = new LongIntHashMap();
+	// Entries added with an id that was already present. They stay reachable
+	// through scans and take over the index slot once the first one is removed.
+	protected int shadowedIds;
+	// Bumped on every structural change (removal, compaction, clear) so that
+	// query views over `datas` can detect that their slice is no longer valid.
+	protected volatile int modCount;
+	// Insertion sequence of the entity in each slot. It never changes while the
+	// entity stays in the repository, so indexes use it to break ties the same
+	// way a stable sort over `datas` would.
+	protected SegmentedLongArray sequences = new SegmentedLongArray(0);
+	protected long nextSequence;
+	// Name indexes shared by every repository: exact case-insensitive lookups
+	// go through the hash index, prefix lookups and name sorts walk the
+	// ordered one. Both are keyed on the trimmed name.
+	protected final IgnoreCaseIndex<T> nameIndex = new IgnoreCaseIndex<>();
+	protected final RankedSkipList<String, T> sortedNameIndex = new RankedSkipList<>(String.CASE_INSENSITIVE_ORDER);
+	// Mutations are appended under the write lock, so the log has them in the
+	// order they were applied; writers wait for durability after unlocking.
+	// See logged() for when a mutation is appended relative to applying it.
+	private volatile WriteAheadLog<T> log;
+	// Set by loadSnapshot: openLog then replays only the records after it.
+	private boolean restored;
+	private long restoredLsn;
 
 	public int getSize() {
 		return size;
@@ -23,64 +82,658 @@ public abstract class Repository<T extends Entity> {
 		return capacity;
 	}
 
-	public void add(T data) {
+	public int getTombstones() {
+		return end - size;
+	}
+
+	public CapacityPolicy getCapacityPolicy() {
+		return capacityPolicy;
+	}
+
+	// An empty repository is resized to the policy's initial capacity right
+	// away; a populated one keeps its array until it next grows or shrinks.
+	// A policy with a chunk size moves the entities into segments of that
+	// size (rounded up to a power of two), so growth never copies them again.
+	public void setCapacityPolicy(CapacityPolicy policy) {
+		if (policy == null)
+			throw new BadRequestException("Capacity policy cannot be null.");
+
+		long stamp = lock.writeLock();
 		try {
-			if (data == null)
-				throw new BadRequestException("Data to add cannot be null.");
+			this.capacityPolicy = policy;
+			int segmentSize = SegmentedArray.segmentSizeFor(policy.getChunkSize());
+			if (segmentSize != datas.segmentSize()) {
+				datas = datas.reshape(segmentSize, end);
+				sequences = sequences.reshape(segmentSize, end);
+				capacity = datas.capacity();
+				modCount++;
+			}
+			if (end == 0 && capacity != policy.getInitialCapacity())
+				resize(policy.getInitialCapacity());
+			else
+				shrinkIfSparse();
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
 
-			if (isOutOfCapacity())
-				increaseCapacity();
+	public StorageMetrics getStorageMetrics() {
+		return readLocked(() -> new StorageMetrics(size, capacity, end - size, storageBytes(), idIndex.estimatedBytes()));
+	}
 
-			datas[size++] = data;
+	// Slot references and sequences, plus the headers of every segment and of
+	// the arrays holding them.
+	private long storageBytes() {
+		long headers = 2L * (datas.segmentCount() + 1) * ARRAY_HEADER_BYTES;
+		return headers + (long) datas.capacity() * REFERENCE_BYTES + (long) sequences.capacity() * Long.BYTES;
+	}
+
+	public void add(T data) {
+		if (data == null)
+			throw new BadRequestException("Data to add cannot be null.");
 
+		long lsn = 0;
+		long stamp = lock.writeLock();
+		try {
+			int tombstones = getTombstones();
+			if (isOutOfCapacity() && tombstones > 0 && tombstones * 4 >= end)
+				compactSlots();
+			if (isOutOfCapacity())
+				increaseCapacity();
+			syncSequences();
+
+			int slot = end;
+			T stored = store(data, slot);
+			end++;
+			datas.set(slot, stored);
+			sequences.set(slot, nextSequence++);
+			if (idIndex.containsKey(stored.getId()))
+				shadowedIds++;
+			else
+				idIndex.put(stored.getId(), slot);
+			size++;
+			try {
+				indexAdded(stored, sequences.get(slot));
+				lsn = logged(LogRecord.add(data));
+			} catch (RuntimeException e) {
+				rollback(new int[] { slot }, newArray(1), 1);
+				throw e;
+			}
 		} catch (AppException e) {
 			throw e;
 		} catch (Exception e) {
 			throw new InternalAppException("Failed to add data: " + e.getMessage());
+		} finally {
+			lock.unlockWrite(stamp);
 		}
+		awaitLogged(lsn);
 	}
 
 	public void update(T data) {
 		if (data == null)
 			throw new BadRequestException("Data to update cannot be null.");
 
-		boolean updated = false;
-		int index = this.query().indexOf(e -> e.getId() == data.getId());
-		if (index != -1) {
-			this.datas[index] = data;
-			updated = true;
+		long lsn;
+		long stamp = lock.writeLock();
+		try {
+			int index = this.slotOf(data.getId());
+			if (index == LongIntHashMap.MISSING)
+				throw new NotFoundException("Entity with ID " + data.getId() + " not found.");
+
+			T previous = this.datas.get(index);
+			try {
+				T stored = replaced(previous, data, index);
+				this.datas.set(index, stored);
+				indexRemoved(previous, sequences.get(index));
+				indexAdded(stored, sequences.get(index));
+				lsn = logged(LogRecord.update(data));
+			} catch (RuntimeException e) {
+				// Whatever the slot holds now gives way to the previous entity.
+				T[] replaced = newArray(1);
+				replaced[0] = previous;
+				rollback(new int[] { index }, replaced, 1);
+				if (e instanceof AppException)
+					throw e;
+				throw new InternalAppException("Failed to update data: " + e.getMessage());
+			}
+		} finally {
+			lock.unlockWrite(stamp);
 		}
-
-		if (!updated)
-			throw new NotFoundException("Entity with ID " + data.getId() + " not found.");
+		awaitLogged(lsn);
 	}
 
 	public void remove(Long id) {
-		int index = this.query().indexOf(e -> e.getId().equals(id));
-		if (index == -1)
-			throw new NotFoundException("Entity with ID " + id + " not found.");
-
-		System.arraycopy(datas, index + 1, datas, index, size - index - 1);
-		datas[--size] = null;
+		long lsn;
+		long stamp = lock.writeLock();
+		try {
+			int index = this.slotOf(id);
+			if (index == LongIntHashMap.MISSING)
+				throw new NotFoundException("Entity with ID " + id + " not found.");
+			lsn = logged(LogRecord.remove(id));
+
+			// Leave a tombstone instead of shifting the tail down.
+			T removed = datas.get(index);
+			datas.set(index, null);
+			released(removed, index);
+			size--;
+			idIndex.remove(id);
+			modCount++;
+
+			if (shadowedIds > 0)
+				promoteShadowed(id, index + 1);
+			indexRemoved(removed, sequences.get(index));
+
+			int tombstones = getTombstones();
+			if (tombstones >= MIN_COMPACT_TOMBSTONES && tombstones * 2 >= end)
+				compactSlots();
+			shrinkIfSparse();
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+		awaitLogged(lsn);
 	}
 
 	public void clear() {
-		for (int i = 0; i < this.size; i++) {
-			datas[i] = null;
+		long lsn;
+		long stamp = lock.writeLock();
+		try {
+			lsn = logged(LogRecord.clear());
+			for (int i = 0; i < end; i++) {
+				T data = datas.get(i);
+				if (data != null)
+					released(data, i);
+			}
+			datas.clear(0, end);
+			this.size = 0;
+			this.end = 0;
+			this.modCount++;
+			this.idIndex.clear();
+			if (capacityPolicy.isShrinkOnClear()) {
+				resize(capacityPolicy.getInitialCapacity());
+				this.idIndex.trimToSize();
+			}
+			this.shadowedIds = 0;
+			this.nameIndex.clear();
+			this.sortedNameIndex.clear();
+			onCleared();
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+		awaitLogged(lsn);
+	}
+
+	public void addAll(T[] batch) {
+		applyBatch(batch, false);
+	}
+
+	// Replaces the entities whose id is already present and appends the rest.
+	public void upsertAll(T[] batch) {
+		applyBatch(batch, true);
+	}
+
+	// Removes every listed id, or none of them if any id is missing.
+	public void removeAll(long[] ids) {
+		if (ids == null)
+			throw new BadRequestException("Ids to remove cannot be null.");
+
+		long lsn;
+		long stamp = lock.writeLock();
+		try {
+			LongIntHashMap slots = new LongIntHashMap();
+			slots.ensureCapacity(ids.length);
+			for (long id : ids) {
+				int index = idIndex.get(id);
+				if (index == LongIntHashMap.MISSING)
+					throw new NotFoundException("Entity with ID " + id + " not found.");
+				slots.put(id, index);
+			}
+			lsn = logged(LogRecord.removeAll(ids));
+
+			for (long id : ids) {
+				int index = slots.remove(id);
+				if (index == LongIntHashMap.MISSING)
+					continue;
+				T removed = datas.get(index);
+				datas.set(index, null);
+				released(removed, index);
+				size--;
+				idIndex.remove(id);
+				if (shadowedIds > 0)
+					promoteShadowed(id, index + 1);
+				indexRemoved(removed, sequences.get(index));
+			}
+			modCount++;
+
+			int tombstones = getTombstones();
+			if (tombstones >= MIN_COMPACT_TOMBSTONES && tombstones * 2 >= end)
+				compactSlots();
+			shrinkIfSparse();
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+		awaitLogged(lsn);
+	}
+
+	// Validates the whole batch, reserves room for it once and applies it
+	// under one write lock. If indexing any entity or logging the batch fails,
+	// the entities applied so far are rolled back in reverse order, so the
+	// batch lands completely or not at all.
+	private void applyBatch(T[] batch, boolean upsert) {
+		validateBatch(batch);
+		long lsn;
+		long stamp = lock.writeLock();
+		try {
+			lsn = applyBatchLocked(batch, upsert, true);
+		} finally {
+			lock.unlockWrite(stamp);
 		}
-		this.size = 0;
+		awaitLogged(lsn);
 	}
 
+	// addAll for subclasses that already hold the write lock, so they can load
+	// their storage and index it in one critical section.
+	protected void addAllLocked(T[] batch) {
+		validateBatch(batch);
+		applyBatchLocked(batch, false, false);
+	}
+
+	private void validateBatch(T[] batch) {
+		if (batch == null)
+			throw new BadRequestException("Batch cannot be null.");
+		for (int i = 0; i < batch.length; i++) {
+			if (batch[i] == null)
+				throw new BadRequestException("Data at position " + i + " of the batch cannot be null.");
+		}
+	}
+
+	// Returns the batch's log sequence number, or 0 when `log` is false.
+	private long applyBatchLocked(T[] batch, boolean upsert, boolean log) {
+		int applied = 0;
+		int[] slots = new int[batch.length];
+		T[] replaced = newArray(batch.length);
+		int appended = 0;
+		int[] appendedSlots = new int[batch.length];
+		long firstAppended = nextSequence;
+		try {
+			reserve(batch.length);
+			for (T data : batch) {
+				int index = upsert ? this.slotOf(data.getId()) : LongIntHashMap.MISSING;
+				if (index == LongIntHashMap.MISSING) {
+					index = end;
+					T stored = store(data, index);
+					end++;
+					datas.set(index, stored);
+					sequences.set(index, nextSequence++);
+					if (idIndex.containsKey(stored.getId()))
+						shadowedIds++;
+					else
+						idIndex.put(stored.getId(), index);
+					size++;
+					appendedSlots[appended++] = index;
+				} else {
+					T previous = datas.get(index);
+					replaced[applied] = previous;
+					T stored = replaced(previous, data, index);
+					datas.set(index, stored);
+					// Rows appended earlier in this batch are indexed below,
+					// in their latest version.
+					long sequence = sequences.get(index);
+					if (sequence < firstAppended) {
+						indexRemoved(previous, sequence);
+						indexAdded(stored, sequence);
+					}
+				}
+				slots[applied++] = index;
+			}
+			// Appended entities hold consecutive sequences and are indexed
+			// together, so ordered indexes can load them in bulk.
+			if (appended > 0) {
+				T[] added = newArray(appended);
+				for (int i = 0; i < appended; i++)
+					added[i] = datas.get(appendedSlots[i]);
+				indexAddedAll(added, firstAppended);
+			}
+			if (!log)
+				return 0;
+			List<T> entities = Arrays.asList(batch);
+			return logged(upsert ? LogRecord.upsertAll(entities) : LogRecord.addAll(entities));
+		} catch (RuntimeException e) {
+			rollback(slots, replaced, applied);
+			if (e instanceof AppException)
+				throw e;
+			throw new InternalAppException("Failed to apply batch: " + e.getMessage());
+		}
+	}
+
+	private void rollback(int[] slots, T[] replaced, int applied) {
+		// The entity whose indexing failed may be half indexed; removal by
+		// sequence is a no-op for the indexes it never reached.
+		for (int i = applied - 1; i >= 0; i--) {
+			int index = slots[i];
+			T current = datas.get(index);
+			indexRemoved(current, sequences.get(index));
+			if (replaced[i] != null) {
+				T restored = replaced(current, replaced[i], index);
+				datas.set(index, restored);
+				indexAdded(restored, sequences.get(index));
+				continue;
+			}
+			released(current, index);
+			if (idIndex.get(current.getId()) == index)
+				idIndex.remove(current.getId());
+			else
+				shadowedIds--;
+			datas.set(index, null);
+			end--;
+			size--;
+		}
+	}
+
+	// Makes room for `extra` more slots, reclaiming tombstones first if that
+	// is enough, so a batch grows the array at most once.
+	private void reserve(int extra) {
+		if (end + extra > capacity && size + extra <= capacity)
+			compactSlots();
+		if ((long) end + extra > capacity) {
+			if ((long) end + extra > Integer.MAX_VALUE)
+				throw new BadRequestException("Batch does not fit in a single repository.");
+			resize(capacityPolicy.grow(capacity, end + extra));
+		}
+		idIndex.ensureCapacity(size + extra);
+		syncSequences();
+	}
+
+	// Replays `log` into this repository and then records every further
+	// mutation in it. The repository must be empty or just loaded from a
+	// snapshot, in which case only the records after the snapshot replay.
+	// Meant to run at startup, before the repository is shared.
+	public void openLog(WriteAheadLog<T> log) {
+		if (log == null)
+			throw new BadRequestException("Log cannot be null.");
+		if (this.log != null)
+			throw new BadRequestException("A log is already open for this repository.");
+		if (size > 0 && !restored)
+			throw new BadRequestException("A log can only be opened on an empty repository.");
+
+		log.replay(restoredLsn, this::replay);
+		long stamp = lock.writeLock();
+		try {
+			this.log = log;
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	// Flushes and closes the log; later mutations are no longer recorded.
+	public void closeLog() {
+		WriteAheadLog<T> closing;
+		long stamp = lock.writeLock();
+		try {
+			closing = log;
+			log = null;
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+		if (closing != null)
+			closing.close();
+	}
+
+	public WriteAheadLog<T> getLog() {
+		return log;
+	}
+
+	// Loads the snapshot at `file`, if there is one, into this empty
+	// repository. Returns false when there is no snapshot yet.
+	public boolean loadSnapshot(Path file, EntityCodec<T> codec) {
+		if (file == null || codec == null)
+			throw new BadRequestException("Snapshot file and codec cannot be null.");
+		if (log != null)
+			throw new BadRequestException("A snapshot must be loaded before the log is opened.");
+		if (size > 0)
+			throw new BadRequestException("A snapshot can only be loaded into an empty repository.");
+		if (!Files.exists(file))
+			return false;
+
+		Snapshot<T> snapshot = Snapshot.read(file, codec, this::newArray);
+		addAll(snapshot.getEntities());
+		restored = true;
+		restoredLsn = snapshot.getLsn();
+		return true;
+	}
+
+	// Writes a snapshot of the live entities to `file` in the background and
+	// then drops the log records it covers. The entities are encoded and the
+	// log position taken under one read lock, so they match even though
+	// entities are mutable; writers are held up for the encoding, not for
+	// the file writes.
+	public CompletableFuture<Void> snapshot(Path file, EntityCodec<T> codec) {
+		if (file == null || codec == null)
+			throw new BadRequestException("Snapshot file and codec cannot be null.");
+
+		Snapshot.Encoded live;
+		WriteAheadLog<T> log;
+		long lsn;
+		long stamp = lock.readLock();
+		try {
+			live = Snapshot.encode(view().getResult(), codec);
+			log = this.log;
+			lsn = log == null ? 0 : log.getEndLsn();
+		} finally {
+			lock.unlockRead(stamp);
+		}
+		return Snapshot.writeAsync(file, live, lsn).thenRun(() -> {
+			if (log != null)
+				log.discardBefore(lsn);
+		});
+	}
+
+	private void replay(LogRecord<T> record) {
+		switch (record.getOperation()) {
+			case ADD -> add(record.getEntity());
+			case UPDATE -> update(record.getEntity());
+			case REMOVE -> remove(record.getId());
+			case CLEAR -> clear();
+			case ADD_ALL -> addAll(record.getEntities().toArray(newArray(record.getEntities().size())));
+			case UPSERT_ALL -> upsertAll(record.getEntities().toArray(newArray(record.getEntities().size())));
+			case REMOVE_ALL -> removeAll(record.getIds());
+		}
+	}
+
+	// Appends a mutation under the write lock. add, update and the batches
+	// log once the change is applied and roll it back if applying or the
+	// append fails, so the log only holds what the repository holds. remove,
+	// removeAll and clear cannot fail once validated, so they append first.
+	private long logged(LogRecord<T> record) {
+		WriteAheadLog<T> log = this.log;
+		return log == null ? 0 : log.append(record);
+	}
+
+	// Called after unlocking, so writers waiting on one fsync don't hold up
+	// the writers that will share the next one.
+	private void awaitLogged(long lsn) {
+		WriteAheadLog<T> log = this.log;
+		if (log != null && lsn > 0)
+			log.awaitDurable(lsn);
+	}
+
+	// Subclasses allocate `datas` themselves; the sequences follow lazily.
+	private void syncSequences() {
+		if (sequences.capacity() < datas.capacity())
+			sequences.resize(datas.capacity());
+	}
+
+	// Moves live entities down over the tombstones, keeping their order.
+	// Removal already does this once tombstones pile up; callers can also run
+	// it themselves, e.g. from a scheduled task after a bulk delete.
+	public void compact() {
+		long stamp = lock.writeLock();
+		try {
+			if (end > size)
+				compactSlots();
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	private void compactSlots() {
+		int live = 0;
+		for (int i = 0; i < end; i++) {
+			T data = datas.get(i);
+			if (data == null)
+				continue;
+			if (live != i) {
+				datas.set(live, data);
+				sequences.set(live, sequences.get(i));
+				moved(data, i, live);
+				if (idIndex.get(data.getId()) == i)
+					idIndex.put(data.getId(), live);
+			}
+			live++;
+		}
+		datas.clear(live, end);
+		end = live;
+		modCount++;
+	}
+
+	private void indexAdded(T data, long sequence) {
+		String name = data.getName().trim();
+		nameIndex.add(name, sequence, data);
+		sortedNameIndex.insert(name, sequence, data);
+		onAdded(data, sequence);
+	}
+
+	private void indexAddedAll(T[] added, long firstSequence) {
+		String[] names = new String[added.length];
+		for (int i = 0; i < added.length; i++) {
+			names[i] = added[i].getName().trim();
+			nameIndex.add(names[i], firstSequence + i, added[i]);
+		}
+		sortedNameIndex.insertAll(added.length, i -> names[i], i -> firstSequence + i, i -> added[i]);
+		onAddedAll(added, firstSequence);
+	}
+
+	private void indexRemoved(T data, long sequence) {
+		nameIndex.remove(sequence);
+		sortedNameIndex.remove(sequence);
+		onRemoved(data, sequence);
+	}
+
+	// Index maintenance hooks for subclasses, called with the write lock held.
+	// `sequence` identifies the slot's entity while it stays in the repository.
+	protected void onAdded(T data, long sequence) {
+	}
+
+	// Called instead of onAdded for the entities a batch appended, which hold
+	// consecutive sequences from `firstSequence`.
+	protected void onAddedAll(T[] added, long firstSequence) {
+		for (int i = 0; i < added.length; i++)
+			onAdded(added[i], firstSequence + i);
+	}
+
+	protected void onRemoved(T data, long sequence) {
+	}
+
+	protected void onCleared() {
+	}
+
+	// Storage hooks for subclasses that keep entities in another form, also
+	// called with the write lock held. store() receives every entity about to
+	// be placed in `slot` and returns what the repository keeps there;
+	// released() is called once a stored entity leaves its slot, replaced()
+	// when another one takes its place, and moved() when compaction shifts one
+	// to another slot.
+	protected T store(T data, int slot) {
+		return data;
+	}
+
+	protected T replaced(T previous, T data, int slot) {
+		released(previous, slot);
+		return store(data, slot);
+	}
+
+	protected void released(T data, int slot) {
+	}
+
+	protected void moved(T data, int from, int to) {
+	}
+
+	// A lazy view over the live slots. It is read when a terminal operation
+	// runs, outside any lock, and fails with InternalAppException if a writer
+	// got in since; callers that may run alongside writers use
+	// query(Function) instead.
 	public Query<T> query() {
-		return Query.of(Arrays.copyOf(this.datas, this.size));
+		return read(this::view);
 	}
 
+	// Runs `terminal` on query() under the read lock, so concurrent writers
+	// wait for it instead of failing it. `terminal` must finish the query,
+	// not return it.
+	public <R> R query(Function<Query<T>, R> terminal) {
+		return readLocked(() -> terminal.apply(this.view()));
+	}
+
+	// Copied under the read lock, so it is safe to call while other threads write.
 	public T[] findAll() {
-		return Arrays.copyOf(this.datas, this.size);
+		return readLocked(() -> this.view().getResult());
+	}
+
+	// Copies the live entities into arrays of at most `chunkSize`, all under
+	// one read lock, so together they hold exactly the entities live at that
+	// point. Only references are copied, one per entity. The list is mutable:
+	// callers streaming it can drop each chunk once done with it.
+	public List<T[]> findAllInChunks(int chunkSize) {
+		if (chunkSize < 1)
+			throw new BadRequestException("Chunk size must be greater than 0");
+
+		return readLocked(() -> {
+			List<T[]> chunks = new ArrayList<>((size + chunkSize - 1) / chunkSize);
+			T[] chunk = null;
+			int filled = 0;
+			int remaining = size;
+			for (int i = 0; i < end; i++) {
+				T data = datas.get(i);
+				if (data == null)
+					continue;
+				if (chunk == null) {
+					chunk = newArray(Math.min(chunkSize, remaining));
+					filled = 0;
+				}
+				chunk[filled++] = data;
+				remaining--;
+				if (filled == chunk.length) {
+					chunks.add(chunk);
+					chunk = null;
+				}
+			}
+			return chunks;
+		});
+	}
+
+	// Views the used slots directly; tombstones, if any, are filtered out.
+	private Query<T> view() {
+		Query<T> view = Query.view(this.datas, 0, this.end, () -> this.modCount);
+		return (this.end == this.size) ? view : view.filter(Objects::nonNull);
 	}
 
 	public T findById(Long id) {
-		T result = this.query().find(e -> e.getId().equals(id));
+		T result = null;
+		long stamp = lock.tryOptimisticRead();
+		try {
+			int index = this.slotOf(id);
+			result = (index == LongIntHashMap.MISSING) ? null : this.datas.get(index);
+		} catch (RuntimeException e) {
+			stamp = 0L;
+		}
+
+		if (stamp == 0L || !lock.validate(stamp)) {
+			stamp = lock.readLock();
+			try {
+				int index = this.slotOf(id);
+				result = (index == LongIntHashMap.MISSING) ? null : this.datas.get(index);
+			} finally {
+				lock.unlockRead(stamp);
+			}
+		}
 
 		if (result == null)
 			throw new NotFoundException("Entity with ID " + id + " not found.");
@@ -92,7 +745,7 @@ public abstract class Repository<T extends Entity> {
 		if (name == null || name.trim().isEmpty())
 			throw new BadRequestException("Name cannot be null or empty.");
 
-		T result = this.query().find(e -> (e.getName().trim().compareToIgnoreCase(name) == 0));
+		T result = read(() -> nameIndex.first(name));
 
 		if (result == null)
 			throw new NotFoundException("Entity with name '" + name + "' not found.");
@@ -100,13 +753,44 @@ public abstract class Repository<T extends Entity> {
 		return result;
 	}
 
+	public Query<T> findByNamePrefix(String prefix) {
+		return findByNamePrefix(prefix, Integer.MAX_VALUE);
+	}
+
+	// Entities whose trimmed name starts with `prefix`, ignoring case, in name
+	// order. Seeks to the prefix in the ordered name index and walks forward.
+	public Query<T> findByNamePrefix(String prefix, int limit) {
+		if (prefix == null || prefix.isEmpty())
+			throw new BadRequestException("Prefix cannot be null or empty.");
+		if (limit < 1)
+			throw new BadRequestException("Limit must be greater than 0");
+
+		return readLocked(() -> {
+			List<T> matches = new ArrayList<>();
+			sortedNameIndex.forEachFrom(sortedNameIndex.rankOf(prefix), (name, entity) -> {
+				if (matches.size() >= limit || !name.regionMatches(true, 0, prefix, 0, prefix.length()))
+					return false;
+				matches.add(entity);
+				return true;
+			});
+			return Query.of(matches.toArray(newArray(0)));
+		});
+	}
+
 	public Query<T> sortByName() {
 		return sortByName(SortOrder.ASC);
 	}
 
 	public Query<T> sortByName(SortOrder order) {
-		int flag = (order == SortOrder.DESC) ? -1 : 1;
-		return this.query().sort((e1, e2) -> (e1.getName().trim().compareToIgnoreCase(e2.getName().trim()) * flag));
+		return readLocked(() -> {
+			T[] rows = newArray(sortedNameIndex.size());
+			int[] count = { 0 };
+			if (order == SortOrder.DESC)
+				sortedNameIndex.forEachDescending(0, rows.length, e -> rows[count[0]++] = e);
+			else
+				sortedNameIndex.forEach(e -> rows[count[0]++] = e);
+			return Query.of(rows);
+		});
 	}
 
 	public Query<T> sortByName(Query<T> base) {
@@ -114,8 +798,12 @@ public abstract class Repository<T extends Entity> {
 	}
 
 	public Query<T> sortByName(Query<T> base, SortOrder order) {
+		return base.sort(nameComparator(order));
+	}
+
+	public Comparator<T> nameComparator(SortOrder order) {
 		int flag = (order == SortOrder.DESC) ? -1 : 1;
-		return base.sort((e1, e2) -> (e1.getName().trim().compareToIgnoreCase(e2.getName().trim()) * flag));
+		return (e1, e2) -> (e1.getName().trim().compareToIgnoreCase(e2.getName().trim()) * flag);
 	}
 
 	public Query<T> sortByCreatedAt() {
@@ -123,8 +811,7 @@ public abstract class Repository<T extends Entity> {
 	}
 
 	public Query<T> sortByCreatedAt(SortOrder order) {
-		int flag = (order == SortOrder.DESC) ? -1 : 1;
-		return this.query().sort((e1, e2) -> e1.getCreatedAt().compareTo(e2.getCreatedAt()) * flag);
+		return this.query(q -> q.sort(createdAtComparator(order)));
 	}
 
 	public Query<T> sortByCreatedAt(Query<T> base) {
@@ -132,12 +819,16 @@ public abstract class Repository<T extends Entity> {
 	}
 
 	public Query<T> sortByCreatedAt(Query<T> base, SortOrder order) {
+		return base.sort(createdAtComparator(order));
+	}
+
+	public Comparator<T> createdAtComparator(SortOrder order) {
 		int flag = (order == SortOrder.DESC) ? -1 : 1;
-		return base.sort((e1, e2) -> e1.getCreatedAt().compareTo(e2.getCreatedAt()) * flag);
+		return (e1, e2) -> e1.getCreatedAt().compareTo(e2.getCreatedAt()) * flag;
 	}
 
 	public boolean exists(Long id) {
-		return this.query().find(e -> e.getId().equals(id)) != null;
+		return this.lockedSlotOf(id) != LongIntHashMap.MISSING;
 	}
 
 	public boolean exists(Entity entity) {
@@ -145,7 +836,7 @@ public abstract class Repository<T extends Entity> {
 	}
 
 	public boolean idDuplicated(Long id) {
-		return this.query().find(e -> e.getId().equals(id)) != null;
+		return this.lockedSlotOf(id) != LongIntHashMap.MISSING;
 	}
 
 	public boolean isDuplicated(T data) {
@@ -155,17 +846,100 @@ public abstract class Repository<T extends Entity> {
 		return this.idDuplicated(data.getId());
 	}
 
+	@SuppressWarnings("unchecked")
+	protected T[] newArray(int length) {
+		return this.datas.newArray(length);
+	}
+
+	// Caller must hold the lock (or be validating an optimistic stamp).
+	protected int slotOf(Long id) {
+		if (id == null)
+			return LongIntHashMap.MISSING;
+		return idIndex.get(id);
+	}
+
+	private int lockedSlotOf(Long id) {
+		long stamp = lock.tryOptimisticRead();
+		if (stamp != 0L) {
+			try {
+				int index = this.slotOf(id);
+				if (lock.validate(stamp))
+					return index;
+			} catch (RuntimeException e) {
+				// torn read while a writer was active; retry under the read lock
+			}
+		}
+		stamp = lock.readLock();
+		try {
+			return this.slotOf(id);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	// Runs a short, side-effect free reader under an optimistic stamp and
+	// retries under the read lock if a writer got in meanwhile.
+	protected <R> R read(Supplier<R> reader) {
+		long stamp = lock.tryOptimisticRead();
+		if (stamp != 0L) {
+			try {
+				R result = reader.get();
+				if (lock.validate(stamp))
+					return result;
+			} catch (RuntimeException e) {
+				if (lock.validate(stamp))
+					throw e;
+			}
+		}
+		return readLocked(reader);
+	}
+
+	// Runs a reader that walks larger structures under the read lock.
+	protected <R> R readLocked(Supplier<R> reader) {
+		long stamp = lock.readLock();
+		try {
+			return reader.get();
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	private void promoteShadowed(Long id, int from) {
+		for (int i = from; i < end; i++) {
+			T data = datas.get(i);
+			if (data != null && data.getId().equals(id)) {
+				idIndex.put(id, i);
+				shadowedIds--;
+				return;
+			}
+		}
+	}
+
 	public boolean isOutOfCapacity() {
-		return this.size >= this.capacity;
+		return this.end >= this.capacity;
 	}
 
 	protected void increaseCapacity() {
+		resize(capacityPolicy.grow(capacity, capacity + 1));
+	}
+
+	// Gives memory back once the policy considers the array too sparse.
+	// Tombstones are compacted first so the live entries fit the new array.
+	private void shrinkIfSparse() {
+		int target = capacityPolicy.shrink(capacity, size);
+		if (target >= capacity)
+			return;
+		if (end > size)
+			compactSlots();
+		resize(target);
+	}
+
+	private void resize(int newCapacity) {
 		try {
-			int newCapacity = Math.max(1, capacity * 2);
-			datas = Arrays.copyOf(datas, newCapacity);
-			capacity = newCapacity;
+			capacity = datas.resize(newCapacity);
+			sequences.resize(capacity);
 		} catch (OutOfMemoryError e) {
-			throw new InternalAppException("Cannot increase capacity: " + e.getMessage());
+			throw new InternalAppException("Cannot resize capacity: " + e.getMessage());
 		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,16 @@
+package main.catalog;
+
+/**
+ * Layout of binary catalogs: a header of magic and version, then frames of
+ * [record count][byte length][records encoded with ProductCodec], and a
+ * final frame with no records that marks a complete file.
+ */
+final class BinaryCatalog {
+	static final int MAGIC = 0x50434154; // "PCAT"
+	static final int VERSION = 2;
+	// Larger frames are taken for corruption rather than allocated.
+	static final int MAX_FRAME_BYTES = 1 << 28;
+
+	private BinaryCatalog() {
+	}
+}
@@ -0,0 +1,39 @@
+package main.catalog;
+
+/**
+ * Outcome of a catalog export: how many products and bytes were written and
+ * how long it took.
+ */
+public final class ExportReport {
+	private final long rows;
+	private final long bytes;
+	private final long elapsedNanos;
+
+	ExportReport(long rows, long bytes, long elapsedNanos) {
+		this.rows = rows;
+		this.bytes = bytes;
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	public long getRows() {
+		return rows;
+	}
+
+	public long getBytes() {
+		return bytes;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedNanos / 1_000_000;
+	}
+
+	public double getRowsPerSecond() {
+		return elapsedNanos == 0 ? 0.0 : rows * 1e9 / elapsedNanos;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d rows, %d bytes in %d ms (%.0f rows/s)", rows, bytes, getElapsedMillis(),
+				getRowsPerSecond());
+	}
+}
@@ -0,0 +1,56 @@
+package main.catalog;
+
+import java.util.List;
+
+/**
+ * Counters of a catalog import, either while it runs or once it is done.
+ * Only the first few rejected rows are kept; all of them go to the
+ * importer's rejection listener.
+ */
+public final class ImportReport {
+	private final long rowsRead;
+	private final long rowsImported;
+	private final long rowsRejected;
+	private final long elapsedNanos;
+	private final List<RejectedRow> rejections;
+
+	ImportReport(long rowsRead, long rowsImported, long rowsRejected, long elapsedNanos,
+			List<RejectedRow> rejections) {
+		this.rowsRead = rowsRead;
+		this.rowsImported = rowsImported;
+		this.rowsRejected = rowsRejected;
+		this.elapsedNanos = elapsedNanos;
+		this.rejections = List.copyOf(rejections);
+	}
+
+	public long getRowsRead() {
+		return rowsRead;
+	}
+
+	public long getRowsImported() {
+		return rowsImported;
+	}
+
+	public long getRowsRejected() {
+		return rowsRejected;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedNanos / 1_000_000;
+	}
+
+	// Rows read per second of wall-clock time.
+	public double getRowsPerSecond() {
+		return elapsedNanos == 0 ? 0.0 : rowsRead * 1e9 / elapsedNanos;
+	}
+
+	public List<RejectedRow> getRejections() {
+		return rejections;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d rows read, %d imported, %d rejected in %d ms (%.0f rows/s)", rowsRead,
+				rowsImported, rowsRejected, getElapsedMillis(), getRowsPerSecond());
+	}
+}
@@ -0,0 +1,256 @@
+package main.catalog;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import main.enumerations.CatalogFormat;
+import main.errors.BadRequestException;
+import main.errors.InternalAppException;
+import main.models.Product;
+import main.persistence.BinaryWriter;
+import main.persistence.ProductCodec;
+import main.repositories.ProductRepository;
+
+/**
+ * Streams every product of a ProductRepository out as CSV, JSON Lines or a
+ * binary catalog.
+ *
+ * The products are captured once, as chunks of references copied under a
+ * single read lock, so the export holds exactly the products present at that
+ * point while writers carry on; their fields are read as each chunk is
+ * encoded. Each chunk is then encoded into one reused buffer and written to
+ * the channel before the next is encoded; a slow channel holds back the
+ * export, never the repository. Capturing costs one reference per product up
+ * front, but only one chunk of encoded output is in memory at a time, and
+ * exported chunks are dropped as the export goes.
+ *
+ * CSV and JSON Lines exports carry the columns the importer reads, plus the
+ * creation and update times, which it ignores. Binary catalogs can be read
+ * back with {@link ProductImporter#importBinary}.
+ */
+public final class ProductExporter {
+	public static final int DEFAULT_CHUNK_SIZE = 4096;
+	private static final String CSV_HEADER = "id,name,price,quantity,categoryId,description,createdAt,updatedAt\n";
+
+	private final ProductRepository repository;
+	private final int chunkSize;
+	private final ProductCodec codec = new ProductCodec();
+
+	public ProductExporter(ProductRepository repository) {
+		this(repository, DEFAULT_CHUNK_SIZE);
+	}
+
+	private ProductExporter(ProductRepository repository, int chunkSize) {
+		if (repository == null)
+			throw new BadRequestException("Repository cannot be null.");
+		if (chunkSize < 1)
+			throw new BadRequestException("Chunk size must be greater than 0");
+
+		this.repository = repository;
+		this.chunkSize = chunkSize;
+	}
+
+	public ProductExporter withChunkSize(int chunkSize) {
+		return new ProductExporter(repository, chunkSize);
+	}
+
+	public ExportReport exportFile(Path file, CatalogFormat format) {
+		if (file == null)
+			throw new BadRequestException("Export file cannot be null.");
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			return export(channel, format);
+		} catch (IOException e) {
+			throw new InternalAppException("Failed to write export " + file + ": " + e.getMessage());
+		}
+	}
+
+	// Writes to `channel` without closing it. The channel must be in blocking
+	// mode.
+	public ExportReport export(WritableByteChannel channel, CatalogFormat format) {
+		if (channel == null || format == null)
+			throw new BadRequestException("Export channel and format cannot be null.");
+		if (channel instanceof SelectableChannel selectable && !selectable.isBlocking())
+			throw new BadRequestException("Export channel must be in blocking mode.");
+
+		long start = System.nanoTime();
+		List<Product[]> chunks = repository.findAllInChunks(chunkSize);
+		BinaryWriter out = new BinaryWriter(1 << 16);
+		StringBuilder text = new StringBuilder(256);
+		long rows = 0;
+		long bytes = 0;
+		try {
+			if (format == CatalogFormat.CSV)
+				writeUtf8(CSV_HEADER, out);
+			else if (format == CatalogFormat.BINARY) {
+				out.putInt(BinaryCatalog.MAGIC);
+				out.putInt(BinaryCatalog.VERSION);
+			}
+
+			for (int i = 0; i < chunks.size(); i++) {
+				Product[] chunk = chunks.get(i);
+				chunks.set(i, null);
+				switch (format) {
+					case CSV -> {
+						for (Product product : chunk) {
+							text.setLength(0);
+							appendCsv(text, product);
+							writeUtf8(text, out);
+						}
+					}
+					case JSON_LINES -> {
+						for (Product product : chunk) {
+							text.setLength(0);
+							appendJson(text, product);
+							writeUtf8(text, out);
+						}
+					}
+					case BINARY -> {
+						out.putInt(chunk.length);
+						out.putInt(0);
+						int from = out.position();
+						for (Product product : chunk)
+							codec.encode(product, out);
+						out.putInt(from - 4, out.position() - from);
+					}
+				}
+				rows += chunk.length;
+				bytes += drain(out, channel);
+			}
+			if (format == CatalogFormat.BINARY) {
+				out.putInt(0);
+				out.putInt(0);
+			}
+			bytes += drain(out, channel);
+		} catch (IOException e) {
+			throw new InternalAppException("Failed to export catalog: " + e.getMessage());
+		}
+		return new ExportReport(rows, bytes, System.nanoTime() - start);
+	}
+
+	private static long drain(BinaryWriter out, WritableByteChannel channel) throws IOException {
+		ByteBuffer buffer = out.written();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		out.reset();
+		return buffer.limit();
+	}
+
+	private static void appendCsv(StringBuilder text, Product product) {
+		text.append(product.getId()).append(',');
+		appendCsvField(text, product.getName());
+		text.append(',').append(product.getPrice()).append(',').append(product.getQuantity()).append(',');
+		if (product.getCategoryId() != null)
+			text.append(product.getCategoryId());
+		text.append(',');
+		appendCsvField(text, product.getDescription());
+		text.append(',');
+		appendTime(text, product.getCreatedAt());
+		text.append(',');
+		appendTime(text, product.getUpdateAt());
+		text.append('\n');
+	}
+
+	// Quotes the field only when it holds a separator, quote or line break.
+	private static void appendCsvField(StringBuilder text, String value) {
+		if (value == null)
+			return;
+		boolean quote = false;
+		for (int i = 0; i < value.length() && !quote; i++) {
+			char c = value.charAt(i);
+			quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+		}
+		if (!quote) {
+			text.append(value);
+			return;
+		}
+		text.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"')
+				text.append('"');
+			text.append(c);
+		}
+		text.append('"');
+	}
+
+	private static void appendJson(StringBuilder text, Product product) {
+		text.append("{\"id\":").append(product.getId()).append(",\"name\":");
+		appendJsonString(text, product.getName());
+		text.append(",\"price\":").append(product.getPrice());
+		text.append(",\"quantity\":").append(product.getQuantity());
+		text.append(",\"categoryId\":").append(product.getCategoryId());
+		text.append(",\"description\":");
+		appendJsonString(text, product.getDescription());
+		text.append(",\"createdAt\":");
+		appendJsonString(text, product.getCreatedAt() == null ? null : product.getCreatedAt().toString());
+		text.append(",\"updatedAt\":");
+		appendJsonString(text, product.getUpdateAt() == null ? null : product.getUpdateAt().toString());
+		text.append("}\n");
+	}
+
+	private static void appendJsonString(StringBuilder text, String value) {
+		if (value == null) {
+			text.append("null");
+			return;
+		}
+		text.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+				case '"' -> text.append("\\\"");
+				case '\\' -> text.append("\\\\");
+				case '\n' -> text.append("\\n");
+				case '\r' -> text.append("\\r");
+				case '\t' -> text.append("\\t");
+				default -> {
+					if (c < 0x20)
+						text.append(String.format("\\u%04x", (int) c));
+					else
+						text.append(c);
+				}
+			}
+		}
+		text.append('"');
+	}
+
+	private static void appendTime(StringBuilder text, LocalDateTime time) {
+		if (time != null)
+			text.append(time);
+	}
+
+	// Encodes without an intermediate String or byte array per row. Unpaired
+	// surrogates become '?', as String.getBytes would write them.
+	private static void writeUtf8(CharSequence text, BinaryWriter out) {
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c < 0x80) {
+				out.putByte(c);
+			} else if (c < 0x800) {
+				out.putByte(0xC0 | c >> 6);
+				out.putByte(0x80 | c & 0x3F);
+			} else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+					&& Character.isLowSurrogate(text.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, text.charAt(++i));
+				out.putByte(0xF0 | codePoint >> 18);
+				out.putByte(0x80 | codePoint >> 12 & 0x3F);
+				out.putByte(0x80 | codePoint >> 6 & 0x3F);
+				out.putByte(0x80 | codePoint & 0x3F);
+			} else if (Character.isSurrogate(c)) {
+				out.putByte('?');
+			} else {
+				out.putByte(0xE0 | c >> 12);
+				out.putByte(0x80 | c >> 6 & 0x3F);
+				out.putByte(0x80 | c & 0x3F);
+			}
+		}
+	}
+}
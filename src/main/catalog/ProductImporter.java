@@ -0,0 +1,680 @@
+package main.catalog;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import main.enumerations.CatalogFormat;
+import main.errors.AppException;
+import main.errors.BadRequestException;
+import main.errors.InternalAppException;
+import main.models.Product;
+import main.persistence.BinaryReader;
+import main.persistence.ProductCodec;
+import main.repositories.ProductRepository;
+
+/**
+ * Streams a supplier catalog in CSV or JSON Lines into a ProductRepository.
+ *
+ * The calling thread only splits the input into records and groups them into
+ * batches. Worker threads parse and validate each batch into products, and
+ * finished batches are upserted in input order, so a product listed twice
+ * ends up as its last row. At most two batches per worker are in flight,
+ * which bounds memory whatever the size of the file.
+ *
+ * Rows that do not parse or fail validation are skipped and reported with the
+ * line they start on; the rest of their batch is still imported.
+ *
+ * Binary catalogs written by ProductExporter are read frame by frame, each
+ * frame being decoded on a worker the same way.
+ *
+ * CSV input needs a header row naming its columns: id, name, price and
+ * quantity are required, categoryId and description are optional, and any
+ * other column is ignored. JSON Lines input has one object per line with the
+ * same keys.
+ */
+public final class ProductImporter {
+	public static final int DEFAULT_BATCH_SIZE = 8192;
+	// Longer records are rejected, so an unbalanced quote cannot pull the
+	// rest of the file into one record.
+	private static final int MAX_RECORD_CHARS = 1 << 20;
+	private static final int KEPT_REJECTIONS = 100;
+
+	private static final int ID = 0;
+	private static final int NAME = 1;
+	private static final int PRICE = 2;
+	private static final int QUANTITY = 3;
+	private static final int CATEGORY_ID = 4;
+	private static final int DESCRIPTION = 5;
+	private static final String[] COLUMN_NAMES = { "id", "name", "price", "quantity", "categoryId", "description" };
+	// Column names are matched ignoring case, underscores and spaces.
+	private static final Map<String, Integer> COLUMNS = Map.of("id", ID, "name", NAME, "price", PRICE,
+			"quantity", QUANTITY, "categoryid", CATEGORY_ID, "description", DESCRIPTION);
+
+	private final ProductRepository repository;
+	private final int batchSize;
+	private final int workers;
+	private final Consumer<ImportReport> progressListener;
+	private final Consumer<RejectedRow> rejectionListener;
+
+	public ProductImporter(ProductRepository repository) {
+		this(repository, DEFAULT_BATCH_SIZE, Runtime.getRuntime().availableProcessors(), report -> {
+		}, row -> {
+		});
+	}
+
+	private ProductImporter(ProductRepository repository, int batchSize, int workers,
+			Consumer<ImportReport> progressListener, Consumer<RejectedRow> rejectionListener) {
+		if (repository == null)
+			throw new BadRequestException("Repository cannot be null.");
+		if (batchSize < 1)
+			throw new BadRequestException("Batch size must be greater than 0");
+		if (workers < 1)
+			throw new BadRequestException("Worker count must be greater than 0");
+		if (progressListener == null || rejectionListener == null)
+			throw new BadRequestException("Listeners cannot be null.");
+
+		this.repository = repository;
+		this.batchSize = batchSize;
+		this.workers = workers;
+		this.progressListener = progressListener;
+		this.rejectionListener = rejectionListener;
+	}
+
+	public ProductImporter withBatchSize(int batchSize) {
+		return new ProductImporter(repository, batchSize, workers, progressListener, rejectionListener);
+	}
+
+	public ProductImporter withWorkers(int workers) {
+		return new ProductImporter(repository, batchSize, workers, progressListener, rejectionListener);
+	}
+
+	// Called on the importing thread after every batch is applied.
+	public ProductImporter onProgress(Consumer<ImportReport> listener) {
+		return new ProductImporter(repository, batchSize, workers, listener, rejectionListener);
+	}
+
+	// Called on the importing thread for every skipped row.
+	public ProductImporter onRejected(Consumer<RejectedRow> listener) {
+		return new ProductImporter(repository, batchSize, workers, progressListener, listener);
+	}
+
+	public ImportReport importFile(Path file, CatalogFormat format) {
+		if (file == null)
+			throw new BadRequestException("Catalog file cannot be null.");
+
+		if (format == CatalogFormat.BINARY) {
+			try (InputStream input = Files.newInputStream(file)) {
+				return importBinary(input);
+			} catch (IOException e) {
+				throw new InternalAppException("Failed to read catalog " + file + ": " + e.getMessage());
+			}
+		}
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			return importFrom(reader, format);
+		} catch (IOException e) {
+			throw new InternalAppException("Failed to read catalog " + file + ": " + e.getMessage());
+		}
+	}
+
+	public ImportReport importFrom(Reader input, CatalogFormat format) {
+		if (input == null || format == null)
+			throw new BadRequestException("Catalog input and format cannot be null.");
+		if (format == CatalogFormat.BINARY)
+			throw new BadRequestException("Binary catalogs are imported with importBinary.");
+
+		BufferedReader reader = input instanceof BufferedReader buffered ? buffered : new BufferedReader(input);
+		return execute(run -> run.readText(reader, format));
+	}
+
+	// Reads a catalog that ProductExporter wrote in the binary format. Rows
+	// are numbered from 1 in place of lines. A record that fails to decode
+	// also rejects the rest of its frame, which cannot be resynchronized; a
+	// truncated or corrupted file fails the import once the frames before the
+	// damage are applied.
+	public ImportReport importBinary(InputStream input) {
+		if (input == null)
+			throw new BadRequestException("Catalog input cannot be null.");
+
+		DataInputStream in = new DataInputStream(new BufferedInputStream(input, 1 << 16));
+		return execute(run -> run.readBinary(in));
+	}
+
+	private interface Reading {
+		void readAll(Run run) throws IOException;
+	}
+
+	private ImportReport execute(Reading reading) {
+		ExecutorService executor = Executors.newFixedThreadPool(workers, runnable -> {
+			Thread thread = new Thread(runnable, "catalog-import");
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			Run run = new Run(executor);
+			reading.readAll(run);
+			run.finish();
+			return run.report();
+		} catch (IOException e) {
+			throw new InternalAppException("Failed to read catalog: " + e.getMessage());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	// State of one import. Everything but parsing runs on the calling thread.
+	private final class Run {
+		private final ExecutorService executor;
+		private final ArrayDeque<Future<ParsedBatch>> inFlight = new ArrayDeque<>();
+		private final List<RejectedRow> kept = new ArrayList<>();
+		private final long start = System.nanoTime();
+		private long line;
+		private long recordLine;
+		private long rowsRead;
+		private long rowsImported;
+		private long rowsRejected;
+		private BufferedReader reader;
+		private CatalogFormat format;
+
+		Run(ExecutorService executor) {
+			this.executor = executor;
+		}
+
+		void readText(BufferedReader reader, CatalogFormat format) throws IOException {
+			this.reader = reader;
+			this.format = format;
+			int[] columns = format == CatalogFormat.CSV ? readHeader() : null;
+
+			String[] records = new String[batchSize];
+			long[] lines = new long[batchSize];
+			int count = 0;
+			String record;
+			while ((record = nextRecord()) != null) {
+				records[count] = record;
+				lines[count++] = recordLine;
+				if (count == batchSize) {
+					submit(parseLater(records, lines, count, columns));
+					records = new String[batchSize];
+					lines = new long[batchSize];
+					count = 0;
+				}
+			}
+			if (count > 0)
+				submit(parseLater(records, lines, count, columns));
+		}
+
+		private Callable<ParsedBatch> parseLater(String[] records, long[] lines, int count, int[] columns) {
+			return () -> parse(records, lines, count, columns);
+		}
+
+		void readBinary(DataInputStream in) throws IOException {
+			try {
+				if (in.readInt() != BinaryCatalog.MAGIC)
+					throw new BadRequestException("Input is not a binary catalog.");
+				int version = in.readInt();
+				if (version != BinaryCatalog.VERSION)
+					throw new BadRequestException("Unsupported binary catalog version " + version + ".");
+
+				long firstRow = 1;
+				while (true) {
+					int count = in.readInt();
+					int length = in.readInt();
+					if (count == 0 && length == 0)
+						return;
+					if (count < 0 || length < 0 || length > BinaryCatalog.MAX_FRAME_BYTES)
+						throw corrupted(firstRow);
+					byte[] bytes = new byte[length];
+					in.readFully(bytes);
+					long first = firstRow;
+					submit(() -> decode(bytes, count, first));
+					firstRow += count;
+				}
+			} catch (EOFException e) {
+				finish();
+				throw new BadRequestException("Binary catalog ends before its last frame.");
+			}
+		}
+
+		private BadRequestException corrupted(long row) {
+			finish();
+			return new BadRequestException("Binary catalog is corrupted at row " + row + ".");
+		}
+
+		// Applies the batches still in flight.
+		void finish() {
+			while (!inFlight.isEmpty())
+				apply(inFlight.poll());
+		}
+
+		private int[] readHeader() throws IOException {
+			String header = nextRecord();
+			if (header == null)
+				return null;
+			// Spreadsheet exports often start with a byte order mark.
+			if (header.startsWith("\uFEFF"))
+				header = header.substring(1);
+
+			String[] names = splitCsv(header);
+			int[] columns = new int[names.length];
+			boolean[] present = new boolean[COLUMN_NAMES.length];
+			for (int i = 0; i < names.length; i++) {
+				Integer column = COLUMNS.get(normalize(names[i]));
+				columns[i] = column == null ? -1 : column;
+				if (column != null)
+					present[column] = true;
+			}
+			for (int column = ID; column <= QUANTITY; column++) {
+				if (!present[column])
+					throw new BadRequestException("Catalog header is missing the " + COLUMN_NAMES[column] + " column.");
+			}
+			return columns;
+		}
+
+		// Returns the next non-blank record and sets `recordLine` to the line
+		// it starts on. A CSV record continues over line breaks inside quotes.
+		private String nextRecord() throws IOException {
+			String text;
+			while ((text = reader.readLine()) != null) {
+				line++;
+				if (text.isBlank())
+					continue;
+				recordLine = line;
+				if (format != CatalogFormat.CSV || !insideQuotes(text, false))
+					return text;
+
+				StringBuilder record = new StringBuilder(text);
+				boolean open = true;
+				while (open && record.length() <= MAX_RECORD_CHARS && (text = reader.readLine()) != null) {
+					line++;
+					record.append('\n').append(text);
+					open = insideQuotes(text, true);
+				}
+				rowsRead++;
+				if (record.length() > MAX_RECORD_CHARS)
+					reject(new RejectedRow(recordLine, "Record is longer than " + MAX_RECORD_CHARS + " characters"));
+				else if (open)
+					reject(new RejectedRow(recordLine, "Unterminated quoted field"));
+				else {
+					rowsRead--;
+					return record.toString();
+				}
+			}
+			return null;
+		}
+
+		// Whether a record is still inside a quoted field after `text`, given
+		// whether it was before. Escaped quotes ("") flip the state twice.
+		private boolean insideQuotes(String text, boolean open) {
+			for (int i = 0; i < text.length(); i++) {
+				if (text.charAt(i) == '"')
+					open = !open;
+			}
+			return open;
+		}
+
+		private void submit(Callable<ParsedBatch> batch) {
+			// Waits for the oldest batch first, so memory stays bounded.
+			if (inFlight.size() >= workers * 2)
+				apply(inFlight.poll());
+			inFlight.add(executor.submit(batch));
+		}
+
+		private void apply(Future<ParsedBatch> pending) {
+			ParsedBatch batch;
+			try {
+				batch = pending.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InternalAppException("Catalog import was interrupted.");
+			} catch (ExecutionException e) {
+				throw new InternalAppException("Failed to parse catalog batch: " + e.getCause().getMessage());
+			}
+
+			rowsRead += batch.rows;
+			for (RejectedRow row : batch.rejections)
+				reject(row);
+			if (batch.products.length > 0) {
+				try {
+					repository.upsertAll(batch.products);
+					rowsImported += batch.products.length;
+				} catch (AppException e) {
+					for (long productLine : batch.productLines)
+						reject(new RejectedRow(productLine, e.getMessage()));
+				}
+			}
+			progressListener.accept(report());
+		}
+
+		private void reject(RejectedRow row) {
+			rowsRejected++;
+			if (kept.size() < KEPT_REJECTIONS)
+				kept.add(row);
+			rejectionListener.accept(row);
+		}
+
+		ImportReport report() {
+			return new ImportReport(rowsRead, rowsImported, rowsRejected, System.nanoTime() - start, kept);
+		}
+	}
+
+	private static final class ParsedBatch {
+		private final int rows;
+		private final Product[] products;
+		private final long[] productLines;
+		private final List<RejectedRow> rejections;
+
+		ParsedBatch(int rows, Product[] products, long[] productLines, List<RejectedRow> rejections) {
+			this.rows = rows;
+			this.products = products;
+			this.productLines = productLines;
+			this.rejections = rejections;
+		}
+	}
+
+	// Runs on a worker thread; `columns` is null for JSON Lines.
+	private static ParsedBatch parse(String[] records, long[] lines, int count, int[] columns) {
+		Product[] products = new Product[count];
+		long[] productLines = new long[count];
+		List<RejectedRow> rejections = new ArrayList<>();
+		int parsed = 0;
+		for (int i = 0; i < count; i++) {
+			try {
+				String[] fields = columns == null ? parseJson(records[i]) : parseCsv(records[i], columns);
+				products[parsed] = toProduct(fields);
+				productLines[parsed++] = lines[i];
+			} catch (AppException e) {
+				rejections.add(new RejectedRow(lines[i], e.getMessage()));
+			}
+		}
+		return new ParsedBatch(count, Arrays.copyOf(products, parsed), Arrays.copyOf(productLines, parsed),
+				rejections);
+	}
+
+	// Runs on a worker thread.
+	private static ParsedBatch decode(byte[] bytes, int count, long firstRow) {
+		ProductCodec codec = new ProductCodec();
+		BinaryReader in = new BinaryReader(bytes, 0, bytes.length);
+		Product[] products = new Product[count];
+		long[] productLines = new long[count];
+		List<RejectedRow> rejections = new ArrayList<>();
+		int decoded = 0;
+		for (int i = 0; i < count; i++) {
+			try {
+				products[decoded] = codec.decode(in);
+				productLines[decoded++] = firstRow + i;
+			} catch (IOException | AppException e) {
+				String reason = e instanceof AppException ? e.getMessage() : "Truncated record";
+				rejections.add(new RejectedRow(firstRow + i, reason));
+				for (int j = i + 1; j < count; j++)
+					rejections.add(new RejectedRow(firstRow + j, "Follows an unreadable record"));
+				break;
+			}
+		}
+		return new ParsedBatch(count, Arrays.copyOf(products, decoded), Arrays.copyOf(productLines, decoded),
+				rejections);
+	}
+
+	private static Product toProduct(String[] fields) {
+		for (int column = ID; column <= QUANTITY; column++) {
+			if (fields[column] == null || fields[column].isBlank())
+				throw new BadRequestException("Missing " + COLUMN_NAMES[column]);
+		}
+		long id = parseLong(fields[ID], "id");
+		double price = parseDouble(fields[PRICE], "price");
+		int quantity = parseInt(fields[QUANTITY], "quantity");
+		Integer categoryId = fields[CATEGORY_ID] == null || fields[CATEGORY_ID].isBlank() ? null
+				: parseInt(fields[CATEGORY_ID], "categoryId");
+		String description = fields[DESCRIPTION] == null ? "" : fields[DESCRIPTION];
+		return new Product(id, fields[NAME], price, quantity, categoryId, description);
+	}
+
+	private static long parseLong(String value, String column) {
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			throw new BadRequestException("Invalid " + column + " \"" + value + "\"");
+		}
+	}
+
+	private static int parseInt(String value, String column) {
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			throw new BadRequestException("Invalid " + column + " \"" + value + "\"");
+		}
+	}
+
+	private static double parseDouble(String value, String column) {
+		try {
+			double parsed = Double.parseDouble(value.trim());
+			if (Double.isFinite(parsed))
+				return parsed;
+		} catch (NumberFormatException e) {
+			// Reported below.
+		}
+		throw new BadRequestException("Invalid " + column + " \"" + value + "\"");
+	}
+
+	private static String normalize(String name) {
+		return name.trim().replace("_", "").replace(" ", "").toLowerCase();
+	}
+
+	private static String[] parseCsv(String record, int[] columns) {
+		String[] values = splitCsv(record);
+		if (values.length != columns.length)
+			throw new BadRequestException("Expected " + columns.length + " fields but found " + values.length);
+
+		String[] fields = new String[COLUMN_NAMES.length];
+		for (int i = 0; i < values.length; i++) {
+			if (columns[i] >= 0)
+				fields[columns[i]] = values[i];
+		}
+		return fields;
+	}
+
+	// Splits one RFC 4180 record: fields are separated by commas and may be
+	// quoted, with "" standing for a quote inside a quoted field.
+	static String[] splitCsv(String record) {
+		List<String> fields = new ArrayList<>();
+		StringBuilder field = new StringBuilder();
+		int i = 0;
+		int length = record.length();
+		while (true) {
+			field.setLength(0);
+			if (i < length && record.charAt(i) == '"') {
+				i++;
+				while (true) {
+					if (i >= length)
+						throw new BadRequestException("Unterminated quoted field");
+					char c = record.charAt(i++);
+					if (c != '"') {
+						field.append(c);
+					} else if (i < length && record.charAt(i) == '"') {
+						field.append('"');
+						i++;
+					} else {
+						break;
+					}
+				}
+				if (i < length && record.charAt(i) != ',')
+					throw new BadRequestException("Unexpected character after quoted field " + (fields.size() + 1));
+			} else {
+				while (i < length && record.charAt(i) != ',')
+					field.append(record.charAt(i++));
+			}
+			fields.add(field.toString());
+			if (i >= length)
+				return fields.toArray(new String[0]);
+			i++;
+		}
+	}
+
+	// Reads one JSON object into product fields by column. Keys that are not
+	// product fields are skipped whatever their value; numbers and booleans
+	// are kept as their text and JSON null as null.
+	static String[] parseJson(String line) {
+		JsonCursor cursor = new JsonCursor(line);
+		String[] fields = new String[COLUMN_NAMES.length];
+		cursor.expect('{');
+		if (!cursor.consume('}')) {
+			do {
+				String key = cursor.readString();
+				cursor.expect(':');
+				Integer column = COLUMNS.get(normalize(key));
+				if (column == null)
+					cursor.skipValue();
+				else
+					fields[column] = cursor.readScalar(key);
+			} while (cursor.consume(','));
+			cursor.expect('}');
+		}
+		cursor.skipWhitespace();
+		if (cursor.position < line.length())
+			throw new BadRequestException("Unexpected content after the JSON object");
+		return fields;
+	}
+
+	private static final class JsonCursor {
+		private final String text;
+		private int position;
+
+		JsonCursor(String text) {
+			this.text = text;
+		}
+
+		void skipWhitespace() {
+			while (position < text.length() && Character.isWhitespace(text.charAt(position)))
+				position++;
+		}
+
+		boolean consume(char expected) {
+			skipWhitespace();
+			if (position < text.length() && text.charAt(position) == expected) {
+				position++;
+				return true;
+			}
+			return false;
+		}
+
+		void expect(char expected) {
+			if (!consume(expected))
+				throw new BadRequestException("Malformed JSON: expected '" + expected + "' at column " + (position + 1));
+		}
+
+		char peek() {
+			skipWhitespace();
+			if (position >= text.length())
+				throw new BadRequestException("Malformed JSON: unexpected end of line");
+			return text.charAt(position);
+		}
+
+		String readString() {
+			if (peek() != '"')
+				throw new BadRequestException("Malformed JSON: expected a string at column " + (position + 1));
+			position++;
+			StringBuilder value = new StringBuilder();
+			while (true) {
+				if (position >= text.length())
+					throw new BadRequestException("Malformed JSON: unterminated string");
+				char c = text.charAt(position++);
+				if (c == '"')
+					return value.toString();
+				if (c != '\\') {
+					value.append(c);
+					continue;
+				}
+				if (position >= text.length())
+					throw new BadRequestException("Malformed JSON: unterminated string");
+				char escaped = text.charAt(position++);
+				switch (escaped) {
+					case '"', '\\', '/' -> value.append(escaped);
+					case 'b' -> value.append('\b');
+					case 'f' -> value.append('\f');
+					case 'n' -> value.append('\n');
+					case 'r' -> value.append('\r');
+					case 't' -> value.append('\t');
+					case 'u' -> {
+						if (position + 4 > text.length())
+							throw new BadRequestException("Malformed JSON: truncated unicode escape");
+						try {
+							value.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+						} catch (NumberFormatException e) {
+							throw new BadRequestException("Malformed JSON: invalid unicode escape");
+						}
+						position += 4;
+					}
+					default -> throw new BadRequestException("Malformed JSON: invalid escape \\" + escaped);
+				}
+			}
+		}
+
+		String readScalar(String key) {
+			char c = peek();
+			if (c == '"')
+				return readString();
+			if (c == '{' || c == '[')
+				throw new BadRequestException("Field " + key + " must be a string, number or null");
+			String literal = readLiteral();
+			return literal.equals("null") ? null : literal;
+		}
+
+		// Numbers, true, false and null.
+		private String readLiteral() {
+			int from = position;
+			while (position < text.length() && "+-.eE".indexOf(text.charAt(position)) >= 0
+					|| position < text.length() && Character.isLetterOrDigit(text.charAt(position)))
+				position++;
+			String literal = text.substring(from, position);
+			if (literal.equals("true") || literal.equals("false") || literal.equals("null"))
+				return literal;
+			if (literal.isEmpty() || !(literal.charAt(0) == '-' || Character.isDigit(literal.charAt(0))))
+				throw new BadRequestException("Malformed JSON: unexpected value at column " + (from + 1));
+			return literal;
+		}
+
+		void skipValue() {
+			char c = peek();
+			if (c == '"') {
+				readString();
+			} else if (c == '{') {
+				position++;
+				if (!consume('}')) {
+					do {
+						readString();
+						expect(':');
+						skipValue();
+					} while (consume(','));
+					expect('}');
+				}
+			} else if (c == '[') {
+				position++;
+				if (!consume(']')) {
+					do {
+						skipValue();
+					} while (consume(','));
+					expect(']');
+				}
+			} else {
+				readLiteral();
+			}
+		}
+	}
+}
@@ -0,0 +1,28 @@
+package main.catalog;
+
+/**
+ * A catalog row the importer skipped, with the line it starts on and why.
+ * Rows of binary catalogs carry their row number, from 1, instead.
+ */
+public final class RejectedRow {
+	private final long line;
+	private final String reason;
+
+	public RejectedRow(long line, String reason) {
+		this.line = line;
+		this.reason = reason;
+	}
+
+	public long getLine() {
+		return line;
+	}
+
+	public String getReason() {
+		return reason;
+	}
+
+	@Override
+	public String toString() {
+		return "line " + line + ": " + reason;
+	}
+}
@@ -0,0 +1,20 @@
+package main.enumerations;
+
+public enum CatalogFormat {
+	CSV,
+	JSON_LINES,
+	BINARY;
+
+	// Picks the format from a file name: .csv, .jsonl, .ndjson and .json for
+	// JSON Lines, or .bin. Returns null for anything else.
+	public static CatalogFormat fromFileName(String fileName) {
+		String lower = fileName.toLowerCase();
+		if (lower.endsWith(".csv"))
+			return CSV;
+		if (lower.endsWith(".jsonl") || lower.endsWith(".ndjson") || lower.endsWith(".json"))
+			return JSON_LINES;
+		if (lower.endsWith(".bin"))
+			return BINARY;
+		return null;
+	}
+}
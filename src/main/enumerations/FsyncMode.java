@@ -0,0 +1,7 @@
+package main.enumerations;
+
+public enum FsyncMode {
+	ALWAYS,
+	INTERVAL,
+	NEVER;
+}
@@ -0,0 +1,11 @@
+package main.enumerations;
+
+public enum LogOperation {
+	ADD,
+	UPDATE,
+	REMOVE,
+	CLEAR,
+	ADD_ALL,
+	UPSERT_ALL,
+	REMOVE_ALL;
+}
@@ -0,0 +1,7 @@
+package main.enumerations;
+
+public enum ProductStorageMode {
+	OBJECTS,
+	COLUMNAR,
+	MAPPED;
+}
@@ -0,0 +1,11 @@
+package main.enumerations;
+
+public enum QueryAccessPath {
+	FULL_SCAN,
+	CATEGORY_INDEX,
+	NAME_SEARCH_INDEX,
+	NAME_INDEX,
+	CREATED_AT_INDEX,
+	PRICE_INDEX,
+	QUANTITY_INDEX;
+}
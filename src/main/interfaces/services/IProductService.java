@@ -1,9 +1,17 @@
 package main.interfaces.services;
 
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+import main.catalog.ExportReport;
+import main.catalog.ImportReport;
+import main.enumerations.CatalogFormat;
 import main.enumerations.ProductSearchableFields;
 import main.enumerations.ProductSortableFields;
 import main.enumerations.SortOrder;
 import main.models.Product;
+import main.query.ProductQuery;
+import main.query.QueryResult;
 
 public interface IProductService {
 	Product getById(Long id);
@@ -14,6 +22,16 @@ public interface IProductService {
 
 	void delete(Long id);
 
+	void addAll(Product[] data);
+
+	void upsertAll(Product[] data);
+
+	void deleteAll(long[] ids);
+
+	ImportReport importCatalog(Path file, CatalogFormat format, Consumer<ImportReport> onProgress);
+
+	ExportReport exportCatalog(Path file, CatalogFormat format);
+
 	Product[] getList(int page, int limit);
 
 	Product[] getList(int page, int limit, ProductSortableFields sortBy, SortOrder order);
@@ -24,5 +42,17 @@ public interface IProductService {
 			ProductSortableFields sortBy,
 			SortOrder order);
 
+	Product[] getByCategory(Integer categoryId, int page, int limit);
+
+	Product[] getByCategory(Integer categoryId, int page, int limit, ProductSortableFields sortBy, SortOrder order);
+
+	Product[] getByPriceRange(double min, double max, int page, int limit, SortOrder order);
+
+	Product[] getByQuantityRange(int min, int max, int page, int limit, SortOrder order);
+
+	QueryResult query(ProductQuery query);
+
+	String explain(ProductQuery query);
+
 	void deleteAll();
 }
\ No newline at end of file
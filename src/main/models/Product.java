@@ -10,6 +10,11 @@ public class Product extends Entity {
 	private Integer categoryId;
 	private String description;
 
+	// For subclasses that keep their state elsewhere, such as flyweight views
+	// over columnar storage. Fields are left unset.
+	protected Product() {
+	}
+
 	public Product(Long id, String name, double price, Integer quantity) {
 		this(id, name, price, quantity, null, "");
 	}
@@ -64,17 +69,17 @@ public class Product extends Entity {
 
 	public void inceaseQuantity(Integer amount) {
 		if (amount > 0)
-			quantity += amount;
+			setQuantity(getQuantity() + amount);
 	}
 
 	public void decreaseQuantity(Integer amount) {
 		if (amount <= 0)
 			return;
-		this.quantity = Math.max(0, this.quantity - amount);
+		setQuantity(Math.max(0, getQuantity() - amount));
 	}
 
 	public boolean isOutOfStock() {
-		return quantity <= 0;
+		return getQuantity() <= 0;
 	}
 
 	@Override
@@ -0,0 +1,126 @@
+package main.persistence;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+/**
+ * Reads one frame written by {@link BinaryWriter}, from the buffer's position
+ * to its limit. Running past the limit throws EOFException and malformed
+ * varints or string headers throw IOException, so a torn or corrupted frame
+ * is reported rather than misread.
+ */
+public final class BinaryReader {
+	private final ByteBuffer buffer;
+	private final ArrayList<String> dictionary = new ArrayList<>();
+
+	public BinaryReader(ByteBuffer buffer) {
+		this.buffer = buffer;
+	}
+
+	public BinaryReader(byte[] bytes, int offset, int length) {
+		this(ByteBuffer.wrap(bytes, offset, length));
+	}
+
+	public int remaining() {
+		return buffer.remaining();
+	}
+
+	private void require(int count) throws EOFException {
+		if (buffer.remaining() < count)
+			throw new EOFException();
+	}
+
+	public int getByte() throws IOException {
+		require(1);
+		return buffer.get() & 0xFF;
+	}
+
+	public void getBytes(byte[] bytes, int offset, int length) throws IOException {
+		require(length);
+		buffer.get(bytes, offset, length);
+	}
+
+	public int getInt() throws IOException {
+		require(Integer.BYTES);
+		return buffer.getInt();
+	}
+
+	public long getLong() throws IOException {
+		require(Long.BYTES);
+		return buffer.getLong();
+	}
+
+	public double getDouble() throws IOException {
+		require(Double.BYTES);
+		return buffer.getDouble();
+	}
+
+	public long getVarLong() throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = getByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+		throw new IOException("Malformed varint");
+	}
+
+	public int getVarInt() throws IOException {
+		long value = getVarLong();
+		if (value >>> 32 != 0)
+			throw new IOException("Varint " + value + " does not fit an int");
+		return (int) value;
+	}
+
+	public long getZigZag() throws IOException {
+		long value = getVarLong();
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	public String getString() throws IOException {
+		return readString(false);
+	}
+
+	// Reads a string written with putSharedString, adding inline ones to the
+	// dictionary as the writer did.
+	public String getSharedString() throws IOException {
+		return readString(true);
+	}
+
+	private String readString(boolean shared) throws IOException {
+		long header = getVarLong();
+		if (header == 0)
+			return null;
+		if ((header & 1) != 0) {
+			long index = header >>> 1;
+			if (index >= dictionary.size())
+				throw new IOException("String reference " + index + " is not in the dictionary");
+			return dictionary.get((int) index);
+		}
+		long length = (header >>> 1) - 1;
+		if (length > buffer.remaining())
+			throw new EOFException();
+		String value = decodeUtf8((int) length);
+		if (shared && dictionary.size() < BinaryWriter.MAX_DICTIONARY_ENTRIES)
+			dictionary.add(value);
+		return value;
+	}
+
+	private String decodeUtf8(int length) {
+		String value;
+		if (buffer.hasArray()) {
+			value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+					StandardCharsets.UTF_8);
+			buffer.position(buffer.position() + length);
+		} else {
+			byte[] bytes = new byte[length];
+			buffer.get(bytes);
+			value = new String(bytes, StandardCharsets.UTF_8);
+		}
+		return value;
+	}
+}
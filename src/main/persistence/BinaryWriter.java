@@ -0,0 +1,180 @@
+package main.persistence;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+
+/**
+ * Growable heap ByteBuffer the entity codecs encode into. Besides fixed-width
+ * numbers it writes LEB128 varints, zigzag varints for values that may be
+ * negative, and UTF-8 strings behind a varint header.
+ *
+ * Strings written with {@link #putSharedString} go through a dictionary: the
+ * first occurrence is written inline and numbered, later ones as a reference
+ * to that number. The dictionary covers one frame, from one {@link #reset} to
+ * the next, so every frame decodes on its own with a fresh
+ * {@link BinaryReader}.
+ */
+public final class BinaryWriter {
+	// Past this many entries a frame writes new strings inline only.
+	static final int MAX_DICTIONARY_ENTRIES = 1 << 16;
+
+	private ByteBuffer buffer;
+	private final HashMap<String, Integer> dictionary = new HashMap<>();
+
+	public BinaryWriter(int initialCapacity) {
+		buffer = ByteBuffer.allocate(initialCapacity);
+	}
+
+	public int position() {
+		return buffer.position();
+	}
+
+	// Starts a new frame: drops the bytes written and the dictionary.
+	public void reset() {
+		buffer.clear();
+		dictionary.clear();
+	}
+
+	// The backing array; the frame is its first position() bytes.
+	public byte[] array() {
+		return buffer.array();
+	}
+
+	// A read-only view of the bytes written so far.
+	public ByteBuffer written() {
+		return ByteBuffer.wrap(buffer.array(), 0, buffer.position()).asReadOnlyBuffer();
+	}
+
+	private void ensure(int extra) {
+		if (buffer.remaining() >= extra)
+			return;
+		int capacity = Math.max(buffer.capacity() * 2, buffer.position() + extra);
+		ByteBuffer grown = ByteBuffer.allocate(capacity);
+		grown.put(buffer.array(), 0, buffer.position());
+		buffer = grown;
+	}
+
+	public void putByte(int value) {
+		ensure(1);
+		buffer.put((byte) value);
+	}
+
+	public void putBytes(byte[] bytes, int offset, int length) {
+		ensure(length);
+		buffer.put(bytes, offset, length);
+	}
+
+	public void putInt(int value) {
+		ensure(Integer.BYTES);
+		buffer.putInt(value);
+	}
+
+	// Overwrites four bytes already written, such as a length placeholder.
+	public void putInt(int at, int value) {
+		buffer.putInt(at, value);
+	}
+
+	public void putLong(long value) {
+		ensure(Long.BYTES);
+		buffer.putLong(value);
+	}
+
+	public void putDouble(double value) {
+		ensure(Double.BYTES);
+		buffer.putDouble(value);
+	}
+
+	// Seven bits per byte, low bits first; `value` is taken as unsigned, so a
+	// negative one takes ten bytes. Use putZigZag for those.
+	public void putVarLong(long value) {
+		ensure(10);
+		while ((value & ~0x7FL) != 0) {
+			buffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+
+	public void putVarInt(int value) {
+		putVarLong(value & 0xFFFFFFFFL);
+	}
+
+	// Maps small negative and positive values alike to short varints.
+	public void putZigZag(long value) {
+		putVarLong((value << 1) ^ (value >> 63));
+	}
+
+	// Header 0 is null; an even header 2 * (length + 1) is followed by the
+	// UTF-8 bytes; an odd header 2 * index + 1 refers to the dictionary.
+	public void putString(String value) {
+		if (value == null) {
+			putVarLong(0);
+			return;
+		}
+		int length = utf8Length(value);
+		putVarLong(((long) length + 1) << 1);
+		ensure(length);
+		encodeUtf8(value);
+	}
+
+	// Like putString, for values that are likely to repeat within the frame.
+	public void putSharedString(String value) {
+		if (value == null) {
+			putVarLong(0);
+			return;
+		}
+		Integer index = dictionary.get(value);
+		if (index != null) {
+			putVarLong(((long) index << 1) | 1);
+			return;
+		}
+		if (dictionary.size() < MAX_DICTIONARY_ENTRIES)
+			dictionary.put(value, dictionary.size());
+		putString(value);
+	}
+
+	// Mirrors encodeUtf8 char for char.
+	private static int utf8Length(String value) {
+		int length = 0;
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c < 0x80) {
+				length++;
+			} else if (c < 0x800) {
+				length += 2;
+			} else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+					&& Character.isLowSurrogate(value.charAt(i + 1))) {
+				length += 4;
+				i++;
+			} else {
+				length += 3;
+			}
+		}
+		return length;
+	}
+
+	// Unpaired surrogates are written as three-byte sequences, which keeps
+	// the byte count in step with utf8Length; they decode to U+FFFD.
+	private void encodeUtf8(String value) {
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c < 0x80) {
+				buffer.put((byte) c);
+			} else if (c < 0x800) {
+				buffer.put((byte) (0xC0 | c >> 6));
+				buffer.put((byte) (0x80 | c & 0x3F));
+			} else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+					&& Character.isLowSurrogate(value.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, value.charAt(++i));
+				buffer.put((byte) (0xF0 | codePoint >> 18));
+				buffer.put((byte) (0x80 | codePoint >> 12 & 0x3F));
+				buffer.put((byte) (0x80 | codePoint >> 6 & 0x3F));
+				buffer.put((byte) (0x80 | codePoint & 0x3F));
+			} else {
+				buffer.put((byte) (0xE0 | c >> 12));
+				buffer.put((byte) (0x80 | c >> 6 & 0x3F));
+				buffer.put((byte) (0x80 | c & 0x3F));
+			}
+		}
+	}
+}
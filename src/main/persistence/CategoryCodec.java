@@ -0,0 +1,35 @@
+package main.persistence;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+
+import main.models.Category;
+
+public class CategoryCodec implements EntityCodec<Category> {
+	static final int VERSION = 1;
+
+	@Override
+	public void encode(Category category, BinaryWriter out) {
+		Codecs.putVersion(out, VERSION);
+		out.putVarLong(category.getId());
+		out.putString(category.getName());
+		out.putSharedString(category.getDescription());
+		Codecs.putTime(out, category.getCreatedAt());
+		Codecs.putTimeSince(out, category.getUpdateAt(), category.getCreatedAt());
+	}
+
+	@Override
+	public Category decode(BinaryReader in) throws IOException {
+		Codecs.checkVersion(in, VERSION, "category");
+		long id = in.getVarLong();
+		String name = in.getString();
+		Category category = new Category(id, name, in.getSharedString());
+		LocalDateTime createdAt = Codecs.getTime(in);
+		LocalDateTime updatedAt = Codecs.getTimeSince(in, createdAt);
+		if (createdAt != null)
+			category.setCreatedAt(createdAt);
+		if (updatedAt != null)
+			category.setUpdatedAt(updatedAt);
+		return category;
+	}
+}
@@ -0,0 +1,129 @@
+package main.persistence;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+// Field encodings shared by the entity codecs.
+final class Codecs {
+	// Time tags: null, epoch microseconds, epoch seconds and nanos, or
+	// microseconds since another time of the same record.
+	private static final int NULL_TIME = 0;
+	private static final int MICROS = 1;
+	private static final int EXACT = 2;
+	private static final int DELTA = 3;
+	// Epoch seconds within this bound fit a long of microseconds.
+	private static final long MAX_MICRO_SECONDS = Long.MAX_VALUE / 1_000_000 - 1;
+
+	private Codecs() {
+	}
+
+	// Starts every record, so decode can tell the layout apart.
+	static void putVersion(BinaryWriter out, int version) {
+		out.putVarInt(version);
+	}
+
+	static void checkVersion(BinaryReader in, int version, String type) throws IOException {
+		int found = in.getVarInt();
+		if (found != version)
+			throw new IOException("Unsupported " + type + " schema version " + found);
+	}
+
+	static void putNullableInt(BinaryWriter out, Integer value) {
+		out.putVarLong(value == null ? 0 : ((long) value << 1 ^ (long) value >> 63) + 1);
+	}
+
+	static Integer getNullableInt(BinaryReader in) throws IOException {
+		long value = in.getVarLong();
+		if (value == 0)
+			return null;
+		value--;
+		return (int) ((value >>> 1) ^ -(value & 1));
+	}
+
+	// Amounts with at most two decimals, such as prices, are written as a
+	// varint of cents; anything else as the raw double behind a zero.
+	static void putDecimal(BinaryWriter out, double value) {
+		if (value >= 0 && value < 1e15) {
+			long cents = Math.round(value * 100);
+			if (Double.doubleToLongBits(cents / 100.0) == Double.doubleToLongBits(value)) {
+				out.putVarLong(cents + 1);
+				return;
+			}
+		}
+		out.putVarLong(0);
+		out.putDouble(value);
+	}
+
+	static double getDecimal(BinaryReader in) throws IOException {
+		long cents = in.getVarLong();
+		return cents == 0 ? in.getDouble() : (cents - 1) / 100.0;
+	}
+
+	static void putTime(BinaryWriter out, LocalDateTime time) {
+		putTimeSince(out, time, null);
+	}
+
+	// `base` is another time of the record, already written. A time whole
+	// microseconds away from it is written as that difference, usually a
+	// byte or two: updatedAt next to createdAt.
+	static void putTimeSince(BinaryWriter out, LocalDateTime time, LocalDateTime base) {
+		if (time == null) {
+			out.putByte(NULL_TIME);
+			return;
+		}
+		long seconds = time.toEpochSecond(ZoneOffset.UTC);
+		int nanos = time.getNano();
+		if (nanos % 1_000 != 0 || Math.abs(seconds) > MAX_MICRO_SECONDS) {
+			out.putByte(EXACT);
+			out.putZigZag(seconds);
+			out.putVarInt(nanos);
+			return;
+		}
+		long micros = seconds * 1_000_000 + nanos / 1_000;
+		if (base != null && base.getNano() % 1_000 == 0
+				&& Math.abs(base.toEpochSecond(ZoneOffset.UTC)) <= MAX_MICRO_SECONDS) {
+			out.putByte(DELTA);
+			out.putZigZag(micros - toMicros(base));
+			return;
+		}
+		out.putByte(MICROS);
+		out.putZigZag(micros);
+	}
+
+	static LocalDateTime getTime(BinaryReader in) throws IOException {
+		return getTimeSince(in, null);
+	}
+
+	static LocalDateTime getTimeSince(BinaryReader in, LocalDateTime base) throws IOException {
+		int tag = in.getByte();
+		switch (tag) {
+			case NULL_TIME:
+				return null;
+			case MICROS:
+				return fromMicros(in.getZigZag());
+			case EXACT:
+				long seconds = in.getZigZag();
+				int nanos = in.getVarInt();
+				if (nanos >= 1_000_000_000)
+					throw new IOException("Invalid nanos " + nanos);
+				return LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC);
+			case DELTA:
+				if (base == null)
+					throw new IOException("Time delta without a base time");
+				return fromMicros(toMicros(base) + in.getZigZag());
+			default:
+				throw new IOException("Invalid time tag " + tag);
+		}
+	}
+
+	private static long toMicros(LocalDateTime time) {
+		return time.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + time.getNano() / 1_000;
+	}
+
+	private static LocalDateTime fromMicros(long micros) {
+		long seconds = Math.floorDiv(micros, 1_000_000);
+		int nanos = Math.floorMod(micros, 1_000_000) * 1_000;
+		return LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC);
+	}
+}
@@ -0,0 +1,14 @@
+package main.persistence;
+
+import java.io.IOException;
+
+import main.models.Entity;
+
+// Binary form of one entity type, as written to the write-ahead log,
+// snapshots and binary catalogs. Every record starts with the codec's schema
+// version, so a codec can keep reading the records of its older versions.
+public interface EntityCodec<T extends Entity> {
+	void encode(T entity, BinaryWriter out);
+
+	T decode(BinaryReader in) throws IOException;
+}
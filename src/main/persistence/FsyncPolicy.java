@@ -0,0 +1,60 @@
+package main.persistence;
+
+import main.enumerations.FsyncMode;
+import main.errors.BadRequestException;
+
+/**
+ * When a {@link WriteAheadLog} forces its records to disk.
+ *
+ * ALWAYS makes every write wait until its record is on disk; writers that
+ * arrive while a sync is running share the next one (group commit). INTERVAL
+ * syncs in the background every few milliseconds, so a crash loses at most
+ * that window. NEVER leaves it to the operating system.
+ */
+public final class FsyncPolicy {
+	public static final FsyncPolicy ALWAYS = new FsyncPolicy(FsyncMode.ALWAYS, 0);
+	public static final FsyncPolicy NEVER = new FsyncPolicy(FsyncMode.NEVER, 0);
+
+	private final FsyncMode mode;
+	private final long intervalMillis;
+
+	private FsyncPolicy(FsyncMode mode, long intervalMillis) {
+		this.mode = mode;
+		this.intervalMillis = intervalMillis;
+	}
+
+	public static FsyncPolicy every(long intervalMillis) {
+		if (intervalMillis <= 0)
+			throw new BadRequestException("Fsync interval must be greater than 0");
+		return new FsyncPolicy(FsyncMode.INTERVAL, intervalMillis);
+	}
+
+	// Reads "always", "never" or an interval in milliseconds.
+	public static FsyncPolicy parse(String value) {
+		if (value == null)
+			throw new BadRequestException("Fsync policy cannot be null");
+		String trimmed = value.trim();
+		if (trimmed.equalsIgnoreCase("always"))
+			return ALWAYS;
+		if (trimmed.equalsIgnoreCase("never"))
+			return NEVER;
+		try {
+			return every(Long.parseLong(trimmed));
+		} catch (NumberFormatException e) {
+			throw new BadRequestException("Fsync policy must be always, never or an interval in milliseconds");
+		}
+	}
+
+	public FsyncMode getMode() {
+		return mode;
+	}
+
+	public long getIntervalMillis() {
+		return intervalMillis;
+	}
+
+	@Override
+	public String toString() {
+		return mode == FsyncMode.INTERVAL ? "every " + intervalMillis + " ms" : mode.name();
+	}
+}
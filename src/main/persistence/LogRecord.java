@@ -0,0 +1,69 @@
+package main.persistence;
+
+import java.util.List;
+
+import main.enumerations.LogOperation;
+import main.models.Entity;
+
+// One repository mutation as stored in the write-ahead log.
+public final class LogRecord<T extends Entity> {
+	private static final long[] NO_IDS = new long[0];
+
+	private final LogOperation operation;
+	private final List<T> entities;
+	private final long[] ids;
+
+	private LogRecord(LogOperation operation, List<T> entities, long[] ids) {
+		this.operation = operation;
+		this.entities = entities;
+		this.ids = ids;
+	}
+
+	public static <T extends Entity> LogRecord<T> add(T entity) {
+		return new LogRecord<>(LogOperation.ADD, List.of(entity), NO_IDS);
+	}
+
+	public static <T extends Entity> LogRecord<T> update(T entity) {
+		return new LogRecord<>(LogOperation.UPDATE, List.of(entity), NO_IDS);
+	}
+
+	public static <T extends Entity> LogRecord<T> remove(long id) {
+		return new LogRecord<>(LogOperation.REMOVE, List.of(), new long[] { id });
+	}
+
+	public static <T extends Entity> LogRecord<T> clear() {
+		return new LogRecord<>(LogOperation.CLEAR, List.of(), NO_IDS);
+	}
+
+	public static <T extends Entity> LogRecord<T> addAll(List<T> entities) {
+		return new LogRecord<>(LogOperation.ADD_ALL, entities, NO_IDS);
+	}
+
+	public static <T extends Entity> LogRecord<T> upsertAll(List<T> entities) {
+		return new LogRecord<>(LogOperation.UPSERT_ALL, entities, NO_IDS);
+	}
+
+	public static <T extends Entity> LogRecord<T> removeAll(long[] ids) {
+		return new LogRecord<>(LogOperation.REMOVE_ALL, List.of(), ids);
+	}
+
+	public LogOperation getOperation() {
+		return operation;
+	}
+
+	public T getEntity() {
+		return entities.get(0);
+	}
+
+	public List<T> getEntities() {
+		return entities;
+	}
+
+	public long getId() {
+		return ids[0];
+	}
+
+	public long[] getIds() {
+		return ids;
+	}
+}
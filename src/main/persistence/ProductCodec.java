@@ -0,0 +1,42 @@
+package main.persistence;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+
+import main.models.Product;
+
+public class ProductCodec implements EntityCodec<Product> {
+	static final int VERSION = 1;
+
+	@Override
+	public void encode(Product product, BinaryWriter out) {
+		Codecs.putVersion(out, VERSION);
+		out.putVarLong(product.getId());
+		out.putString(product.getName());
+		Codecs.putDecimal(out, product.getPrice());
+		out.putVarInt(product.getQuantity());
+		Codecs.putNullableInt(out, product.getCategoryId());
+		out.putSharedString(product.getDescription());
+		Codecs.putTime(out, product.getCreatedAt());
+		Codecs.putTimeSince(out, product.getUpdateAt(), product.getCreatedAt());
+	}
+
+	@Override
+	public Product decode(BinaryReader in) throws IOException {
+		Codecs.checkVersion(in, VERSION, "product");
+		long id = in.getVarLong();
+		String name = in.getString();
+		double price = Codecs.getDecimal(in);
+		int quantity = in.getVarInt();
+		Integer categoryId = Codecs.getNullableInt(in);
+		String description = in.getSharedString();
+		Product product = new Product(id, name, price, quantity, categoryId, description);
+		LocalDateTime createdAt = Codecs.getTime(in);
+		LocalDateTime updatedAt = Codecs.getTimeSince(in, createdAt);
+		if (createdAt != null)
+			product.setCreatedAt(createdAt);
+		if (updatedAt != null)
+			product.setUpdatedAt(updatedAt);
+		return product;
+	}
+}
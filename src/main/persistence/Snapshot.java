@@ -0,0 +1,208 @@
+package main.persistence;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+
+import main.errors.AppException;
+import main.errors.InternalAppException;
+import main.models.Entity;
+
+/**
+ * Point-in-time copy of a repository's entities in one binary file, together
+ * with the log sequence number it was taken at, so only the write-ahead log
+ * records after it need replaying.
+ *
+ * Entities are encoded in chunks of {@value #CHUNK_ENTITIES}, each with its own
+ * CRC32 and string dictionary, and a directory of chunk offsets follows the header. Loading reads
+ * the directory, sizes the result array once and decodes the chunks in
+ * parallel straight into their slice of it. Writing starts from entities
+ * already encoded, so it can run in the background while they change.
+ *
+ * A snapshot is written to a temporary file and atomically renamed over the
+ * previous one, so a crash while writing leaves the old snapshot in place.
+ */
+public final class Snapshot<T extends Entity> {
+	private static final int MAGIC = 0x534E4150; // "SNAP"
+	private static final int VERSION = 2;
+	// Magic, version, LSN, entity count, chunk count.
+	private static final int HEADER_BYTES = 24;
+	// Offset, length, entity count and CRC32 of one chunk.
+	private static final int DIRECTORY_ENTRY_BYTES = 20;
+	private static final int CHUNK_ENTITIES = 1 << 14;
+
+	// Snapshots are written one at a time, off the callers' threads.
+	private static final ExecutorService WRITER = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "snapshot-writer");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final long lsn;
+	private final T[] entities;
+
+	private Snapshot(long lsn, T[] entities) {
+		this.lsn = lsn;
+		this.entities = entities;
+	}
+
+	public long getLsn() {
+		return lsn;
+	}
+
+	public T[] getEntities() {
+		return entities;
+	}
+
+	// Encoded entities, ready to be written. Encoding copies every value, so
+	// the entities may change once it is done.
+	public static final class Encoded {
+		private final int count;
+		private final byte[][] chunks;
+		private final int[] counts;
+
+		private Encoded(int count, byte[][] chunks, int[] counts) {
+			this.count = count;
+			this.chunks = chunks;
+			this.counts = counts;
+		}
+	}
+
+	public static <T extends Entity> Encoded encode(T[] entities, EntityCodec<T> codec) {
+		int chunks = (entities.length + CHUNK_ENTITIES - 1) / CHUNK_ENTITIES;
+		byte[][] bytes = new byte[chunks][];
+		int[] counts = new int[chunks];
+		BinaryWriter out = new BinaryWriter(1 << 20);
+		for (int chunk = 0; chunk < chunks; chunk++) {
+			int from = chunk * CHUNK_ENTITIES;
+			int to = Math.min(from + CHUNK_ENTITIES, entities.length);
+			out.reset();
+			for (int i = from; i < to; i++)
+				codec.encode(entities[i], out);
+			bytes[chunk] = Arrays.copyOf(out.array(), out.position());
+			counts[chunk] = to - from;
+		}
+		return new Encoded(entities.length, bytes, counts);
+	}
+
+	// Writes `encoded` on the snapshot writer thread.
+	public static CompletableFuture<Void> writeAsync(Path file, Encoded encoded, long lsn) {
+		return CompletableFuture.runAsync(() -> write(file, encoded, lsn), WRITER);
+	}
+
+	public static <T extends Entity> void write(Path file, T[] entities, long lsn, EntityCodec<T> codec) {
+		write(file, encode(entities, codec), lsn);
+	}
+
+	public static void write(Path file, Encoded encoded, long lsn) {
+		int chunks = encoded.chunks.length;
+		Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+		try {
+			Path parent = file.toAbsolutePath().getParent();
+			if (parent != null)
+				Files.createDirectories(parent);
+
+			try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+				ByteBuffer directory = ByteBuffer.allocate(HEADER_BYTES + chunks * DIRECTORY_ENTRY_BYTES);
+				directory.putInt(MAGIC).putInt(VERSION).putLong(lsn).putInt(encoded.count).putInt(chunks);
+
+				long offset = directory.capacity();
+				CRC32 crc = new CRC32();
+				for (int chunk = 0; chunk < chunks; chunk++) {
+					byte[] bytes = encoded.chunks[chunk];
+					crc.reset();
+					crc.update(bytes);
+					directory.putLong(offset).putInt(bytes.length).putInt(encoded.counts[chunk])
+							.putInt((int) crc.getValue());
+					writeFully(channel, ByteBuffer.wrap(bytes), offset);
+					offset += bytes.length;
+				}
+				writeFully(channel, directory.flip(), 0);
+				channel.force(true);
+			}
+			Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			throw new InternalAppException("Failed to write snapshot " + file + ": " + e.getMessage());
+		}
+	}
+
+	// Reads the snapshot at `file`, decoding its chunks in parallel.
+	public static <T extends Entity> Snapshot<T> read(Path file, EntityCodec<T> codec, IntFunction<T[]> newArray) {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer header = readFully(channel, 0, HEADER_BYTES);
+			if (header.getInt() != MAGIC)
+				throw new InternalAppException(file + " is not a snapshot.");
+			int version = header.getInt();
+			if (version != VERSION)
+				throw new InternalAppException("Unsupported snapshot version " + version + " in " + file + ".");
+			long lsn = header.getLong();
+			int count = header.getInt();
+			int chunks = header.getInt();
+			if (count < 0 || chunks < 0 || (long) chunks * DIRECTORY_ENTRY_BYTES > channel.size())
+				throw new InternalAppException("Snapshot " + file + " is corrupted.");
+
+			ByteBuffer directory = readFully(channel, HEADER_BYTES, chunks * DIRECTORY_ENTRY_BYTES);
+			long[] offsets = new long[chunks];
+			int[] lengths = new int[chunks];
+			int[] starts = new int[chunks + 1];
+			int[] crcs = new int[chunks];
+			for (int chunk = 0; chunk < chunks; chunk++) {
+				offsets[chunk] = directory.getLong();
+				lengths[chunk] = directory.getInt();
+				starts[chunk + 1] = starts[chunk] + directory.getInt();
+				crcs[chunk] = directory.getInt();
+			}
+			if (starts[chunks] != count)
+				throw new InternalAppException("Snapshot " + file + " is corrupted.");
+
+			T[] entities = newArray.apply(count);
+			IntStream.range(0, chunks).parallel().forEach(chunk -> {
+				try {
+					ByteBuffer bytes = readFully(channel, offsets[chunk], lengths[chunk]);
+					CRC32 crc = new CRC32();
+					crc.update(bytes.array(), 0, lengths[chunk]);
+					if ((int) crc.getValue() != crcs[chunk])
+						throw new InternalAppException("Snapshot " + file + " has a corrupted chunk " + chunk + ".");
+					BinaryReader in = new BinaryReader(bytes.array(), 0, lengths[chunk]);
+					for (int i = starts[chunk]; i < starts[chunk + 1]; i++)
+						entities[i] = codec.decode(in);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+			return new Snapshot<>(lsn, entities);
+		} catch (AppException e) {
+			throw e;
+		} catch (IOException | UncheckedIOException e) {
+			throw new InternalAppException("Failed to read snapshot " + file + ": " + e.getMessage());
+		}
+	}
+
+	// FileChannel positional reads are safe to run from several threads.
+	private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0)
+				throw new IOException("Unexpected end of file");
+		}
+		return buffer.flip();
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining())
+			channel.write(buffer, position + buffer.position());
+	}
+}
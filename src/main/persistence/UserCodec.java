@@ -0,0 +1,46 @@
+package main.persistence;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+
+import main.enumerations.Role;
+import main.models.User;
+
+public class UserCodec implements EntityCodec<User> {
+	static final int VERSION = 1;
+
+	@Override
+	public void encode(User user, BinaryWriter out) {
+		Codecs.putVersion(out, VERSION);
+		out.putVarLong(user.getId());
+		out.putString(user.getEmail());
+		out.putString(user.getPassword());
+		out.putString(user.getName());
+		out.putSharedString(user.getRole().name());
+		Codecs.putTime(out, user.getCreatedAt());
+		Codecs.putTimeSince(out, user.getUpdateAt(), user.getCreatedAt());
+	}
+
+	@Override
+	public User decode(BinaryReader in) throws IOException {
+		Codecs.checkVersion(in, VERSION, "user");
+		long id = in.getVarLong();
+		String email = in.getString();
+		String password = in.getString();
+		String name = in.getString();
+		Role role;
+		try {
+			role = Role.valueOf(in.getSharedString());
+		} catch (IllegalArgumentException | NullPointerException e) {
+			throw new IOException("Unknown role: " + e.getMessage());
+		}
+		User user = new User(id, email, password, name, role);
+		LocalDateTime createdAt = Codecs.getTime(in);
+		LocalDateTime updatedAt = Codecs.getTimeSince(in, createdAt);
+		if (createdAt != null)
+			user.setCreatedAt(createdAt);
+		if (updatedAt != null)
+			user.setUpdatedAt(updatedAt);
+		return user;
+	}
+}
@@ -0,0 +1,501 @@
+package main.persistence;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import main.enumerations.FsyncMode;
+import main.enumerations.LogOperation;
+import main.errors.InternalAppException;
+import main.models.Entity;
+
+/**
+ * Append-only log of repository mutations. Every record is framed as
+ * [payload length][CRC32 of payload][payload], where the payload is the
+ * operation followed by its entities or ids.
+ *
+ * Records are addressed by log sequence numbers (LSNs): the number of record
+ * bytes written before them since the log was created. The header keeps the
+ * LSN of the first record in the file, so {@link #discardBefore} can drop the
+ * prefix a snapshot already covers while LSNs stay stable.
+ *
+ * Appends only copy the encoded record into an in-memory buffer and return the
+ * LSN just past it. Under {@link FsyncPolicy#ALWAYS} the writer then calls
+ * {@link #awaitDurable}: the first waiter writes out everything buffered so far
+ * and forces it while the others queue behind it, and when it finishes most of
+ * them find their record already durable. One fsync thus covers every write
+ * that arrived during the previous one.
+ *
+ * On open the log is scanned and a torn or corrupted tail, left by a crash in
+ * the middle of a write, is cut off.
+ */
+public class WriteAheadLog<T extends Entity> implements AutoCloseable {
+	private static final int MAGIC = 0x57414C31; // "WAL1"
+	private static final int VERSION = 3;
+	// Magic, version and the LSN of the first record.
+	private static final int HEADER_BYTES = 16;
+	private static final int FRAME_BYTES = 8;
+	private static final int MAX_RECORD_BYTES = 1 << 30;
+	// Under INTERVAL and NEVER the buffer is written out once it holds this much.
+	private static final int FLUSH_THRESHOLD = 1 << 16;
+	private static final LogOperation[] OPERATIONS = LogOperation.values();
+
+	private final Path path;
+	private final EntityCodec<T> codec;
+	private final FsyncPolicy policy;
+	private ScheduledExecutorService syncer;
+
+	// Guards the pending buffer, the encoder and `appended`.
+	private final Object bufferLock = new Object();
+	private final BinaryWriter scratch = new BinaryWriter(256);
+	private final CRC32 crc = new CRC32();
+	private ByteBuffer pending = ByteBuffer.allocateDirect(FLUSH_THRESHOLD * 2);
+	private long appended;
+	private boolean closed;
+
+	// Held by whoever writes to the file, one at a time.
+	private final Object syncLock = new Object();
+	private FileChannel channel;
+	private long baseLsn;
+	private ByteBuffer spare = ByteBuffer.allocateDirect(FLUSH_THRESHOLD * 2);
+	private volatile long durable;
+	private volatile long syncs;
+	private volatile IOException failure;
+
+	private WriteAheadLog(Path path, FileChannel channel, EntityCodec<T> codec, FsyncPolicy policy) {
+		this.path = path;
+		this.channel = channel;
+		this.codec = codec;
+		this.policy = policy;
+	}
+
+	// Opens the log at `path`, creating it if needed, and cuts off a torn tail.
+	public static <T extends Entity> WriteAheadLog<T> open(Path path, EntityCodec<T> codec, FsyncPolicy policy) {
+		if (path == null || codec == null || policy == null)
+			throw new InternalAppException("Log path, codec and fsync policy are required.");
+
+		FileChannel channel = null;
+		try {
+			Path parent = path.toAbsolutePath().getParent();
+			if (parent != null)
+				Files.createDirectories(parent);
+			channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+					StandardOpenOption.WRITE);
+			if (channel.size() < HEADER_BYTES) {
+				// Empty, or a crash while the header was being written.
+				channel.truncate(0);
+				writeHeader(channel, 0);
+				channel.force(true);
+			}
+
+			WriteAheadLog<T> log = new WriteAheadLog<>(path, channel, codec, policy);
+			log.baseLsn = log.readBaseLsn();
+			long end = log.scan(HEADER_BYTES, null);
+			if (end < channel.size())
+				channel.truncate(end);
+			channel.position(end);
+			log.appended = log.lsnAt(end);
+			log.durable = log.appended;
+			if (policy.getMode() == FsyncMode.INTERVAL)
+				log.startSyncer();
+			return log;
+		} catch (IOException e) {
+			closeQuietly(channel);
+			throw new InternalAppException("Failed to open write-ahead log " + path + ": " + e.getMessage());
+		} catch (RuntimeException e) {
+			closeQuietly(channel);
+			throw e;
+		}
+	}
+
+	public Path getPath() {
+		return path;
+	}
+
+	public FsyncPolicy getPolicy() {
+		return policy;
+	}
+
+	// LSN just past the last appended record, including records not yet
+	// written out.
+	public long getEndLsn() {
+		synchronized (bufferLock) {
+			return appended;
+		}
+	}
+
+	// LSN of the oldest record still in the file.
+	public long getBaseLsn() {
+		synchronized (syncLock) {
+			return baseLsn;
+		}
+	}
+
+	// Number of fsyncs so far; with group commit this stays well below the
+	// number of appends under concurrent writers.
+	public long getSyncCount() {
+		return syncs;
+	}
+
+	// Decodes every record in the log, oldest first.
+	public void replay(Consumer<LogRecord<T>> visitor) {
+		replay(getBaseLsn(), visitor);
+	}
+
+	// Decodes the records from `fromLsn` on, which must be a record boundary
+	// such as the LSN a snapshot was taken at.
+	public void replay(long fromLsn, Consumer<LogRecord<T>> visitor) {
+		synchronized (syncLock) {
+			long end = lsnAt(positionOf(channel));
+			if (fromLsn < baseLsn)
+				throw new InternalAppException("Write-ahead log " + path + " starts at " + baseLsn
+						+ " and no longer has the records from " + fromLsn + ".");
+			if (fromLsn > end)
+				throw new InternalAppException("Write-ahead log " + path + " ends at " + end
+						+ ", before " + fromLsn + ".");
+			try {
+				// Scanning reads through the channel; appends resume where they were.
+				long position = channel.position();
+				try {
+					scan(offsetOf(fromLsn), visitor);
+				} finally {
+					channel.position(position);
+				}
+			} catch (IOException e) {
+				throw new InternalAppException("Failed to replay write-ahead log " + path + ": " + e.getMessage());
+			}
+		}
+	}
+
+	// Buffers the record and returns its log sequence number. Callers that
+	// need it on disk pass that number to awaitDurable.
+	public long append(LogRecord<T> record) {
+		long lsn;
+		boolean full;
+		synchronized (bufferLock) {
+			if (closed)
+				throw new InternalAppException("Write-ahead log " + path + " is closed.");
+			if (failure != null)
+				throw new InternalAppException("Write-ahead log " + path + " failed: " + failure.getMessage());
+
+			encode(record);
+			int length = scratch.position();
+			if (pending.remaining() < length)
+				pending = grow(pending, length);
+			pending.put(scratch.array(), 0, length);
+			appended += length;
+			lsn = appended;
+			full = pending.position() >= FLUSH_THRESHOLD;
+		}
+		if (full && policy.getMode() != FsyncMode.ALWAYS)
+			drain(false);
+		return lsn;
+	}
+
+	// Under ALWAYS, blocks until the record at `lsn` is on disk. Returns at
+	// once under the other policies.
+	public void awaitDurable(long lsn) {
+		if (policy.getMode() != FsyncMode.ALWAYS || lsn <= durable)
+			return;
+		synchronized (syncLock) {
+			if (lsn <= durable)
+				return;
+			drain(true);
+		}
+	}
+
+	// Writes out and forces everything appended so far.
+	public void flush() {
+		drain(true);
+	}
+
+	// Drops the records before `lsn`, typically once a snapshot holds them.
+	// The remaining records are copied into a new file that atomically
+	// replaces this one. Appends keep buffering meanwhile; only writers that
+	// wait for durability, or that fill the buffer, wait for the copy.
+	public void discardBefore(long lsn) {
+		synchronized (syncLock) {
+			synchronized (bufferLock) {
+				if (closed)
+					return;
+			}
+			drain(true);
+			if (lsn <= baseLsn)
+				return;
+			long end = lsnAt(positionOf(channel));
+			if (lsn > end)
+				throw new InternalAppException("Cannot discard write-ahead log " + path + " up to " + lsn
+						+ ", it ends at " + end + ".");
+
+			Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+			try {
+				try (FileChannel copy = FileChannel.open(temporary, StandardOpenOption.CREATE,
+						StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+					writeHeader(copy, lsn);
+					long from = offsetOf(lsn);
+					long remaining = channel.size() - from;
+					long copied = 0;
+					while (copied < remaining)
+						copied += channel.transferTo(from + copied, remaining - copied,
+								copy.position(HEADER_BYTES + copied));
+					copy.force(true);
+				}
+				Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+				FileChannel replaced = channel;
+				channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+				channel.position(channel.size());
+				baseLsn = lsn;
+				closeQuietly(replaced);
+			} catch (IOException e) {
+				failure = e;
+				throw new InternalAppException("Failed to discard old records of " + path + ": " + e.getMessage());
+			}
+		}
+	}
+
+	@Override
+	public void close() {
+		synchronized (bufferLock) {
+			if (closed)
+				return;
+			closed = true;
+		}
+		if (syncer != null) {
+			// Not shutdownNow: interrupting a thread inside a FileChannel
+			// operation closes the channel.
+			syncer.shutdown();
+			try {
+				syncer.awaitTermination(policy.getIntervalMillis() + 1_000, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		synchronized (syncLock) {
+			try {
+				drain(policy.getMode() != FsyncMode.NEVER);
+			} finally {
+				closeQuietly(channel);
+			}
+		}
+	}
+
+	private void drain(boolean force) {
+		synchronized (syncLock) {
+			if (failure != null)
+				throw new InternalAppException("Write-ahead log " + path + " failed: " + failure.getMessage());
+
+			ByteBuffer batch;
+			long upTo;
+			synchronized (bufferLock) {
+				batch = pending;
+				pending = spare;
+				upTo = appended;
+			}
+			try {
+				batch.flip();
+				while (batch.hasRemaining())
+					channel.write(batch);
+				if (force && upTo > durable) {
+					channel.force(false);
+					syncs++;
+					durable = upTo;
+				}
+			} catch (IOException e) {
+				failure = e;
+				throw new InternalAppException("Failed to write log " + path + ": " + e.getMessage());
+			} finally {
+				spare = batch.clear();
+			}
+		}
+	}
+
+	private void startSyncer() {
+		syncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "wal-sync " + path.getFileName());
+			thread.setDaemon(true);
+			return thread;
+		});
+		syncer.scheduleWithFixedDelay(this::syncQuietly, policy.getIntervalMillis(), policy.getIntervalMillis(),
+				TimeUnit.MILLISECONDS);
+	}
+
+	private void syncQuietly() {
+		try {
+			drain(true);
+		} catch (RuntimeException e) {
+			// Recorded in `failure`; the next append reports it.
+		}
+	}
+
+	// Each record is a frame of its own, so strings repeated within a batch
+	// share one copy.
+	private void encode(LogRecord<T> record) {
+		scratch.reset();
+		scratch.putLong(0L);
+		scratch.putByte(record.getOperation().ordinal());
+		switch (record.getOperation()) {
+			case ADD, UPDATE -> codec.encode(record.getEntity(), scratch);
+			case REMOVE -> scratch.putVarLong(record.getId());
+			case CLEAR -> {
+			}
+			case ADD_ALL, UPSERT_ALL -> {
+				List<T> entities = record.getEntities();
+				scratch.putVarInt(entities.size());
+				for (T entity : entities)
+					codec.encode(entity, scratch);
+			}
+			case REMOVE_ALL -> {
+				long[] ids = record.getIds();
+				scratch.putVarInt(ids.length);
+				for (long id : ids)
+					scratch.putVarLong(id);
+			}
+		}
+
+		int length = scratch.position() - FRAME_BYTES;
+		crc.reset();
+		crc.update(scratch.array(), FRAME_BYTES, length);
+		scratch.putInt(0, length);
+		scratch.putInt(Integer.BYTES, (int) crc.getValue());
+	}
+
+	private LogRecord<T> decode(BinaryReader in) throws IOException {
+		int operation = in.getByte();
+		if (operation >= OPERATIONS.length)
+			throw new IOException("Unknown log operation " + operation);
+
+		return switch (OPERATIONS[operation]) {
+			case ADD -> LogRecord.add(codec.decode(in));
+			case UPDATE -> LogRecord.update(codec.decode(in));
+			case REMOVE -> LogRecord.remove(in.getVarLong());
+			case CLEAR -> LogRecord.clear();
+			case ADD_ALL -> LogRecord.addAll(decodeEntities(in));
+			case UPSERT_ALL -> LogRecord.upsertAll(decodeEntities(in));
+			case REMOVE_ALL -> {
+				int count = in.getVarInt();
+				if (count > in.remaining())
+					throw new IOException("Invalid id count " + count);
+				long[] ids = new long[count];
+				for (int i = 0; i < ids.length; i++)
+					ids[i] = in.getVarLong();
+				yield LogRecord.removeAll(ids);
+			}
+		};
+	}
+
+	private List<T> decodeEntities(BinaryReader in) throws IOException {
+		int count = in.getVarInt();
+		if (count > in.remaining())
+			throw new IOException("Invalid entity count " + count);
+		List<T> entities = new ArrayList<>(count);
+		for (int i = 0; i < count; i++)
+			entities.add(codec.decode(in));
+		return entities;
+	}
+
+	// Reads the records from file offset `from` and returns the offset just
+	// past the last intact one. Records are decoded and handed to the visitor
+	// only when there is one.
+	private long scan(long from, Consumer<LogRecord<T>> visitor) throws IOException {
+		long fileSize = channel.size();
+		DataInputStream in = new DataInputStream(
+				new BufferedInputStream(Channels.newInputStream(channel.position(from)), FLUSH_THRESHOLD));
+		CRC32 check = new CRC32();
+		byte[] payload = new byte[256];
+		long end = from;
+		while (end + FRAME_BYTES <= fileSize) {
+			int length;
+			int expected;
+			try {
+				length = in.readInt();
+				expected = in.readInt();
+				if (length <= 0 || length > MAX_RECORD_BYTES || end + FRAME_BYTES + length > fileSize)
+					break;
+				if (payload.length < length)
+					payload = new byte[Math.max(length, payload.length * 2)];
+				in.readFully(payload, 0, length);
+			} catch (EOFException e) {
+				break;
+			}
+			check.reset();
+			check.update(payload, 0, length);
+			if ((int) check.getValue() != expected)
+				break;
+
+			if (visitor != null)
+				visitor.accept(decode(new BinaryReader(payload, 0, length)));
+			end += FRAME_BYTES + length;
+		}
+		return end;
+	}
+
+	private long readBaseLsn() throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+		while (header.hasRemaining()) {
+			if (channel.read(header, header.position()) < 0)
+				break;
+		}
+		header.flip();
+		if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC)
+			throw new InternalAppException(path + " is not a write-ahead log.");
+		int version = header.getInt();
+		if (version != VERSION)
+			throw new InternalAppException("Unsupported write-ahead log version " + version + " in " + path + ".");
+		return header.getLong();
+	}
+
+	private static void writeHeader(FileChannel channel, long baseLsn) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putInt(VERSION).putLong(baseLsn).flip();
+		while (header.hasRemaining())
+			channel.write(header, header.position());
+	}
+
+	private long lsnAt(long offset) {
+		return baseLsn + offset - HEADER_BYTES;
+	}
+
+	private long offsetOf(long lsn) {
+		return lsn - baseLsn + HEADER_BYTES;
+	}
+
+	private long positionOf(FileChannel channel) {
+		try {
+			return channel.position();
+		} catch (IOException e) {
+			throw new InternalAppException("Failed to read log position of " + path + ": " + e.getMessage());
+		}
+	}
+
+	private static ByteBuffer grow(ByteBuffer buffer, int extra) {
+		int capacity = Math.max(buffer.capacity() * 2, buffer.position() + extra);
+		ByteBuffer grown = ByteBuffer.allocateDirect(capacity);
+		buffer.flip();
+		grown.put(buffer);
+		return grown;
+	}
+
+	private static void closeQuietly(FileChannel channel) {
+		if (channel == null)
+			return;
+		try {
+			channel.close();
+		} catch (IOException ignored) {
+			// Nothing left to release.
+		}
+	}
+}
@@ -0,0 +1,283 @@
+package main.query;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import main.errors.BadRequestException;
+import main.models.Product;
+
+/**
+ * Predicate tree over product fields, built from the static factories and
+ * combined with and/or. The planner looks at the conditions of a top-level
+ * conjunction to pick an index, then tests the whole tree on the rows that
+ * index yields, so any filter can be answered whatever the plan.
+ */
+public abstract class ProductFilter {
+	private static final ProductFilter ALL = new All();
+
+	ProductFilter() {
+	}
+
+	public abstract boolean test(Product product);
+
+	public static ProductFilter all() {
+		return ALL;
+	}
+
+	// Name contains the keyword, ignoring case, as searchByName matches.
+	public static ProductFilter nameContains(String keyword) {
+		if (keyword == null)
+			throw new BadRequestException("Keyword cannot be null.");
+		return new NameContains(keyword);
+	}
+
+	public static ProductFilter inCategory(int categoryId) {
+		return new InCategory(categoryId);
+	}
+
+	// Price in [min, max], bounds included.
+	public static ProductFilter priceBetween(double min, double max) {
+		if (Double.isNaN(min) || Double.isNaN(max))
+			throw new BadRequestException("Price bounds must be numbers");
+		if (min > max)
+			throw new BadRequestException("Minimum price cannot be greater than maximum price");
+		return new PriceRange(min, max);
+	}
+
+	public static ProductFilter priceAtMost(double max) {
+		return priceBetween(Double.NEGATIVE_INFINITY, max);
+	}
+
+	public static ProductFilter priceAtLeast(double min) {
+		return priceBetween(min, Double.POSITIVE_INFINITY);
+	}
+
+	// Quantity in [min, max], bounds included.
+	public static ProductFilter quantityBetween(int min, int max) {
+		if (min > max)
+			throw new BadRequestException("Minimum quantity cannot be greater than maximum quantity");
+		return new QuantityRange(min, max);
+	}
+
+	public static ProductFilter quantityAtMost(int max) {
+		return quantityBetween(Integer.MIN_VALUE, max);
+	}
+
+	public static ProductFilter quantityAtLeast(int min) {
+		return quantityBetween(min, Integer.MAX_VALUE);
+	}
+
+	// Nested conjunctions are flattened and all() terms dropped, so the
+	// planner sees every condition at the top level.
+	public static ProductFilter and(ProductFilter... filters) {
+		List<ProductFilter> terms = new ArrayList<>();
+		for (ProductFilter filter : checked(filters)) {
+			if (filter instanceof And and) {
+				for (ProductFilter term : and.terms)
+					terms.add(term);
+			} else if (filter != ALL) {
+				terms.add(filter);
+			}
+		}
+		if (terms.isEmpty())
+			return ALL;
+		if (terms.size() == 1)
+			return terms.get(0);
+		return new And(terms.toArray(new ProductFilter[0]));
+	}
+
+	public static ProductFilter or(ProductFilter... filters) {
+		if (checked(filters).length == 0)
+			throw new BadRequestException("A disjunction needs at least one filter.");
+		List<ProductFilter> terms = new ArrayList<>();
+		for (ProductFilter filter : filters) {
+			if (filter == ALL)
+				return ALL;
+			if (filter instanceof Or or) {
+				for (ProductFilter term : or.terms)
+					terms.add(term);
+			} else {
+				terms.add(filter);
+			}
+		}
+		if (terms.size() == 1)
+			return terms.get(0);
+		return new Or(terms.toArray(new ProductFilter[0]));
+	}
+
+	public ProductFilter and(ProductFilter other) {
+		return and(this, other);
+	}
+
+	public ProductFilter or(ProductFilter other) {
+		return or(this, other);
+	}
+
+	// The conditions that must all hold: the terms of a conjunction, or this
+	// filter alone.
+	List<ProductFilter> conjuncts() {
+		return this == ALL ? List.of() : List.of(this);
+	}
+
+	private static ProductFilter[] checked(ProductFilter[] filters) {
+		if (filters == null)
+			throw new BadRequestException("Filters cannot be null.");
+		for (ProductFilter filter : filters) {
+			if (filter == null)
+				throw new BadRequestException("Filters cannot be null.");
+		}
+		return filters;
+	}
+
+	private static final class All extends ProductFilter {
+		@Override
+		public boolean test(Product product) {
+			return true;
+		}
+
+		@Override
+		public String toString() {
+			return "true";
+		}
+	}
+
+	static final class NameContains extends ProductFilter {
+		final String keyword;
+		private final String needle;
+
+		NameContains(String keyword) {
+			this.keyword = keyword;
+			this.needle = keyword.toLowerCase();
+		}
+
+		@Override
+		public boolean test(Product product) {
+			return product.getName().toLowerCase().contains(needle);
+		}
+
+		@Override
+		public String toString() {
+			return "name contains \"" + keyword + "\"";
+		}
+	}
+
+	static final class InCategory extends ProductFilter {
+		final int categoryId;
+
+		InCategory(int categoryId) {
+			this.categoryId = categoryId;
+		}
+
+		@Override
+		public boolean test(Product product) {
+			Integer id = product.getCategoryId();
+			return id != null && id == categoryId;
+		}
+
+		@Override
+		public String toString() {
+			return "categoryId = " + categoryId;
+		}
+	}
+
+	static final class PriceRange extends ProductFilter {
+		final double min;
+		final double max;
+
+		PriceRange(double min, double max) {
+			this.min = min;
+			this.max = max;
+		}
+
+		@Override
+		public boolean test(Product product) {
+			double price = product.getPrice();
+			return price >= min && price <= max;
+		}
+
+		@Override
+		public String toString() {
+			return "price in [" + min + ", " + max + "]";
+		}
+	}
+
+	static final class QuantityRange extends ProductFilter {
+		final int min;
+		final int max;
+
+		QuantityRange(int min, int max) {
+			this.min = min;
+			this.max = max;
+		}
+
+		@Override
+		public boolean test(Product product) {
+			int quantity = product.getQuantity();
+			return quantity >= min && quantity <= max;
+		}
+
+		@Override
+		public String toString() {
+			return "quantity in [" + min + ", " + max + "]";
+		}
+	}
+
+	static final class And extends ProductFilter {
+		final ProductFilter[] terms;
+
+		And(ProductFilter[] terms) {
+			this.terms = terms;
+		}
+
+		@Override
+		public boolean test(Product product) {
+			for (ProductFilter term : terms) {
+				if (!term.test(product))
+					return false;
+			}
+			return true;
+		}
+
+		@Override
+		List<ProductFilter> conjuncts() {
+			return List.of(terms);
+		}
+
+		@Override
+		public String toString() {
+			return join(terms, " AND ");
+		}
+	}
+
+	static final class Or extends ProductFilter {
+		final ProductFilter[] terms;
+
+		Or(ProductFilter[] terms) {
+			this.terms = terms;
+		}
+
+		@Override
+		public boolean test(Product product) {
+			for (ProductFilter term : terms) {
+				if (term.test(product))
+					return true;
+			}
+			return false;
+		}
+
+		@Override
+		public String toString() {
+			return join(terms, " OR ");
+		}
+	}
+
+	private static String join(ProductFilter[] terms, String separator) {
+		StringBuilder text = new StringBuilder("(");
+		for (int i = 0; i < terms.length; i++) {
+			if (i > 0)
+				text.append(separator);
+			text.append(terms[i]);
+		}
+		return text.append(')').toString();
+	}
+}
@@ -0,0 +1,132 @@
+package main.query;
+
+import java.util.Arrays;
+
+import main.enumerations.ProductSortableFields;
+import main.enumerations.SortOrder;
+import main.errors.BadRequestException;
+
+/**
+ * Immutable description of a product query: a filter, any number of sort
+ * keys applied in turn, and a page. Each method returns a new query, e.g.
+ *
+ * <pre>
+ * ProductQuery.where(ProductFilter.inCategory(3).and(ProductFilter.priceBetween(10, 50)))
+ *         .orderBy(ProductSortableFields.PRICE, SortOrder.ASC)
+ *         .orderBy(ProductSortableFields.NAME, SortOrder.ASC)
+ *         .page(1, 20);
+ * </pre>
+ *
+ * Without a page every match is returned.
+ */
+public final class ProductQuery {
+	private final ProductFilter filter;
+	private final SortKey[] sortKeys;
+	private final int page;
+	private final int limit;
+
+	private ProductQuery(ProductFilter filter, SortKey[] sortKeys, int page, int limit) {
+		this.filter = filter;
+		this.sortKeys = sortKeys;
+		this.page = page;
+		this.limit = limit;
+	}
+
+	public static ProductQuery all() {
+		return where(ProductFilter.all());
+	}
+
+	public static ProductQuery where(ProductFilter filter) {
+		if (filter == null)
+			throw new BadRequestException("Filter cannot be null.");
+		return new ProductQuery(filter, new SortKey[0], 1, Integer.MAX_VALUE);
+	}
+
+	// Adds a sort key, used to order rows the earlier keys leave tied.
+	public ProductQuery orderBy(ProductSortableFields field, SortOrder order) {
+		if (field == null || order == null)
+			throw new BadRequestException("Sort field and order cannot be null.");
+		SortKey[] keys = Arrays.copyOf(sortKeys, sortKeys.length + 1);
+		keys[sortKeys.length] = new SortKey(field, order);
+		return new ProductQuery(filter, keys, page, limit);
+	}
+
+	public ProductQuery page(int page, int limit) {
+		if (page < 1)
+			throw new BadRequestException("Page number must be greater than 0");
+		if (limit < 1)
+			throw new BadRequestException("Limit must be greater than 0");
+		return new ProductQuery(filter, sortKeys, page, limit);
+	}
+
+	public ProductFilter getFilter() {
+		return filter;
+	}
+
+	public SortKey[] getSortKeys() {
+		return sortKeys.clone();
+	}
+
+	public int getPage() {
+		return page;
+	}
+
+	public int getLimit() {
+		return limit;
+	}
+
+	boolean isSorted() {
+		return sortKeys.length > 0;
+	}
+
+	SortKey firstSortKey() {
+		return sortKeys[0];
+	}
+
+	int sortKeyCount() {
+		return sortKeys.length;
+	}
+
+	// Rows needed from the start of the ordered result to fill the page, or
+	// Integer.MAX_VALUE when the query is not paged.
+	int rowsNeeded() {
+		return (int) Math.min((long) page * limit, Integer.MAX_VALUE);
+	}
+
+	boolean isPaged() {
+		return limit != Integer.MAX_VALUE;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder text = new StringBuilder("WHERE ").append(filter);
+		for (int i = 0; i < sortKeys.length; i++)
+			text.append(i == 0 ? " ORDER BY " : ", ").append(sortKeys[i]);
+		if (isPaged())
+			text.append(" PAGE ").append(page).append(" LIMIT ").append(limit);
+		return text.toString();
+	}
+
+	public static final class SortKey {
+		private final ProductSortableFields field;
+		private final SortOrder order;
+
+		SortKey(ProductSortableFields field, SortOrder order) {
+			this.field = field;
+			this.order = order;
+		}
+
+		public ProductSortableFields getField() {
+			return field;
+		}
+
+		public SortOrder getOrder() {
+			return order;
+		}
+
+		@Override
+		public String toString() {
+			return field + " " + order;
+		}
+	}
+}
@@ -0,0 +1,237 @@
+package main.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Predicate;
+
+import main.enumerations.ProductSortableFields;
+import main.enumerations.QueryAccessPath;
+import main.enumerations.SortOrder;
+import main.errors.BadRequestException;
+import main.models.Product;
+import main.query.ProductFilter.InCategory;
+import main.query.ProductFilter.NameContains;
+import main.query.ProductFilter.PriceRange;
+import main.query.ProductFilter.QuantityRange;
+import main.repositories.ProductRepository;
+import main.utils.Query;
+import main.utils.TrigramIndex;
+
+/**
+ * Plans and runs ProductQuery against a ProductRepository.
+ *
+ * Each condition of the filter's top-level conjunction that an index can
+ * answer is costed by the rows that index would yield: category and range
+ * counts are exact, name searches are bounded by the shortest trigram
+ * posting list. The cheapest lookup feeds the query and the whole filter is
+ * tested on its rows, then a bounded top-k heap cuts the page.
+ *
+ * When the query is sorted, walking the index of the first sort key in order
+ * is costed too: assuming the conditions are independent, it reads about
+ * rowsNeeded / selectivity rows before the page is full and stops there.
+ * That walk wins for small pages over broad filters; lookups win for narrow
+ * filters and unpaged queries.
+ */
+public final class ProductQueryPlanner {
+	private final ProductRepository repository;
+
+	public ProductQueryPlanner(ProductRepository repository) {
+		if (repository == null)
+			throw new BadRequestException("Repository cannot be null.");
+		this.repository = repository;
+	}
+
+	public QueryPlan plan(ProductQuery query) {
+		if (query == null)
+			throw new BadRequestException("Query cannot be null.");
+
+		long total = repository.getSize();
+		List<ProductFilter> conjuncts = query.getFilter().conjuncts();
+		long[] estimates = new long[conjuncts.size()];
+		double selectivity = 1.0;
+		for (int i = 0; i < estimates.length; i++) {
+			estimates[i] = estimate(conjuncts.get(i));
+			if (estimates[i] >= 0 && total > 0)
+				selectivity *= (double) estimates[i] / total;
+		}
+
+		List<String> considered = new ArrayList<>();
+		considered.add(QueryAccessPath.FULL_SCAN + " " + total);
+		QueryAccessPath access = QueryAccessPath.FULL_SCAN;
+		ProductFilter driver = null;
+		long cost = total;
+		for (int i = 0; i < estimates.length; i++) {
+			if (estimates[i] < 0)
+				continue;
+			QueryAccessPath path = lookupPath(conjuncts.get(i));
+			considered.add(path + " " + estimates[i]);
+			if (estimates[i] < cost) {
+				access = path;
+				driver = conjuncts.get(i);
+				cost = estimates[i];
+			}
+		}
+
+		boolean ordered = false;
+		if (query.isSorted()) {
+			ProductSortableFields field = query.firstSortKey().getField();
+			// A range on the sort field bounds the walk as well as ordering it.
+			ProductFilter range = null;
+			long rangeRows = total;
+			for (int i = 0; i < estimates.length; i++) {
+				if (estimates[i] >= 0 && estimates[i] < rangeRows && isRangeOn(conjuncts.get(i), field)) {
+					range = conjuncts.get(i);
+					rangeRows = estimates[i];
+				}
+			}
+			double matches = total * selectivity;
+			long needed = query.rowsNeeded();
+			long walked = rangeRows;
+			if (query.isPaged() && matches >= needed)
+				walked = Math.min(rangeRows, (long) Math.ceil(needed * rangeRows / matches));
+			QueryAccessPath path = sortPath(field);
+			considered.add(path + " walk " + walked);
+			// Equal costs go to the walk, which also saves the sort.
+			if (walked <= cost) {
+				access = path;
+				driver = range;
+				cost = walked;
+				ordered = true;
+			}
+		}
+		return new QueryPlan(query, access, driver, ordered, cost, considered);
+	}
+
+	public QueryResult execute(ProductQuery query) {
+		long start = System.nanoTime();
+		QueryPlan plan = plan(query);
+		long[] examined = { 0 };
+		Product[] rows = plan.isOrdered() ? walk(plan, examined) : lookup(plan, examined);
+		return new QueryResult(rows, plan, examined[0], System.nanoTime() - start);
+	}
+
+	// Rows the condition selects through its index, or -1 if no index can
+	// answer it.
+	private long estimate(ProductFilter condition) {
+		if (condition instanceof InCategory category)
+			return repository.countByCategory(category.categoryId);
+		if (condition instanceof PriceRange price)
+			return repository.countByPriceRange(price.min, price.max);
+		if (condition instanceof QuantityRange quantity)
+			return repository.countByQuantityRange(quantity.min, quantity.max);
+		if (condition instanceof NameContains name && TrigramIndex.isSearchable(name.keyword))
+			return repository.estimateNameMatches(name.keyword);
+		return -1;
+	}
+
+	private static QueryAccessPath lookupPath(ProductFilter condition) {
+		if (condition instanceof InCategory)
+			return QueryAccessPath.CATEGORY_INDEX;
+		if (condition instanceof PriceRange)
+			return QueryAccessPath.PRICE_INDEX;
+		if (condition instanceof QuantityRange)
+			return QueryAccessPath.QUANTITY_INDEX;
+		return QueryAccessPath.NAME_SEARCH_INDEX;
+	}
+
+	private static QueryAccessPath sortPath(ProductSortableFields field) {
+		return switch (field) {
+			case NAME -> QueryAccessPath.NAME_INDEX;
+			case CREATED_AT -> QueryAccessPath.CREATED_AT_INDEX;
+			case PRICE -> QueryAccessPath.PRICE_INDEX;
+			case QUANTITY -> QueryAccessPath.QUANTITY_INDEX;
+		};
+	}
+
+	private static boolean isRangeOn(ProductFilter condition, ProductSortableFields field) {
+		return condition instanceof PriceRange && field == ProductSortableFields.PRICE
+				|| condition instanceof QuantityRange && field == ProductSortableFields.QUANTITY;
+	}
+
+	private Product[] lookup(QueryPlan plan, long[] examined) {
+		ProductFilter driver = plan.getDriver();
+		return switch (plan.getAccess()) {
+			case CATEGORY_INDEX -> cut(plan, repository.findByCategory(((InCategory) driver).categoryId), examined);
+			case PRICE_INDEX -> cut(plan, repository.findByPriceRange(((PriceRange) driver).min,
+					((PriceRange) driver).max), examined);
+			case QUANTITY_INDEX -> cut(plan, repository.findByQuantityRange(((QuantityRange) driver).min,
+					((QuantityRange) driver).max), examined);
+			case NAME_SEARCH_INDEX -> cut(plan, repository.searchByName(((NameContains) driver).keyword), examined);
+			// The scan reads the live slots, so it runs under the read lock.
+			default -> repository.query(all -> cut(plan, all, examined));
+		};
+	}
+
+	// Filters the candidates and cuts the page, sorting only what it keeps.
+	private Product[] cut(QueryPlan plan, Query<Product> candidates, long[] examined) {
+		ProductQuery query = plan.getQuery();
+		examined[0] = candidates.getSize();
+
+		ProductFilter filter = query.getFilter();
+		Query<Product> matches = filter == ProductFilter.all() ? candidates : candidates.filter(filter::test);
+		if (query.isSorted())
+			return matches.sortedPage(comparator(query.getSortKeys()), query.getPage(), query.getLimit())
+					.getResult();
+		return matches.paginate(query.getPage(), query.getLimit()).getResult();
+	}
+
+	// Walks the first sort key's index in order, keeping the matches until
+	// the page is full. The walk then goes on through the rows tied with the
+	// last match, which the later keys and the id may move onto the page.
+	private Product[] walk(QueryPlan plan, long[] examined) {
+		ProductQuery query = plan.getQuery();
+		ProductQuery.SortKey first = query.firstSortKey();
+		ProductFilter filter = query.getFilter();
+		int needed = query.rowsNeeded();
+		Comparator<Product> firstKey = keyComparator(first);
+		List<Product> matched = new ArrayList<>();
+
+		Predicate<Product> visitor = p -> {
+			examined[0]++;
+			if (matched.size() >= needed && firstKey.compare(matched.get(matched.size() - 1), p) != 0)
+				return false;
+			if (filter.test(p))
+				matched.add(p);
+			return true;
+		};
+		ProductFilter driver = plan.getDriver();
+		SortOrder order = first.getOrder();
+		if (driver instanceof PriceRange price)
+			repository.scanPriceRange(price.min, price.max, order, visitor);
+		else if (driver instanceof QuantityRange quantity)
+			repository.scanQuantityRange(quantity.min, quantity.max, order, visitor);
+		else
+			repository.scanSorted(first.getField(), order, visitor);
+
+		Product[] rows = matched.toArray(new Product[0]);
+		Arrays.sort(rows, comparator(query.getSortKeys()));
+		long from = (long) (query.getPage() - 1) * query.getLimit();
+		if (from >= rows.length)
+			return new Product[0];
+		return Arrays.copyOfRange(rows, (int) from, (int) Math.min(rows.length, from + query.getLimit()));
+	}
+
+	// The sort keys, then the id, so rows tied on every key come out in the
+	// same order whichever access path read them and pages never overlap.
+	private Comparator<Product> comparator(ProductQuery.SortKey[] keys) {
+		Comparator<Product> comparator = null;
+		for (ProductQuery.SortKey key : keys)
+			comparator = comparator == null ? keyComparator(key) : comparator.thenComparing(keyComparator(key));
+		Comparator<Product> byId = Comparator.comparing(Product::getId);
+		return comparator == null ? byId : comparator.thenComparing(byId);
+	}
+
+	// Orders by one key exactly as that key's index does; names compare
+	// trimmed and ignoring case, like the repository's name index.
+	private Comparator<Product> keyComparator(ProductQuery.SortKey key) {
+		Comparator<Product> comparator = switch (key.getField()) {
+			case NAME -> repository.nameComparator(SortOrder.ASC);
+			case CREATED_AT -> Comparator.comparing(Product::getCreatedAt);
+			case PRICE -> (a, b) -> Double.compare(a.getPrice(), b.getPrice());
+			case QUANTITY -> (a, b) -> Integer.compare(a.getQuantity(), b.getQuantity());
+		};
+		return key.getOrder() == SortOrder.DESC ? comparator.reversed() : comparator;
+	}
+}
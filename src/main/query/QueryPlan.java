@@ -0,0 +1,97 @@
+package main.query;
+
+import java.util.List;
+
+import main.enumerations.QueryAccessPath;
+import main.enumerations.SortOrder;
+
+/**
+ * The plan ProductQueryPlanner chose for a query: which index feeds it, how
+ * many rows that index is expected to yield, and whether the rows come out
+ * already in sort order so the page can be cut off during the walk. The other
+ * access paths it weighed are kept for {@link #explain}.
+ */
+public final class QueryPlan {
+	private final ProductQuery query;
+	private final QueryAccessPath access;
+	// The condition that bounds the index read, or null for a whole index.
+	private final ProductFilter driver;
+	private final boolean ordered;
+	private final long estimatedRows;
+	private final List<String> considered;
+
+	QueryPlan(ProductQuery query, QueryAccessPath access, ProductFilter driver, boolean ordered, long estimatedRows,
+			List<String> considered) {
+		this.query = query;
+		this.access = access;
+		this.driver = driver;
+		this.ordered = ordered;
+		this.estimatedRows = estimatedRows;
+		this.considered = considered;
+	}
+
+	public ProductQuery getQuery() {
+		return query;
+	}
+
+	public QueryAccessPath getAccess() {
+		return access;
+	}
+
+	ProductFilter getDriver() {
+		return driver;
+	}
+
+	// True when the index walk yields rows in the order of the first sort
+	// key, so it stops once the page is full.
+	public boolean isOrdered() {
+		return ordered;
+	}
+
+	public long getEstimatedRows() {
+		return estimatedRows;
+	}
+
+	public String explain() {
+		StringBuilder text = new StringBuilder();
+		text.append("Query:  ").append(query).append('\n');
+		text.append("Access: ").append(describeAccess()).append(" (est. ").append(estimatedRows).append(" rows)\n");
+		text.append("Filter: ").append(query.getFilter()).append('\n');
+		text.append("Sort:   ").append(describeSort()).append('\n');
+		if (query.isPaged())
+			text.append("Page:   ").append(query.getPage()).append(" x ").append(query.getLimit()).append('\n');
+		text.append("Considered: ").append(String.join(", ", considered));
+		return text.toString();
+	}
+
+	private String describeAccess() {
+		String bound = driver == null ? "" : " over " + driver;
+		if (!ordered)
+			return access == QueryAccessPath.FULL_SCAN ? "FULL_SCAN" : access + " lookup" + bound;
+		SortOrder order = query.firstSortKey().getOrder();
+		String walk = access + " walk " + order + bound;
+		return query.isPaged() ? walk + ", stops after " + query.rowsNeeded() + " matches" : walk;
+	}
+
+	private String describeSort() {
+		if (!query.isSorted())
+			return "none, rows in access order";
+		if (!ordered)
+			return "top " + (query.isPaged() ? query.rowsNeeded() + " " : "") + "by " + sortKeys(0);
+		return "index order, ties by " + sortKeys(1);
+	}
+
+	// The keys from `from` on, then the id every plan breaks last ties by.
+	private String sortKeys(int from) {
+		ProductQuery.SortKey[] keys = query.getSortKeys();
+		StringBuilder text = new StringBuilder();
+		for (int i = from; i < keys.length; i++)
+			text.append(keys[i]).append(", ");
+		return text.append("id").toString();
+	}
+
+	@Override
+	public String toString() {
+		return describeAccess();
+	}
+}
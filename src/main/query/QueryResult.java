@@ -0,0 +1,48 @@
+package main.query;
+
+import main.models.Product;
+
+/**
+ * Products a ProductQuery returned, with the plan that produced them and how
+ * many rows it had to read to get there.
+ */
+public final class QueryResult {
+	private final Product[] products;
+	private final QueryPlan plan;
+	private final long rowsExamined;
+	private final long elapsedNanos;
+
+	QueryResult(Product[] products, QueryPlan plan, long rowsExamined, long elapsedNanos) {
+		this.products = products;
+		this.plan = plan;
+		this.rowsExamined = rowsExamined;
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	public Product[] getProducts() {
+		return products;
+	}
+
+	public QueryPlan getPlan() {
+		return plan;
+	}
+
+	public long getRowsExamined() {
+		return rowsExamined;
+	}
+
+	public double getElapsedMillis() {
+		return elapsedNanos / 1e6;
+	}
+
+	// The plan followed by what running it cost.
+	public String explain() {
+		return plan.explain() + String.format("%nRan:    %d rows examined, %d returned in %.3f ms", rowsExamined,
+				products.length, getElapsedMillis());
+	}
+
+	@Override
+	public String toString() {
+		return products.length + " products via " + plan;
+	}
+}
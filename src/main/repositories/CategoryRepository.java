@@ -1,6 +1,8 @@
 package main.repositories;
 
 import main.abstracts.repositories.Repository;
+import main.utils.CapacityPolicy;
+import main.utils.SegmentedArray;
 import main.models.Category;
 
 public class CategoryRepository extends Repository<Category> {
@@ -11,19 +13,22 @@ public class CategoryRepository extends Repository<Category> {
 	}
 
 	private CategoryRepository(int capacity) {
+		if (capacity == 0)
+			capacity = 1;
 		this.capacity = capacity;
-		this.datas = new Category[capacity];
+		this.capacityPolicy = CapacityPolicy.DEFAULT.withInitialCapacity(capacity);
+		this.datas = SegmentedArray.wrap(new Category[capacity]);
 		this.size = 0;
 	}
 
-	public static CategoryRepository getInstance() {
+	public static synchronized CategoryRepository getInstance() {
 		if (instance == null) {
 			instance = new CategoryRepository();
 		}
 		return instance;
 	}
 
-	public static CategoryRepository getInstance(int capacity) {
+	public static synchronized CategoryRepository getInstance(int capacity) {
 		if (instance == null) {
 			instance = new CategoryRepository(capacity);
 		}
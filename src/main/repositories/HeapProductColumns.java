@@ -0,0 +1,143 @@
+package main.repositories;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+// Product columns as primitive arrays on the heap. A slot is live while its
+// name is set.
+final class HeapProductColumns extends ProductColumns {
+	private long[] ids = new long[0];
+	private String[] names = new String[0];
+	private double[] prices = new double[0];
+	private int[] quantities = new int[0];
+	private int[] categoryIds = new int[0];
+	private long[] createdAtEpochMillis = new long[0];
+	private long[] updatedAtEpochMillis = new long[0];
+	private String[] descriptions = new String[0];
+
+	HeapProductColumns(StampedLock lock) {
+		super(lock);
+	}
+
+	@Override
+	long id(int slot) {
+		return ids[slot];
+	}
+
+	@Override
+	void setId(int slot, long id) {
+		ids[slot] = id;
+	}
+
+	@Override
+	String name(int slot) {
+		return names[slot];
+	}
+
+	@Override
+	void setName(int slot, String name) {
+		names[slot] = name;
+	}
+
+	@Override
+	double price(int slot) {
+		return prices[slot];
+	}
+
+	@Override
+	void setPrice(int slot, double price) {
+		prices[slot] = price;
+	}
+
+	@Override
+	int quantity(int slot) {
+		return quantities[slot];
+	}
+
+	@Override
+	void setQuantity(int slot, int quantity) {
+		quantities[slot] = quantity;
+	}
+
+	@Override
+	int categoryId(int slot) {
+		return categoryIds[slot];
+	}
+
+	@Override
+	void setCategoryId(int slot, int categoryId) {
+		categoryIds[slot] = categoryId;
+	}
+
+	@Override
+	long createdAt(int slot) {
+		return createdAtEpochMillis[slot];
+	}
+
+	@Override
+	void setCreatedAt(int slot, long epochMillis) {
+		createdAtEpochMillis[slot] = epochMillis;
+	}
+
+	@Override
+	long updatedAt(int slot) {
+		return updatedAtEpochMillis[slot];
+	}
+
+	@Override
+	void setUpdatedAt(int slot, long epochMillis) {
+		updatedAtEpochMillis[slot] = epochMillis;
+	}
+
+	@Override
+	String description(int slot) {
+		return descriptions[slot];
+	}
+
+	@Override
+	void setDescription(int slot, String description) {
+		descriptions[slot] = description;
+	}
+
+	@Override
+	void ensureCapacity(int slots) {
+		if (slots > ids.length)
+			resize(Math.max(slots, ids.length * 2));
+	}
+
+	@Override
+	int capacity() {
+		return ids.length;
+	}
+
+	@Override
+	boolean isLive(int slot) {
+		return names[slot] != null;
+	}
+
+	@Override
+	void markLive(int slot) {
+	}
+
+	@Override
+	void release(int slot) {
+		names[slot] = null;
+		descriptions[slot] = null;
+	}
+
+	@Override
+	void clear() {
+		resize(0);
+	}
+
+	private void resize(int length) {
+		ids = Arrays.copyOf(ids, length);
+		names = Arrays.copyOf(names, length);
+		prices = Arrays.copyOf(prices, length);
+		quantities = Arrays.copyOf(quantities, length);
+		categoryIds = Arrays.copyOf(categoryIds, length);
+		createdAtEpochMillis = Arrays.copyOf(createdAtEpochMillis, length);
+		updatedAtEpochMillis = Arrays.copyOf(updatedAtEpochMillis, length);
+		descriptions = Arrays.copyOf(descriptions, length);
+	}
+}
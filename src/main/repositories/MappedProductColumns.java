@@ -0,0 +1,408 @@
+package main.repositories;
+
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+import main.errors.BadRequestException;
+import main.errors.InternalAppException;
+
+/**
+ * Product columns kept off-heap in two memory-mapped files, so the catalog is
+ * paged in by the OS instead of being deserialized at startup.
+ *
+ * products.dat holds a 64-byte header and then one 64-byte record per slot:
+ *
+ * <pre>
+ *  0 id           8 price         16 createdAt   24 updatedAt
+ * 32 name ref    40 description  48 quantity    52 categoryId   56 flags
+ * </pre>
+ *
+ * Names and descriptions are variable-length, so the records only hold
+ * offsets into products.strings, an append-only heap of [length][UTF-8 bytes]
+ * entries. Rewriting a string appends a new entry; the old one is not
+ * reclaimed until the files are rewritten.
+ *
+ * Both files are mapped in fixed chunks. Growing maps only the chunks the
+ * write needs, so the files never run far ahead of the data, and never copies
+ * or remaps what is already there. No record or string straddles two chunks,
+ * so every access is a single absolute get or put.
+ *
+ * Rows read without a lock, so a string entry is fenced in before its
+ * reference is stored, and a reference read from a slot that is being reused
+ * fails cleanly instead of reading past its chunk.
+ */
+final class MappedProductColumns extends ProductColumns {
+	static final String RECORDS_FILE = "products.dat";
+	static final String STRINGS_FILE = "products.strings";
+
+	private static final int RECORDS_MAGIC = 0x50524F44; // "PROD"
+	private static final int STRINGS_MAGIC = 0x53545253; // "STRS"
+	private static final int VERSION = 1;
+
+	private static final int CHUNK_SHIFT = 22;
+	private static final int CHUNK_BYTES = 1 << CHUNK_SHIFT;
+	private static final int CHUNK_MASK = CHUNK_BYTES - 1;
+
+	private static final int RECORD_BYTES = 64;
+	private static final int HEADER_BYTES = RECORD_BYTES;
+	private static final int STRINGS_HEADER_BYTES = 16;
+
+	private static final int ID = 0;
+	private static final int PRICE = 8;
+	private static final int CREATED_AT = 16;
+	private static final int UPDATED_AT = 24;
+	private static final int NAME = 32;
+	private static final int DESCRIPTION = 40;
+	private static final int QUANTITY = 48;
+	private static final int CATEGORY_ID = 52;
+	private static final int FLAGS = 56;
+
+	// Header fields: magic, version, then the slot (records) or byte (strings)
+	// high-water mark.
+	private static final int HEADER_VERSION = 4;
+	private static final int HEADER_END = 8;
+
+	private static final int LIVE = 1;
+	private static final long NO_STRING = -1L;
+
+	private final Path directory;
+	private final FileChannel recordChannel;
+	private final FileChannel stringChannel;
+	private MappedByteBuffer[] records = new MappedByteBuffer[0];
+	private MappedByteBuffer[] strings = new MappedByteBuffer[0];
+	private int slots;
+	private long stringEnd;
+
+	private MappedProductColumns(Path directory, FileChannel recordChannel, FileChannel stringChannel,
+			StampedLock lock) {
+		super(lock);
+		this.directory = directory;
+		this.recordChannel = recordChannel;
+		this.stringChannel = stringChannel;
+	}
+
+	// Maps the store in `directory`, creating empty files if there are none.
+	static MappedProductColumns open(Path directory, StampedLock lock) {
+		FileChannel recordChannel = null;
+		FileChannel stringChannel = null;
+		try {
+			Files.createDirectories(directory);
+			recordChannel = FileChannel.open(directory.resolve(RECORDS_FILE), StandardOpenOption.CREATE,
+					StandardOpenOption.READ, StandardOpenOption.WRITE);
+			stringChannel = FileChannel.open(directory.resolve(STRINGS_FILE), StandardOpenOption.CREATE,
+					StandardOpenOption.READ, StandardOpenOption.WRITE);
+			MappedProductColumns columns = new MappedProductColumns(directory, recordChannel, stringChannel, lock);
+			columns.load();
+			return columns;
+		} catch (IOException e) {
+			closeQuietly(recordChannel);
+			closeQuietly(stringChannel);
+			throw new InternalAppException("Failed to open product store in " + directory + ": " + e.getMessage());
+		} catch (RuntimeException e) {
+			closeQuietly(recordChannel);
+			closeQuietly(stringChannel);
+			throw e;
+		}
+	}
+
+	private void load() throws IOException {
+		boolean fresh = recordChannel.size() == 0;
+		records = mapChunks(recordChannel, Math.max(1, chunksFor(recordChannel.size())));
+		strings = mapChunks(stringChannel, Math.max(1, chunksFor(stringChannel.size())));
+		MappedByteBuffer recordHeader = records[0];
+		MappedByteBuffer stringHeader = strings[0];
+
+		if (fresh) {
+			writeHeader(recordHeader, RECORDS_MAGIC, 0);
+			writeHeader(stringHeader, STRINGS_MAGIC, STRINGS_HEADER_BYTES);
+		}
+		checkHeader(recordHeader, RECORDS_MAGIC, RECORDS_FILE);
+		checkHeader(stringHeader, STRINGS_MAGIC, STRINGS_FILE);
+
+		slots = (int) recordHeader.getLong(HEADER_END);
+		stringEnd = stringHeader.getLong(HEADER_END);
+		if (slots < 0 || slots > capacity() || stringEnd < STRINGS_HEADER_BYTES
+				|| stringEnd > (long) strings.length << CHUNK_SHIFT)
+			throw new InternalAppException("Product store in " + directory + " is corrupted.");
+	}
+
+	private static void writeHeader(MappedByteBuffer header, int magic, long end) {
+		header.putInt(0, magic);
+		header.putInt(HEADER_VERSION, VERSION);
+		header.putLong(HEADER_END, end);
+	}
+
+	private void checkHeader(MappedByteBuffer header, int magic, String file) {
+		if (header.getInt(0) != magic)
+			throw new InternalAppException(directory.resolve(file) + " is not a product store file.");
+		if (header.getInt(HEADER_VERSION) != VERSION)
+			throw new InternalAppException("Unsupported product store version " + header.getInt(HEADER_VERSION)
+					+ " in " + directory.resolve(file) + ".");
+	}
+
+	// Moves the live records down over the dead ones, keeping their order, and
+	// returns how many there are. Slots [0, result) are then all live.
+	int compactLive() {
+		int live = 0;
+		for (int slot = 0; slot < slots; slot++) {
+			if (!isLive(slot))
+				continue;
+			if (name(slot) == null)
+				throw new InternalAppException("Product store in " + directory + " has a record without a name.");
+			if (slot != live)
+				move(slot, live);
+			live++;
+		}
+		setSlots(live);
+		return live;
+	}
+
+	void flush() {
+		for (MappedByteBuffer chunk : records)
+			chunk.force();
+		for (MappedByteBuffer chunk : strings)
+			chunk.force();
+	}
+
+	// Flushes and closes the files. The mappings stay readable until they are
+	// garbage collected, but nothing may write through them any more.
+	void close() {
+		try {
+			flush();
+		} finally {
+			closeQuietly(recordChannel);
+			closeQuietly(stringChannel);
+		}
+	}
+
+	Path getDirectory() {
+		return directory;
+	}
+
+	@Override
+	long id(int slot) {
+		return record(slot).getLong(offset(slot) + ID);
+	}
+
+	@Override
+	void setId(int slot, long id) {
+		record(slot).putLong(offset(slot) + ID, id);
+	}
+
+	@Override
+	String name(int slot) {
+		return readString(record(slot).getLong(offset(slot) + NAME));
+	}
+
+	@Override
+	void setName(int slot, String name) {
+		record(slot).putLong(offset(slot) + NAME, writeString(name));
+	}
+
+	@Override
+	double price(int slot) {
+		return record(slot).getDouble(offset(slot) + PRICE);
+	}
+
+	@Override
+	void setPrice(int slot, double price) {
+		record(slot).putDouble(offset(slot) + PRICE, price);
+	}
+
+	@Override
+	int quantity(int slot) {
+		return record(slot).getInt(offset(slot) + QUANTITY);
+	}
+
+	@Override
+	void setQuantity(int slot, int quantity) {
+		record(slot).putInt(offset(slot) + QUANTITY, quantity);
+	}
+
+	@Override
+	int categoryId(int slot) {
+		return record(slot).getInt(offset(slot) + CATEGORY_ID);
+	}
+
+	@Override
+	void setCategoryId(int slot, int categoryId) {
+		record(slot).putInt(offset(slot) + CATEGORY_ID, categoryId);
+	}
+
+	@Override
+	long createdAt(int slot) {
+		return record(slot).getLong(offset(slot) + CREATED_AT);
+	}
+
+	@Override
+	void setCreatedAt(int slot, long epochMillis) {
+		record(slot).putLong(offset(slot) + CREATED_AT, epochMillis);
+	}
+
+	@Override
+	long updatedAt(int slot) {
+		return record(slot).getLong(offset(slot) + UPDATED_AT);
+	}
+
+	@Override
+	void setUpdatedAt(int slot, long epochMillis) {
+		record(slot).putLong(offset(slot) + UPDATED_AT, epochMillis);
+	}
+
+	@Override
+	String description(int slot) {
+		return readString(record(slot).getLong(offset(slot) + DESCRIPTION));
+	}
+
+	@Override
+	void setDescription(int slot, String description) {
+		record(slot).putLong(offset(slot) + DESCRIPTION, writeString(description));
+	}
+
+	@Override
+	void ensureCapacity(int slots) {
+		if (slots > capacity())
+			records = grow(recordChannel, records, recordPosition(slots - 1) + RECORD_BYTES);
+	}
+
+	@Override
+	int capacity() {
+		return (int) Math.min(Integer.MAX_VALUE, (((long) records.length << CHUNK_SHIFT) - HEADER_BYTES) / RECORD_BYTES);
+	}
+
+	@Override
+	boolean isLive(int slot) {
+		return slot < slots && (record(slot).getInt(offset(slot) + FLAGS) & LIVE) != 0;
+	}
+
+	@Override
+	void markLive(int slot) {
+		record(slot).putInt(offset(slot) + FLAGS, LIVE);
+		if (slot >= slots)
+			setSlots(slot + 1);
+	}
+
+	@Override
+	void release(int slot) {
+		record(slot).putInt(offset(slot) + FLAGS, 0);
+	}
+
+	// Copies the raw record, so the strings are shared instead of re-appended.
+	@Override
+	void copy(int from, int to) {
+		MappedByteBuffer source = record(from);
+		MappedByteBuffer target = record(to);
+		int at = offset(from);
+		int into = offset(to);
+		for (int i = 0; i < RECORD_BYTES; i += Long.BYTES)
+			target.putLong(into + i, source.getLong(at + i));
+	}
+
+	// Forgets every record and string. The files keep their size.
+	@Override
+	void clear() {
+		for (int slot = 0; slot < slots; slot++)
+			release(slot);
+		setSlots(0);
+		stringEnd = STRINGS_HEADER_BYTES;
+		strings[0].putLong(HEADER_END, stringEnd);
+	}
+
+	private void setSlots(int slots) {
+		this.slots = slots;
+		records[0].putLong(HEADER_END, slots);
+	}
+
+	private MappedByteBuffer record(int slot) {
+		return records[(int) (recordPosition(slot) >>> CHUNK_SHIFT)];
+	}
+
+	private static int offset(int slot) {
+		return (int) (recordPosition(slot) & CHUNK_MASK);
+	}
+
+	private static long recordPosition(int slot) {
+		return HEADER_BYTES + (long) slot * RECORD_BYTES;
+	}
+
+	private String readString(long ref) {
+		if (ref == NO_STRING)
+			return null;
+		// Pairs with the fence in writeString.
+		VarHandle.acquireFence();
+		MappedByteBuffer chunk = strings[(int) (ref >>> CHUNK_SHIFT)];
+		int at = (int) (ref & CHUNK_MASK);
+		int length = chunk.getInt(at);
+		if (length < 0 || length > CHUNK_BYTES - Integer.BYTES - at)
+			throw new InternalAppException("Product store in " + directory + " has a broken string at " + ref + ".");
+		byte[] bytes = new byte[length];
+		chunk.get(at + Integer.BYTES, bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private long writeString(String value) {
+		if (value == null)
+			return NO_STRING;
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		int length = Integer.BYTES + bytes.length;
+		if (length > CHUNK_BYTES)
+			throw new BadRequestException("Text of " + bytes.length + " bytes is too long for the product store.");
+
+		long ref = stringEnd;
+		if ((ref & CHUNK_MASK) + length > CHUNK_BYTES)
+			ref = (ref | CHUNK_MASK) + 1;
+		if (ref + length > (long) strings.length << CHUNK_SHIFT)
+			strings = grow(stringChannel, strings, ref + length);
+
+		MappedByteBuffer chunk = strings[(int) (ref >>> CHUNK_SHIFT)];
+		int at = (int) (ref & CHUNK_MASK);
+		chunk.putInt(at, bytes.length);
+		chunk.put(at + Integer.BYTES, bytes);
+		stringEnd = ref + length;
+		strings[0].putLong(HEADER_END, stringEnd);
+		// A reader that sees the returned reference also sees the entry.
+		VarHandle.releaseFence();
+		return ref;
+	}
+
+	private static int chunksFor(long bytes) {
+		return (int) ((bytes + CHUNK_MASK) >>> CHUNK_SHIFT);
+	}
+
+	private MappedByteBuffer[] grow(FileChannel channel, MappedByteBuffer[] chunks, long bytes) {
+		try {
+			int needed = chunksFor(bytes);
+			MappedByteBuffer[] grown = Arrays.copyOf(chunks, needed);
+			for (int i = chunks.length; i < needed; i++)
+				grown[i] = channel.map(FileChannel.MapMode.READ_WRITE, (long) i << CHUNK_SHIFT, CHUNK_BYTES);
+			return grown;
+		} catch (IOException e) {
+			throw new InternalAppException("Failed to grow product store in " + directory + ": " + e.getMessage());
+		}
+	}
+
+	private static MappedByteBuffer[] mapChunks(FileChannel channel, int count) throws IOException {
+		MappedByteBuffer[] chunks = new MappedByteBuffer[count];
+		for (int i = 0; i < count; i++)
+			chunks[i] = channel.map(FileChannel.MapMode.READ_WRITE, (long) i << CHUNK_SHIFT, CHUNK_BYTES);
+		return chunks;
+	}
+
+	private static void closeQuietly(FileChannel channel) {
+		if (channel == null)
+			return;
+		try {
+			channel.close();
+		} catch (IOException ignored) {
+			// Nothing left to release.
+		}
+	}
+}
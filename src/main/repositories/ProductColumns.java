@@ -0,0 +1,218 @@
+package main.repositories;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+import main.models.Product;
+
+/**
+ * Columnar storage for ProductRepository: every product field is kept per
+ * repository slot in a column, so a product costs a handful of primitive
+ * entries instead of a Product plus its boxed fields and timestamps. Products
+ * are read and written through {@link ProductRow} flyweights.
+ *
+ * Subclasses decide where the columns live: on the heap
+ * ({@link HeapProductColumns}) or in memory-mapped files
+ * ({@link MappedProductColumns}). Timestamps are epoch milliseconds of the
+ * local date-time taken as UTC, which round-trips LocalDateTime exactly up to
+ * millisecond precision.
+ *
+ * The repository writes the columns under its write lock, which rows also
+ * take to write through.
+ */
+abstract class ProductColumns {
+	static final int NO_CATEGORY = Integer.MIN_VALUE;
+	static final long NO_TIME = Long.MIN_VALUE;
+
+	final StampedLock lock;
+
+	ProductColumns(StampedLock lock) {
+		this.lock = lock;
+	}
+
+	abstract long id(int slot);
+
+	abstract void setId(int slot, long id);
+
+	abstract String name(int slot);
+
+	abstract void setName(int slot, String name);
+
+	abstract double price(int slot);
+
+	abstract void setPrice(int slot, double price);
+
+	abstract int quantity(int slot);
+
+	abstract void setQuantity(int slot, int quantity);
+
+	abstract int categoryId(int slot);
+
+	abstract void setCategoryId(int slot, int categoryId);
+
+	abstract long createdAt(int slot);
+
+	abstract void setCreatedAt(int slot, long epochMillis);
+
+	abstract long updatedAt(int slot);
+
+	abstract void setUpdatedAt(int slot, long epochMillis);
+
+	abstract String description(int slot);
+
+	abstract void setDescription(int slot, String description);
+
+	// Makes room for slots [0, slots).
+	abstract void ensureCapacity(int slots);
+
+	// Number of slots the columns currently have room for.
+	abstract int capacity();
+
+	abstract boolean isLive(int slot);
+
+	abstract void markLive(int slot);
+
+	abstract void release(int slot);
+
+	abstract void clear();
+
+	// Copies `data` into `slot` and returns a flyweight over it.
+	ProductRow write(int slot, Product data) {
+		ensureCapacity(slot + 1);
+		setId(slot, data.getId());
+		setName(slot, data.getName());
+		setPrice(slot, data.getPrice());
+		setQuantity(slot, data.getQuantity());
+		setCategoryId(slot, data.getCategoryId() == null ? NO_CATEGORY : data.getCategoryId());
+		setCreatedAt(slot, toEpochMillis(data.getCreatedAt()));
+		setUpdatedAt(slot, toEpochMillis(data.getUpdateAt()));
+		setDescription(slot, data.getDescription());
+		markLive(slot);
+		return new ProductRow(this, slot);
+	}
+
+	// Copies the values in `from` into `to`, which becomes live. `from` stays
+	// as it is until released.
+	void copy(int from, int to) {
+		setId(to, id(from));
+		setName(to, name(from));
+		setPrice(to, price(from));
+		setQuantity(to, quantity(from));
+		setCategoryId(to, categoryId(from));
+		setCreatedAt(to, createdAt(from));
+		setUpdatedAt(to, updatedAt(from));
+		setDescription(to, description(from));
+		markLive(to);
+	}
+
+	void move(int from, int to) {
+		copy(from, to);
+		release(from);
+	}
+
+	// Live slots below `end` whose price is in [min, max], in slot order.
+	int[] slotsWithPrice(int end, double min, double max) {
+		int[] slots = new int[16];
+		int count = 0;
+		for (int slot = 0; slot < Math.min(end, capacity()); slot++) {
+			double price = price(slot);
+			if (price < min || price > max || !isLive(slot))
+				continue;
+			if (count == slots.length)
+				slots = Arrays.copyOf(slots, count * 2);
+			slots[count++] = slot;
+		}
+		return Arrays.copyOf(slots, count);
+	}
+
+	// Live slots below `end` whose quantity is in [min, max], in slot order.
+	int[] slotsWithQuantity(int end, int min, int max) {
+		int[] slots = new int[16];
+		int count = 0;
+		for (int slot = 0; slot < Math.min(end, capacity()); slot++) {
+			int quantity = quantity(slot);
+			if (quantity < min || quantity > max || !isLive(slot))
+				continue;
+			if (count == slots.length)
+				slots = Arrays.copyOf(slots, count * 2);
+			slots[count++] = slot;
+		}
+		return Arrays.copyOf(slots, count);
+	}
+
+	// Live slots below `end`, stably sorted by price. Prices are never
+	// negative, so their raw bits order the same way Double.compare does.
+	int[] slotsByPrice(int end, boolean descending) {
+		int[] slots = slotsWithPrice(end, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+		long[] keys = new long[slots.length];
+		for (int i = 0; i < slots.length; i++)
+			keys[i] = Double.doubleToLongBits(price(slots[i]));
+		sortByKeys(slots, keys, descending);
+		return slots;
+	}
+
+	// Live slots below `end`, stably sorted by quantity.
+	int[] slotsByQuantity(int end, boolean descending) {
+		int[] slots = slotsWithQuantity(end, Integer.MIN_VALUE, Integer.MAX_VALUE);
+		long[] keys = new long[slots.length];
+		for (int i = 0; i < slots.length; i++)
+			keys[i] = quantity(slots[i]);
+		sortByKeys(slots, keys, descending);
+		return slots;
+	}
+
+	static long toEpochMillis(LocalDateTime time) {
+		return time == null ? NO_TIME : time.toInstant(ZoneOffset.UTC).toEpochMilli();
+	}
+
+	static LocalDateTime fromEpochMillis(long millis) {
+		return millis == NO_TIME ? null : LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC);
+	}
+
+	// Bottom-up merge sort of `slots` by `keys` (kept in step with it). Equal
+	// keys keep their order, in both directions, like a stable sort does.
+	private static void sortByKeys(int[] slots, long[] keys, boolean descending) {
+		int n = slots.length;
+		int[] slotBuffer = new int[n];
+		long[] keyBuffer = new long[n];
+		int[] fromSlots = slots, toSlots = slotBuffer;
+		long[] fromKeys = keys, toKeys = keyBuffer;
+
+		for (int width = 1; width < n; width <<= 1) {
+			for (int lo = 0; lo < n; lo += width << 1) {
+				int mid = Math.min(lo + width, n);
+				int hi = Math.min(lo + (width << 1), n);
+				int i = lo, j = mid, k = lo;
+				while (i < mid && j < hi) {
+					boolean takeRight = descending ? fromKeys[j] > fromKeys[i] : fromKeys[j] < fromKeys[i];
+					if (takeRight) {
+						toSlots[k] = fromSlots[j];
+						toKeys[k++] = fromKeys[j++];
+					} else {
+						toSlots[k] = fromSlots[i];
+						toKeys[k++] = fromKeys[i++];
+					}
+				}
+				while (i < mid) {
+					toSlots[k] = fromSlots[i];
+					toKeys[k++] = fromKeys[i++];
+				}
+				while (j < hi) {
+					toSlots[k] = fromSlots[j];
+					toKeys[k++] = fromKeys[j++];
+				}
+			}
+			int[] swapSlots = fromSlots;
+			fromSlots = toSlots;
+			toSlots = swapSlots;
+			long[] swapKeys = fromKeys;
+			fromKeys = toKeys;
+			toKeys = swapKeys;
+		}
+		if (fromSlots != slots)
+			System.arraycopy(fromSlots, 0, slots, 0, n);
+	}
+}
@@ -3,42 +3,489 @@ package main.repositories;
 import main.models.Product;
 import main.utils.Query;
 import main.abstracts.repositories.Repository;
+import main.utils.CapacityPolicy;
+import main.utils.SegmentedArray;
+import main.enumerations.ProductSortableFields;
+import main.enumerations.ProductStorageMode;
 import main.enumerations.SortOrder;
+import main.errors.AppException;
+import main.errors.BadRequestException;
+import main.errors.InternalAppException;
+import main.utils.PostingIndex;
+import main.utils.RankedSkipList;
+import main.utils.TrigramIndex;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.function.Predicate;
 
 public class ProductRepository extends Repository<Product> {
 	private static ProductRepository instance;
+	// One ordered index per ProductSortableFields value (names use the one the
+	// base repository keeps), updated on every mutation so sorted pages are
+	// read instead of re-sorting the catalog.
+	private final RankedSkipList<LocalDateTime, Product> createdAtIndex = new RankedSkipList<>(
+			LocalDateTime::compareTo);
+	private final RankedSkipList<Double, Product> priceIndex = new RankedSkipList<>(Double::compare);
+	private final RankedSkipList<Integer, Product> quantityIndex = new RankedSkipList<>(Integer::compare);
+	private final TrigramIndex<Product> nameSearchIndex = new TrigramIndex<>();
+	// Products by category id; products without a category are left out.
+	private final PostingIndex<Product> categoryIndex = new PostingIndex<>();
+	// In COLUMNAR and MAPPED mode the slots hold ProductRow flyweights over
+	// these columns; MAPPED swaps in a MappedProductColumns.
+	private ProductColumns columns = new HeapProductColumns(lock);
+	private ProductStorageMode storageMode = ProductStorageMode.OBJECTS;
+	// Set while openMappedStorage indexes the rows it loaded, so a failed load
+	// rolls back the indexes without erasing the records from the files.
+	private boolean loading;
 
 	private ProductRepository() {
 		this(DEFAULT_CAPACITY);
 	}
 
 	private ProductRepository(int capacity) {
+		if (capacity == 0)
+			capacity = 1;
 		this.capacity = capacity;
-		this.datas = new Product[capacity];
+		this.capacityPolicy = CapacityPolicy.DEFAULT.withInitialCapacity(capacity);
+		this.datas = SegmentedArray.wrap(new Product[capacity]);
 		this.size = 0;
 	}
 
-	public static ProductRepository getInstance() {
+	public static synchronized ProductRepository getInstance() {
 		if (instance == null) {
 			instance = new ProductRepository();
 		}
 		return instance;
 	}
 
-	public static ProductRepository getInstance(int capacity) {
+	public static synchronized ProductRepository getInstance(int capacity) {
 		if (instance == null) {
 			instance = new ProductRepository(capacity);
 		}
 		return instance;
 	}
 
+	public ProductStorageMode getStorageMode() {
+		return storageMode;
+	}
+
+	// Products added from now on are stored in the given mode. Only an empty
+	// repository can switch, so every product is always stored one way.
+	// MAPPED needs a directory, see openMappedStorage.
+	public void setStorageMode(ProductStorageMode storageMode) {
+		if (storageMode == null)
+			throw new BadRequestException("Storage mode cannot be null.");
+		if (storageMode == ProductStorageMode.MAPPED && this.storageMode != ProductStorageMode.MAPPED)
+			throw new BadRequestException("Mapped storage must be opened with a directory.");
+
+		long stamp = lock.writeLock();
+		try {
+			if (size > 0 && storageMode != this.storageMode)
+				throw new BadRequestException("Storage mode can only be changed while the repository is empty.");
+			if (storageMode != ProductStorageMode.MAPPED)
+				closeMappedStorage();
+			this.storageMode = storageMode;
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	// Switches an empty repository to products stored in memory-mapped files
+	// under `directory` and loads whatever those files already hold. Records
+	// are read in place; only the indexes are built on the heap.
+	public void openMappedStorage(Path directory) {
+		if (directory == null)
+			throw new BadRequestException("Storage directory cannot be null.");
+
+		long stamp = lock.writeLock();
+		try {
+			if (size > 0)
+				throw new BadRequestException("Storage mode can only be changed while the repository is empty.");
+			closeMappedStorage();
+
+			MappedProductColumns mapped = MappedProductColumns.open(directory, lock);
+			try {
+				int live = mapped.compactLive();
+				Product[] rows = new Product[live];
+				for (int slot = 0; slot < live; slot++)
+					rows[slot] = new ProductRow(mapped, slot);
+				this.columns = mapped;
+				this.storageMode = ProductStorageMode.MAPPED;
+				loading = true;
+				addAllLocked(rows);
+			} catch (RuntimeException e) {
+				this.columns = new HeapProductColumns(lock);
+				this.storageMode = ProductStorageMode.OBJECTS;
+				mapped.close();
+				throw e;
+			} finally {
+				loading = false;
+			}
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	// Forces mapped changes out to disk. A no-op in the other modes.
+	public void flush() {
+		long stamp = lock.readLock();
+		try {
+			if (columns instanceof MappedProductColumns mapped)
+				mapped.flush();
+		} catch (AppException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new InternalAppException("Failed to flush products: " + e.getMessage());
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	private void closeMappedStorage() {
+		if (columns instanceof MappedProductColumns mapped) {
+			mapped.close();
+			columns = new HeapProductColumns(lock);
+		}
+	}
+
+	@Override
+	protected Product store(Product data, int slot) {
+		if (storageMode == ProductStorageMode.OBJECTS)
+			return data;
+		// Rows loaded from mapped storage are already in place.
+		if (data instanceof ProductRow row && row.isAt(columns, slot))
+			return row;
+		return columns.write(slot, data);
+	}
+
+	@Override
+	protected void released(Product data, int slot) {
+		if (data instanceof ProductRow row) {
+			row.detach();
+			if (!loading)
+				columns.release(slot);
+		}
+	}
+
+	// The slot is rewritten in place and stays live throughout, so mapped
+	// storage never holds the product as released while it is replaced.
+	@Override
+	protected Product replaced(Product previous, Product data, int slot) {
+		if (previous instanceof ProductRow row)
+			row.detach();
+		return store(data, slot);
+	}
+
+	@Override
+	protected void moved(Product data, int from, int to) {
+		if (data instanceof ProductRow row) {
+			// Readers holding the row must see it at `to` before `from` is
+			// released and later reused.
+			columns.copy(from, to);
+			row.moveTo(to);
+			columns.release(from);
+		}
+	}
+
+	@Override
+	protected void onAdded(Product data, long sequence) {
+		createdAtIndex.insert(data.getCreatedAt(), sequence, data);
+		priceIndex.insert(data.getPrice(), sequence, data);
+		quantityIndex.insert(data.getQuantity(), sequence, data);
+		nameSearchIndex.add(sequence, data.getName(), data);
+		if (data.getCategoryId() != null)
+			categoryIndex.add(data.getCategoryId(), sequence, data);
+	}
+
+	@Override
+	protected void onAddedAll(Product[] added, long firstSequence) {
+		int count = added.length;
+		createdAtIndex.insertAll(count, i -> added[i].getCreatedAt(), i -> firstSequence + i, i -> added[i]);
+		priceIndex.insertAll(count, i -> added[i].getPrice(), i -> firstSequence + i, i -> added[i]);
+		quantityIndex.insertAll(count, i -> added[i].getQuantity(), i -> firstSequence + i, i -> added[i]);
+		for (int i = 0; i < count; i++) {
+			nameSearchIndex.add(firstSequence + i, added[i].getName(), added[i]);
+			Integer categoryId = added[i].getCategoryId();
+			if (categoryId != null)
+				categoryIndex.add(categoryId, firstSequence + i, added[i]);
+		}
+	}
+
+	@Override
+	protected void onRemoved(Product data, long sequence) {
+		createdAtIndex.remove(sequence);
+		priceIndex.remove(sequence);
+		quantityIndex.remove(sequence);
+		nameSearchIndex.remove(sequence);
+		categoryIndex.remove(sequence);
+	}
+
+	@Override
+	protected void onCleared() {
+		createdAtIndex.clear();
+		priceIndex.clear();
+		quantityIndex.clear();
+		nameSearchIndex.clear();
+		categoryIndex.clear();
+		columns.clear();
+	}
+
+	// Products whose name contains the keyword, ignoring case, in repository
+	// order. Keywords of three or more characters are answered from the
+	// trigram index; shorter ones fall back to scanning the catalog.
+	public Query<Product> searchByName(String keyword) {
+		if (keyword == null)
+			throw new BadRequestException("Keyword cannot be null.");
+
+		if (!TrigramIndex.isSearchable(keyword)) {
+			String needle = keyword.toLowerCase();
+			return this.query(q -> Query.of(q.filter(p -> p.getName().toLowerCase().contains(needle)).getResult()));
+		}
+
+		return readLocked(() -> {
+			Product[][] matches = { new Product[16] };
+			int[] count = { 0 };
+			nameSearchIndex.search(keyword, p -> {
+				if (count[0] == matches[0].length)
+					matches[0] = Arrays.copyOf(matches[0], count[0] * 2);
+				matches[0][count[0]++] = p;
+			});
+			return Query.of(Arrays.copyOf(matches[0], count[0]));
+		});
+	}
+
+	// Products in the category, in insertion order, read from the category
+	// index: O(k) for a category of k products.
+	public Query<Product> findByCategory(Integer categoryId) {
+		if (categoryId == null)
+			throw new BadRequestException("Category id cannot be null.");
+
+		return readLocked(() -> {
+			Product[] rows = new Product[categoryIndex.count(categoryId)];
+			int[] count = { 0 };
+			categoryIndex.forEach(categoryId, p -> rows[count[0]++] = p);
+			return Query.of(rows);
+		});
+	}
+
+	public int countByCategory(Integer categoryId) {
+		if (categoryId == null)
+			throw new BadRequestException("Category id cannot be null.");
+		return readLocked(() -> categoryIndex.count(categoryId));
+	}
+
+	private RankedSkipList<?, Product> sortIndex(ProductSortableFields sortBy) {
+		return switch (sortBy) {
+			case NAME -> sortedNameIndex;
+			case CREATED_AT -> createdAtIndex;
+			case PRICE -> priceIndex;
+			case QUANTITY -> quantityIndex;
+		};
+	}
+
+	// Reads one page straight from the ordered index: O(log n + limit).
+	public Product[] sortedPage(ProductSortableFields sortBy, SortOrder order, int page, int limit) {
+		if (page < 1)
+			throw new BadRequestException("Page number must be greater than 0");
+		if (limit < 1)
+			throw new BadRequestException("Limit must be greater than 0");
+
+		RankedSkipList<?, Product> index = sortIndex(sortBy);
+		long from = (long) (page - 1) * limit;
+		return readLocked(() -> {
+			if (from >= index.size())
+				return new Product[0];
+
+			Product[] rows = new Product[(int) Math.min(limit, index.size() - from)];
+			int[] count = { 0 };
+			if (order == SortOrder.DESC)
+				index.forEachDescending((int) from, rows.length, p -> rows[count[0]++] = p);
+			else
+				index.forEachAscending((int) from, rows.length, p -> rows[count[0]++] = p);
+			return rows;
+		});
+	}
+
+	// Products with a price in [min, max] in ascending price order, walked
+	// from the price index: O(log n + k) for k matches.
+	public Query<Product> findByPriceRange(double min, double max) {
+		return findByPriceRange(min, max, SortOrder.ASC, 1, Integer.MAX_VALUE);
+	}
+
+	// One page of the products with a price in [min, max], ordered by price.
+	// Only the page is walked: O(log n + limit).
+	public Query<Product> findByPriceRange(double min, double max, SortOrder order, int page, int limit) {
+		if (Double.isNaN(min) || Double.isNaN(max))
+			throw new BadRequestException("Price bounds must be numbers");
+		if (min > max)
+			throw new BadRequestException("Minimum price cannot be greater than maximum price");
+		// The index orders -0.0 before 0.0; a zero bound takes in both.
+		return Query.of(rangePage(priceIndex, min == 0 ? -0.0 : min, max + 0.0, order, page, limit));
+	}
+
+	public int countByPriceRange(double min, double max) {
+		if (Double.isNaN(min) || Double.isNaN(max) || min > max)
+			return 0;
+		return rangeCount(priceIndex, min == 0 ? -0.0 : min, max + 0.0);
+	}
+
+	// Products with a quantity in [min, max] in ascending quantity order, such
+	// as a low-stock report: O(log n + k).
+	public Query<Product> findByQuantityRange(int min, int max) {
+		return findByQuantityRange(min, max, SortOrder.ASC, 1, Integer.MAX_VALUE);
+	}
+
+	public Query<Product> findByQuantityRange(int min, int max, SortOrder order, int page, int limit) {
+		if (min > max)
+			throw new BadRequestException("Minimum quantity cannot be greater than maximum quantity");
+		return Query.of(rangePage(quantityIndex, min, max, order, page, limit));
+	}
+
+	public int countByQuantityRange(int min, int max) {
+		return min > max ? 0 : rangeCount(quantityIndex, min, max);
+	}
+
+	// Visits products in `sortBy` order until the visitor returns false, so a
+	// caller that filters as it goes can stop once it has a page. Visitors run
+	// under the read lock and must not call back into the repository.
+	public void scanSorted(ProductSortableFields sortBy, SortOrder order, Predicate<Product> visitor) {
+		RankedSkipList<?, Product> index = sortIndex(sortBy);
+		readLocked(() -> {
+			scan(index, 0, index.size(), order, visitor);
+			return null;
+		});
+	}
+
+	// Like scanSorted over the products with a price in [min, max].
+	public void scanPriceRange(double min, double max, SortOrder order, Predicate<Product> visitor) {
+		double low = min == 0 ? -0.0 : min;
+		double high = max + 0.0;
+		readLocked(() -> {
+			scan(priceIndex, priceIndex.rankOf(low), priceIndex.rankAfter(high), order, visitor);
+			return null;
+		});
+	}
+
+	public void scanQuantityRange(int min, int max, SortOrder order, Predicate<Product> visitor) {
+		readLocked(() -> {
+			scan(quantityIndex, quantityIndex.rankOf(min), quantityIndex.rankAfter(max), order, visitor);
+			return null;
+		});
+	}
+
+	// Walks the ranks [from, to) in `order`.
+	private static <K> void scan(RankedSkipList<K, Product> index, int from, int to, SortOrder order,
+			Predicate<Product> visitor) {
+		int[] left = { to - from };
+		if (left[0] <= 0)
+			return;
+		if (order == SortOrder.DESC)
+			index.forEachDescendingFrom(index.size() - to, (key, p) -> visitor.test(p) && --left[0] > 0);
+		else
+			index.forEachFrom(from, (key, p) -> visitor.test(p) && --left[0] > 0);
+	}
+
+	// Upper bound on the products searchByName(keyword) returns, without
+	// running the search.
+	public int estimateNameMatches(String keyword) {
+		if (keyword == null)
+			throw new BadRequestException("Keyword cannot be null.");
+		if (!TrigramIndex.isSearchable(keyword))
+			return size;
+		return readLocked(() -> nameSearchIndex.estimate(keyword));
+	}
+
+	private <K> int rangeCount(RankedSkipList<K, Product> index, K min, K max) {
+		return readLocked(() -> index.rankAfter(max) - index.rankOf(min));
+	}
+
+	// The keys in [min, max] hold the ranks [rankOf(min), rankAfter(max)), so
+	// a page is reached by rank and walked without touching the rest.
+	private <K> Product[] rangePage(RankedSkipList<K, Product> index, K min, K max, SortOrder order, int page,
+			int limit) {
+		if (page < 1)
+			throw new BadRequestException("Page number must be greater than 0");
+		if (limit < 1)
+			throw new BadRequestException("Limit must be greater than 0");
+
+		long skip = (long) (page - 1) * limit;
+		return readLocked(() -> {
+			int from = index.rankOf(min);
+			int to = index.rankAfter(max);
+			if (skip >= to - from)
+				return new Product[0];
+
+			Product[] rows = new Product[(int) Math.min(limit, to - from - skip)];
+			int[] count = { 0 };
+			if (order == SortOrder.DESC)
+				index.forEachDescending(index.size() - to + (int) skip, rows.length, p -> rows[count[0]++] = p);
+			else
+				index.forEachAscending(from + (int) skip, rows.length, p -> rows[count[0]++] = p);
+			return rows;
+		});
+	}
+
+	// Products with a price in [min, max], in repository order. Columnar
+	// storage answers this from the price column alone.
+	public Query<Product> filterByPrice(double min, double max) {
+		if (min > max)
+			throw new BadRequestException("Minimum price cannot be greater than maximum price");
+		if (storageMode == ProductStorageMode.OBJECTS)
+			return this.query(q -> Query.of(q.filter(p -> p.getPrice() >= min && p.getPrice() <= max).getResult()));
+		return readLocked(() -> rowsAt(columns.slotsWithPrice(end, min, max)));
+	}
+
+	// Products with a quantity in [min, max], in repository order.
+	public Query<Product> filterByQuantity(int min, int max) {
+		if (min > max)
+			throw new BadRequestException("Minimum quantity cannot be greater than maximum quantity");
+		if (storageMode == ProductStorageMode.OBJECTS)
+			return this.query(
+					q -> Query.of(q.filter(p -> p.getQuantity() >= min && p.getQuantity() <= max).getResult()));
+		return readLocked(() -> rowsAt(columns.slotsWithQuantity(end, min, max)));
+	}
+
+	private Query<Product> rowsAt(int[] slots) {
+		Product[] rows = new Product[slots.length];
+		for (int i = 0; i < slots.length; i++)
+			rows[i] = datas.get(slots[i]);
+		return Query.of(rows);
+	}
+
+	public Query<Product> sortBy(ProductSortableFields sortBy, SortOrder order) {
+		// Full price and quantity sorts over columns are primitive merge sorts;
+		// the skip lists stay in use for pages, which only walk `limit` nodes.
+		boolean descending = order == SortOrder.DESC;
+		if (storageMode != ProductStorageMode.OBJECTS && sortBy == ProductSortableFields.PRICE)
+			return readLocked(() -> rowsAt(columns.slotsByPrice(end, descending)));
+		if (storageMode != ProductStorageMode.OBJECTS && sortBy == ProductSortableFields.QUANTITY)
+			return readLocked(() -> rowsAt(columns.slotsByQuantity(end, descending)));
+
+		RankedSkipList<?, Product> index = sortIndex(sortBy);
+		return readLocked(() -> {
+			Product[] rows = new Product[index.size()];
+			int[] count = { 0 };
+			if (order == SortOrder.DESC)
+				index.forEachDescending(0, rows.length, p -> rows[count[0]++] = p);
+			else
+				index.forEach(p -> rows[count[0]++] = p);
+			return Query.of(rows);
+		});
+	}
+
+	@Override
+	public Query<Product> sortByCreatedAt(SortOrder order) {
+		return sortBy(ProductSortableFields.CREATED_AT, order);
+	}
+
 	public Query<Product> sortByPrice() {
 		return sortByPrice(SortOrder.ASC);
 	}
 
 	public Query<Product> sortByPrice(SortOrder order) {
-		int flag = (order == SortOrder.ASC) ? 1 : -1;
-		return this.query().sort((e1, e2) -> Double.compare(e1.getPrice(), e2.getPrice()) * flag);
+		return sortBy(ProductSortableFields.PRICE, order);
 	}
 
 	public Query<Product> sortByPrice(Query<Product> base) {
@@ -46,8 +493,12 @@ public class ProductRepository extends Repository<Product> {
 	}
 
 	public Query<Product> sortByPrice(Query<Product> base, SortOrder order) {
+		return base.sort(priceComparator(order));
+	}
+
+	public Comparator<Product> priceComparator(SortOrder order) {
 		int flag = (order == SortOrder.ASC) ? 1 : -1;
-		return base.sort((e1, e2) -> Double.compare(e1.getPrice(), e2.getPrice()) * flag);
+		return (e1, e2) -> Double.compare(e1.getPrice(), e2.getPrice()) * flag;
 	}
 
 	public Query<Product> sortByQuantity() {
@@ -55,8 +506,7 @@ public class ProductRepository extends Repository<Product> {
 	}
 
 	public Query<Product> sortByQuantity(SortOrder order) {
-		int flag = (order == SortOrder.ASC) ? 1 : -1;
-		return this.query().sort((e1, e2) -> Integer.compare(e1.getQuantity(), e2.getQuantity()) * flag);
+		return sortBy(ProductSortableFields.QUANTITY, order);
 	}
 
 	public Query<Product> sortByQuantity(Query<Product> base) {
@@ -64,7 +514,11 @@ public class ProductRepository extends Repository<Product> {
 	}
 
 	public Query<Product> sortByQuantity(Query<Product> base, SortOrder order) {
+		return base.sort(quantityComparator(order));
+	}
+
+	public Comparator<Product> quantityComparator(SortOrder order) {
 		int flag = (order == SortOrder.ASC) ? 1 : -1;
-		return base.sort((e1, e2) -> Integer.compare(e1.getQuantity(), e2.getQuantity()) * flag);
+		return (e1, e2) -> Integer.compare(e1.getQuantity(), e2.getQuantity()) * flag;
 	}
 }
\ No newline at end of file
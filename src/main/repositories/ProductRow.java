@@ -0,0 +1,181 @@
+package main.repositories;
+
+import java.lang.invoke.VarHandle;
+import java.time.LocalDateTime;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+
+import main.models.Product;
+
+/**
+ * Flyweight Product backed by one slot of {@link ProductColumns}. Reads and
+ * writes go straight to the columns. Once the repository releases the slot,
+ * the row detaches: it copies the values into its own fields and keeps
+ * serving them, so references handed out earlier never see another product.
+ *
+ * Reads take no lock. The repository changes a row's slot (moving it or
+ * detaching it) before it releases, overwrites or reuses the old one, so a
+ * value read while the slot stayed the same belongs to this row; otherwise
+ * the read is retried. Writes hold the repository's write lock.
+ */
+final class ProductRow extends Product {
+	private final ProductColumns columns;
+	private volatile int slot;
+
+	ProductRow(ProductColumns columns, int slot) {
+		this.columns = columns;
+		this.slot = slot;
+	}
+
+	private interface ColumnReader<R> {
+		R read(ProductColumns columns, int slot);
+	}
+
+	boolean isAt(ProductColumns columns, int slot) {
+		return this.columns == columns && this.slot == slot;
+	}
+
+	// Called with the write lock held, once the row's values are in `slot`
+	// and before the old slot is released.
+	void moveTo(int slot) {
+		this.slot = slot;
+		VarHandle.storeStoreFence();
+	}
+
+	// Called with the write lock held, before the slot is released.
+	void detach() {
+		int from = slot;
+		if (from < 0)
+			return;
+		this.id = columns.id(from);
+		this.name = columns.name(from);
+		this.createdAt = ProductColumns.fromEpochMillis(columns.createdAt(from));
+		this.updatedAt = ProductColumns.fromEpochMillis(columns.updatedAt(from));
+		int categoryId = columns.categoryId(from);
+		super.setPrice(columns.price(from));
+		super.setQuantity(columns.quantity(from));
+		super.setCategoryId(categoryId == ProductColumns.NO_CATEGORY ? null : categoryId);
+		super.setDescription(columns.description(from));
+		// The volatile write publishes the copied fields to readers.
+		slot = -1;
+		VarHandle.storeStoreFence();
+	}
+
+	private <R> R read(ColumnReader<R> column, Supplier<R> detached) {
+		while (true) {
+			int at = slot;
+			if (at < 0)
+				return detached.get();
+			R value;
+			try {
+				value = column.read(columns, at);
+			} catch (RuntimeException e) {
+				// A slot released or reused meanwhile may not be readable.
+				if (slot == at)
+					throw e;
+				continue;
+			}
+			VarHandle.acquireFence();
+			if (slot == at)
+				return value;
+		}
+	}
+
+	private void write(Runnable detached, IntConsumer column) {
+		long stamp = columns.lock.writeLock();
+		try {
+			detached.run();
+			int at = slot;
+			if (at >= 0)
+				column.accept(at);
+		} finally {
+			columns.lock.unlockWrite(stamp);
+		}
+	}
+
+	@Override
+	public Long getId() {
+		return read(ProductColumns::id, super::getId);
+	}
+
+	@Override
+	public void setId(Long id) {
+		write(() -> super.setId(id), at -> columns.setId(at, id));
+	}
+
+	@Override
+	public String getName() {
+		return read(ProductColumns::name, super::getName);
+	}
+
+	@Override
+	public void setName(String name) {
+		write(() -> super.setName(name), at -> columns.setName(at, name));
+	}
+
+	@Override
+	public LocalDateTime getCreatedAt() {
+		return read((c, at) -> ProductColumns.fromEpochMillis(c.createdAt(at)), super::getCreatedAt);
+	}
+
+	@Override
+	public void setCreatedAt(LocalDateTime createdAt) {
+		write(() -> super.setCreatedAt(createdAt),
+				at -> columns.setCreatedAt(at, ProductColumns.toEpochMillis(createdAt)));
+	}
+
+	@Override
+	public LocalDateTime getUpdateAt() {
+		return read((c, at) -> ProductColumns.fromEpochMillis(c.updatedAt(at)), super::getUpdateAt);
+	}
+
+	@Override
+	public void setUpdatedAt(LocalDateTime updatedAt) {
+		write(() -> super.setUpdatedAt(updatedAt),
+				at -> columns.setUpdatedAt(at, ProductColumns.toEpochMillis(updatedAt)));
+	}
+
+	@Override
+	public double getPrice() {
+		return read(ProductColumns::price, super::getPrice);
+	}
+
+	@Override
+	public void setPrice(double price) {
+		write(() -> super.setPrice(price), at -> columns.setPrice(at, price));
+	}
+
+	@Override
+	public Integer getQuantity() {
+		return read(ProductColumns::quantity, super::getQuantity);
+	}
+
+	@Override
+	public void setQuantity(Integer quantity) {
+		write(() -> super.setQuantity(quantity), at -> columns.setQuantity(at, quantity));
+	}
+
+	@Override
+	public Integer getCategoryId() {
+		return read((c, at) -> {
+			int categoryId = c.categoryId(at);
+			return categoryId == ProductColumns.NO_CATEGORY ? null : categoryId;
+		}, super::getCategoryId);
+	}
+
+	@Override
+	public void setCategoryId(Integer categoryId) {
+		write(() -> super.setCategoryId(categoryId),
+				at -> columns.setCategoryId(at, categoryId == null ? ProductColumns.NO_CATEGORY : categoryId));
+	}
+
+	@Override
+	public String getDescription() {
+		return read(ProductColumns::description, super::getDescription);
+	}
+
+	@Override
+	public void setDescription(String description) {
+		write(() -> super.setDescription(description), at -> columns.setDescription(at, description));
+	}
+}
@@ -1,47 +1,69 @@
 package main.repositories;
 
 import main.abstracts.repositories.Repository;
+import main.utils.CapacityPolicy;
+import main.utils.SegmentedArray;
 import main.errors.BadRequestException;
 import main.models.User;
+import main.utils.IgnoreCaseIndex;
 
 public class UserRepository extends Repository<User> {
 	private static UserRepository instance;
+	private final IgnoreCaseIndex<User> emailIndex = new IgnoreCaseIndex<>();
 
 	private UserRepository() {
 		this(DEFAULT_CAPACITY);
 	}
 
 	private UserRepository(int capacity) {
+		if (capacity == 0)
+			capacity = 1;
 		this.capacity = capacity;
-		this.datas = new User[capacity];
+		this.capacityPolicy = CapacityPolicy.DEFAULT.withInitialCapacity(capacity);
+		this.datas = SegmentedArray.wrap(new User[capacity]);
 		this.size = 0;
 	}
 
-	public static UserRepository getInstance() {
+	public static synchronized UserRepository getInstance() {
 		if (instance == null) {
 			instance = new UserRepository();
 		}
 		return instance;
 	}
 
-	public static UserRepository getInstance(int capacity) {
+	public static synchronized UserRepository getInstance(int capacity) {
 		if (instance == null) {
 			instance = new UserRepository(capacity);
 		}
 		return instance;
 	}
 
+	@Override
+	protected void onAdded(User data, long sequence) {
+		emailIndex.add(data.getEmail().trim(), sequence, data);
+	}
+
+	@Override
+	protected void onRemoved(User data, long sequence) {
+		emailIndex.remove(sequence);
+	}
+
+	@Override
+	protected void onCleared() {
+		emailIndex.clear();
+	}
+
 	public User findByEmail(String email) {
 		if (email == null || email.isEmpty())
 			throw new BadRequestException("Email cannot be null or empty.");
 
-		return this.query().find(e -> e.getEmail().trim().equalsIgnoreCase(email));
+		return read(() -> emailIndex.first(email));
 	}
 
 	public boolean existsByEmail(String email) {
 		if (email == null || email.isEmpty())
 			throw new BadRequestException("Email cannot be null or empty.");
 
-		return this.query().find(e -> e.getEmail().trim().equalsIgnoreCase(email)) != null;
+		return read(() -> emailIndex.contains(email));
 	}
 }
\ No newline at end of file
@@ -1,9 +1,16 @@
 package main.services;
 
+import main.catalog.ExportReport;
+import main.catalog.ImportReport;
+import main.catalog.ProductExporter;
+import main.catalog.ProductImporter;
 import main.interfaces.services.IProductService;
 import main.models.Product;
+import main.query.ProductQuery;
+import main.query.ProductQueryPlanner;
+import main.query.QueryResult;
 import main.repositories.ProductRepository;
-import main.utils.Query;
+import main.enumerations.CatalogFormat;
 import main.enumerations.ProductSearchableFields;
 import main.enumerations.ProductSortableFields;
 import main.enumerations.SortOrder;
@@ -11,6 +18,11 @@ import main.errors.AppException;
 import main.errors.BadRequestException;
 import main.errors.NotFoundException;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.function.Consumer;
+
 public class ProductService implements IProductService {
     private static ProductService instance;
     private final ProductRepository productRepo;
@@ -71,17 +83,66 @@ public class ProductService implements IProductService {
     }
 
     @Override
-    public Product[] getList(int page, int limit) {
-        return productRepo.query().paginate(page, limit).getResult();
+    public void addAll(Product[] data) {
+        try {
+            productRepo.addAll(data);
+        } catch (BadRequestException e) {
+            throw new BadRequestException("Invalid product data: " + e.getMessage());
+        } catch (AppException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new AppException("Failed to add products: " + e.getMessage());
+        }
     }
 
     @Override
-    public Product[] getList(int page, int limit, ProductSortableFields sortBy, SortOrder order) {
-        Query<Product> q = productRepo.query();
+    public void upsertAll(Product[] data) {
+        try {
+            productRepo.upsertAll(data);
+        } catch (BadRequestException e) {
+            throw new BadRequestException("Invalid product data: " + e.getMessage());
+        } catch (AppException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new AppException("Failed to upsert products: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void deleteAll(long[] ids) {
+        try {
+            productRepo.removeAll(ids);
+        } catch (AppException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new AppException("Failed to delete products: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public ImportReport importCatalog(Path file, CatalogFormat format, Consumer<ImportReport> onProgress) {
+        if (file == null || format == null || onProgress == null)
+            throw new BadRequestException("Catalog file, format and progress listener cannot be null.");
+        if (!Files.isRegularFile(file))
+            throw new NotFoundException("Catalog file " + file + " not found.");
+        return new ProductImporter(productRepo).onProgress(onProgress).importFile(file, format);
+    }
+
+    @Override
+    public ExportReport exportCatalog(Path file, CatalogFormat format) {
+        if (file == null || format == null)
+            throw new BadRequestException("Export file and format cannot be null.");
+        return new ProductExporter(productRepo).exportFile(file, format);
+    }
 
-        q = sorted(q, sortBy, order);
+    @Override
+    public Product[] getList(int page, int limit) {
+        return productRepo.query(q -> q.paginate(page, limit).getResult());
+    }
 
-        return q.paginate(page, limit).getResult();
+    @Override
+    public Product[] getList(int page, int limit, ProductSortableFields sortBy, SortOrder order) {
+        return productRepo.sortedPage(sortBy, order, page, limit);
     }
 
     @Override
@@ -94,24 +155,63 @@ public class ProductService implements IProductService {
             ProductSortableFields sortBy,
             SortOrder order) {
 
-        Query<Product> q = productRepo.query();
-
-        q = switch (searchBy) {
-            case NAME -> q.filter(p -> p.getName().toLowerCase().contains(keyword.toLowerCase()));
-            default -> q;
+        Comparator<Product> comparator = comparator(sortBy, order);
+        return switch (searchBy) {
+            case NAME -> productRepo.searchByName(keyword).parallel().sortedPage(comparator, page, limit).getResult();
+            default -> productRepo.query(q -> q.parallel().sortedPage(comparator, page, limit).getResult());
         };
+    }
+
+    @Override
+    public Product[] getByCategory(Integer categoryId, int page, int limit) {
+        return getByCategory(categoryId, page, limit, ProductSortableFields.NAME, SortOrder.ASC);
+    }
 
-        q = sorted(q, sortBy, order);
+    // Sorts only the category's products, taken from the category index.
+    @Override
+    public Product[] getByCategory(Integer categoryId, int page, int limit, ProductSortableFields sortBy,
+            SortOrder order) {
+        if (sortBy == null || order == null)
+            throw new BadRequestException("Sort field and order cannot be null.");
+
+        return productRepo.findByCategory(categoryId).sortedPage(comparator(sortBy, order), page, limit).getResult();
+    }
+
+    // Price bands and stock reports are paged straight from the ordered
+    // indexes, in price or quantity order.
+    @Override
+    public Product[] getByPriceRange(double min, double max, int page, int limit, SortOrder order) {
+        if (order == null)
+            throw new BadRequestException("Sort order cannot be null.");
+        return productRepo.findByPriceRange(min, max, order, page, limit).getResult();
+    }
 
-        return q.paginate(page, limit).getResult();
+    @Override
+    public Product[] getByQuantityRange(int min, int max, int page, int limit, SortOrder order) {
+        if (order == null)
+            throw new BadRequestException("Sort order cannot be null.");
+        return productRepo.findByQuantityRange(min, max, order, page, limit).getResult();
+    }
+
+    // Filters, sorts and pages in one pass, from the index the planner finds
+    // most selective.
+    @Override
+    public QueryResult query(ProductQuery query) {
+        return new ProductQueryPlanner(productRepo).execute(query);
+    }
+
+    // The plan query(query) would follow, without running it.
+    @Override
+    public String explain(ProductQuery query) {
+        return new ProductQueryPlanner(productRepo).plan(query).explain();
     }
 
-    private Query<Product> sorted(Query<Product> query, ProductSortableFields sortBy, SortOrder order) {
+    private Comparator<Product> comparator(ProductSortableFields sortBy, SortOrder order) {
         return switch (sortBy) {
-            case PRICE -> productRepo.sortByPrice(query, order);
-            case QUANTITY -> productRepo.sortByQuantity(query, order);
-            case NAME -> productRepo.sortByName(query, order);
-            case CREATED_AT -> productRepo.sortByCreatedAt(query, order);
+            case PRICE -> productRepo.priceComparator(order);
+            case QUANTITY -> productRepo.quantityComparator(order);
+            case NAME -> productRepo.nameComparator(order);
+            case CREATED_AT -> productRepo.createdAtComparator(order);
         };
     }
 
@@ -0,0 +1,120 @@
+package main.utils;
+
+import main.errors.BadRequestException;
+
+/**
+ * How a repository sizes its backing array: the capacity it starts from, how
+ * it grows when full, and when it gives memory back. Policies are immutable;
+ * the {@code with*} methods return a modified copy.
+ *
+ * Growth is geometric by default. A chunk size switches it to fixed-size
+ * steps and makes the repository keep its entities in segments of that size,
+ * so growing allocates new segments instead of copying the whole array.
+ * Shrinking happens on clear, back to the initial capacity, and/or once the
+ * live entries drop below the shrink load factor.
+ *
+ * DEFAULT doubles like repositories always did, but unlike before it shrinks
+ * on clear; use withShrinkOnClear(false) to keep the array. Repositories
+ * created with a capacity of 0 start from 1, as the policy requires.
+ */
+public final class CapacityPolicy {
+	public static final CapacityPolicy DEFAULT = new CapacityPolicy(5, 2.0, 0, true, 0.0);
+
+	// Arrays much closer to Integer.MAX_VALUE can fail to allocate on some VMs.
+	private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+	private final int initialCapacity;
+	private final double growthFactor;
+	private final int chunkSize;
+	private final boolean shrinkOnClear;
+	private final double shrinkLoadFactor;
+
+	private CapacityPolicy(int initialCapacity, double growthFactor, int chunkSize, boolean shrinkOnClear,
+			double shrinkLoadFactor) {
+		if (initialCapacity < 1)
+			throw new BadRequestException("Initial capacity must be greater than 0");
+		if (!(growthFactor > 1.0))
+			throw new BadRequestException("Growth factor must be greater than 1");
+		if (chunkSize < 0)
+			throw new BadRequestException("Chunk size cannot be negative");
+		if (!(shrinkLoadFactor >= 0.0 && shrinkLoadFactor < 0.5))
+			throw new BadRequestException("Shrink load factor must be in [0, 0.5)");
+
+		this.initialCapacity = initialCapacity;
+		this.growthFactor = growthFactor;
+		this.chunkSize = chunkSize;
+		this.shrinkOnClear = shrinkOnClear;
+		this.shrinkLoadFactor = shrinkLoadFactor;
+	}
+
+	public CapacityPolicy withInitialCapacity(int initialCapacity) {
+		return new CapacityPolicy(initialCapacity, growthFactor, chunkSize, shrinkOnClear, shrinkLoadFactor);
+	}
+
+	public CapacityPolicy withGrowthFactor(double growthFactor) {
+		return new CapacityPolicy(initialCapacity, growthFactor, chunkSize, shrinkOnClear, shrinkLoadFactor);
+	}
+
+	// 0 turns chunked growth off.
+	public CapacityPolicy withChunkSize(int chunkSize) {
+		return new CapacityPolicy(initialCapacity, growthFactor, chunkSize, shrinkOnClear, shrinkLoadFactor);
+	}
+
+	public CapacityPolicy withShrinkOnClear(boolean shrinkOnClear) {
+		return new CapacityPolicy(initialCapacity, growthFactor, chunkSize, shrinkOnClear, shrinkLoadFactor);
+	}
+
+	// 0 turns load-factor shrinking off.
+	public CapacityPolicy withShrinkLoadFactor(double shrinkLoadFactor) {
+		return new CapacityPolicy(initialCapacity, growthFactor, chunkSize, shrinkOnClear, shrinkLoadFactor);
+	}
+
+	public int getInitialCapacity() {
+		return initialCapacity;
+	}
+
+	public double getGrowthFactor() {
+		return growthFactor;
+	}
+
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	public boolean isShrinkOnClear() {
+		return shrinkOnClear;
+	}
+
+	public double getShrinkLoadFactor() {
+		return shrinkLoadFactor;
+	}
+
+	// Capacity to grow to from `current` so that at least `required` slots fit.
+	public int grow(int current, int required) {
+		if (required > MAX_CAPACITY)
+			throw new BadRequestException("Required capacity exceeds the maximum array size");
+
+		long next;
+		if (chunkSize > 0)
+			next = ((long) required + chunkSize - 1) / chunkSize * chunkSize;
+		else
+			next = Math.max((long) Math.ceil(current * growthFactor), current + 1L);
+		return (int) Math.min(MAX_CAPACITY, Math.max(next, required));
+	}
+
+	// Capacity to shrink to when `live` entries remain, or `current` when the
+	// array should be kept as it is.
+	public int shrink(int current, int live) {
+		if (shrinkLoadFactor == 0.0 || current <= initialCapacity || live >= current * shrinkLoadFactor)
+			return current;
+		// Leave room for the array to grow back a little without copying again.
+		return Math.min(current, Math.max(initialCapacity, grow(live, live)));
+	}
+
+	@Override
+	public String toString() {
+		return "CapacityPolicy [initialCapacity=" + initialCapacity + ", growthFactor=" + growthFactor
+				+ ", chunkSize=" + chunkSize + ", shrinkOnClear=" + shrinkOnClear + ", shrinkLoadFactor="
+				+ shrinkLoadFactor + "]";
+	}
+}
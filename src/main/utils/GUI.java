@@ -1,11 +1,16 @@
 package main.utils;
 
+import java.nio.file.Path;
 import java.util.Scanner;
 import main.services.AuthService;
 import main.services.ProductService;
 import main.services.SessionService;
 import main.models.User;
 import main.models.Product;
+import main.catalog.ExportReport;
+import main.catalog.ImportReport;
+import main.catalog.RejectedRow;
+import main.enumerations.CatalogFormat;
 
 public class GUI {
     private static GUI instance;
@@ -61,6 +66,9 @@ public class GUI {
             System.out.println("3. Delete Product (Admin required)");
             System.out.println("4. Search Product By Name");
             System.out.println("5. Logout");
+            System.out.println("6. Import Products From File (Admin required)");
+            System.out.println("7. Export Products To File (Admin required)");
+            System.out.println("8. View Products By Category");
             System.out.println("0. Exit");
         }
         System.out.println("------------------------------------------");
@@ -173,4 +181,84 @@ public class GUI {
         printProductTable(products, page, "Search Results");
         waitForEnter(scanner);
     }
+
+    public void showProductsByCategory(Scanner scanner) {
+        System.out.println("=== Products By Category ===");
+        int categoryId;
+        try {
+            System.out.print("Category ID: ");
+            categoryId = Integer.parseInt(scanner.nextLine().trim());
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid category ID.");
+            waitForEnter(scanner);
+            return;
+        }
+        int page = 1, size = 5;
+        System.out.print("Enter page number (default 1): ");
+        String pageInput = scanner.nextLine();
+        if (!pageInput.isEmpty()) {
+            try {
+                page = Math.max(1, Integer.parseInt(pageInput));
+            } catch (NumberFormatException e) {
+                System.out.println("Invalid page number. Using default page 1.");
+            }
+        }
+        Product[] products = ProductService.getInstance().getByCategory(categoryId, page, size);
+        printProductTable(products, page, "Category " + categoryId);
+        waitForEnter(scanner);
+    }
+
+    public void importProducts(Scanner scanner) {
+        if (currentUser == null || !AuthService.getInstance().isAdmin(currentUser.getId())) {
+            System.out.println("You do not have permission to import products.");
+            waitForEnter(scanner);
+            return;
+        }
+        System.out.println("=== Import Products ===");
+        System.out.print("File (.csv, .jsonl or .bin): ");
+        String file = scanner.nextLine().trim();
+        CatalogFormat format = CatalogFormat.fromFileName(file);
+        if (format == null) {
+            System.out.println("Unsupported file type. Use a .csv, .jsonl or .bin file.");
+            waitForEnter(scanner);
+            return;
+        }
+        try {
+            ImportReport report = ProductService.getInstance().importCatalog(Path.of(file), format,
+                    progress -> System.out.print("\r" + progress));
+            System.out.println();
+            System.out.println("Import finished: " + report);
+            for (RejectedRow row : report.getRejections())
+                System.out.println("  Skipped " + row);
+            if (report.getRowsRejected() > report.getRejections().size())
+                System.out.println("  ... and " + (report.getRowsRejected() - report.getRejections().size()) + " more");
+        } catch (Exception e) {
+            System.out.println("Failed to import products: " + e.getMessage());
+        }
+        waitForEnter(scanner);
+    }
+
+    public void exportProducts(Scanner scanner) {
+        if (currentUser == null || !AuthService.getInstance().isAdmin(currentUser.getId())) {
+            System.out.println("You do not have permission to export products.");
+            waitForEnter(scanner);
+            return;
+        }
+        System.out.println("=== Export Products ===");
+        System.out.print("File (.csv, .jsonl or .bin): ");
+        String file = scanner.nextLine().trim();
+        CatalogFormat format = CatalogFormat.fromFileName(file);
+        if (format == null) {
+            System.out.println("Unsupported file type. Use a .csv, .jsonl or .bin file.");
+            waitForEnter(scanner);
+            return;
+        }
+        try {
+            ExportReport report = ProductService.getInstance().exportCatalog(Path.of(file), format);
+            System.out.println("Export finished: " + report);
+        } catch (Exception e) {
+            System.out.println("Failed to export products: " + e.getMessage());
+        }
+        waitForEnter(scanner);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,189 @@
+package main.utils;
+
+import java.util.Arrays;
+
+/**
+ * Hash index from case-insensitive string keys to the entries stored under
+ * them. Keys are hashed and compared character by character with case folded,
+ * so a lookup never allocates a lower-cased copy of the probe string.
+ *
+ * Each key keeps its entries ordered by sequence number; {@link #first} returns
+ * the entry with the lowest one, which is the one a front-to-back scan of the
+ * owning repository would have found.
+ */
+public class IgnoreCaseIndex<V> {
+	private static final int DEFAULT_CAPACITY = 16;
+	private static final float LOAD_FACTOR = 0.6f;
+
+	private Bucket[] table;
+	private int buckets;
+	private int mask;
+	private int threshold;
+	private final LongObjectHashMap<Bucket> bySequence = new LongObjectHashMap<>();
+
+	private static final class Bucket {
+		final String key;
+		final int hash;
+		long[] sequences = new long[1];
+		Object[] values = new Object[1];
+		int size;
+
+		Bucket(String key, int hash) {
+			this.key = key;
+			this.hash = hash;
+		}
+
+		void add(long sequence, Object value) {
+			int at = Arrays.binarySearch(sequences, 0, size, sequence);
+			if (at >= 0) {
+				values[at] = value;
+				return;
+			}
+			at = -at - 1;
+			if (size == sequences.length) {
+				sequences = Arrays.copyOf(sequences, size * 2);
+				values = Arrays.copyOf(values, size * 2);
+			}
+			System.arraycopy(sequences, at, sequences, at + 1, size - at);
+			System.arraycopy(values, at, values, at + 1, size - at);
+			sequences[at] = sequence;
+			values[at] = value;
+			size++;
+		}
+
+		void remove(long sequence) {
+			int at = Arrays.binarySearch(sequences, 0, size, sequence);
+			if (at < 0)
+				return;
+			System.arraycopy(sequences, at + 1, sequences, at, size - at - 1);
+			System.arraycopy(values, at + 1, values, at, size - at - 1);
+			values[--size] = null;
+		}
+	}
+
+	public IgnoreCaseIndex() {
+		allocate(DEFAULT_CAPACITY);
+	}
+
+	public int size() {
+		return bySequence.size();
+	}
+
+	public void add(String key, long sequence, V value) {
+		if (bySequence.containsKey(sequence))
+			remove(sequence);
+
+		int hash = hash(key);
+		int i = hash & mask;
+		Bucket bucket;
+		while ((bucket = table[i]) != null && !(bucket.hash == hash && matches(bucket.key, key)))
+			i = (i + 1) & mask;
+
+		if (bucket == null) {
+			bucket = new Bucket(key, hash);
+			table[i] = bucket;
+			if (++buckets > threshold)
+				rehash(table.length << 1);
+		}
+		bucket.add(sequence, value);
+		bySequence.put(sequence, bucket);
+	}
+
+	public void remove(long sequence) {
+		Bucket bucket = bySequence.remove(sequence);
+		if (bucket == null)
+			return;
+
+		bucket.remove(sequence);
+		if (bucket.size == 0)
+			removeBucket(bucket);
+	}
+
+	public void clear() {
+		Arrays.fill(table, null);
+		buckets = 0;
+		bySequence.clear();
+	}
+
+	public boolean contains(String key) {
+		return find(key) != null;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V first(String key) {
+		Bucket bucket = find(key);
+		return bucket == null ? null : (V) bucket.values[0];
+	}
+
+	public int count(String key) {
+		Bucket bucket = find(key);
+		return bucket == null ? 0 : bucket.size;
+	}
+
+	private Bucket find(String key) {
+		if (key == null)
+			return null;
+		int hash = hash(key);
+		int i = hash & mask;
+		Bucket bucket;
+		while ((bucket = table[i]) != null) {
+			if (bucket.hash == hash && matches(bucket.key, key))
+				return bucket;
+			i = (i + 1) & mask;
+		}
+		return null;
+	}
+
+	private void removeBucket(Bucket target) {
+		int gap = target.hash & mask;
+		while (table[gap] != target)
+			gap = (gap + 1) & mask;
+
+		// Backward-shift deletion, as in LongIntHashMap.
+		int i = gap;
+		while (true) {
+			i = (i + 1) & mask;
+			if (table[i] == null)
+				break;
+			int home = table[i].hash & mask;
+			boolean movable = (gap <= i) ? (home <= gap || home > i) : (home <= gap && home > i);
+			if (movable) {
+				table[gap] = table[i];
+				gap = i;
+			}
+		}
+		table[gap] = null;
+		buckets--;
+	}
+
+	private void rehash(int newTableSize) {
+		Bucket[] old = table;
+		allocate(newTableSize);
+		for (Bucket bucket : old) {
+			if (bucket == null)
+				continue;
+			int i = bucket.hash & mask;
+			while (table[i] != null)
+				i = (i + 1) & mask;
+			table[i] = bucket;
+		}
+	}
+
+	private void allocate(int tableSize) {
+		table = new Bucket[tableSize];
+		mask = tableSize - 1;
+		threshold = (int) (tableSize * LOAD_FACTOR);
+	}
+
+	private static boolean matches(String stored, String probe) {
+		return stored.length() == probe.length() && stored.regionMatches(true, 0, probe, 0, probe.length());
+	}
+
+	// Folds case the same way String.equalsIgnoreCase compares characters.
+	private static int hash(String key) {
+		int h = 0;
+		for (int i = 0; i < key.length(); i++)
+			h = 31 * h + Character.toLowerCase(Character.toUpperCase(key.charAt(i)));
+		return h ^ (h >>> 16);
+	}
+}
@@ -0,0 +1,167 @@
+package main.utils;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from primitive {@code long} keys to {@code int}
+ * values. Uses linear probing with backward-shift deletion, so lookups never
+ * box the key and removals leave no tombstones behind.
+ */
+public class LongIntHashMap {
+	public static final int MISSING = -1;
+
+	private static final int DEFAULT_CAPACITY = 16;
+	private static final float LOAD_FACTOR = 0.6f;
+
+	private long[] keys;
+	private int[] values;
+	private boolean[] used;
+	private int size;
+	private int mask;
+	private int threshold;
+
+	public LongIntHashMap() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public LongIntHashMap(int expectedSize) {
+		allocate(tableSizeFor(expectedSize));
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public boolean containsKey(long key) {
+		return get(key) != MISSING;
+	}
+
+	public int get(long key) {
+		int i = hash(key) & mask;
+		while (used[i]) {
+			if (keys[i] == key)
+				return values[i];
+			i = (i + 1) & mask;
+		}
+		return MISSING;
+	}
+
+	public int put(long key, int value) {
+		int i = hash(key) & mask;
+		while (used[i]) {
+			if (keys[i] == key) {
+				int old = values[i];
+				values[i] = value;
+				return old;
+			}
+			i = (i + 1) & mask;
+		}
+
+		used[i] = true;
+		keys[i] = key;
+		values[i] = value;
+		if (++size > threshold)
+			rehash(keys.length << 1);
+		return MISSING;
+	}
+
+	public int remove(long key) {
+		int i = hash(key) & mask;
+		while (used[i]) {
+			if (keys[i] == key) {
+				int old = values[i];
+				shiftBack(i);
+				size--;
+				return old;
+			}
+			i = (i + 1) & mask;
+		}
+		return MISSING;
+	}
+
+	public void clear() {
+		Arrays.fill(used, false);
+		size = 0;
+	}
+
+	// Shrinks the table to the smallest one that holds the current entries.
+	public void trimToSize() {
+		int tableSize = tableSizeFor(size);
+		if (tableSize < keys.length)
+			rehash(tableSize);
+	}
+
+	// Approximate heap footprint of the key, value and occupancy tables.
+	public long estimatedBytes() {
+		return (long) keys.length * (Long.BYTES + Integer.BYTES + 1) + 3 * 16;
+	}
+
+	public void ensureCapacity(int expectedSize) {
+		int tableSize = tableSizeFor(expectedSize);
+		if (tableSize > keys.length)
+			rehash(tableSize);
+	}
+
+	// Closes the gap left at `gap` by moving back any entry of the same probe
+	// chain that would otherwise become unreachable.
+	private void shiftBack(int gap) {
+		int i = gap;
+		while (true) {
+			i = (i + 1) & mask;
+			if (!used[i])
+				break;
+
+			int home = hash(keys[i]) & mask;
+			boolean movable = (gap <= i) ? (home <= gap || home > i) : (home <= gap && home > i);
+			if (movable) {
+				keys[gap] = keys[i];
+				values[gap] = values[i];
+				gap = i;
+			}
+		}
+		used[gap] = false;
+	}
+
+	private void rehash(int newTableSize) {
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		boolean[] oldUsed = used;
+
+		allocate(newTableSize);
+		for (int j = 0; j < oldKeys.length; j++) {
+			if (!oldUsed[j])
+				continue;
+			int i = hash(oldKeys[j]) & mask;
+			while (used[i])
+				i = (i + 1) & mask;
+			used[i] = true;
+			keys[i] = oldKeys[j];
+			values[i] = oldValues[j];
+		}
+	}
+
+	private void allocate(int tableSize) {
+		keys = new long[tableSize];
+		values = new int[tableSize];
+		used = new boolean[tableSize];
+		mask = tableSize - 1;
+		threshold = (int) (tableSize * LOAD_FACTOR);
+	}
+
+	private static int tableSizeFor(int expectedSize) {
+		long needed = (long) Math.ceil(Math.max(1, expectedSize) / (double) LOAD_FACTOR);
+		int tableSize = DEFAULT_CAPACITY;
+		while (tableSize < needed && tableSize < (1 << 30))
+			tableSize <<= 1;
+		return tableSize;
+	}
+
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+}
@@ -0,0 +1,160 @@
+package main.utils;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from primitive {@code long} keys to object values,
+ * the object counterpart of {@link LongIntHashMap}. Missing keys map to null.
+ */
+public class LongObjectHashMap<V> {
+	private static final int DEFAULT_CAPACITY = 16;
+	private static final float LOAD_FACTOR = 0.6f;
+
+	private long[] keys;
+	private V[] values;
+	private boolean[] used;
+	private int size;
+	private int mask;
+	private int threshold;
+
+	public LongObjectHashMap() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public LongObjectHashMap(int expectedSize) {
+		allocate(tableSizeFor(expectedSize));
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public boolean containsKey(long key) {
+		return indexOf(key) >= 0;
+	}
+
+	public V get(long key) {
+		int i = indexOf(key);
+		return i < 0 ? null : values[i];
+	}
+
+	private int indexOf(long key) {
+		int i = hash(key) & mask;
+		while (used[i]) {
+			if (keys[i] == key)
+				return i;
+			i = (i + 1) & mask;
+		}
+		return -1;
+	}
+
+	public V put(long key, V value) {
+		int i = hash(key) & mask;
+		while (used[i]) {
+			if (keys[i] == key) {
+				V old = values[i];
+				values[i] = value;
+				return old;
+			}
+			i = (i + 1) & mask;
+		}
+
+		used[i] = true;
+		keys[i] = key;
+		values[i] = value;
+		if (++size > threshold)
+			rehash(keys.length << 1);
+		return null;
+	}
+
+	public V remove(long key) {
+		int i = hash(key) & mask;
+		while (used[i]) {
+			if (keys[i] == key) {
+				V old = values[i];
+				shiftBack(i);
+				size--;
+				return old;
+			}
+			i = (i + 1) & mask;
+		}
+		return null;
+	}
+
+	public void clear() {
+		Arrays.fill(used, false);
+		Arrays.fill(values, null);
+		size = 0;
+	}
+
+	public void ensureCapacity(int expectedSize) {
+		int tableSize = tableSizeFor(expectedSize);
+		if (tableSize > keys.length)
+			rehash(tableSize);
+	}
+
+	// Closes the gap left at `gap` by moving back any entry of the same probe
+	// chain that would otherwise become unreachable.
+	private void shiftBack(int gap) {
+		int i = gap;
+		while (true) {
+			i = (i + 1) & mask;
+			if (!used[i])
+				break;
+
+			int home = hash(keys[i]) & mask;
+			boolean movable = (gap <= i) ? (home <= gap || home > i) : (home <= gap && home > i);
+			if (movable) {
+				keys[gap] = keys[i];
+				values[gap] = values[i];
+				gap = i;
+			}
+		}
+		used[gap] = false;
+		values[gap] = null;
+	}
+
+	private void rehash(int newTableSize) {
+		long[] oldKeys = keys;
+		V[] oldValues = values;
+		boolean[] oldUsed = used;
+
+		allocate(newTableSize);
+		for (int j = 0; j < oldKeys.length; j++) {
+			if (!oldUsed[j])
+				continue;
+			int i = hash(oldKeys[j]) & mask;
+			while (used[i])
+				i = (i + 1) & mask;
+			used[i] = true;
+			keys[i] = oldKeys[j];
+			values[i] = oldValues[j];
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void allocate(int tableSize) {
+		keys = new long[tableSize];
+		values = (V[]) new Object[tableSize];
+		used = new boolean[tableSize];
+		mask = tableSize - 1;
+		threshold = (int) (tableSize * LOAD_FACTOR);
+	}
+
+	private static int tableSizeFor(int expectedSize) {
+		long needed = (long) Math.ceil(Math.max(1, expectedSize) / (double) LOAD_FACTOR);
+		int tableSize = DEFAULT_CAPACITY;
+		while (tableSize < needed && tableSize < (1 << 30))
+			tableSize <<= 1;
+		return tableSize;
+	}
+
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+}
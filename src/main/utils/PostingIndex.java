@@ -0,0 +1,112 @@
+package main.utils;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Index from int keys, such as category ids, to the entries stored under
+ * them. Each key keeps a posting list of its entries ordered by sequence
+ * number, so listing one key costs O(k) for its k entries whatever the size
+ * of the owning repository.
+ *
+ * Repositories append entries in sequence order, which adds them at the end
+ * of their list; removing one shifts the rest of that list down.
+ */
+public class PostingIndex<V> {
+	private final LongObjectHashMap<Postings> byKey = new LongObjectHashMap<>();
+	private final LongObjectHashMap<Postings> bySequence = new LongObjectHashMap<>();
+
+	private static final class Postings {
+		final int key;
+		long[] sequences = new long[4];
+		Object[] values = new Object[4];
+		int size;
+
+		Postings(int key) {
+			this.key = key;
+		}
+
+		void add(long sequence, Object value) {
+			int at = size;
+			if (size > 0 && sequences[size - 1] >= sequence) {
+				at = Arrays.binarySearch(sequences, 0, size, sequence);
+				if (at >= 0) {
+					values[at] = value;
+					return;
+				}
+				at = -at - 1;
+			}
+			if (size == sequences.length) {
+				sequences = Arrays.copyOf(sequences, size * 2);
+				values = Arrays.copyOf(values, size * 2);
+			}
+			System.arraycopy(sequences, at, sequences, at + 1, size - at);
+			System.arraycopy(values, at, values, at + 1, size - at);
+			sequences[at] = sequence;
+			values[at] = value;
+			size++;
+		}
+
+		void remove(long sequence) {
+			int at = Arrays.binarySearch(sequences, 0, size, sequence);
+			if (at < 0)
+				return;
+			System.arraycopy(sequences, at + 1, sequences, at, size - at - 1);
+			System.arraycopy(values, at + 1, values, at, size - at - 1);
+			values[--size] = null;
+		}
+	}
+
+	public int size() {
+		return bySequence.size();
+	}
+
+	// Number of distinct keys with at least one entry.
+	public int keyCount() {
+		return byKey.size();
+	}
+
+	public void add(int key, long sequence, V value) {
+		Postings current = bySequence.get(sequence);
+		if (current != null && current.key != key)
+			remove(sequence);
+
+		Postings postings = byKey.get(key);
+		if (postings == null) {
+			postings = new Postings(key);
+			byKey.put(key, postings);
+		}
+		postings.add(sequence, value);
+		bySequence.put(sequence, postings);
+	}
+
+	public void remove(long sequence) {
+		Postings postings = bySequence.remove(sequence);
+		if (postings == null)
+			return;
+
+		postings.remove(sequence);
+		if (postings.size == 0)
+			byKey.remove(postings.key);
+	}
+
+	public void clear() {
+		byKey.clear();
+		bySequence.clear();
+	}
+
+	public int count(int key) {
+		Postings postings = byKey.get(key);
+		return postings == null ? 0 : postings.size;
+	}
+
+	// Visits the entries under `key` in sequence order.
+	@SuppressWarnings("unchecked")
+	public void forEach(int key, Consumer<V> visitor) {
+		Postings postings = byKey.get(key);
+		if (postings == null)
+			return;
+		for (int i = 0; i < postings.size; i++)
+			visitor.accept((V) postings.values[i]);
+	}
+}
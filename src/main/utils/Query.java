@@ -2,25 +2,58 @@ package main.utils;
 
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 import java.util.function.Consumer;
+import java.util.function.IntSupplier;
 import java.util.function.Predicate;
 import java.util.function.UnaryOperator;
 import main.errors.BadRequestException;
 import main.errors.InternalAppException;
 
 public class Query<T> {
+	private static final int MIN_BUFFER = 16;
+	// Below this many source elements a parallel query runs sequentially;
+	// splitting smaller inputs costs more than it saves.
+	public static final int PARALLEL_THRESHOLD = 8_192;
+	private static final int MIN_CHUNK = 1_024;
+	@SuppressWarnings("rawtypes")
+	private static final Stage[] NO_STAGES = new Stage[0];
+
 	private int size;
-	private T[] result;
+	private SegmentedArray<T> source;
+	// Queries may be read-only views over a slice of someone else's array,
+	// flat or segmented; segments are walked in place, never flattened.
+	// `offset` is where the slice starts; `modStamp` reports the owner's
+	// structural modification count so stale views fail fast.
+	private int offset;
+	private IntSupplier modStamp;
+	private int expectedStamp;
+	// Intermediate operations are only recorded here. Terminal operations run
+	// them fused, in a single pass over the source slice.
+	@SuppressWarnings("unchecked")
+	private Stage<T>[] stages = NO_STAGES;
+	// Pool used by parallel queries, or null for sequential execution.
+	private ForkJoinPool pool;
 
 	public Query() {
 	}
 
 	public int getSize() {
-		return size;
+		return count();
 	}
 
 	public T[] getResult() {
-		return Arrays.copyOf(this.result, this.size);
+		try {
+			if (stages.length == 0) {
+				checkForComodification();
+				return this.source.copyRange(this.offset, this.offset + this.size);
+			}
+			return materialize();
+		} catch (Exception e) {
+			throw InternalAppException.from(e);
+		}
 	}
 
 	public void setSize(int size) {
@@ -32,7 +65,7 @@ public class Query<T> {
 	private void setResult(T[] data) {
 		if (data == null)
 			throw new BadRequestException("Data array cannot be null");
-		this.result = data;
+		this.source = SegmentedArray.wrap(data);
 		setSize(data.length);
 	}
 
@@ -42,45 +75,133 @@ public class Query<T> {
 		return query;
 	}
 
+	public static <T> Query<T> view(T[] data, int offset, int length, IntSupplier modStamp) {
+		if (data == null)
+			throw new BadRequestException("Data array cannot be null");
+		return view(SegmentedArray.wrap(data), offset, length, modStamp);
+	}
+
+	public static <T> Query<T> view(SegmentedArray<T> data, int offset, int length, IntSupplier modStamp) {
+		if (data == null)
+			throw new BadRequestException("Data array cannot be null");
+		if (offset < 0 || length < 0 || (long) offset + length > data.capacity())
+			throw new BadRequestException("View bounds are out of range");
+
+		Query<T> query = new Query<>();
+		query.source = data;
+		query.offset = offset;
+		query.setSize(length);
+		query.modStamp = modStamp;
+		query.expectedStamp = (modStamp == null) ? 0 : modStamp.getAsInt();
+		return query;
+	}
+
+	private Query<T> slice(int from, int length) {
+		Query<T> query = new Query<>();
+		query.source = this.source;
+		query.offset = this.offset + from;
+		query.size = length;
+		query.modStamp = this.modStamp;
+		query.expectedStamp = this.expectedStamp;
+		query.pool = this.pool;
+		return query;
+	}
+
+	private Query<T> then(Stage<T> stage) {
+		Query<T> query = slice(0, this.size);
+		query.stages = Arrays.copyOf(this.stages, this.stages.length + 1);
+		query.stages[this.stages.length] = stage;
+		return query;
+	}
+
+	private void checkForComodification() {
+		if (modStamp != null && modStamp.getAsInt() != expectedStamp)
+			throw new InternalAppException("Source was modified while the query was in use");
+	}
+
+	// ================= Execution Mode =================
+
+	public Query<T> parallel() {
+		return parallel(ForkJoinPool.commonPool());
+	}
+
+	public Query<T> parallel(ForkJoinPool pool) {
+		if (pool == null)
+			throw new BadRequestException("Pool cannot be null");
+		Query<T> query = slice(0, this.size);
+		query.stages = this.stages;
+		query.pool = pool;
+		return query;
+	}
+
+	public Query<T> sequential() {
+		Query<T> query = slice(0, this.size);
+		query.stages = this.stages;
+		query.pool = null;
+		return query;
+	}
+
+	public boolean isParallel() {
+		return pool != null;
+	}
+
+	private boolean runsInParallel() {
+		return pool != null && this.size >= PARALLEL_THRESHOLD;
+	}
+
+	private Query<T> derived(T[] rows) {
+		Query<T> query = Query.of(rows);
+		query.pool = this.pool;
+		return query;
+	}
+
 	// ================= Intermediate Operations =================
 
 	public Query<T> filter(Predicate<T> callback) {
+		if (callback == null)
+			throw new BadRequestException("Filter callback cannot be null");
+		return then(Stage.filter(callback));
+	}
+
+	// Arrays.sort on objects is TimSort: stable, O(n log n), and close to
+	// linear on input that is already sorted or made of presorted runs.
+	public Query<T> sort(Comparator<T> comparator) {
 		try {
-			T[] result = this.getResult();
-			int count = 0;
-			for (int i = 0; i < this.size; i++) {
-				if (callback.test(this.result[i])) {
-					result[count++] = this.result[i];
-				}
-			}
-			return Query.of(Arrays.copyOf(result, count));
+			T[] sorted = this.getResult();
+			if (pool != null && sorted.length >= PARALLEL_THRESHOLD)
+				// parallelSort is a stable merge sort; running it from inside the
+				// pool makes it fork onto that pool instead of the common one.
+				pool.invoke(ForkJoinTask.adapt(() -> Arrays.parallelSort(sorted, comparator)));
+			else
+				Arrays.sort(sorted, comparator);
+			return derived(sorted);
 		} catch (Exception e) {
 			throw InternalAppException.from(e);
 		}
 	}
 
-	public Query<T> sort(Comparator<T> comparator) {
-		try {
-			T[] sorted = this.getResult();
-			boolean swapped;
-
-			for (int i = 0; i < this.size - 1; i++) {
-				swapped = false;
-				for (int j = 0; j < this.size - i - 1; j++) {
-					if (comparator.compare(sorted[j], sorted[j + 1]) > 0) {
-						T temp = sorted[j];
-						sorted[j] = sorted[j + 1];
-						sorted[j + 1] = temp;
-						swapped = true;
-					}
-				}
+	// Returns the same rows as sort(comparator).paginate(page, limit), but only
+	// keeps the best page * limit elements in a bounded max-heap while scanning.
+	// Ties are broken by position, so the page matches what the stable sort gives.
+	public Query<T> sortedPage(Comparator<T> comparator, int page, int limit) {
+		if (page < 1)
+			throw new BadRequestException("Page number must be greater than 0");
+		if (limit < 1)
+			throw new BadRequestException("Limit must be greater than 0");
 
-				if (!swapped) {
-					break;
-				}
-			}
+		try {
+			int k = (int) Math.min((long) page * limit, this.size);
+			TopK<T> topK = new TopK<>(newArray(k), comparator);
+			if (runsInParallel() && statelessPrefix() == stages.length)
+				topKParallel(topK);
+			else
+				run(topK);
 
-			return Query.of(sorted);
+			long from = (long) (page - 1) * limit;
+			if (from >= topK.size)
+				return derived(newArray(0));
+			topK.sortAscending();
+			return derived(Arrays.copyOfRange(topK.items, (int) from, (int) Math.min(topK.size, from + limit)));
 		} catch (Exception e) {
 			throw InternalAppException.from(e);
 		}
@@ -89,21 +210,21 @@ public class Query<T> {
 	public Query<T> skip(int n) {
 		if (n < 0)
 			throw new BadRequestException("Skip count must be non-negative");
-		if (n == 0)
-			return Query.of(this.result);
+		if (stages.length > 0)
+			return then(Stage.skip(n));
 		if (n >= this.size)
-			return Query.of(Arrays.copyOf(this.result, 0));
-		T[] result = Arrays.copyOfRange(this.result, n, this.size);
-		return Query.of(result);
+			return slice(this.size, 0);
+		return slice(n, this.size - n);
 	}
 
 	public Query<T> limit(int n) {
 		if (n < 0)
 			throw new BadRequestException("Limit must be non-negative");
+		if (stages.length > 0)
+			return then(Stage.limit(n));
 		if (n >= this.size)
-			return Query.of(this.result);
-		T[] result = Arrays.copyOfRange(this.result, 0, n);
-		return Query.of(result);
+			return slice(0, this.size);
+		return slice(0, n);
 	}
 
 	public Query<T> paginate(int page, int limit) {
@@ -112,36 +233,36 @@ public class Query<T> {
 		if (limit < 1)
 			throw new BadRequestException("Limit must be greater than 0");
 
-		int start = (page - 1) * limit;
+		long start = (long) (page - 1) * limit;
+		if (stages.length > 0)
+			return then(Stage.skip(start)).then(Stage.limit(limit));
 		if (start >= this.size)
-			return Query.of(Arrays.copyOf(this.result, 0));
+			return slice(this.size, 0);
 
-		int end = Math.min(start + limit, this.size);
-		T[] result = Arrays.copyOfRange(this.result, start, end);
-		return Query.of(result);
+		int end = (int) Math.min(start + limit, this.size);
+		return slice((int) start, end - (int) start);
 	}
 
 	public Query<T> map(UnaryOperator<T> callback) {
-		try {
-			T[] copied = this.getResult();
-			for (int i = 0; i < this.getSize(); i++)
-				copied[i] = callback.apply(copied[i]);
-			return Query.of(copied);
-		} catch (Exception e) {
-			throw InternalAppException.from(e);
-		}
+		if (callback == null)
+			throw new BadRequestException("Map callback cannot be null");
+		return then(Stage.map(callback));
 	}
 
 	// ================= Terminal Operations =================
 
 	public T find(Predicate<T> callback) {
 		try {
-			T[] result = this.getResult();
-			for (int i = 0; i < this.size; i++) {
-				if (callback.test(this.result[i]))
-					return result[i];
-			}
-			return null;
+			Object[] found = new Object[1];
+			run(item -> {
+				if (!callback.test(item))
+					return true;
+				found[0] = item;
+				return false;
+			});
+			@SuppressWarnings("unchecked")
+			T item = (T) found[0];
+			return item;
 		} catch (Exception e) {
 			throw InternalAppException.from(e);
 		}
@@ -149,27 +270,428 @@ public class Query<T> {
 
 	public int indexOf(Predicate<T> callback) {
 		try {
-			for (int i = 0; i < this.size; i++) {
-				if (callback.test(this.result[i]))
-					return i;
-			}
-			return -1;
+			int[] position = { 0, -1 };
+			run(item -> {
+				if (callback.test(item)) {
+					position[1] = position[0];
+					return false;
+				}
+				position[0]++;
+				return true;
+			});
+			return position[1];
 		} catch (Exception e) {
 			throw InternalAppException.from(e);
 		}
 	}
 
+	// In parallel mode the callback is invoked concurrently from pool threads,
+	// in no particular order.
 	public void forEach(Consumer<T> callback) {
 		try {
-			T[] copied = this.getResult();
-			for (int i = 0; i < this.getSize(); i++)
-				callback.accept(copied[i]);
+			if (runsInParallel() && statelessPrefix() == stages.length) {
+				forEachParallel(callback);
+				return;
+			}
+			run(item -> {
+				checkForComodification();
+				callback.accept(item);
+				return true;
+			});
 		} catch (Exception e) {
 			throw InternalAppException.from(e);
 		}
 	}
 
 	public int count() {
-		return this.size;
+		if (stages.length == 0)
+			return this.size;
+		if (!hasFilter()) {
+			// Only map/skip/limit: the count follows from the arithmetic.
+			long count = this.size;
+			for (Stage<T> stage : stages) {
+				if (stage.kind == Stage.SKIP)
+					count = Math.max(0, count - stage.n);
+				else if (stage.kind == Stage.LIMIT)
+					count = Math.min(count, stage.n);
+			}
+			return (int) count;
+		}
+
+		try {
+			if (runsInParallel())
+				return countParallel();
+			int[] count = { 0 };
+			run(item -> {
+				count[0]++;
+				return true;
+			});
+			return count[0];
+		} catch (Exception e) {
+			throw InternalAppException.from(e);
+		}
+	}
+
+	// ================= Parallel Execution =================
+
+	// Number of leading filter/map stages. Those can run on independent chunks;
+	// skip and limit depend on global order and run afterwards.
+	private int statelessPrefix() {
+		int n = 0;
+		while (n < stages.length && (stages[n].kind == Stage.FILTER || stages[n].kind == Stage.MAP))
+			n++;
+		return n;
+	}
+
+	private interface ChunkJob {
+		void run(int chunk, int from, int to);
+	}
+
+	private final class ChunkTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int chunkSize;
+		private final int lo;
+		private final int hi;
+		private final ChunkJob job;
+
+		ChunkTask(int chunkSize, int lo, int hi, ChunkJob job) {
+			this.chunkSize = chunkSize;
+			this.lo = lo;
+			this.hi = hi;
+			this.job = job;
+		}
+
+		@Override
+		protected void compute() {
+			if (hi - lo == 1) {
+				int from = offset + lo * chunkSize;
+				job.run(lo, from, Math.min(from + chunkSize, offset + size));
+				return;
+			}
+			int mid = (lo + hi) >>> 1;
+			invokeAll(new ChunkTask(chunkSize, lo, mid, job), new ChunkTask(chunkSize, mid, hi, job));
+		}
+	}
+
+	private int chunkSize() {
+		return Math.max(MIN_CHUNK, this.size / (pool.getParallelism() * 4));
+	}
+
+	private void runChunks(int chunkSize, ChunkJob job) {
+		int chunks = (this.size + chunkSize - 1) / chunkSize;
+		checkForComodification();
+		pool.invoke(new ChunkTask(chunkSize, 0, chunks, job));
+		checkForComodification();
+	}
+
+	// Every chunk fills its own buffer; buffers are then joined in chunk order,
+	// so the output order is the same as the sequential pass.
+	private T[] materializeParallel() {
+		int prefix = statelessPrefix();
+		Stage<T>[] head = Arrays.copyOf(stages, prefix);
+		int chunkSize = chunkSize();
+		int chunks = (this.size + chunkSize - 1) / chunkSize;
+		Object[][] parts = new Object[chunks][];
+		int[] counts = new int[chunks];
+
+		runChunks(chunkSize, (chunk, from, to) -> {
+			T[] buffer = newArray(to - from);
+			int[] count = { 0 };
+			runRange(from, to, head, item -> {
+				buffer[count[0]++] = item;
+				return true;
+			});
+			parts[chunk] = buffer;
+			counts[chunk] = count[0];
+		});
+
+		int total = 0;
+		for (int count : counts)
+			total += count;
+		T[] rows = newArray(total);
+		int at = 0;
+		for (int chunk = 0; chunk < chunks; chunk++) {
+			System.arraycopy(parts[chunk], 0, rows, at, counts[chunk]);
+			at += counts[chunk];
+		}
+
+		if (prefix == stages.length)
+			return rows;
+		Query<T> rest = Query.of(rows);
+		rest.stages = Arrays.copyOfRange(stages, prefix, stages.length);
+		return rest.materialize();
+	}
+
+	private int countParallel() {
+		if (statelessPrefix() != stages.length)
+			return materializeParallel().length;
+
+		int chunkSize = chunkSize();
+		int[] counts = new int[(this.size + chunkSize - 1) / chunkSize];
+		runChunks(chunkSize, (chunk, from, to) -> {
+			int[] count = { 0 };
+			runRange(from, to, stages, item -> {
+				count[0]++;
+				return true;
+			});
+			counts[chunk] = count[0];
+		});
+
+		int total = 0;
+		for (int count : counts)
+			total += count;
+		return total;
+	}
+
+	// Each chunk keeps its own top k, tagging elements with their source
+	// position so the merged heap breaks ties exactly like the sequential pass.
+	private void topKParallel(TopK<T> merged) {
+		int chunkSize = chunkSize();
+		Object[] partials = new Object[(this.size + chunkSize - 1) / chunkSize];
+		runChunks(chunkSize, (chunk, from, to) -> {
+			TopK<T> partial = new TopK<>(newArray(merged.items.length), merged.comparator);
+			int[] position = { from - offset };
+			runRange(from, to, stages, item -> {
+				partial.offer(item, position[0]++);
+				return true;
+			});
+			partials[chunk] = partial;
+		});
+
+		for (Object partial : partials) {
+			@SuppressWarnings("unchecked")
+			TopK<T> chunkTop = (TopK<T>) partial;
+			for (int i = 0; i < chunkTop.size; i++)
+				merged.offer(chunkTop.items[i], chunkTop.sequence[i]);
+		}
+	}
+
+	private void forEachParallel(Consumer<T> callback) {
+		runChunks(chunkSize(), (chunk, from, to) -> runRange(from, to, stages, item -> {
+			callback.accept(item);
+			return true;
+		}));
+	}
+
+	// ================= Pipeline Execution =================
+
+	private interface Sink<T> {
+		// Returns false once the sink does not want any more elements.
+		boolean accept(T item);
+	}
+
+	private static final class Stage<T> {
+		static final int FILTER = 0;
+		static final int MAP = 1;
+		static final int SKIP = 2;
+		static final int LIMIT = 3;
+
+		final int kind;
+		final Predicate<T> predicate;
+		final UnaryOperator<T> mapper;
+		final long n;
+
+		private Stage(int kind, Predicate<T> predicate, UnaryOperator<T> mapper, long n) {
+			this.kind = kind;
+			this.predicate = predicate;
+			this.mapper = mapper;
+			this.n = n;
+		}
+
+		static <T> Stage<T> filter(Predicate<T> predicate) {
+			return new Stage<>(FILTER, predicate, null, 0);
+		}
+
+		static <T> Stage<T> map(UnaryOperator<T> mapper) {
+			return new Stage<>(MAP, null, mapper, 0);
+		}
+
+		static <T> Stage<T> skip(long n) {
+			return new Stage<>(SKIP, null, null, n);
+		}
+
+		static <T> Stage<T> limit(long n) {
+			return new Stage<>(LIMIT, null, null, n);
+		}
+	}
+
+	private boolean hasFilter() {
+		for (Stage<T> stage : stages) {
+			if (stage.kind == Stage.FILTER)
+				return true;
+		}
+		return false;
+	}
+
+	// Pushes every element of the source slice through all stages and into
+	// the sink, stopping as soon as a limit is exhausted or the sink is done.
+	private void run(Sink<T> sink) {
+		checkForComodification();
+		runRange(this.offset, this.offset + this.size, this.stages, sink);
+		checkForComodification();
+	}
+
+	private void runRange(int from, int to, Stage<T>[] stages, Sink<T> sink) {
+		long[] seen = new long[stages.length];
+
+		// One segment at a time, so the inner loop reads a plain array.
+		for (int base = from; base < to;) {
+			T[] segment = this.source.segmentFor(base);
+			int start = this.source.offsetIn(base);
+			int end = start + Math.min(to - base, segment.length - start);
+			base += end - start;
+
+			for (int i = start; i < end; i++) {
+				T item = segment[i];
+				boolean last = false;
+				boolean dropped = false;
+
+				for (int s = 0; s < stages.length && !dropped; s++) {
+					Stage<T> stage = stages[s];
+					switch (stage.kind) {
+						case Stage.FILTER:
+							dropped = !stage.predicate.test(item);
+							break;
+						case Stage.MAP:
+							item = stage.mapper.apply(item);
+							break;
+						case Stage.SKIP:
+							dropped = seen[s]++ < stage.n;
+							break;
+						default:
+							if (seen[s] >= stage.n)
+								return;
+							last |= ++seen[s] == stage.n;
+					}
+				}
+
+				if (dropped)
+					continue;
+				if (!sink.accept(item) || last)
+					return;
+			}
+		}
+	}
+
+	private T[] materialize() {
+		if (runsInParallel())
+			return materializeParallel();
+		if (!hasFilter()) {
+			T[] rows = newArray(count());
+			int[] count = { 0 };
+			run(item -> {
+				rows[count[0]++] = item;
+				return true;
+			});
+			return rows;
+		}
+
+		Buffer<T> buffer = new Buffer<>(newArray(Math.min(this.size, MIN_BUFFER)), this.size);
+		run(buffer);
+		return Arrays.copyOf(buffer.items, buffer.size);
+	}
+
+	private T[] newArray(int length) {
+		return this.source.newArray(length);
+	}
+
+	private static final class Buffer<T> implements Sink<T> {
+		T[] items;
+		int size;
+		final int maxSize;
+
+		Buffer(T[] items, int maxSize) {
+			this.items = items;
+			this.maxSize = maxSize;
+		}
+
+		@Override
+		public boolean accept(T item) {
+			if (size == items.length)
+				items = Arrays.copyOf(items, (int) Math.min(maxSize, Math.max(MIN_BUFFER, (long) size * 2)));
+			items[size++] = item;
+			return true;
+		}
+	}
+
+	// Bounded max-heap keeping the k best elements seen so far. Each element
+	// carries its arrival sequence, which breaks ties the way a stable sort does.
+	private static final class TopK<T> implements Sink<T> {
+		final T[] items;
+		final int[] sequence;
+		final Comparator<T> comparator;
+		int size;
+		int arrived;
+
+		TopK(T[] items, Comparator<T> comparator) {
+			this.items = items;
+			this.sequence = new int[items.length];
+			this.comparator = comparator;
+		}
+
+		@Override
+		public boolean accept(T item) {
+			offer(item, arrived++);
+			return true;
+		}
+
+		void offer(T item, int seq) {
+			int k = items.length;
+			if (size < k) {
+				items[size] = item;
+				sequence[size] = seq;
+				siftUp(size++);
+			} else if (k > 0 && ranksBefore(item, seq, items[0], sequence[0])) {
+				items[0] = item;
+				sequence[0] = seq;
+				siftDown(0, k);
+			}
+		}
+
+		// Heap sort in place: repeatedly move the worst element to the end.
+		void sortAscending() {
+			for (int end = size - 1; end > 0; end--) {
+				swap(0, end);
+				siftDown(0, end);
+			}
+		}
+
+		private boolean ranksBefore(T a, int seqA, T b, int seqB) {
+			int cmp = comparator.compare(a, b);
+			return cmp < 0 || (cmp == 0 && seqA < seqB);
+		}
+
+		private void siftUp(int index) {
+			while (index > 0) {
+				int parent = (index - 1) >>> 1;
+				if (!ranksBefore(items[parent], sequence[parent], items[index], sequence[index]))
+					break;
+				swap(parent, index);
+				index = parent;
+			}
+		}
+
+		private void siftDown(int index, int heapSize) {
+			int half = heapSize >>> 1;
+			while (index < half) {
+				int child = 2 * index + 1;
+				int right = child + 1;
+				if (right < heapSize && ranksBefore(items[child], sequence[child], items[right], sequence[right]))
+					child = right;
+				if (!ranksBefore(items[index], sequence[index], items[child], sequence[child]))
+					break;
+				swap(index, child);
+				index = child;
+			}
+		}
+
+		private void swap(int a, int b) {
+			T item = items[a];
+			items[a] = items[b];
+			items[b] = item;
+			int seq = sequence[a];
+			sequence[a] = sequence[b];
+			sequence[b] = seq;
+		}
 	}
 }
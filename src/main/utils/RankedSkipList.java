@@ -0,0 +1,347 @@
+package main.utils;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.SplittableRandom;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Ordered index kept as an indexable skip list. Entries are ordered by key and
+ * then by a unique sequence number, and every forward link records how many
+ * entries it skips, so reaching the entry at a given rank is O(log n).
+ *
+ * Entries are addressed by their sequence number, which lets callers remove an
+ * entry without knowing its key: the key captured at insertion time is kept in
+ * the node, so in-place mutation of the value does not lose the old position.
+ */
+public class RankedSkipList<K, V> {
+	private static final int MAX_LEVEL = 32;
+
+	private final Comparator<K> comparator;
+	private final Node<K, V> head = new Node<>(null, 0, null, MAX_LEVEL);
+	private final LongObjectHashMap<Node<K, V>> bySequence = new LongObjectHashMap<>();
+	private final SplittableRandom random = new SplittableRandom(0x5EED);
+	// Scratch space for insert, reused so an insert only allocates its node.
+	@SuppressWarnings("unchecked")
+	private final Node<K, V>[] update = (Node<K, V>[]) new Node<?, ?>[MAX_LEVEL];
+	private final int[] rank = new int[MAX_LEVEL];
+	private Node<K, V> tail;
+	private int level = 1;
+	private int size;
+
+	public RankedSkipList(Comparator<K> comparator) {
+		this.comparator = comparator;
+		head.width[0] = 1;
+	}
+
+	private static final class Node<K, V> {
+		final K key;
+		final long sequence;
+		V value;
+		final Node<K, V>[] next;
+		final int[] width;
+		Node<K, V> prev;
+
+		@SuppressWarnings("unchecked")
+		Node(K key, long sequence, V value, int level) {
+			this.key = key;
+			this.sequence = sequence;
+			this.value = value;
+			this.next = (Node<K, V>[]) new Node<?, ?>[level];
+			this.width = new int[level];
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean contains(long sequence) {
+		return bySequence.containsKey(sequence);
+	}
+
+	public void insert(K key, long sequence, V value) {
+		if (bySequence.containsKey(sequence))
+			remove(sequence);
+
+		Node<K, V>[] update = this.update;
+		int[] rank = this.rank;
+		Node<K, V> x = head;
+		for (int i = level - 1; i >= 0; i--) {
+			rank[i] = (i == level - 1) ? 0 : rank[i + 1];
+			while (x.next[i] != null && compare(x.next[i], key, sequence) < 0) {
+				rank[i] += x.width[i];
+				x = x.next[i];
+			}
+			update[i] = x;
+		}
+
+		int nodeLevel = randomLevel();
+		if (nodeLevel > level) {
+			for (int i = level; i < nodeLevel; i++) {
+				rank[i] = 0;
+				update[i] = head;
+				head.width[i] = size + 1;
+			}
+			level = nodeLevel;
+		}
+
+		Node<K, V> node = new Node<>(key, sequence, value, nodeLevel);
+		for (int i = 0; i < nodeLevel; i++) {
+			node.next[i] = update[i].next[i];
+			update[i].next[i] = node;
+			node.width[i] = update[i].width[i] - (rank[0] - rank[i]);
+			update[i].width[i] = rank[0] - rank[i] + 1;
+		}
+		for (int i = nodeLevel; i < level; i++)
+			update[i].width[i]++;
+
+		node.prev = (update[0] == head) ? null : update[0];
+		if (node.next[0] != null)
+			node.next[0].prev = node;
+		else
+			tail = node;
+
+		bySequence.put(sequence, node);
+		size++;
+	}
+
+	// Inserts `count` entries at once. A batch that is small next to the list
+	// is inserted entry by entry; a larger one is sorted, merged with the
+	// existing entries and the whole list relinked in one pass, which avoids
+	// a search through a large list per entry.
+	public void insertAll(int count, IntFunction<K> keyAt, IntToLongFunction sequenceAt, IntFunction<V> valueAt) {
+		if (count < 0)
+			throw new IllegalArgumentException("count must not be negative");
+		if ((long) count * 8 < size) {
+			for (int i = 0; i < count; i++)
+				insert(keyAt.apply(i), sequenceAt.applyAsLong(i), valueAt.apply(i));
+			return;
+		}
+
+		@SuppressWarnings("unchecked")
+		Node<K, V>[] added = (Node<K, V>[]) new Node<?, ?>[count];
+		int maxLevel = level;
+		for (int i = 0; i < count; i++) {
+			long sequence = sequenceAt.applyAsLong(i);
+			if (bySequence.containsKey(sequence))
+				remove(sequence);
+			added[i] = new Node<>(keyAt.apply(i), sequence, valueAt.apply(i), randomLevel());
+			maxLevel = Math.max(maxLevel, added[i].next.length);
+		}
+		// Stable, and close to linear when the batch is already in order.
+		Arrays.sort(added, (a, b) -> compare(a, b.key, b.sequence));
+
+		@SuppressWarnings("unchecked")
+		Node<K, V>[] existing = (Node<K, V>[]) new Node<?, ?>[size];
+		int n = 0;
+		for (Node<K, V> node = head.next[0]; node != null; node = node.next[0])
+			existing[n++] = node;
+		bySequence.ensureCapacity(size + count);
+		for (Node<K, V> node : added)
+			bySequence.put(node.sequence, node);
+
+		@SuppressWarnings("unchecked")
+		Node<K, V>[] last = (Node<K, V>[]) new Node<?, ?>[maxLevel];
+		int[] lastRank = new int[maxLevel];
+		Arrays.fill(last, head);
+		Node<K, V> previous = null;
+		int rank = 0;
+		for (int i = 0, j = 0; i < existing.length || j < added.length;) {
+			Node<K, V> node;
+			if (j == added.length || (i < existing.length && compare(existing[i], added[j].key, added[j].sequence) < 0))
+				node = existing[i++];
+			else
+				node = added[j++];
+			rank++;
+			for (int l = 0; l < node.next.length; l++) {
+				last[l].next[l] = node;
+				last[l].width[l] = rank - lastRank[l];
+				last[l] = node;
+				lastRank[l] = rank;
+			}
+			node.prev = previous;
+			previous = node;
+		}
+
+		size = existing.length + added.length;
+		for (int l = 0; l < maxLevel; l++) {
+			last[l].next[l] = null;
+			last[l].width[l] = size + 1 - lastRank[l];
+		}
+		tail = previous;
+		level = maxLevel;
+	}
+
+	public boolean remove(long sequence) {
+		Node<K, V> node = bySequence.remove(sequence);
+		if (node == null)
+			return false;
+
+		Node<K, V> x = head;
+		for (int i = level - 1; i >= 0; i--) {
+			while (x.next[i] != null && compare(x.next[i], node.key, sequence) < 0)
+				x = x.next[i];
+			if (x.next[i] == node) {
+				x.width[i] += node.width[i] - 1;
+				x.next[i] = node.next[i];
+			} else {
+				x.width[i]--;
+			}
+		}
+
+		if (node.next[0] != null)
+			node.next[0].prev = node.prev;
+		else
+			tail = node.prev;
+
+		while (level > 1 && head.next[level - 1] == null)
+			level--;
+		size--;
+		return true;
+	}
+
+	public void clear() {
+		for (int i = 0; i < MAX_LEVEL; i++) {
+			head.next[i] = null;
+			head.width[i] = 0;
+		}
+		head.width[0] = 1;
+		bySequence.clear();
+		tail = null;
+		level = 1;
+		size = 0;
+	}
+
+	public V get(int rank) {
+		Node<K, V> node = nodeAt(rank);
+		return node == null ? null : node.value;
+	}
+
+	// Number of entries whose key sorts strictly before `key`.
+	public int rankOf(K key) {
+		return countBefore(key, Long.MIN_VALUE);
+	}
+
+	// Number of entries whose key sorts before or equal to `key`.
+	public int rankAfter(K key) {
+		return countBefore(key, Long.MAX_VALUE);
+	}
+
+	// Visits up to `count` values in ascending order, starting at `fromRank`.
+	public void forEachAscending(int fromRank, int count, Consumer<V> visitor) {
+		Node<K, V> node = nodeAt(fromRank);
+		for (int i = 0; i < count && node != null; i++, node = node.next[0])
+			visitor.accept(node.value);
+	}
+
+	// Visits values with keys in descending order while equal keys keep their
+	// ascending sequence order, which is what a stable descending sort yields.
+	// `fromRank` counts positions in that descending order.
+	public void forEachDescending(int fromRank, int count, Consumer<V> visitor) {
+		if (count <= 0)
+			return;
+		int[] left = { count };
+		forEachDescendingFrom(fromRank, (key, value) -> {
+			visitor.accept(value);
+			return --left[0] > 0;
+		});
+	}
+
+	// Visits entries in the order of forEachDescending, from `fromRank` until
+	// the visitor returns false. The start is found once in O(log n); after
+	// that each group of equal keys is reached through the prev links and
+	// visited forward, so k entries cost O(log n + k) plus whatever part of
+	// the last group sits before the entry the visitor stopped at.
+	public void forEachDescendingFrom(int fromRank, BiPredicate<K, V> visitor) {
+		if (fromRank < 0 || fromRank >= size)
+			return;
+		Node<K, V> node = nodeAt(size - 1 - fromRank);
+		int groupStart = rankOf(node.key);
+		int groupEnd = rankAfter(node.key);
+
+		// Within the group of equal keys, walk forward from the matching offset.
+		Node<K, V> start = nodeAt(groupStart);
+		Node<K, V> cursor = nodeAt(groupStart + fromRank - (size - groupEnd));
+		Node<K, V> stop = nodeAt(groupEnd);
+		while (true) {
+			for (; cursor != stop; cursor = cursor.next[0]) {
+				if (!visitor.test(cursor.key, cursor.value))
+					return;
+			}
+			if (start.prev == null)
+				return;
+			stop = start;
+			start = groupStart(start.prev);
+			cursor = start;
+		}
+	}
+
+	// Visits entries in ascending order from `fromRank` until the visitor
+	// returns false.
+	public void forEachFrom(int fromRank, BiPredicate<K, V> visitor) {
+		for (Node<K, V> node = nodeAt(fromRank); node != null; node = node.next[0]) {
+			if (!visitor.test(node.key, node.value))
+				return;
+		}
+	}
+
+	public void forEach(Consumer<V> visitor) {
+		for (Node<K, V> node = head.next[0]; node != null; node = node.next[0])
+			visitor.accept(node.value);
+	}
+
+	private Node<K, V> nodeAt(int rank) {
+		if (rank < 0 || rank >= size)
+			return null;
+		if (rank == size - 1)
+			return tail;
+
+		int target = rank + 1;
+		int traversed = 0;
+		Node<K, V> x = head;
+		for (int i = level - 1; i >= 0; i--) {
+			while (x.next[i] != null && traversed + x.width[i] <= target) {
+				traversed += x.width[i];
+				x = x.next[i];
+			}
+			if (traversed == target)
+				return x;
+		}
+		return null;
+	}
+
+	// First node of the group of keys equal to `node`'s.
+	private Node<K, V> groupStart(Node<K, V> node) {
+		while (node.prev != null && comparator.compare(node.prev.key, node.key) == 0)
+			node = node.prev;
+		return node;
+	}
+
+	private int countBefore(K key, long sequence) {
+		int traversed = 0;
+		Node<K, V> x = head;
+		for (int i = level - 1; i >= 0; i--) {
+			while (x.next[i] != null && compare(x.next[i], key, sequence) < 0) {
+				traversed += x.width[i];
+				x = x.next[i];
+			}
+		}
+		return traversed;
+	}
+
+	private int compare(Node<K, V> node, K key, long sequence) {
+		int cmp = comparator.compare(node.key, key);
+		return cmp != 0 ? cmp : Long.compare(node.sequence, sequence);
+	}
+
+	private int randomLevel() {
+		int nodeLevel = 1;
+		while (nodeLevel < MAX_LEVEL && (random.nextInt() & 3) == 0)
+			nodeLevel++;
+		return nodeLevel;
+	}
+}
@@ -0,0 +1,158 @@
+package main.utils;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+
+/**
+ * Array of references split into fixed-size segments (an array of arrays), so
+ * growing it only allocates the new segments instead of copying every element
+ * into a larger array. Segment sizes are powers of two, which keeps locating
+ * an element to a shift and a mask.
+ *
+ * A flat array is the degenerate case: a single segment covering every index,
+ * which grows by copying like {@code Arrays.copyOf}. Repositories and
+ * {@link Query} work against this class for both layouts.
+ */
+public final class SegmentedArray<T> {
+	// With this shift every valid index maps to segment 0.
+	private static final int FLAT_SHIFT = 31;
+	private static final int MAX_SEGMENT_SIZE = 1 << 30;
+
+	private final Class<?> componentType;
+	private final int shift;
+	private final int mask;
+	private T[][] segments;
+	private int segmentCount;
+	private int capacity;
+
+	private SegmentedArray(Class<?> componentType, int shift) {
+		this.componentType = componentType;
+		this.shift = shift;
+		this.mask = (shift == FLAT_SHIFT) ? Integer.MAX_VALUE : (1 << shift) - 1;
+	}
+
+	// Flat view over `data`; the array is used as is, not copied.
+	public static <T> SegmentedArray<T> wrap(T[] data) {
+		SegmentedArray<T> array = new SegmentedArray<>(data.getClass().getComponentType(), FLAT_SHIFT);
+		array.segments = array.newSegments(1);
+		array.segments[0] = data;
+		array.segmentCount = 1;
+		array.capacity = data.length;
+		return array;
+	}
+
+	// Copy of the first `length` elements, laid out flat when `segmentSize` is
+	// 0 and otherwise in segments of `segmentSize` rounded up to a power of two.
+	public SegmentedArray<T> reshape(int segmentSize, int length) {
+		SegmentedArray<T> copy;
+		if (segmentSize == 0) {
+			copy = wrap(newArray(Math.max(length, capacity)));
+		} else {
+			int size = segmentSizeFor(segmentSize);
+			copy = new SegmentedArray<>(componentType, Integer.numberOfTrailingZeros(size));
+			copy.segments = copy.newSegments(1);
+			copy.resize(Math.max(length, capacity));
+		}
+		for (int i = 0; i < length; i++)
+			copy.set(i, get(i));
+		return copy;
+	}
+
+	// The segment size reshape uses for a requested size: the next power of
+	// two, or 0 (flat) for 0.
+	public static int segmentSizeFor(int requested) {
+		if (requested <= 0)
+			return 0;
+		return Math.min(MAX_SEGMENT_SIZE, Integer.highestOneBit(Math.max(1, requested - 1)) << 1);
+	}
+
+	public T get(int index) {
+		return segments[index >>> shift][index & mask];
+	}
+
+	public void set(int index, T value) {
+		segments[index >>> shift][index & mask] = value;
+	}
+
+	public int capacity() {
+		return capacity;
+	}
+
+	public boolean isSegmented() {
+		return shift != FLAT_SHIFT;
+	}
+
+	// Elements per segment, or 0 for a flat array.
+	public int segmentSize() {
+		return isSegmented() ? mask + 1 : 0;
+	}
+
+	public int segmentCount() {
+		return segmentCount;
+	}
+
+	// The segment holding `index`, to be read from offsetIn(index) onwards.
+	public T[] segmentFor(int index) {
+		return segments[index >>> shift];
+	}
+
+	public int offsetIn(int index) {
+		return index & mask;
+	}
+
+	// Grows or shrinks to hold at least `newCapacity` elements and returns the
+	// resulting capacity, which a segmented array rounds up to whole segments.
+	// Elements beyond the new capacity are dropped.
+	public int resize(int newCapacity) {
+		if (!isSegmented()) {
+			segments[0] = Arrays.copyOf(segments[0], newCapacity);
+			capacity = newCapacity;
+			return capacity;
+		}
+
+		int needed = (int) (((long) newCapacity + mask) >>> shift);
+		if (needed > segments.length)
+			segments = Arrays.copyOf(segments, Math.max(needed, segments.length * 2));
+		for (int k = segmentCount; k < needed; k++)
+			segments[k] = newArray(mask + 1);
+		for (int k = needed; k < segmentCount; k++)
+			segments[k] = null;
+		segmentCount = needed;
+		capacity = (int) Math.min(Integer.MAX_VALUE - 8, (long) needed << shift);
+		return capacity;
+	}
+
+	// Nulls out [from, to).
+	public void clear(int from, int to) {
+		while (from < to) {
+			T[] segment = segmentFor(from);
+			int at = offsetIn(from);
+			int n = Math.min(to - from, segment.length - at);
+			Arrays.fill(segment, at, at + n, null);
+			from += n;
+		}
+	}
+
+	// Copies [from, to) into a new flat array.
+	public T[] copyRange(int from, int to) {
+		T[] copy = newArray(to - from);
+		for (int i = from; i < to;) {
+			T[] segment = segmentFor(i);
+			int at = offsetIn(i);
+			int n = Math.min(to - i, segment.length - at);
+			System.arraycopy(segment, at, copy, i - from, n);
+			i += n;
+		}
+		return copy;
+	}
+
+	@SuppressWarnings("unchecked")
+	public T[] newArray(int length) {
+		return (T[]) Array.newInstance(componentType, length);
+	}
+
+	@SuppressWarnings("unchecked")
+	private T[][] newSegments(int length) {
+		return (T[][]) Array.newInstance(Array.newInstance(componentType, 0).getClass(), length);
+	}
+}
@@ -0,0 +1,72 @@
+package main.utils;
+
+import java.util.Arrays;
+
+/**
+ * {@code long} counterpart of {@link SegmentedArray}, used for data kept
+ * alongside a segmented array slot for slot. Only the operations the
+ * repositories need are provided.
+ */
+public final class SegmentedLongArray {
+	private static final int FLAT_SHIFT = 31;
+
+	private final int shift;
+	private final int mask;
+	private long[][] segments = new long[1][];
+	private int segmentCount;
+	private int capacity;
+
+	// A flat array when `segmentSize` is 0, otherwise segments of
+	// `segmentSize`, which must be a power of two.
+	public SegmentedLongArray(int segmentSize) {
+		if (segmentSize == 0) {
+			this.shift = FLAT_SHIFT;
+			this.mask = Integer.MAX_VALUE;
+			this.segments[0] = new long[0];
+			this.segmentCount = 1;
+		} else {
+			this.shift = Integer.numberOfTrailingZeros(segmentSize);
+			this.mask = segmentSize - 1;
+		}
+	}
+
+	// Copy of the first `length` elements with a different segment size.
+	public SegmentedLongArray reshape(int segmentSize, int length) {
+		SegmentedLongArray copy = new SegmentedLongArray(segmentSize);
+		copy.resize(Math.max(length, capacity));
+		for (int i = 0; i < length; i++)
+			copy.set(i, get(i));
+		return copy;
+	}
+
+	public long get(int index) {
+		return segments[index >>> shift][index & mask];
+	}
+
+	public void set(int index, long value) {
+		segments[index >>> shift][index & mask] = value;
+	}
+
+	public int capacity() {
+		return capacity;
+	}
+
+	public int resize(int newCapacity) {
+		if (shift == FLAT_SHIFT) {
+			segments[0] = Arrays.copyOf(segments[0], newCapacity);
+			capacity = newCapacity;
+			return capacity;
+		}
+
+		int needed = (int) (((long) newCapacity + mask) >>> shift);
+		if (needed > segments.length)
+			segments = Arrays.copyOf(segments, Math.max(needed, segments.length * 2));
+		for (int k = segmentCount; k < needed; k++)
+			segments[k] = new long[mask + 1];
+		for (int k = needed; k < segmentCount; k++)
+			segments[k] = null;
+		segmentCount = needed;
+		capacity = (int) Math.min(Integer.MAX_VALUE - 8, (long) needed << shift);
+		return capacity;
+	}
+}
@@ -0,0 +1,57 @@
+package main.utils;
+
+/**
+ * Snapshot of how much of a repository's backing storage is in use and an
+ * estimate of what it costs on the heap. The estimate covers the slot array,
+ * the parallel sequence array and the id index; the entities themselves and
+ * the secondary indexes are not included.
+ */
+public final class StorageMetrics {
+	private final int size;
+	private final int capacity;
+	private final int tombstones;
+	private final long storageBytes;
+	private final long idIndexBytes;
+
+	public StorageMetrics(int size, int capacity, int tombstones, long storageBytes, long idIndexBytes) {
+		this.size = size;
+		this.capacity = capacity;
+		this.tombstones = tombstones;
+		this.storageBytes = storageBytes;
+		this.idIndexBytes = idIndexBytes;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public int getTombstones() {
+		return tombstones;
+	}
+
+	public double getLoadFactor() {
+		return capacity == 0 ? 0.0 : (double) size / capacity;
+	}
+
+	public long getStorageBytes() {
+		return storageBytes;
+	}
+
+	public long getIdIndexBytes() {
+		return idIndexBytes;
+	}
+
+	public long getEstimatedBytes() {
+		return storageBytes + idIndexBytes;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("size=%d, capacity=%d, tombstones=%d, load=%.2f, ~%d bytes", size, capacity,
+				tombstones, getLoadFactor(), getEstimatedBytes());
+	}
+}
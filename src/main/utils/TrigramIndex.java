@@ -0,0 +1,189 @@
+package main.utils;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Inverted index from lower-cased character trigrams to the entries whose text
+ * contains them. Posting lists hold entry sequence numbers in ascending order,
+ * so a substring search intersects the lists of the needle's trigrams and only
+ * verifies the few entries that survive, emitting them in sequence order.
+ *
+ * Removal only drops the entry. Its sequence stays in the posting lists until
+ * enough of a list is stale, then the list is purged in one pass. A common
+ * trigram can be shared by most entries, so removing from it eagerly would
+ * make bulk deletes quadratic.
+ */
+public class TrigramIndex<V> {
+	public static final int GRAM = 3;
+
+	private final LongObjectHashMap<Postings> postings = new LongObjectHashMap<>();
+	private final LongObjectHashMap<Entry<V>> entries = new LongObjectHashMap<>();
+
+	private static final class Entry<V> {
+		final String text;
+		final V value;
+
+		Entry(String text, V value) {
+			this.text = text;
+			this.value = value;
+		}
+	}
+
+	private static final class Postings {
+		long[] sequences = new long[4];
+		int size;
+		// Upper bound on the sequences left behind by removed entries.
+		int stale;
+
+		void add(long sequence) {
+			if (size > 0 && sequences[size - 1] < sequence) {
+				append(sequence);
+				return;
+			}
+			int at = Arrays.binarySearch(sequences, 0, size, sequence);
+			if (at >= 0)
+				return;
+			at = -at - 1;
+			if (size == sequences.length)
+				sequences = Arrays.copyOf(sequences, size * 2);
+			System.arraycopy(sequences, at, sequences, at + 1, size - at);
+			sequences[at] = sequence;
+			size++;
+		}
+
+		void append(long sequence) {
+			if (size == sequences.length)
+				sequences = Arrays.copyOf(sequences, size * 2);
+			sequences[size++] = sequence;
+		}
+
+		boolean contains(long sequence) {
+			return Arrays.binarySearch(sequences, 0, size, sequence) >= 0;
+		}
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	public void add(long sequence, String text, V value) {
+		if (entries.containsKey(sequence))
+			remove(sequence);
+
+		String normalized = text.toLowerCase();
+		entries.put(sequence, new Entry<>(normalized, value));
+		for (int i = 0; i + GRAM <= normalized.length(); i++) {
+			long gram = gramAt(normalized, i);
+			Postings list = postings.get(gram);
+			if (list == null) {
+				list = new Postings();
+				postings.put(gram, list);
+			}
+			list.add(sequence);
+		}
+	}
+
+	public void remove(long sequence) {
+		Entry<V> entry = entries.remove(sequence);
+		if (entry == null)
+			return;
+
+		String normalized = entry.text;
+		for (int i = 0; i + GRAM <= normalized.length(); i++) {
+			long gram = gramAt(normalized, i);
+			Postings list = postings.get(gram);
+			if (list == null || ++list.stale * 2 <= list.size)
+				continue;
+			purge(gram, list);
+		}
+	}
+
+	// Keeps only the sequences whose current entry still has the trigram.
+	private void purge(long gram, Postings list) {
+		int live = 0;
+		for (int i = 0; i < list.size; i++) {
+			long sequence = list.sequences[i];
+			Entry<V> entry = entries.get(sequence);
+			if (entry != null && hasGram(entry.text, gram))
+				list.sequences[live++] = sequence;
+		}
+		list.size = live;
+		list.stale = 0;
+		if (live == 0)
+			postings.remove(gram);
+	}
+
+	public void clear() {
+		postings.clear();
+		entries.clear();
+	}
+
+	// True when the needle is long enough to be answered from the index.
+	public static boolean isSearchable(String needle) {
+		return needle != null && needle.length() >= GRAM;
+	}
+
+	// Upper bound on the values search(needle) emits: the length of the
+	// shortest posting list among the needle's trigrams. O(length of needle).
+	public int estimate(String needle) {
+		String normalized = needle.toLowerCase();
+		int bound = entries.size();
+		for (int i = 0; i + GRAM <= normalized.length(); i++) {
+			Postings list = postings.get(gramAt(normalized, i));
+			if (list == null)
+				return 0;
+			bound = Math.min(bound, list.size);
+		}
+		return bound;
+	}
+
+	// Emits, in ascending sequence order, every value whose lower-cased text
+	// contains the lower-cased needle. The needle must be isSearchable.
+	public void search(String needle, Consumer<V> visitor) {
+		String normalized = needle.toLowerCase();
+		int grams = normalized.length() - GRAM + 1;
+		Postings[] lists = new Postings[grams];
+		int distinct = 0;
+
+		for (int i = 0; i < grams; i++) {
+			Postings list = postings.get(gramAt(normalized, i));
+			if (list == null)
+				return;
+			boolean seen = false;
+			for (int j = 0; j < distinct && !seen; j++)
+				seen = lists[j] == list;
+			if (!seen)
+				lists[distinct++] = list;
+		}
+
+		// Drive the intersection from the shortest posting list.
+		Arrays.sort(lists, 0, distinct, (a, b) -> Integer.compare(a.size, b.size));
+		Postings shortest = lists[0];
+		for (int i = 0; i < shortest.size; i++) {
+			long sequence = shortest.sequences[i];
+			boolean inAll = true;
+			for (int j = 1; j < distinct && inAll; j++)
+				inAll = lists[j].contains(sequence);
+			if (!inAll)
+				continue;
+
+			// Posting lists may still hold removed or re-added sequences.
+			Entry<V> entry = entries.get(sequence);
+			if (entry != null && entry.text.contains(normalized))
+				visitor.accept(entry.value);
+		}
+	}
+
+	private static boolean hasGram(String text, long gram) {
+		for (int i = 0; i + GRAM <= text.length(); i++) {
+			if (gramAt(text, i) == gram)
+				return true;
+		}
+		return false;
+	}
+
+	private static long gramAt(String text, int at) {
+		return ((long) text.charAt(at) << 32) | ((long) text.charAt(at + 1) << 16) | text.charAt(at + 2);
+	}
+}
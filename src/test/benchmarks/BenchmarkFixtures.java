@@ -0,0 +1,50 @@
+package test.benchmarks;
+
+import java.lang.reflect.Field;
+import java.util.Random;
+import java.util.function.ToIntFunction;
+
+import main.models.Product;
+import main.repositories.ProductRepository;
+
+/**
+ * Repositories and catalogs shared by the benchmarks. Catalogs are drawn from
+ * a fixed seed, so every run measures the same data.
+ */
+final class BenchmarkFixtures {
+	private BenchmarkFixtures() {
+	}
+
+	// ProductRepository is a singleton; dropping the instance gives the next
+	// getInstance an empty repository.
+	static ProductRepository freshProductRepository() throws ReflectiveOperationException {
+		Field instance = ProductRepository.class.getDeclaredField("instance");
+		instance.setAccessible(true);
+		instance.set(null, null);
+		return ProductRepository.getInstance();
+	}
+
+	// Products with ids from 0, prices below 1000 and quantities below 500.
+	static Product[] randomProducts(int size) {
+		Random random = new Random(42);
+		Product[] products = new Product[size];
+		for (int i = 0; i < size; i++)
+			products[i] = new Product((long) i, "Product " + i, random.nextInt(100_000) / 100.0, random.nextInt(500));
+		return products;
+	}
+
+	// Like randomProducts, with a description and one of 20 evenly used
+	// categories.
+	static Product[] randomCatalog(int size) {
+		return randomCatalog(size, random -> 1 + random.nextInt(20));
+	}
+
+	static Product[] randomCatalog(int size, ToIntFunction<Random> category) {
+		Random random = new Random(42);
+		Product[] products = new Product[size];
+		for (int i = 0; i < size; i++)
+			products[i] = new Product((long) i, "Product " + i, random.nextInt(100_000) / 100.0, random.nextInt(500),
+					category.applyAsInt(random), "Description of product " + i);
+		return products;
+	}
+}
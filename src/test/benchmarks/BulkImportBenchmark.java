@@ -0,0 +1,39 @@
+package test.benchmarks;
+
+import main.models.Product;
+import main.repositories.ProductRepository;
+
+/**
+ * Times importing a catalog one product at a time against a single
+ * ProductRepository.addAll call. Run with
+ * {@code java test.benchmarks.BulkImportBenchmark [rows]}.
+ */
+public class BulkImportBenchmark {
+	public static void main(String[] args) {
+		int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+		Product[] catalog = BenchmarkFixtures.randomProducts(rows);
+		ProductRepository repository = ProductRepository.getInstance();
+
+		long start = System.nanoTime();
+		for (Product product : catalog)
+			repository.add(product);
+		double single = (System.nanoTime() - start) / 1e6;
+		repository.clear();
+
+		start = System.nanoTime();
+		repository.addAll(catalog);
+		double batch = (System.nanoTime() - start) / 1e6;
+
+		long[] ids = new long[rows / 2];
+		for (int i = 0; i < ids.length; i++)
+			ids[i] = 2L * i;
+		start = System.nanoTime();
+		repository.removeAll(ids);
+		double removal = (System.nanoTime() - start) / 1e6;
+
+		System.out.printf("%d rows%n", rows);
+		System.out.printf("%-24s %10.1f ms%n", "add, one at a time", single);
+		System.out.printf("%-24s %10.1f ms%n", "addAll", batch);
+		System.out.printf("%-24s %10.1f ms%n", "removeAll (half)", removal);
+	}
+}
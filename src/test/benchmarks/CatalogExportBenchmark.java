@@ -0,0 +1,60 @@
+package test.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import main.catalog.ExportReport;
+import main.catalog.ProductExporter;
+import main.enumerations.CatalogFormat;
+import main.models.Product;
+import main.repositories.ProductRepository;
+
+/**
+ * Times exporting a generated catalog to a file in each format, next to the
+ * old route of findAll and String.format per row. Run with
+ * {@code java test.benchmarks.CatalogExportBenchmark [rows]}.
+ */
+public class CatalogExportBenchmark {
+	public static void main(String[] args) throws IOException {
+		int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+		ProductRepository repository = ProductRepository.getInstance();
+		Random random = new Random(42);
+		Product[] catalog = new Product[rows];
+		for (int i = 0; i < rows; i++)
+			catalog[i] = new Product((long) i, "Product " + i, random.nextInt(100_000) / 100.0, random.nextInt(500),
+					random.nextInt(50), "Sturdy, reliable item " + i);
+		repository.addAll(catalog);
+		catalog = null;
+
+		Path file = Files.createTempFile("export", ".out");
+		try {
+			ProductExporter exporter = new ProductExporter(repository);
+			System.out.printf("%d rows%n", rows);
+			for (int round = 0; round < 2; round++) {
+				for (CatalogFormat format : CatalogFormat.values()) {
+					ExportReport report = exporter.exportFile(file, format);
+					System.out.printf("%-12s %s%n", format, report);
+				}
+
+				long start = System.nanoTime();
+				StringBuilder table = new StringBuilder();
+				long bytes = 0;
+				for (Product product : repository.findAll()) {
+					table.append(String.format("| %-25s | %-20s | %-10.2f | %-8d |%n", product.getId(),
+							product.getName(), product.getPrice(), product.getQuantity()));
+					if (table.length() > 1 << 20) {
+						bytes += table.length();
+						table.setLength(0);
+					}
+				}
+				bytes += table.length();
+				System.out.printf("%-12s %d rows, %d chars in %d ms%n", "String.format", rows, bytes,
+						(System.nanoTime() - start) / 1_000_000);
+			}
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+}
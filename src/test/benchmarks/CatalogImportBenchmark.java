@@ -0,0 +1,62 @@
+package test.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import main.catalog.ImportReport;
+import main.catalog.ProductImporter;
+import main.enumerations.CatalogFormat;
+import main.repositories.ProductRepository;
+
+/**
+ * Writes a generated supplier catalog as CSV and as JSON Lines and times
+ * importing each into an empty ProductRepository. Run with
+ * {@code java test.benchmarks.CatalogImportBenchmark [rows] [workers]}.
+ */
+public class CatalogImportBenchmark {
+	public static void main(String[] args) throws IOException {
+		int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+		int workers = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		Path directory = Files.createTempDirectory("catalog");
+		Path csv = directory.resolve("catalog.csv");
+		Path jsonl = directory.resolve("catalog.jsonl");
+		try {
+			writeCatalogs(csv, jsonl, rows);
+			ProductRepository repository = ProductRepository.getInstance();
+			ProductImporter importer = new ProductImporter(repository).withWorkers(workers);
+
+			System.out.printf("%d rows, %d workers%n", rows, workers);
+			for (Path file : new Path[] { csv, jsonl }) {
+				repository.clear();
+				ImportReport report = importer.importFile(file, CatalogFormat.fromFileName(file.toString()));
+				System.out.printf("%-14s %6.1f MB  %s%n", file.getFileName(), Files.size(file) / 1e6, report);
+			}
+		} finally {
+			Files.deleteIfExists(csv);
+			Files.deleteIfExists(jsonl);
+			Files.delete(directory);
+		}
+	}
+
+	private static void writeCatalogs(Path csv, Path jsonl, int rows) throws IOException {
+		Random random = new Random(42);
+		try (BufferedWriter csvOut = Files.newBufferedWriter(csv, StandardCharsets.UTF_8);
+				BufferedWriter jsonOut = Files.newBufferedWriter(jsonl, StandardCharsets.UTF_8)) {
+			csvOut.write("id,name,price,quantity,categoryId,description\n");
+			for (int i = 0; i < rows; i++) {
+				double price = random.nextInt(100_000) / 100.0;
+				int quantity = random.nextInt(500);
+				int category = random.nextInt(50);
+				csvOut.write(i + ",Product " + i + "," + price + "," + quantity + "," + category
+						+ ",\"Sturdy, reliable item " + i + "\"\n");
+				jsonOut.write("{\"id\":" + i + ",\"name\":\"Product " + i + "\",\"price\":" + price + ",\"quantity\":"
+						+ quantity + ",\"categoryId\":" + category + ",\"description\":\"Sturdy, reliable item " + i
+						+ "\"}\n");
+			}
+		}
+	}
+}
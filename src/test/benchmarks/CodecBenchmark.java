@@ -0,0 +1,148 @@
+package test.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Random;
+
+import main.models.Product;
+import main.persistence.BinaryReader;
+import main.persistence.BinaryWriter;
+import main.persistence.ProductCodec;
+
+/**
+ * Compares ProductCodec with a fixed-width DataOutputStream layout of the same
+ * fields: bytes per product and encode and decode throughput, in frames of
+ * 4096 products as snapshots and binary catalogs write them. Descriptions are
+ * drawn from a small set, as catalog boilerplate usually is. Run with
+ * {@code java test.benchmarks.CodecBenchmark [rows]}.
+ */
+public class CodecBenchmark {
+	private static final int FRAME = 4096;
+	private static final int ROUNDS = 5;
+
+	public static void main(String[] args) throws IOException {
+		int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+		Product[] products = randomProducts(rows);
+		ProductCodec codec = new ProductCodec();
+
+		for (int round = 1; round <= ROUNDS; round++) {
+			System.out.println("round " + round);
+			long start = System.nanoTime();
+			byte[][] frames = encodeCodec(products, codec);
+			long encoded = System.nanoTime() - start;
+			start = System.nanoTime();
+			int decoded = decodeCodec(frames, codec);
+			report("codec", frames, decoded, encoded, System.nanoTime() - start);
+
+			start = System.nanoTime();
+			frames = encodeFixed(products);
+			encoded = System.nanoTime() - start;
+			start = System.nanoTime();
+			decoded = decodeFixed(frames);
+			report("fixed-width", frames, decoded, encoded, System.nanoTime() - start);
+		}
+	}
+
+	private static void report(String name, byte[][] frames, int rows, long encodeNanos, long decodeNanos) {
+		long bytes = 0;
+		for (byte[] frame : frames)
+			bytes += frame.length;
+		System.out.printf("  %-12s %5.1f bytes/product  encode %6.2f M/s  decode %6.2f M/s%n", name,
+				bytes / (double) rows, rows * 1e3 / encodeNanos, rows * 1e3 / decodeNanos);
+	}
+
+	private static byte[][] encodeCodec(Product[] products, ProductCodec codec) {
+		byte[][] frames = new byte[(products.length + FRAME - 1) / FRAME][];
+		BinaryWriter out = new BinaryWriter(1 << 16);
+		for (int f = 0; f < frames.length; f++) {
+			out.reset();
+			for (int i = f * FRAME; i < Math.min(products.length, (f + 1) * FRAME); i++)
+				codec.encode(products[i], out);
+			frames[f] = Arrays.copyOf(out.array(), out.position());
+		}
+		return frames;
+	}
+
+	private static int decodeCodec(byte[][] frames, ProductCodec codec) throws IOException {
+		int rows = 0;
+		for (byte[] frame : frames) {
+			BinaryReader in = new BinaryReader(frame, 0, frame.length);
+			while (in.remaining() > 0) {
+				codec.decode(in);
+				rows++;
+			}
+		}
+		return rows;
+	}
+
+	private static byte[][] encodeFixed(Product[] products) throws IOException {
+		byte[][] frames = new byte[(products.length + FRAME - 1) / FRAME][];
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 16);
+		DataOutputStream out = new DataOutputStream(bytes);
+		for (int f = 0; f < frames.length; f++) {
+			bytes.reset();
+			for (int i = f * FRAME; i < Math.min(products.length, (f + 1) * FRAME); i++) {
+				Product product = products[i];
+				out.writeLong(product.getId());
+				out.writeUTF(product.getName());
+				out.writeDouble(product.getPrice());
+				out.writeInt(product.getQuantity());
+				out.writeInt(product.getCategoryId() == null ? -1 : product.getCategoryId());
+				out.writeUTF(product.getDescription());
+				writeTime(out, product.getCreatedAt());
+				writeTime(out, product.getUpdateAt());
+			}
+			out.flush();
+			frames[f] = bytes.toByteArray();
+		}
+		return frames;
+	}
+
+	private static int decodeFixed(byte[][] frames) throws IOException {
+		int rows = 0;
+		for (byte[] frame : frames) {
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame));
+			while (in.available() > 0) {
+				Product product = new Product(in.readLong(), in.readUTF(), in.readDouble(), in.readInt(),
+						in.readInt(), in.readUTF());
+				product.setCreatedAt(readTime(in));
+				product.setUpdatedAt(readTime(in));
+				rows++;
+			}
+		}
+		return rows;
+	}
+
+	private static void writeTime(DataOutputStream out, LocalDateTime time) throws IOException {
+		out.writeLong(time.toEpochSecond(ZoneOffset.UTC));
+		out.writeInt(time.getNano());
+	}
+
+	private static LocalDateTime readTime(DataInputStream in) throws IOException {
+		return LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC);
+	}
+
+	private static Product[] randomProducts(int size) {
+		Random random = new Random(42);
+		String[] descriptions = new String[50];
+		for (int i = 0; i < descriptions.length; i++)
+			descriptions[i] = "Standard catalog item of line " + i + ", ships within two business days";
+		LocalDateTime base = LocalDateTime.of(2024, 1, 1, 0, 0);
+		Product[] products = new Product[size];
+		for (int i = 0; i < size; i++) {
+			Product product = new Product((long) i + 1, "Product " + i, random.nextInt(100_000) / 100.0,
+					random.nextInt(500), 1 + random.nextInt(20), descriptions[random.nextInt(descriptions.length)]);
+			LocalDateTime createdAt = base.plusSeconds(random.nextInt(10_000_000)).withNano(random.nextInt(1_000) * 1_000);
+			product.setCreatedAt(createdAt);
+			product.setUpdatedAt(createdAt.plusSeconds(random.nextInt(100_000)));
+			products[i] = product;
+		}
+		return products;
+	}
+}
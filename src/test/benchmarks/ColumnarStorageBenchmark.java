@@ -0,0 +1,54 @@
+package test.benchmarks;
+
+import main.enumerations.ProductSortableFields;
+import main.enumerations.ProductStorageMode;
+import main.enumerations.SortOrder;
+import main.models.Product;
+import main.repositories.ProductRepository;
+
+/**
+ * Compares ProductRepository in OBJECTS and COLUMNAR storage mode: heap held
+ * by the stored products, and the time of a full price sort and a price range
+ * filter. Run with {@code java test.benchmarks.ColumnarStorageBenchmark [rows]}.
+ */
+public class ColumnarStorageBenchmark {
+	private static final int ROUNDS = 5;
+
+	public static void main(String[] args) {
+		int rows = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+		ProductRepository repository = ProductRepository.getInstance();
+		System.out.printf("%-10s %-16s %-16s %-16s%n", "mode", "stored MB", "price sort (ms)", "range (ms)");
+
+		for (ProductStorageMode mode : new ProductStorageMode[] { ProductStorageMode.OBJECTS, ProductStorageMode.COLUMNAR }) {
+			repository.clear();
+			repository.setStorageMode(mode);
+			Product[] catalog = BenchmarkFixtures.randomProducts(rows);
+			long before = usedHeap();
+			repository.addAll(catalog);
+			catalog = null;
+			// In COLUMNAR mode the incoming Products are garbage once copied.
+			double stored = (usedHeap() - before) / (1024.0 * 1024.0);
+
+			double sort = time(() -> repository.sortBy(ProductSortableFields.PRICE, SortOrder.ASC).getResult());
+			double range = time(() -> repository.filterByPrice(100, 200).getResult());
+			System.out.printf("%-10s %-16.1f %-16.3f %-16.3f%n", mode, stored, sort, range);
+		}
+	}
+
+	private static long usedHeap() {
+		for (int i = 0; i < 3; i++)
+			System.gc();
+		Runtime runtime = Runtime.getRuntime();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private static double time(Runnable task) {
+		long best = Long.MAX_VALUE;
+		for (int i = 0; i < ROUNDS; i++) {
+			long start = System.nanoTime();
+			task.run();
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		return best / 1_000_000.0;
+	}
+}
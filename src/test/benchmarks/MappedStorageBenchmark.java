@@ -0,0 +1,63 @@
+package test.benchmarks;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import main.enumerations.ProductSortableFields;
+import main.enumerations.ProductStorageMode;
+import main.enumerations.SortOrder;
+import main.models.Product;
+import main.repositories.ProductRepository;
+
+/**
+ * Writes a catalog into MAPPED storage, then reopens it in a fresh repository
+ * and reports how long mapping and re-indexing take, against adding the same
+ * catalog as objects. Also times a price sort and a findById pass over the
+ * reopened store. Run with
+ * {@code java test.benchmarks.MappedStorageBenchmark [rows] [directory]}.
+ */
+public class MappedStorageBenchmark {
+	public static void main(String[] args) throws Exception {
+		int rows = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+		Path directory = args.length > 1 ? Path.of(args[1]) : Files.createTempDirectory("products");
+		Product[] catalog = BenchmarkFixtures.randomCatalog(rows);
+
+		ProductRepository repository = BenchmarkFixtures.freshProductRepository();
+		long start = System.nanoTime();
+		repository.addAll(catalog);
+		System.out.printf("add as objects:     %8.1f ms%n", (System.nanoTime() - start) / 1e6);
+
+		repository = BenchmarkFixtures.freshProductRepository();
+		repository.openMappedStorage(directory);
+		start = System.nanoTime();
+		repository.addAll(catalog);
+		repository.flush();
+		System.out.printf("write mapped:       %8.1f ms%n", (System.nanoTime() - start) / 1e6);
+
+		// A fresh instance stands in for a process restart.
+		repository = BenchmarkFixtures.freshProductRepository();
+		start = System.nanoTime();
+		repository.openMappedStorage(directory);
+		System.out.printf("reopen mapped:      %8.1f ms (%d products)%n", (System.nanoTime() - start) / 1e6,
+				repository.getSize());
+
+		ProductRepository reopened = repository;
+		start = System.nanoTime();
+		reopened.sortBy(ProductSortableFields.PRICE, SortOrder.ASC).getResult();
+		System.out.printf("price sort:         %8.1f ms%n", (System.nanoTime() - start) / 1e6);
+
+		start = System.nanoTime();
+		double total = 0;
+		for (long id = 0; id < rows; id++)
+			total += reopened.findById(id).getPrice();
+		System.out.printf("findById pass:      %8.1f ms (checksum %.2f)%n", (System.nanoTime() - start) / 1e6, total);
+
+		if (args.length < 2) {
+			reopened.clear();
+			reopened.setStorageMode(ProductStorageMode.OBJECTS);
+			Files.delete(directory.resolve("products.dat"));
+			Files.delete(directory.resolve("products.strings"));
+			Files.delete(directory);
+		}
+	}
+}
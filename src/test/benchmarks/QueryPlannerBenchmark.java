@@ -0,0 +1,86 @@
+package test.benchmarks;
+
+import java.util.Comparator;
+import java.util.Random;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+import main.enumerations.ProductSortableFields;
+import main.enumerations.SortOrder;
+import main.models.Product;
+import main.query.ProductFilter;
+import main.query.ProductQuery;
+import main.query.ProductQueryPlanner;
+import main.query.QueryResult;
+import main.repositories.ProductRepository;
+
+/**
+ * Runs multi-criteria queries through ProductQueryPlanner and through the
+ * chained full-catalog Query filter and sortedPage calls they replace, and
+ * prints the plan each one ran with. Run with
+ * {@code java test.benchmarks.QueryPlannerBenchmark [rows]}.
+ */
+public class QueryPlannerBenchmark {
+	private static final int ROUNDS = 10;
+	// Category 1 holds about half the catalog; the other 199 share the rest.
+	private static final ToIntFunction<Random> SKEWED_CATEGORY = random -> random.nextBoolean() ? 1
+			: 2 + random.nextInt(199);
+
+	public static void main(String[] args) throws Exception {
+		int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+		ProductRepository repository = BenchmarkFixtures.freshProductRepository();
+		repository.addAll(BenchmarkFixtures.randomCatalog(rows, SKEWED_CATEGORY));
+		ProductQueryPlanner planner = new ProductQueryPlanner(repository);
+
+		run(repository, planner, "narrow category, by price", ProductQuery
+				.where(ProductFilter.inCategory(7).and(ProductFilter.quantityAtMost(100)))
+				.orderBy(ProductSortableFields.PRICE, SortOrder.DESC).page(1, 20));
+		run(repository, planner, "broad category, by name", ProductQuery
+				.where(ProductFilter.inCategory(1).and(ProductFilter.priceAtLeast(10)))
+				.orderBy(ProductSortableFields.NAME, SortOrder.ASC).page(3, 20));
+		run(repository, planner, "price band, by price+name", ProductQuery
+				.where(ProductFilter.priceBetween(100, 120).and(ProductFilter.quantityAtLeast(5)))
+				.orderBy(ProductSortableFields.PRICE, SortOrder.ASC)
+				.orderBy(ProductSortableFields.NAME, SortOrder.ASC).page(1, 50));
+		run(repository, planner, "name search, by quantity", ProductQuery
+				.where(ProductFilter.nameContains("product 4242").and(ProductFilter.inCategory(1)))
+				.orderBy(ProductSortableFields.QUANTITY, SortOrder.ASC).page(1, 20));
+	}
+
+	private static void run(ProductRepository repository, ProductQueryPlanner planner, String name,
+			ProductQuery query) {
+		Comparator<Product> comparator = comparator(repository, query);
+		double chained = time(() -> repository.query().filter(query.getFilter()::test)
+				.sortedPage(comparator, query.getPage(), query.getLimit()).getResult());
+		double planned = time(() -> planner.execute(query).getProducts());
+		QueryResult result = planner.execute(query);
+		System.out.printf("%-28s chained %9.3f ms   planned %9.3f ms%n", name, chained, planned);
+		System.out.println("  " + result.explain().replace("\n", "\n  "));
+	}
+
+	private static Comparator<Product> comparator(ProductRepository repository, ProductQuery query) {
+		Comparator<Product> comparator = null;
+		for (ProductQuery.SortKey key : query.getSortKeys()) {
+			Comparator<Product> next = switch (key.getField()) {
+				case NAME -> Comparator.comparing(Product::getName, String.CASE_INSENSITIVE_ORDER);
+				case CREATED_AT -> repository.createdAtComparator(key.getOrder());
+				case PRICE -> repository.priceComparator(key.getOrder());
+				case QUANTITY -> repository.quantityComparator(key.getOrder());
+			};
+			if (key.getField() == ProductSortableFields.NAME && key.getOrder() == SortOrder.DESC)
+				next = next.reversed();
+			comparator = comparator == null ? next : comparator.thenComparing(next);
+		}
+		return comparator;
+	}
+
+	private static double time(Supplier<Product[]> task) {
+		long best = Long.MAX_VALUE;
+		for (int i = 0; i < ROUNDS; i++) {
+			long start = System.nanoTime();
+			task.get();
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		return best / 1_000_000.0;
+	}
+}
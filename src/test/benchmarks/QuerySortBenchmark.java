@@ -0,0 +1,61 @@
+package test.benchmarks;
+
+import java.util.Comparator;
+
+import main.models.Product;
+import main.utils.Query;
+
+/**
+ * Compares Query.sort against the bubble sort it replaced, on the same
+ * comparator ProductRepository.sortByPrice uses. Run with
+ * {@code java test.benchmarks.QuerySortBenchmark}.
+ */
+public class QuerySortBenchmark {
+	private static final int[] SIZES = { 1_000, 5_000, 20_000, 50_000 };
+	private static final int BUBBLE_LIMIT = 20_000;
+	private static final int ROUNDS = 5;
+
+	public static void main(String[] args) {
+		Comparator<Product> byPrice = (e1, e2) -> Double.compare(e1.getPrice(), e2.getPrice());
+		System.out.printf("%-10s %-16s %-16s%n", "size", "bubble (ms)", "Query.sort (ms)");
+
+		for (int size : SIZES) {
+			Product[] products = BenchmarkFixtures.randomProducts(size);
+
+			// warm up so both paths are compiled before timing
+			Query.of(products).sort(byPrice);
+			double bubble = size <= BUBBLE_LIMIT ? time(() -> bubbleSort(products.clone(), byPrice)) : Double.NaN;
+			double timsort = time(() -> Query.of(products).sort(byPrice).getResult());
+
+			System.out.printf("%-10d %-16s %-16.3f%n", size,
+					Double.isNaN(bubble) ? "skipped" : String.format("%.3f", bubble), timsort);
+		}
+	}
+
+	private static double time(Runnable task) {
+		long best = Long.MAX_VALUE;
+		for (int i = 0; i < ROUNDS; i++) {
+			long start = System.nanoTime();
+			task.run();
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		return best / 1_000_000.0;
+	}
+
+	// The previous Query.sort implementation, kept here as the baseline.
+	private static <T> void bubbleSort(T[] sorted, Comparator<T> comparator) {
+		for (int i = 0; i < sorted.length - 1; i++) {
+			boolean swapped = false;
+			for (int j = 0; j < sorted.length - i - 1; j++) {
+				if (comparator.compare(sorted[j], sorted[j + 1]) > 0) {
+					T temp = sorted[j];
+					sorted[j] = sorted[j + 1];
+					sorted[j + 1] = temp;
+					swapped = true;
+				}
+			}
+			if (!swapped)
+				break;
+		}
+	}
+}
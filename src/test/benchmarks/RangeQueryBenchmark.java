@@ -0,0 +1,51 @@
+package test.benchmarks;
+
+import java.util.function.Supplier;
+
+import main.enumerations.SortOrder;
+import main.models.Product;
+import main.repositories.ProductRepository;
+
+/**
+ * Times a low-stock report and a price-band page read from the ordered
+ * indexes against filtering and sorting the whole catalog, as callers did
+ * with Query.filter. Run with {@code java test.benchmarks.RangeQueryBenchmark [rows]}.
+ */
+public class RangeQueryBenchmark {
+	private static final int ROUNDS = 20;
+
+	public static void main(String[] args) throws Exception {
+		int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+		ProductRepository repository = BenchmarkFixtures.freshProductRepository();
+		repository.addAll(BenchmarkFixtures.randomProducts(rows));
+
+		report("low stock (qty <= 5), all", () -> repository.query()
+				.filter(p -> p.getQuantity() <= 5).sort(repository.quantityComparator(SortOrder.ASC)).getResult(),
+				() -> repository.findByQuantityRange(0, 5).getResult());
+		report("price 100-200, page 3 of 50", () -> repository.query()
+				.filter(p -> p.getPrice() >= 100 && p.getPrice() <= 200)
+				.sortedPage(repository.priceComparator(SortOrder.ASC), 3, 50).getResult(),
+				() -> repository.findByPriceRange(100, 200, SortOrder.ASC, 3, 50).getResult());
+		report("price 100-200, desc page 1", () -> repository.query()
+				.filter(p -> p.getPrice() >= 100 && p.getPrice() <= 200)
+				.sortedPage(repository.priceComparator(SortOrder.DESC), 1, 50).getResult(),
+				() -> repository.findByPriceRange(100, 200, SortOrder.DESC, 1, 50).getResult());
+	}
+
+	private static void report(String name, Supplier<Product[]> scan, Supplier<Product[]> index) {
+		double scanned = time(scan);
+		double indexed = time(index);
+		System.out.printf("%-30s scan %9.3f ms   index %9.3f ms   (%d rows)%n", name, scanned, indexed,
+				index.get().length);
+	}
+
+	private static double time(Supplier<Product[]> task) {
+		long best = Long.MAX_VALUE;
+		for (int i = 0; i < ROUNDS; i++) {
+			long start = System.nanoTime();
+			task.get();
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		return best / 1_000_000.0;
+	}
+}
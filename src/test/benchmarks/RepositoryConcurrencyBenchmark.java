@@ -0,0 +1,78 @@
+package test.benchmarks;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import main.enumerations.ProductSortableFields;
+import main.enumerations.SortOrder;
+import main.models.Product;
+import main.repositories.ProductRepository;
+
+/**
+ * Measures ProductRepository throughput as the number of threads grows, on a
+ * mix of point lookups, sorted pages and writes. Run with
+ * {@code java test.benchmarks.RepositoryConcurrencyBenchmark [writePercent]}.
+ */
+public class RepositoryConcurrencyBenchmark {
+	private static final int[] THREADS = { 1, 2, 4, 8 };
+	private static final int PRELOAD = 50_000;
+	private static final int OPS_PER_THREAD = 200_000;
+
+	public static void main(String[] args) throws InterruptedException {
+		int writePercent = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+		ProductRepository repository = ProductRepository.getInstance(PRELOAD);
+		for (long id = 0; id < PRELOAD; id++)
+			repository.add(new Product(id, "Product " + id, id % 1000 / 10.0, (int) (id % 500)));
+
+		System.out.printf("writes: %d%%%n", writePercent);
+		System.out.printf("%-10s %-16s %-16s%n", "threads", "ops/s", "speedup");
+
+		run(repository, 1, writePercent); // warm up
+		double single = 0;
+		for (int threads : THREADS) {
+			double opsPerSecond = run(repository, threads, writePercent);
+			if (threads == 1)
+				single = opsPerSecond;
+			System.out.printf("%-10d %-16.0f %-16.2f%n", threads, opsPerSecond, opsPerSecond / single);
+		}
+	}
+
+	private static double run(ProductRepository repository, int threads, int writePercent)
+			throws InterruptedException {
+		AtomicLong nextId = new AtomicLong(PRELOAD * 10L);
+		CountDownLatch start = new CountDownLatch(1);
+		Thread[] workers = new Thread[threads];
+
+		for (int t = 0; t < threads; t++) {
+			SplittableRandom random = new SplittableRandom(t);
+			workers[t] = new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				for (int i = 0; i < OPS_PER_THREAD; i++) {
+					int roll = random.nextInt(100);
+					if (roll < writePercent) {
+						long id = nextId.getAndIncrement();
+						repository.add(new Product(id, "Product " + id, random.nextInt(1000) / 10.0, 1));
+						repository.remove(id);
+					} else if (roll < 90) {
+						repository.findById((long) random.nextInt(PRELOAD));
+					} else {
+						repository.sortedPage(ProductSortableFields.PRICE, SortOrder.ASC, 1 + random.nextInt(50), 20);
+					}
+				}
+			});
+			workers[t].start();
+		}
+
+		long begin = System.nanoTime();
+		start.countDown();
+		for (Thread worker : workers)
+			worker.join();
+		double seconds = (System.nanoTime() - begin) / 1e9;
+		return (double) threads * OPS_PER_THREAD / seconds;
+	}
+}
@@ -0,0 +1,39 @@
+package test.benchmarks;
+
+import main.utils.SegmentedArray;
+
+/**
+ * Appends to a flat and to a segmented SegmentedArray, growing each the way
+ * a repository does, and reports the total time and the longest single grow.
+ * Run with {@code java test.benchmarks.SegmentedGrowthBenchmark [elements]}.
+ */
+public class SegmentedGrowthBenchmark {
+	private static final int SEGMENT_SIZE = 1 << 16;
+
+	public static void main(String[] args) {
+		int elements = args.length > 0 ? Integer.parseInt(args[0]) : 20_000_000;
+		Object value = new Object();
+		System.out.printf("%-12s %-14s %-16s%n", "layout", "total (ms)", "worst grow (ms)");
+		for (int round = 0; round < 2; round++) {
+			report("flat", SegmentedArray.wrap(new Object[5]), elements, value, round);
+			report("segmented", SegmentedArray.wrap(new Object[0]).reshape(SEGMENT_SIZE, 0), elements, value, round);
+		}
+	}
+
+	private static void report(String layout, SegmentedArray<Object> array, int elements, Object value, int round) {
+		long worst = 0;
+		long start = System.nanoTime();
+		for (int i = 0; i < elements; i++) {
+			if (i == array.capacity()) {
+				long growStart = System.nanoTime();
+				array.resize(array.isSegmented() ? i + 1 : Math.max(1, i * 2));
+				worst = Math.max(worst, System.nanoTime() - growStart);
+			}
+			array.set(i, value);
+		}
+		long total = System.nanoTime() - start;
+		// The first round only warms up the JIT.
+		if (round > 0)
+			System.out.printf("%-12s %-14.1f %-16.3f%n", layout, total / 1e6, worst / 1e6);
+	}
+}
@@ -0,0 +1,42 @@
+package test.benchmarks;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import main.models.Product;
+import main.persistence.ProductCodec;
+import main.persistence.Snapshot;
+import main.repositories.ProductRepository;
+
+/**
+ * Writes a product snapshot, then times decoding it alone and loading it into
+ * a fresh ProductRepository, indexes included. Run with
+ * {@code java test.benchmarks.SnapshotBenchmark [rows]}.
+ */
+public class SnapshotBenchmark {
+	public static void main(String[] args) throws Exception {
+		int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+		Path directory = Files.createTempDirectory("snapshot-benchmark");
+		Path file = directory.resolve("products.snap");
+		ProductCodec codec = new ProductCodec();
+
+		long start = System.nanoTime();
+		Snapshot.write(file, BenchmarkFixtures.randomCatalog(rows), 0, codec);
+		System.out.printf("write:        %8.1f ms (%.1f MB)%n", (System.nanoTime() - start) / 1e6,
+				Files.size(file) / (1024.0 * 1024.0));
+
+		start = System.nanoTime();
+		Snapshot.read(file, codec, Product[]::new);
+		System.out.printf("decode:       %8.1f ms (%d threads)%n", (System.nanoTime() - start) / 1e6,
+				Runtime.getRuntime().availableProcessors());
+
+		ProductRepository repository = BenchmarkFixtures.freshProductRepository();
+		start = System.nanoTime();
+		repository.loadSnapshot(file, codec);
+		System.out.printf("load+index:   %8.1f ms (%d products)%n", (System.nanoTime() - start) / 1e6,
+				repository.getSize());
+
+		Files.delete(file);
+		Files.delete(directory);
+	}
+}
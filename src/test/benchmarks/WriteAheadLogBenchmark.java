@@ -0,0 +1,59 @@
+package test.benchmarks;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+
+import main.models.Product;
+import main.persistence.FsyncPolicy;
+import main.persistence.LogRecord;
+import main.persistence.ProductCodec;
+import main.persistence.WriteAheadLog;
+
+/**
+ * Appends product records to a write-ahead log under each fsync policy and
+ * reports throughput and the number of fsyncs. Under ALWAYS, more writer
+ * threads should share fsyncs instead of paying one each. Run with
+ * {@code java test.benchmarks.WriteAheadLogBenchmark [records]}.
+ */
+public class WriteAheadLogBenchmark {
+	public static void main(String[] args) throws Exception {
+		int records = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+		System.out.printf("%-12s %-8s %-14s %-10s%n", "policy", "threads", "records/s", "fsyncs");
+		run(FsyncPolicy.ALWAYS, 1, records);
+		run(FsyncPolicy.ALWAYS, 8, records);
+		run(FsyncPolicy.every(10), 1, records * 10);
+		run(FsyncPolicy.NEVER, 1, records * 10);
+	}
+
+	private static void run(FsyncPolicy policy, int threads, int records) throws Exception {
+		Path directory = Files.createTempDirectory("wal-benchmark");
+		Path file = directory.resolve("products.wal");
+		AtomicLong next = new AtomicLong();
+		long start;
+		long syncs;
+		try (WriteAheadLog<Product> log = WriteAheadLog.open(file, new ProductCodec(), policy)) {
+			Thread[] writers = new Thread[threads];
+			for (int t = 0; t < threads; t++) {
+				writers[t] = new Thread(() -> {
+					long id;
+					while ((id = next.getAndIncrement()) < records) {
+						Product product = new Product(id, "Product " + id, id % 1000, (int) (id % 50));
+						log.awaitDurable(log.append(LogRecord.add(product)));
+					}
+				});
+			}
+			start = System.nanoTime();
+			for (Thread writer : writers)
+				writer.start();
+			for (Thread writer : writers)
+				writer.join();
+			log.flush();
+			syncs = log.getSyncCount();
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.printf("%-12s %-8d %-14.0f %-10d%n", policy, threads, records / seconds, syncs);
+		Files.delete(file);
+		Files.delete(directory);
+	}
+}
@@ -0,0 +1,215 @@
+package test.catalog;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import main.catalog.ExportReport;
+import main.catalog.ImportReport;
+import main.catalog.ProductExporter;
+import main.catalog.ProductImporter;
+import main.enumerations.CatalogFormat;
+import main.errors.BadRequestException;
+import main.models.Product;
+import main.repositories.ProductRepository;
+
+class ProductExporterTest {
+	private ProductRepository repository;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		java.lang.reflect.Field instanceField = ProductRepository.class.getDeclaredField("instance");
+		instanceField.setAccessible(true);
+		instanceField.set(null, null);
+		repository = ProductRepository.getInstance();
+
+		Product laptop = new Product(1L, "Laptop, 14\" \"Pro\"", 999.99, 10, 2, "Fast\nand light");
+		laptop.setCreatedAt(LocalDateTime.of(2024, 1, 2, 3, 4, 5));
+		repository.add(laptop);
+		repository.add(new Product(2L, "Caf\u00e9 \ud83d\ude00", 4.5, 3, null, "Tab\there, bell\u0007"));
+		repository.add(new Product(3L, "Mouse", 25.5, 50));
+		repository.add(new Product(4L, "Removed", 1, 1));
+		repository.add(new Product(5L, "Pad", 9.0, 0, 7, ""));
+		repository.remove(4L);
+	}
+
+	@AfterEach
+	void tearDown() {
+		repository.clear();
+	}
+
+	@Test
+	void csvRoundTripsThroughImporter() {
+		assertRoundTrip(CatalogFormat.CSV);
+	}
+
+	@Test
+	void jsonLinesRoundTripThroughImporter() {
+		assertRoundTrip(CatalogFormat.JSON_LINES);
+	}
+
+	@Test
+	void binaryRoundTripKeepsTimestamps() {
+		Product[] before = sorted(repository.findAll());
+		byte[] bytes = export(new ProductExporter(repository).withChunkSize(3), CatalogFormat.BINARY);
+		repository.clear();
+
+		ImportReport report = new ProductImporter(repository).withWorkers(2)
+				.importBinary(new ByteArrayInputStream(bytes));
+
+		assertEquals(4, report.getRowsImported());
+		Product[] after = sorted(repository.findAll());
+		for (int i = 0; i < before.length; i++) {
+			assertSameProduct(before[i], after[i]);
+			assertEquals(before[i].getCreatedAt(), after[i].getCreatedAt());
+			assertEquals(before[i].getUpdateAt(), after[i].getUpdateAt());
+		}
+	}
+
+	@Test
+	void rejectsTruncatedBinaryCatalog() {
+		byte[] bytes = export(new ProductExporter(repository).withChunkSize(2), CatalogFormat.BINARY);
+		repository.clear();
+		byte[] truncated = Arrays.copyOf(bytes, bytes.length - 8);
+
+		assertThrows(BadRequestException.class,
+				() -> new ProductImporter(repository).importBinary(new ByteArrayInputStream(truncated)));
+		// The complete frames before the damage are applied.
+		assertEquals(4, repository.getSize());
+		assertThrows(BadRequestException.class,
+				() -> new ProductImporter(repository).importBinary(new ByteArrayInputStream(new byte[8])));
+	}
+
+	@Test
+	void writesOneChunkAtATimeThroughSlowChannel() {
+		// Takes at most five bytes per call and every other call none.
+		ByteArrayOutputStream sink = new ByteArrayOutputStream();
+		int[] calls = new int[1];
+		WritableByteChannel slow = new WritableByteChannel() {
+			@Override
+			public int write(ByteBuffer source) {
+				if (calls[0]++ % 2 == 0)
+					return 0;
+				int length = Math.min(5, source.remaining());
+				byte[] bytes = new byte[length];
+				source.get(bytes);
+				sink.write(bytes, 0, length);
+				return length;
+			}
+
+			@Override
+			public boolean isOpen() {
+				return true;
+			}
+
+			@Override
+			public void close() {
+			}
+		};
+
+		ExportReport report = new ProductExporter(repository).withChunkSize(1).export(slow, CatalogFormat.CSV);
+
+		assertEquals(4, report.getRows());
+		assertEquals(sink.size(), report.getBytes());
+		String csv = sink.toString(StandardCharsets.UTF_8);
+		assertTrue(csv.startsWith("id,name,price,quantity,categoryId,description,createdAt,updatedAt\n"));
+		assertTrue(csv.contains("1,\"Laptop, 14\"\" \"\"Pro\"\"\",999.99,10,2,\"Fast\nand light\",2024-01-02T03:04:05,"));
+	}
+
+	@Test
+	void rejectsNonBlockingChannel() throws Exception {
+		Pipe pipe = Pipe.open();
+		try {
+			pipe.sink().configureBlocking(false);
+			assertThrows(BadRequestException.class,
+					() -> new ProductExporter(repository).export(pipe.sink(), CatalogFormat.CSV));
+		} finally {
+			pipe.sink().close();
+			pipe.source().close();
+		}
+	}
+
+	@Test
+	void exportsSnapshotTakenAtStart() {
+		ByteArrayOutputStream sink = new ByteArrayOutputStream();
+		WritableByteChannel target = Channels.newChannel(sink);
+		// Writers keep going while the export streams out.
+		WritableByteChannel mutating = new WritableByteChannel() {
+			@Override
+			public int write(ByteBuffer source) throws java.io.IOException {
+				if (!repository.exists(6L)) {
+					repository.add(new Product(6L, "Late", 1, 1));
+					repository.remove(3L);
+				}
+				return target.write(source);
+			}
+
+			@Override
+			public boolean isOpen() {
+				return true;
+			}
+
+			@Override
+			public void close() {
+			}
+		};
+
+		ExportReport report = new ProductExporter(repository).withChunkSize(1).export(mutating,
+				CatalogFormat.JSON_LINES);
+
+		assertEquals(4, report.getRows());
+		String jsonl = sink.toString(StandardCharsets.UTF_8);
+		assertTrue(jsonl.contains("\"name\":\"Mouse\""));
+		assertFalse(jsonl.contains("Late"));
+		assertTrue(jsonl.contains("\"name\":\"Caf\u00e9 \ud83d\ude00\""));
+		assertTrue(jsonl.contains("\"description\":\"Tab\\there, bell\\u0007\""));
+	}
+
+	private void assertRoundTrip(CatalogFormat format) {
+		Product[] before = sorted(repository.findAll());
+		byte[] bytes = export(new ProductExporter(repository).withChunkSize(2), format);
+		repository.clear();
+
+		ImportReport report = new ProductImporter(repository).withWorkers(2).importFrom(
+				new InputStreamReader(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8), format);
+
+		assertEquals(0, report.getRowsRejected());
+		Product[] after = sorted(repository.findAll());
+		assertEquals(before.length, after.length);
+		for (int i = 0; i < before.length; i++)
+			assertSameProduct(before[i], after[i]);
+	}
+
+	private static byte[] export(ProductExporter exporter, CatalogFormat format) {
+		ByteArrayOutputStream sink = new ByteArrayOutputStream();
+		exporter.export(Channels.newChannel(sink), format);
+		return sink.toByteArray();
+	}
+
+	private static Product[] sorted(Product[] products) {
+		Arrays.sort(products, (a, b) -> Long.compare(a.getId(), b.getId()));
+		return products;
+	}
+
+	private static void assertSameProduct(Product expected, Product actual) {
+		assertEquals(expected.getId(), actual.getId());
+		assertEquals(expected.getName(), actual.getName());
+		assertEquals(expected.getPrice(), actual.getPrice());
+		assertEquals(expected.getQuantity(), actual.getQuantity());
+		assertEquals(expected.getCategoryId(), actual.getCategoryId());
+		assertEquals(expected.getDescription(), actual.getDescription());
+	}
+}
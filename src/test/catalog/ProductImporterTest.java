@@ -0,0 +1,150 @@
+package test.catalog;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import main.catalog.ImportReport;
+import main.catalog.ProductImporter;
+import main.catalog.RejectedRow;
+import main.enumerations.CatalogFormat;
+import main.errors.BadRequestException;
+import main.errors.NotFoundException;
+import main.models.Product;
+import main.repositories.ProductRepository;
+
+class ProductImporterTest {
+	private ProductRepository repository;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		java.lang.reflect.Field instanceField = ProductRepository.class.getDeclaredField("instance");
+		instanceField.setAccessible(true);
+		instanceField.set(null, null);
+		repository = ProductRepository.getInstance();
+	}
+
+	@AfterEach
+	void tearDown() {
+		repository.clear();
+	}
+
+	@Test
+	void importsCsvWithQuotedFields() {
+		String csv = "\uFEFFId,Name,Price,Quantity,category_id,Description,Supplier\n"
+				+ "1,Laptop,999.99,10,2,\"14 inch, \"\"pro\"\" model\",Acme\n"
+				+ "\n"
+				+ "2,\"Desk\nLamp\",15,3,,\"Two\nlines\",Acme\n"
+				+ "3,Mouse,25.5,50,2,,Acme\n";
+
+		ImportReport report = importer().importFrom(new StringReader(csv), CatalogFormat.CSV);
+
+		assertEquals(3, report.getRowsRead());
+		assertEquals(3, report.getRowsImported());
+		assertEquals(0, report.getRowsRejected());
+		Product laptop = repository.findById(1L);
+		assertEquals("14 inch, \"pro\" model", laptop.getDescription());
+		assertEquals(2, laptop.getCategoryId());
+		Product lamp = repository.findById(2L);
+		assertEquals("Desk\nLamp", lamp.getName());
+		assertNull(lamp.getCategoryId());
+		assertEquals("", repository.findById(3L).getDescription());
+	}
+
+	@Test
+	void skipsMalformedRowsWithTheirLines() {
+		String csv = "id,name,price,quantity\n"
+				+ "1,Laptop,999.99,10\n"
+				+ "2,Mouse,cheap,5\n"
+				+ "3,,5,5\n"
+				+ "4,Pad,5\n"
+				+ "5,Stand,-1,5\n"
+				+ "6,\"Multi\nline\",NaN,1\n"
+				+ "7,Cable,3,4\n";
+		List<RejectedRow> rejected = new ArrayList<>();
+
+		ImportReport report = importer().onRejected(rejected::add).importFrom(new StringReader(csv),
+				CatalogFormat.CSV);
+
+		assertEquals(7, report.getRowsRead());
+		assertEquals(2, report.getRowsImported());
+		assertEquals(5, report.getRowsRejected());
+		assertEquals(5, rejected.size());
+		assertEquals(List.of(3L, 4L, 5L, 6L, 7L), rejected.stream().map(RejectedRow::getLine).toList());
+		assertEquals("Invalid price \"cheap\"", rejected.get(0).getReason());
+		assertEquals("Expected 4 fields but found 3", rejected.get(2).getReason());
+		assertTrue(repository.exists(7L));
+		assertEquals(report.getRejections().size(), rejected.size());
+	}
+
+	@Test
+	void rejectsHeaderWithoutRequiredColumns() {
+		assertThrows(BadRequestException.class, () -> importer().importFrom(new StringReader("id,name,quantity\n"),
+				CatalogFormat.CSV));
+	}
+
+	@Test
+	void importsJsonLines() {
+		String jsonl = "{\"id\": 1, \"name\": \"Caf\\u00e9 \\\"Noir\\\"\", \"price\": 4.5, \"quantity\": 3,"
+				+ " \"tags\": [\"a\", {\"b\": null}], \"categoryId\": null}\n"
+				+ "\n"
+				+ "{\"id\": \"2\", \"name\": \"Tea\", \"price\": 2, \"quantity\": 9, \"description\": \"Green\\ntea\"}\n"
+				+ "{\"id\": 3, \"name\": \"Broken\", \"price\": {\"eur\": 1}, \"quantity\": 1}\n"
+				+ "{\"id\": 4, \"name\": \"Truncated\"\n";
+		List<RejectedRow> rejected = new ArrayList<>();
+
+		ImportReport report = importer().onRejected(rejected::add).importFrom(new StringReader(jsonl),
+				CatalogFormat.JSON_LINES);
+
+		assertEquals(2, report.getRowsImported());
+		assertEquals("Caf\u00e9 \"Noir\"", repository.findById(1L).getName());
+		assertEquals("Green\ntea", repository.findById(2L).getDescription());
+		assertEquals(List.of(4L, 5L), rejected.stream().map(RejectedRow::getLine).toList());
+		assertEquals("Field price must be a string, number or null", rejected.get(0).getReason());
+	}
+
+	@Test
+	void appliesBatchesInInputOrder() {
+		StringBuilder csv = new StringBuilder("id,name,price,quantity\n");
+		// Every id appears three times; the last row of each must win.
+		for (int round = 0; round < 3; round++) {
+			for (int id = 0; id < 1_000; id++)
+				csv.append(id).append(",Product ").append(id).append(',').append(round).append(",1\n");
+		}
+		List<ImportReport> progress = new ArrayList<>();
+
+		ImportReport report = importer().withBatchSize(64).withWorkers(4).onProgress(progress::add)
+				.importFrom(new StringReader(csv.toString()), CatalogFormat.CSV);
+
+		assertEquals(3_000, report.getRowsImported());
+		assertEquals(1_000, repository.getSize());
+		for (long id = 0; id < 1_000; id += 97)
+			assertEquals(2.0, repository.findById(id).getPrice());
+		assertEquals(1_000, repository.sortByPrice().getResult().length);
+		assertEquals((3_000 + 63) / 64, progress.size());
+		assertEquals(3_000, progress.get(progress.size() - 1).getRowsRead());
+	}
+
+	@Test
+	void upsertsDuplicatesWithinOneBatch() {
+		String csv = "id,name,price,quantity\n1,First,1,1\n2,Other,2,2\n1,Second,3,3\n";
+
+		importer().importFrom(new StringReader(csv), CatalogFormat.CSV);
+
+		assertEquals(2, repository.getSize());
+		assertEquals("Second", repository.findById(1L).getName());
+		assertEquals("Second", repository.findByName("second").getName());
+		assertThrows(NotFoundException.class, () -> repository.findByName("First"));
+		assertEquals(3.0, repository.sortByPrice().getResult()[1].getPrice());
+	}
+
+	private ProductImporter importer() {
+		return new ProductImporter(repository).withWorkers(2);
+	}
+}
@@ -0,0 +1,49 @@
+package test.lib;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import main.errors.BadRequestException;
+import main.utils.CapacityPolicy;
+
+class CapacityPolicyTest {
+
+	@Test
+	void defaultPolicyDoubles() {
+		assertEquals(10, CapacityPolicy.DEFAULT.grow(5, 6));
+		assertEquals(1, CapacityPolicy.DEFAULT.grow(0, 1));
+		assertEquals(100, CapacityPolicy.DEFAULT.grow(5, 100));
+	}
+
+	@Test
+	void growthFactorIsApplied() {
+		CapacityPolicy policy = CapacityPolicy.DEFAULT.withGrowthFactor(1.5);
+		assertEquals(150, policy.grow(100, 101));
+		assertEquals(2, policy.grow(1, 2));
+	}
+
+	@Test
+	void chunkedGrowthRoundsUpToWholeChunks() {
+		CapacityPolicy policy = CapacityPolicy.DEFAULT.withChunkSize(1000);
+		assertEquals(2000, policy.grow(1000, 1001));
+		assertEquals(5000, policy.grow(1000, 4500));
+	}
+
+	@Test
+	void shrinksOnlyBelowLoadFactor() {
+		CapacityPolicy policy = CapacityPolicy.DEFAULT.withShrinkLoadFactor(0.25);
+		assertEquals(1000, policy.shrink(1000, 250));
+		assertEquals(200, policy.shrink(1000, 100));
+		assertEquals(5, policy.shrink(1000, 0));
+		assertEquals(1000, CapacityPolicy.DEFAULT.shrink(1000, 0));
+	}
+
+	@Test
+	void rejectsInvalidSettings() {
+		assertThrows(BadRequestException.class, () -> CapacityPolicy.DEFAULT.withInitialCapacity(0));
+		assertThrows(BadRequestException.class, () -> CapacityPolicy.DEFAULT.withGrowthFactor(1.0));
+		assertThrows(BadRequestException.class, () -> CapacityPolicy.DEFAULT.withChunkSize(-1));
+		assertThrows(BadRequestException.class, () -> CapacityPolicy.DEFAULT.withShrinkLoadFactor(0.5));
+	}
+}
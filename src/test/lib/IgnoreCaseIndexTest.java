@@ -0,0 +1,61 @@
+package test.lib;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import main.utils.IgnoreCaseIndex;
+
+class IgnoreCaseIndexTest {
+
+	@Test
+	void shouldFindKeysIgnoringCase() {
+		IgnoreCaseIndex<String> index = new IgnoreCaseIndex<>();
+		index.add("Admin@Gmail.com", 1, "admin");
+		assertEquals("admin", index.first("admin@gmail.com"));
+		assertEquals("admin", index.first("ADMIN@GMAIL.COM"));
+		assertTrue(index.contains("aDmIn@gMaIl.CoM"));
+		assertNull(index.first("admin@gmail.co"));
+		assertFalse(index.contains(null));
+	}
+
+	@Test
+	void shouldReturnLowestSequenceFirst() {
+		IgnoreCaseIndex<String> index = new IgnoreCaseIndex<>();
+		index.add("same", 7, "later");
+		index.add("SAME", 3, "earlier");
+		assertEquals(2, index.count("same"));
+		assertEquals("earlier", index.first("same"));
+
+		index.remove(3);
+		assertEquals("later", index.first("same"));
+		index.remove(7);
+		assertFalse(index.contains("same"));
+	}
+
+	@Test
+	void shouldMoveEntryWhenSequenceIsReAdded() {
+		IgnoreCaseIndex<String> index = new IgnoreCaseIndex<>();
+		index.add("old@mail.com", 1, "user");
+		index.add("new@mail.com", 1, "user");
+		assertFalse(index.contains("old@mail.com"));
+		assertEquals("user", index.first("NEW@mail.com"));
+		assertEquals(1, index.size());
+	}
+
+	@Test
+	void shouldSurviveGrowthAndRemovals() {
+		IgnoreCaseIndex<Integer> index = new IgnoreCaseIndex<>();
+		for (int i = 0; i < 2_000; i++)
+			index.add("user" + i + "@mail.com", i, i);
+		for (int i = 0; i < 2_000; i += 2)
+			index.remove(i);
+
+		for (int i = 0; i < 2_000; i++) {
+			if (i % 2 == 0)
+				assertFalse(index.contains("USER" + i + "@MAIL.COM"));
+			else
+				assertEquals(i, index.first("USER" + i + "@MAIL.COM"));
+		}
+	}
+}
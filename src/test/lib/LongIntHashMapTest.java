@@ -0,0 +1,72 @@
+package test.lib;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import main.utils.LongIntHashMap;
+
+class LongIntHashMapTest {
+
+	@Test
+	void shouldPutAndGetValues() {
+		LongIntHashMap map = new LongIntHashMap();
+		map.put(1L, 10);
+		map.put(-5L, 20);
+		map.put(Long.MAX_VALUE, 30);
+
+		assertEquals(3, map.size());
+		assertEquals(10, map.get(1L));
+		assertEquals(20, map.get(-5L));
+		assertEquals(30, map.get(Long.MAX_VALUE));
+		assertEquals(LongIntHashMap.MISSING, map.get(2L));
+	}
+
+	@Test
+	void shouldOverwriteExistingKey() {
+		LongIntHashMap map = new LongIntHashMap();
+		assertEquals(LongIntHashMap.MISSING, map.put(7L, 1));
+		assertEquals(1, map.put(7L, 2));
+		assertEquals(1, map.size());
+		assertEquals(2, map.get(7L));
+	}
+
+	@Test
+	void shouldGrowAndKeepAllEntries() {
+		LongIntHashMap map = new LongIntHashMap(2);
+		for (int i = 0; i < 10_000; i++)
+			map.put(i * 31L, i);
+
+		assertEquals(10_000, map.size());
+		for (int i = 0; i < 10_000; i++)
+			assertEquals(i, map.get(i * 31L));
+	}
+
+	@Test
+	void shouldRemoveWithoutBreakingProbeChains() {
+		LongIntHashMap map = new LongIntHashMap();
+		for (int i = 0; i < 1_000; i++)
+			map.put(i, i);
+		for (int i = 0; i < 1_000; i += 2)
+			assertEquals(i, map.remove(i));
+
+		assertEquals(500, map.size());
+		for (int i = 0; i < 1_000; i++) {
+			if (i % 2 == 0)
+				assertFalse(map.containsKey(i));
+			else
+				assertEquals(i, map.get(i));
+		}
+		assertEquals(LongIntHashMap.MISSING, map.remove(0L));
+	}
+
+	@Test
+	void shouldClearAllEntries() {
+		LongIntHashMap map = new LongIntHashMap();
+		map.put(1L, 1);
+		map.put(2L, 2);
+		map.clear();
+		assertEquals(0, map.size());
+		assertFalse(map.containsKey(1L));
+	}
+}
@@ -0,0 +1,66 @@
+package test.lib;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import main.utils.PostingIndex;
+
+class PostingIndexTest {
+
+	@Test
+	void shouldListEntriesInSequenceOrder() {
+		PostingIndex<String> index = new PostingIndex<>();
+		index.add(1, 5, "e");
+		index.add(1, 2, "b");
+		index.add(2, 3, "c");
+		index.add(1, 9, "i");
+
+		assertEquals(List.of("b", "e", "i"), values(index, 1));
+		assertEquals(List.of("c"), values(index, 2));
+		assertEquals(0, index.count(3));
+		assertEquals(2, index.keyCount());
+		assertEquals(4, index.size());
+	}
+
+	@Test
+	void shouldMoveEntryToItsNewKey() {
+		PostingIndex<String> index = new PostingIndex<>();
+		index.add(1, 1, "a");
+		index.add(2, 1, "a moved");
+
+		assertEquals(0, index.count(1));
+		assertEquals(List.of("a moved"), values(index, 2));
+		assertEquals(1, index.keyCount());
+
+		index.add(2, 1, "a replaced");
+		assertEquals(List.of("a replaced"), values(index, 2));
+	}
+
+	@Test
+	void shouldDropEmptyKeysOnRemove() {
+		PostingIndex<String> index = new PostingIndex<>();
+		for (int i = 0; i < 100; i++)
+			index.add(i % 2, i, "v" + i);
+		for (int i = 0; i < 100; i += 2)
+			index.remove(i);
+		index.remove(1_000);
+
+		assertEquals(0, index.count(0));
+		assertEquals(50, index.count(1));
+		assertEquals(1, index.keyCount());
+
+		index.clear();
+		assertEquals(0, index.size());
+		assertEquals(0, index.count(1));
+	}
+
+	private static List<String> values(PostingIndex<String> index, int key) {
+		List<String> values = new ArrayList<>();
+		index.forEach(key, values::add);
+		return values;
+	}
+}
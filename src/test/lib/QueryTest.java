@@ -5,12 +5,14 @@ import static org.junit.jupiter.api.Assertions.*;
 import org.junit.jupiter.api.Test;
 
 import main.errors.BadRequestException;
+import main.errors.InternalAppException;
 import main.utils.Query;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.AfterEach;
 
 import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Predicate;
 
@@ -226,4 +228,190 @@ class QueryTest {
 		assertArrayEquals(new Integer[] { 1, 2, 3, 4, 5 }, query.getResult());
 		assertArrayEquals(new Integer[] { 10, 20, 30, 40, 50 }, mapped.getResult());
 	}
+
+	@Test
+	void shouldReadSliceOfViewWithoutTouchingOutsideElements() {
+		Integer[] data = { 1, 2, 3, 4, 5, 6 };
+		Query<Integer> view = Query.view(data, 1, 4, null);
+		assertEquals(4, view.getSize());
+		assertArrayEquals(new Integer[] { 2, 3, 4, 5 }, view.getResult());
+		assertArrayEquals(new Integer[] { 3, 4 }, view.skip(1).limit(2).getResult());
+		assertArrayEquals(new Integer[] { 4, 5 }, view.paginate(2, 2).getResult());
+		assertEquals(2, view.indexOf(x -> x == 4));
+	}
+
+	@Test
+	void shouldRejectViewOutOfBounds() {
+		Integer[] data = { 1, 2, 3 };
+		assertThrows(BadRequestException.class, () -> Query.view(data, 2, 2, null));
+		assertThrows(BadRequestException.class, () -> Query.view(data, -1, 1, null));
+	}
+
+	@Test
+	void shouldFailFastWhenViewSourceIsModified() {
+		Integer[] data = { 1, 2, 3 };
+		AtomicInteger stamp = new AtomicInteger();
+		Query<Integer> view = Query.view(data, 0, 3, stamp::get);
+		Query<Integer> page = view.limit(2);
+		assertArrayEquals(new Integer[] { 1, 2 }, page.getResult());
+
+		stamp.incrementAndGet();
+		assertThrows(InternalAppException.class, () -> page.getResult());
+		assertThrows(InternalAppException.class, () -> view.find(x -> x == 3));
+	}
+
+	@Test
+	void shouldKeepEqualElementsInOriginalOrderWhenSorting() {
+		String[] data = { "b1", "a1", "b2", "a2", "b3", "a3" };
+		Query<String> sorted = Query.of(data).sort(Comparator.comparing(s -> s.charAt(0)));
+		assertArrayEquals(new String[] { "a1", "a2", "a3", "b1", "b2", "b3" }, sorted.getResult());
+
+		Query<String> reversed = Query.of(data).sort((s1, s2) -> Character.compare(s2.charAt(0), s1.charAt(0)));
+		assertArrayEquals(new String[] { "b1", "b2", "b3", "a1", "a2", "a3" }, reversed.getResult());
+	}
+
+	@Test
+	void shouldSortLargeInputWithoutChangingSource() {
+		Integer[] data = new Integer[50_000];
+		for (int i = 0; i < data.length; i++)
+			data[i] = (i * 7919) % data.length;
+
+		Integer[] sorted = Query.of(data).sort(Comparator.naturalOrder()).getResult();
+		for (int i = 0; i < sorted.length; i++)
+			assertEquals(i, sorted[i]);
+		assertEquals(0, data[0]);
+		assertEquals(7919, data[1]);
+	}
+
+	@Test
+	void shouldReturnSameRowsAsSortThenPaginate() {
+		Integer[] data = new Integer[1_000];
+		for (int i = 0; i < data.length; i++)
+			data[i] = (i * 389) % 97;
+
+		Comparator<Integer> byValue = Comparator.naturalOrder();
+		for (int page = 1; page <= 12; page++) {
+			Integer[] expected = Query.of(data).sort(byValue).paginate(page, 7).getResult();
+			Integer[] actual = Query.of(data).sortedPage(byValue, page, 7).getResult();
+			assertArrayEquals(expected, actual);
+		}
+	}
+
+	@Test
+	void shouldKeepStableOrderOfTiesInSortedPage() {
+		String[] data = { "b1", "a1", "b2", "a2", "b3", "a3", "c1" };
+		Comparator<String> byLetter = Comparator.comparing(s -> s.charAt(0));
+		assertArrayEquals(new String[] { "a1", "a2" }, Query.of(data).sortedPage(byLetter, 1, 2).getResult());
+		assertArrayEquals(new String[] { "a3", "b1" }, Query.of(data).sortedPage(byLetter, 2, 2).getResult());
+		assertArrayEquals(new String[] { "c1" }, Query.of(data).sortedPage(byLetter, 4, 2).getResult());
+		assertArrayEquals(new String[] {}, Query.of(data).sortedPage(byLetter, 5, 2).getResult());
+	}
+
+	@Test
+	void shouldRejectInvalidSortedPageArguments() {
+		Query<Integer> query = Query.of(new Integer[] { 1, 2, 3 });
+		assertThrows(BadRequestException.class, () -> query.sortedPage(Comparator.naturalOrder(), 0, 2));
+		assertThrows(BadRequestException.class, () -> query.sortedPage(Comparator.naturalOrder(), 1, 0));
+	}
+
+	@Test
+	void shouldNotRunStagesUntilTerminalOperation() {
+		Integer[] data = { 1, 2, 3, 4, 5 };
+		AtomicInteger calls = new AtomicInteger();
+		Query<Integer> query = Query.of(data).filter(x -> {
+			calls.incrementAndGet();
+			return x % 2 == 1;
+		});
+		assertEquals(0, calls.get());
+		assertArrayEquals(new Integer[] { 1, 3, 5 }, query.getResult());
+		assertEquals(5, calls.get());
+	}
+
+	@Test
+	void shouldStopFilteringOnceLimitIsReached() {
+		Integer[] data = new Integer[1_000];
+		for (int i = 0; i < data.length; i++)
+			data[i] = i;
+		AtomicInteger calls = new AtomicInteger();
+		Integer[] result = Query.of(data).filter(x -> {
+			calls.incrementAndGet();
+			return x % 3 == 0;
+		}).limit(5).getResult();
+
+		assertArrayEquals(new Integer[] { 0, 3, 6, 9, 12 }, result);
+		assertEquals(13, calls.get());
+	}
+
+	@Test
+	void shouldShortCircuitFindThroughStages() {
+		Integer[] data = { 1, 2, 3, 4, 5, 6 };
+		AtomicInteger calls = new AtomicInteger();
+		Integer found = Query.of(data).map(x -> {
+			calls.incrementAndGet();
+			return x * 10;
+		}).find(x -> x > 20);
+		assertEquals(30, found);
+		assertEquals(3, calls.get());
+	}
+
+	@Test
+	void shouldFuseStagesInDeclaredOrder() {
+		Integer[] data = { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 };
+		Query<Integer> query = Query.of(data)
+				.map(x -> x * 2)
+				.filter(x -> x > 4)
+				.skip(2)
+				.filter(x -> x % 4 == 0)
+				.paginate(1, 2);
+		assertArrayEquals(new Integer[] { 12, 16 }, query.getResult());
+		assertEquals(2, query.count());
+		assertEquals(1, query.indexOf(x -> x == 16));
+		assertEquals(3, Query.of(data).map(x -> x + 1).skip(4).limit(3).count());
+	}
+
+	@Test
+	void shouldKeepSequentialOrderInParallelMode() {
+		Integer[] data = new Integer[100_000];
+		for (int i = 0; i < data.length; i++)
+			data[i] = (i * 7919) % 1_000;
+
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			Query<Integer> sequential = Query.of(data).map(x -> x * 3).filter(x -> x % 2 == 0).skip(10).limit(5_000);
+			Query<Integer> parallel = Query.of(data).parallel(pool).map(x -> x * 3).filter(x -> x % 2 == 0).skip(10)
+					.limit(5_000);
+			assertTrue(parallel.isParallel());
+			assertArrayEquals(sequential.getResult(), parallel.getResult());
+			assertEquals(sequential.count(), parallel.count());
+			assertEquals(Query.of(data).filter(x -> x > 500).count(),
+					Query.of(data).parallel(pool).filter(x -> x > 500).count());
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	void shouldSortAndPageStablyInParallelMode() {
+		String[] data = new String[50_000];
+		for (int i = 0; i < data.length; i++)
+			data[i] = (char) ('a' + (i * 31) % 26) + String.valueOf(i);
+
+		Comparator<String> byLetter = Comparator.comparing(s -> s.charAt(0));
+		assertArrayEquals(Query.of(data).sort(byLetter).getResult(),
+				Query.of(data).parallel().sort(byLetter).getResult());
+		for (int page = 1; page <= 3; page++) {
+			assertArrayEquals(Query.of(data).sort(byLetter).paginate(page, 25).getResult(),
+					Query.of(data).parallel().filter(s -> true).sortedPage(byLetter, page, 25).getResult());
+		}
+	}
+
+	@Test
+	void shouldVisitEveryElementWithParallelForEach() {
+		Integer[] data = new Integer[20_000];
+		for (int i = 0; i < data.length; i++)
+			data[i] = 1;
+		AtomicInteger sum = new AtomicInteger();
+		Query.of(data).parallel().filter(x -> x > 0).forEach(sum::addAndGet);
+		assertEquals(20_000, sum.get());
+	}
 }
@@ -0,0 +1,164 @@
+package test.lib;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import main.utils.RankedSkipList;
+
+class RankedSkipListTest {
+
+	@Test
+	void shouldKeepEntriesOrderedByKeyThenSequence() {
+		RankedSkipList<Integer, String> list = new RankedSkipList<>(Integer::compare);
+		list.insert(5, 0, "a");
+		list.insert(1, 1, "b");
+		list.insert(5, 2, "c");
+		list.insert(3, 3, "d");
+
+		assertEquals(4, list.size());
+		assertEquals("b", list.get(0));
+		assertEquals("d", list.get(1));
+		assertEquals("a", list.get(2));
+		assertEquals("c", list.get(3));
+		assertNull(list.get(4));
+	}
+
+	@Test
+	void shouldRemoveBySequence() {
+		RankedSkipList<Integer, String> list = new RankedSkipList<>(Integer::compare);
+		list.insert(2, 10, "x");
+		list.insert(1, 11, "y");
+		assertTrue(list.remove(10));
+		assertFalse(list.remove(10));
+		assertEquals(1, list.size());
+		assertEquals("y", list.get(0));
+	}
+
+	@Test
+	void shouldCountRanksAroundKey() {
+		RankedSkipList<Integer, Integer> list = new RankedSkipList<>(Integer::compare);
+		int[] keys = { 4, 1, 4, 7, 4, 2 };
+		for (int i = 0; i < keys.length; i++)
+			list.insert(keys[i], i, keys[i]);
+
+		assertEquals(2, list.rankOf(4));
+		assertEquals(5, list.rankAfter(4));
+		assertEquals(0, list.rankOf(0));
+		assertEquals(6, list.rankAfter(9));
+	}
+
+	@Test
+	void shouldReadDescendingPagesLikeStableSort() {
+		RankedSkipList<Integer, String> list = new RankedSkipList<>(Integer::compare);
+		String[] values = { "a1", "b1", "a2", "c1", "b2", "a3" };
+		for (int i = 0; i < values.length; i++)
+			list.insert(values[i].charAt(0) - 'a', i, values[i]);
+
+		List<String> all = new ArrayList<>();
+		list.forEachDescending(0, 10, all::add);
+		assertEquals(Arrays.asList("c1", "b1", "b2", "a1", "a2", "a3"), all);
+
+		List<String> page = new ArrayList<>();
+		list.forEachDescending(2, 3, page::add);
+		assertEquals(Arrays.asList("b2", "a1", "a2"), page);
+	}
+
+	@Test
+	void shouldWalkDescendingFromEveryRankAfterMutations() {
+		RankedSkipList<Integer, Long> list = new RankedSkipList<>(Integer::compare);
+		List<long[]> live = new ArrayList<>();
+		Random random = new Random(5);
+		for (long seq = 0; seq < 400; seq++) {
+			if (!live.isEmpty() && random.nextInt(4) == 0)
+				assertTrue(list.remove(live.remove(random.nextInt(live.size()))[1]));
+			int key = random.nextInt(12);
+			list.insert(key, seq, seq);
+			live.add(new long[] { key, seq });
+		}
+
+		// Keys descending, sequences ascending within a key.
+		live.sort(Comparator.<long[]>comparingLong(e -> -e[0]).thenComparingLong(e -> e[1]));
+		for (int from = 0; from <= live.size(); from += 7) {
+			List<Long> walked = new ArrayList<>();
+			list.forEachDescendingFrom(from, (key, value) -> walked.add(value));
+			assertEquals(live.size() - from, walked.size());
+			for (int i = 0; i < walked.size(); i++)
+				assertEquals(live.get(from + i)[1], walked.get(i));
+		}
+	}
+
+	@Test
+	void shouldMatchSortedArrayUnderRandomMutations() {
+		RankedSkipList<Integer, Long> list = new RankedSkipList<>(Integer::compare);
+		List<long[]> live = new ArrayList<>();
+		Random random = new Random(7);
+
+		for (long seq = 0; seq < 3_000; seq++) {
+			if (!live.isEmpty() && random.nextInt(3) == 0) {
+				long[] victim = live.remove(random.nextInt(live.size()));
+				assertTrue(list.remove(victim[1]));
+			}
+			int key = random.nextInt(100);
+			list.insert(key, seq, seq);
+			live.add(new long[] { key, seq });
+		}
+
+		live.sort(Comparator.<long[]>comparingLong(e -> e[0]).thenComparingLong(e -> e[1]));
+		assertEquals(live.size(), list.size());
+		for (int rank = 0; rank < live.size(); rank += 37)
+			assertEquals(live.get(rank)[1], list.get(rank));
+
+		List<Long> page = new ArrayList<>();
+		list.forEachAscending(100, 5, page::add);
+		for (int i = 0; i < 5; i++)
+			assertEquals(live.get(100 + i)[1], page.get(i));
+	}
+
+	@Test
+	void shouldBulkInsertLikeSingleInserts() {
+		RankedSkipList<Integer, Long> bulk = new RankedSkipList<>(Integer::compare);
+		RankedSkipList<Integer, Long> single = new RankedSkipList<>(Integer::compare);
+		Random random = new Random(11);
+		long seq = 0;
+
+		// A first batch into an empty list, then one merged with existing entries.
+		for (int batch : new int[] { 500, 2_000 }) {
+			int[] keys = new int[batch];
+			long first = seq;
+			for (int i = 0; i < batch; i++) {
+				keys[i] = random.nextInt(50);
+				single.insert(keys[i], seq, seq);
+				seq++;
+			}
+			bulk.insertAll(batch, i -> keys[i], i -> first + i, i -> first + i);
+		}
+		// Mutations after the bulk load must still see consistent widths.
+		for (int i = 0; i < 300; i++) {
+			long victim = random.nextInt((int) seq);
+			assertEquals(single.remove(victim), bulk.remove(victim));
+			int key = random.nextInt(50);
+			single.insert(key, seq, seq);
+			bulk.insert(key, seq, seq);
+			seq++;
+		}
+
+		assertEquals(single.size(), bulk.size());
+		for (int rank = 0; rank < single.size(); rank++)
+			assertEquals(single.get(rank), bulk.get(rank));
+		assertEquals(single.rankOf(20), bulk.rankOf(20));
+		assertEquals(single.rankAfter(20), bulk.rankAfter(20));
+
+		List<Long> expected = new ArrayList<>();
+		List<Long> actual = new ArrayList<>();
+		single.forEachDescending(40, 25, expected::add);
+		bulk.forEachDescending(40, 25, actual::add);
+		assertEquals(expected, actual);
+	}
+}
@@ -0,0 +1,85 @@
+package test.lib;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import main.utils.Query;
+import main.utils.SegmentedArray;
+
+class SegmentedArrayTest {
+
+	private static SegmentedArray<Integer> segmented(int segmentSize, int length) {
+		SegmentedArray<Integer> array = SegmentedArray.wrap(new Integer[0]).reshape(segmentSize, 0);
+		array.resize(length);
+		for (int i = 0; i < length; i++)
+			array.set(i, i);
+		return array;
+	}
+
+	@Test
+	void shouldRoundSegmentSizeToPowerOfTwo() {
+		assertEquals(0, SegmentedArray.segmentSizeFor(0));
+		assertEquals(1024, SegmentedArray.segmentSizeFor(1000));
+		assertEquals(1024, SegmentedArray.segmentSizeFor(1024));
+	}
+
+	@Test
+	void shouldGrowByAddingSegments() {
+		SegmentedArray<Integer> array = segmented(16, 40);
+		assertTrue(array.isSegmented());
+		assertEquals(48, array.capacity());
+		assertEquals(3, array.segmentCount());
+
+		Integer[] first = array.segmentFor(0);
+		array.resize(100);
+		assertSame(first, array.segmentFor(0));
+		assertEquals(39, array.get(39));
+		assertEquals(112, array.capacity());
+	}
+
+	@Test
+	void shouldShrinkByDroppingSegments() {
+		SegmentedArray<Integer> array = segmented(16, 100);
+		assertEquals(32, array.resize(20));
+		assertEquals(2, array.segmentCount());
+		assertEquals(19, array.get(19));
+	}
+
+	@Test
+	void shouldCopyAndClearAcrossSegments() {
+		SegmentedArray<Integer> array = segmented(8, 30);
+		Integer[] copy = array.copyRange(5, 20);
+		assertEquals(15, copy.length);
+		for (int i = 0; i < copy.length; i++)
+			assertEquals(i + 5, copy[i]);
+
+		array.clear(6, 18);
+		assertEquals(5, array.get(5));
+		assertNull(array.get(6));
+		assertNull(array.get(17));
+		assertEquals(18, array.get(18));
+	}
+
+	@Test
+	void shouldReshapeBetweenLayouts() {
+		SegmentedArray<Integer> flat = SegmentedArray.wrap(new Integer[] { 1, 2, 3 });
+		assertFalse(flat.isSegmented());
+		SegmentedArray<Integer> chunked = flat.reshape(2, 3);
+		assertEquals(2, chunked.segmentSize());
+		assertEquals(3, chunked.get(2));
+		assertArrayEquals(new Integer[] { 1, 2, 3 }, chunked.reshape(0, 3).copyRange(0, 3));
+	}
+
+	@Test
+	void queryShouldWalkSegmentsInPlace() {
+		SegmentedArray<Integer> array = segmented(16, 100);
+		Query<Integer> view = Query.view(array, 10, 80, null);
+
+		assertEquals(80, view.count());
+		assertArrayEquals(array.copyRange(30, 40), view.skip(20).limit(10).getResult());
+		assertEquals(40, view.filter(i -> i % 2 == 0).count());
+		assertEquals(Integer.valueOf(89), view.sort((a, b) -> b - a).getResult()[0]);
+		assertEquals(Integer.valueOf(33), view.find(i -> i > 32));
+	}
+}
@@ -0,0 +1,70 @@
+package test.lib;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import main.utils.TrigramIndex;
+
+class TrigramIndexTest {
+
+	private List<String> search(TrigramIndex<String> index, String needle) {
+		List<String> found = new ArrayList<>();
+		index.search(needle, found::add);
+		return found;
+	}
+
+	@Test
+	void shouldFindSubstringsIgnoringCase() {
+		TrigramIndex<String> index = new TrigramIndex<>();
+		index.add(1, "Wireless Mouse", "mouse");
+		index.add(2, "Gaming Mousepad", "pad");
+		index.add(3, "Keyboard", "keyboard");
+
+		assertEquals(Arrays.asList("mouse", "pad"), search(index, "MOUSE"));
+		assertEquals(Arrays.asList("mouse"), search(index, "less mo"));
+		assertEquals(Arrays.asList("keyboard"), search(index, "boa"));
+		assertTrue(search(index, "xyz").isEmpty());
+	}
+
+	@Test
+	void shouldVerifyCandidatesThatShareAllTrigrams() {
+		TrigramIndex<String> index = new TrigramIndex<>();
+		index.add(1, "abcd bcde", "split");
+		index.add(2, "abcde", "whole");
+		assertEquals(Arrays.asList("whole"), search(index, "abcde"));
+	}
+
+	@Test
+	void shouldEmitMatchesInSequenceOrder() {
+		TrigramIndex<String> index = new TrigramIndex<>();
+		index.add(5, "orange five", "5");
+		index.add(2, "orange two", "2");
+		index.add(9, "orange nine", "9");
+		assertEquals(Arrays.asList("2", "5", "9"), search(index, "orange"));
+	}
+
+	@Test
+	void shouldForgetRemovedAndReplacedEntries() {
+		TrigramIndex<String> index = new TrigramIndex<>();
+		index.add(1, "Coffee Maker", "old");
+		index.add(1, "Tea Kettle", "new");
+		assertTrue(search(index, "coffee").isEmpty());
+		assertEquals(Arrays.asList("new"), search(index, "kettle"));
+
+		index.remove(1);
+		assertTrue(search(index, "kettle").isEmpty());
+		assertEquals(0, index.size());
+	}
+
+	@Test
+	void shouldOnlyAcceptNeedlesOfAtLeastOneTrigram() {
+		assertFalse(TrigramIndex.isSearchable("ab"));
+		assertFalse(TrigramIndex.isSearchable(null));
+		assertTrue(TrigramIndex.isSearchable("abc"));
+	}
+}
@@ -0,0 +1,152 @@
+package test.persistence;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import main.enumerations.Role;
+import main.models.Category;
+import main.models.Entity;
+import main.models.Product;
+import main.models.User;
+import main.persistence.BinaryReader;
+import main.persistence.BinaryWriter;
+import main.persistence.CategoryCodec;
+import main.persistence.EntityCodec;
+import main.persistence.ProductCodec;
+import main.persistence.UserCodec;
+
+class CodecTest {
+	private final ProductCodec products = new ProductCodec();
+
+	@Test
+	void roundTripsProducts() throws IOException {
+		Product laptop = new Product(Long.MAX_VALUE, "Laptop \u00e9\u4e2d\ud83d\ude00", 1299.99, 0, -7, null);
+		laptop.setCreatedAt(LocalDateTime.of(2024, 1, 2, 3, 4, 5, 6_000_007));
+		laptop.setUpdatedAt(LocalDateTime.of(2024, 1, 2, 3, 4, 5, 6_000_008));
+		Product old = new Product(1L, "A", 0.1 + 0.2, Integer.MAX_VALUE, Integer.MIN_VALUE, "");
+		old.setCreatedAt(LocalDateTime.of(1, 1, 1, 0, 0));
+		old.setUpdatedAt(LocalDateTime.of(1970, 1, 1, 0, 0, 0, 1_000));
+		Product negativeZero = new Product(2L, "Free", -0.0, 1);
+
+		for (Product product : new Product[] { laptop, old, negativeZero }) {
+			Product decoded = roundTrip(products, product);
+			assertEquals(product.getId(), decoded.getId());
+			assertEquals(product.getName(), decoded.getName());
+			assertEquals(Double.doubleToLongBits(product.getPrice()), Double.doubleToLongBits(decoded.getPrice()));
+			assertEquals(product.getQuantity(), decoded.getQuantity());
+			assertEquals(product.getCategoryId(), decoded.getCategoryId());
+			assertEquals(product.getDescription(), decoded.getDescription());
+			assertEquals(product.getCreatedAt(), decoded.getCreatedAt());
+			assertEquals(product.getUpdateAt(), decoded.getUpdateAt());
+		}
+	}
+
+	@Test
+	void roundTripsUsersAndCategories() throws IOException {
+		User admin = new User(42L, "admin@example.com", "secret-password", "Admin", Role.ADMIN);
+		User decodedUser = roundTrip(new UserCodec(), admin);
+		assertEquals("admin@example.com", decodedUser.getEmail());
+		assertEquals("secret-password", decodedUser.getPassword());
+		assertEquals(Role.ADMIN, decodedUser.getRole());
+		assertEquals(admin.getCreatedAt(), decodedUser.getCreatedAt());
+		assertEquals(admin.getUpdateAt(), decodedUser.getUpdateAt());
+
+		Category books = new Category(3L, "Books", null);
+		Category decodedCategory = roundTrip(new CategoryCodec(), books);
+		assertEquals("Books", decodedCategory.getName());
+		assertNull(decodedCategory.getDescription());
+		assertEquals(books.getCreatedAt(), decodedCategory.getCreatedAt());
+	}
+
+	@Test
+	void sharesRepeatedDescriptions() throws IOException {
+		String description = "Standard warehouse item, ships in two days";
+		BinaryWriter out = new BinaryWriter(64);
+		products.encode(new Product(1L, "First", 1, 1, null, description), out);
+		int first = out.position();
+		products.encode(new Product(2L, "Other", 1, 1, null, new String(description)), out);
+		// The second description is a one-byte reference.
+		assertTrue(out.position() - first <= first - description.length() + 2);
+
+		BinaryReader in = new BinaryReader(out.array(), 0, out.position());
+		Product a = products.decode(in);
+		Product b = products.decode(in);
+		assertEquals(description, a.getDescription());
+		assertSame(a.getDescription(), b.getDescription());
+		assertEquals(0, in.remaining());
+
+		// A reset starts a new frame with an empty dictionary.
+		out.reset();
+		products.encode(new Product(3L, "Third", 1, 1, null, description), out);
+		assertEquals(description, products.decode(new BinaryReader(out.written())).getDescription());
+	}
+
+	@Test
+	void rejectsOtherVersionsAndTruncation() {
+		BinaryWriter out = new BinaryWriter(64);
+		products.encode(new Product(1L, "Laptop", 10, 1, 2, "Desc"), out);
+		byte[] bytes = Arrays.copyOf(out.array(), out.position());
+
+		byte[] future = bytes.clone();
+		future[0]++;
+		IOException e = assertThrows(IOException.class, () -> products.decode(new BinaryReader(future, 0, future.length)));
+		assertTrue(e.getMessage().contains("version"));
+		for (int length = 0; length < bytes.length; length++) {
+			int cut = length;
+			assertThrows(IOException.class, () -> products.decode(new BinaryReader(bytes, 0, cut)));
+		}
+	}
+
+	@Test
+	void encodesVarintsAndZigZag() throws IOException {
+		long[] values = { 0, 1, 127, 128, 16_383, 16_384, Integer.MAX_VALUE, Long.MAX_VALUE, -1, Long.MIN_VALUE };
+		BinaryWriter out = new BinaryWriter(1);
+		for (long value : values) {
+			out.putVarLong(value);
+			out.putZigZag(value);
+		}
+		BinaryReader in = new BinaryReader(out.written());
+		for (long value : values) {
+			assertEquals(value, in.getVarLong());
+			assertEquals(value, in.getZigZag());
+		}
+		assertThrows(EOFException.class, in::getByte);
+
+		out.reset();
+		out.putVarLong(127);
+		assertEquals(1, out.position());
+		out.reset();
+		out.putZigZag(-64);
+		assertEquals(1, out.position());
+		out.reset();
+		out.putVarLong(-1);
+		assertEquals(10, out.position());
+		assertThrows(IOException.class, () -> new BinaryReader(out.written()).getVarInt());
+
+		byte[] overlong = new byte[11];
+		Arrays.fill(overlong, (byte) 0x80);
+		assertThrows(IOException.class, () -> new BinaryReader(overlong, 0, overlong.length).getVarLong());
+	}
+
+	@Test
+	void rejectsUnknownStringReference() {
+		BinaryWriter out = new BinaryWriter(8);
+		out.putVarLong(5 << 1 | 1);
+		assertThrows(IOException.class, () -> new BinaryReader(out.written()).getSharedString());
+	}
+
+	private static <T extends Entity> T roundTrip(EntityCodec<T> codec, T entity) throws IOException {
+		BinaryWriter out = new BinaryWriter(16);
+		codec.encode(entity, out);
+		BinaryReader in = new BinaryReader(out.written());
+		T decoded = codec.decode(in);
+		assertEquals(0, in.remaining());
+		return decoded;
+	}
+}
@@ -0,0 +1,193 @@
+package test.persistence;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import main.enumerations.FsyncMode;
+import main.enumerations.LogOperation;
+import main.errors.BadRequestException;
+import main.errors.InternalAppException;
+import main.models.Product;
+import main.persistence.FsyncPolicy;
+import main.persistence.LogRecord;
+import main.persistence.ProductCodec;
+import main.persistence.WriteAheadLog;
+
+class WriteAheadLogTest {
+	private Path directory;
+	private Path file;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		directory = Files.createTempDirectory("wal");
+		file = directory.resolve("products.wal");
+	}
+
+	@AfterEach
+	void tearDown() throws IOException {
+		Files.deleteIfExists(file);
+		Files.deleteIfExists(directory);
+	}
+
+	@Test
+	void replaysRecordsInOrder() {
+		Product laptop = new Product(1L, "Laptop", 999.99, 10, 2, "14 inch");
+		laptop.setCreatedAt(LocalDateTime.of(2024, 1, 2, 3, 4, 5, 6_000_007));
+		try (WriteAheadLog<Product> log = open(FsyncPolicy.ALWAYS)) {
+			log.awaitDurable(log.append(LogRecord.add(laptop)));
+			log.append(LogRecord.update(new Product(1L, "Laptop Pro", 1299.0, 3)));
+			log.append(LogRecord.addAll(List.of(new Product(2L, "Mouse", 25.5, 50), new Product(3L, "Pad", 5, 1))));
+			log.append(LogRecord.removeAll(new long[] { 2L, 3L }));
+			log.append(LogRecord.remove(1L));
+			log.append(LogRecord.clear());
+		}
+
+		List<LogRecord<Product>> records = replay();
+		assertEquals(6, records.size());
+		assertEquals(LogOperation.ADD, records.get(0).getOperation());
+		Product replayed = records.get(0).getEntity();
+		assertEquals("Laptop", replayed.getName());
+		assertEquals(999.99, replayed.getPrice());
+		assertEquals(2, replayed.getCategoryId());
+		assertEquals("14 inch", replayed.getDescription());
+		assertEquals(laptop.getCreatedAt(), replayed.getCreatedAt());
+		assertEquals("Laptop Pro", records.get(1).getEntity().getName());
+		assertNull(records.get(1).getEntity().getCategoryId());
+		assertEquals(2, records.get(2).getEntities().size());
+		assertArrayEquals(new long[] { 2L, 3L }, records.get(3).getIds());
+		assertEquals(1L, records.get(4).getId());
+		assertEquals(LogOperation.CLEAR, records.get(5).getOperation());
+	}
+
+	@Test
+	void cutsOffTornTail() throws IOException {
+		try (WriteAheadLog<Product> log = open(FsyncPolicy.NEVER)) {
+			for (long id = 1; id <= 3; id++)
+				log.append(LogRecord.add(new Product(id, "Product " + id, id, 1)));
+		}
+		long intact = Files.size(file);
+		// A crash in the middle of the next record leaves part of its frame.
+		Files.write(file, new byte[] { 0, 0, 0, 40, 1, 2 }, StandardOpenOption.APPEND);
+
+		try (WriteAheadLog<Product> log = open(FsyncPolicy.NEVER)) {
+			assertEquals(intact, Files.size(file));
+			log.append(LogRecord.remove(2L));
+		}
+		List<LogRecord<Product>> records = replay();
+		assertEquals(4, records.size());
+		assertEquals(LogOperation.REMOVE, records.get(3).getOperation());
+	}
+
+	@Test
+	void stopsAtCorruptedRecord() throws IOException {
+		try (WriteAheadLog<Product> log = open(FsyncPolicy.NEVER)) {
+			log.append(LogRecord.add(new Product(1L, "Kept", 1, 1)));
+			log.append(LogRecord.add(new Product(2L, "Corrupted", 1, 1)));
+		}
+		byte[] bytes = Files.readAllBytes(file);
+		bytes[bytes.length - 3] ^= 0x55;
+		Files.write(file, bytes);
+
+		List<LogRecord<Product>> records = replay();
+		assertEquals(1, records.size());
+		assertEquals("Kept", records.get(0).getEntity().getName());
+	}
+
+	@Test
+	void rejectsForeignFiles() throws IOException {
+		Files.write(file, new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16 });
+		assertThrows(InternalAppException.class, () -> open(FsyncPolicy.NEVER));
+	}
+
+	@Test
+	void discardsRecordsCoveredBySnapshot() throws IOException {
+		long kept;
+		try (WriteAheadLog<Product> log = open(FsyncPolicy.NEVER)) {
+			log.append(LogRecord.add(new Product(1L, "Dropped", 1, 1)));
+			kept = log.append(LogRecord.add(new Product(2L, "Dropped too", 1, 1)));
+			log.append(LogRecord.add(new Product(3L, "Kept", 1, 1)));
+			log.flush();
+			long before = Files.size(file);
+			log.discardBefore(kept);
+			assertTrue(Files.size(file) < before);
+			log.append(LogRecord.remove(3L));
+		}
+
+		List<LogRecord<Product>> records = replay();
+		assertEquals(2, records.size());
+		assertEquals("Kept", records.get(0).getEntity().getName());
+		assertEquals(LogOperation.REMOVE, records.get(1).getOperation());
+		try (WriteAheadLog<Product> log = open(FsyncPolicy.NEVER)) {
+			assertEquals(kept, log.getBaseLsn());
+			assertThrows(InternalAppException.class, () -> log.replay(0, record -> {
+			}));
+		}
+		Files.deleteIfExists(directory.resolve("products.wal.tmp"));
+	}
+
+	@Test
+	void concurrentWritersShareFsyncs() throws Exception {
+		int threads = 8;
+		int perThread = 50;
+		try (WriteAheadLog<Product> log = open(FsyncPolicy.ALWAYS)) {
+			List<Thread> writers = new ArrayList<>();
+			for (int t = 0; t < threads; t++) {
+				long base = t * 1_000L;
+				Thread writer = new Thread(() -> {
+					for (long i = 0; i < perThread; i++)
+						log.awaitDurable(log.append(LogRecord.add(new Product(base + i, "Product", 1, 1))));
+				});
+				writers.add(writer);
+				writer.start();
+			}
+			for (Thread writer : writers)
+				writer.join();
+			assertTrue(log.getSyncCount() <= threads * perThread);
+		}
+		assertEquals(threads * perThread, replay().size());
+	}
+
+	@Test
+	void intervalPolicySyncsInBackground() throws Exception {
+		try (WriteAheadLog<Product> log = open(FsyncPolicy.every(5))) {
+			log.awaitDurable(log.append(LogRecord.add(new Product(1L, "Product", 1, 1))));
+			long deadline = System.currentTimeMillis() + 5_000;
+			while (log.getSyncCount() == 0 && System.currentTimeMillis() < deadline)
+				Thread.sleep(5);
+			assertEquals(1, log.getSyncCount());
+		}
+	}
+
+	@Test
+	void parsesPolicies() {
+		assertSame(FsyncPolicy.ALWAYS, FsyncPolicy.parse("always"));
+		assertSame(FsyncPolicy.NEVER, FsyncPolicy.parse(" NEVER "));
+		assertEquals(FsyncMode.INTERVAL, FsyncPolicy.parse("250").getMode());
+		assertEquals(250, FsyncPolicy.parse("250").getIntervalMillis());
+		assertThrows(BadRequestException.class, () -> FsyncPolicy.parse("sometimes"));
+		assertThrows(BadRequestException.class, () -> FsyncPolicy.every(0));
+	}
+
+	private WriteAheadLog<Product> open(FsyncPolicy policy) {
+		return WriteAheadLog.open(file, new ProductCodec(), policy);
+	}
+
+	private List<LogRecord<Product>> replay() {
+		List<LogRecord<Product>> records = new ArrayList<>();
+		try (WriteAheadLog<Product> log = open(FsyncPolicy.NEVER)) {
+			log.replay(records::add);
+		}
+		return records;
+	}
+}
@@ -0,0 +1,252 @@
+package test.query;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import main.enumerations.ProductSortableFields;
+import main.enumerations.QueryAccessPath;
+import main.enumerations.SortOrder;
+import main.errors.BadRequestException;
+import main.models.Product;
+import main.query.ProductFilter;
+import main.query.ProductQuery;
+import main.query.ProductQueryPlanner;
+import main.query.QueryPlan;
+import main.query.QueryResult;
+import main.repositories.ProductRepository;
+
+class ProductQueryPlannerTest {
+	private static final int PRODUCTS = 2_000;
+
+	private ProductRepository repository;
+	private ProductQueryPlanner planner;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		java.lang.reflect.Field instanceField = ProductRepository.class.getDeclaredField("instance");
+		instanceField.setAccessible(true);
+		instanceField.set(null, null);
+		repository = ProductRepository.getInstance();
+		planner = new ProductQueryPlanner(repository);
+
+		// Category 1 holds half the catalog, category 99 a handful.
+		Random random = new Random(7);
+		Product[] products = new Product[PRODUCTS];
+		for (int i = 0; i < PRODUCTS; i++) {
+			int category = i % 400 == 0 ? 99 : 1 + random.nextInt(2);
+			products[i] = new Product((long) i + 1, "Item " + i, random.nextInt(10_000) / 100.0, random.nextInt(50),
+					category, "");
+		}
+		repository.addAll(products);
+	}
+
+	@AfterEach
+	void tearDown() {
+		repository.clear();
+	}
+
+	@Test
+	void looksUpNarrowCategory() {
+		ProductQuery query = ProductQuery.where(ProductFilter.inCategory(99).and(ProductFilter.priceAtLeast(0)))
+				.orderBy(ProductSortableFields.PRICE, SortOrder.DESC);
+
+		QueryResult result = planner.execute(query);
+
+		assertEquals(QueryAccessPath.CATEGORY_INDEX, result.getPlan().getAccess());
+		assertFalse(result.getPlan().isOrdered());
+		assertEquals(5, result.getRowsExamined());
+		assertArrayEquals(expected(query), result.getProducts());
+	}
+
+	@Test
+	void walksSortIndexForSmallPageOverBroadFilter() {
+		ProductQuery query = ProductQuery.where(ProductFilter.inCategory(1))
+				.orderBy(ProductSortableFields.PRICE, SortOrder.ASC)
+				.page(2, 10);
+
+		QueryResult result = planner.execute(query);
+
+		assertEquals(QueryAccessPath.PRICE_INDEX, result.getPlan().getAccess());
+		assertTrue(result.getPlan().isOrdered());
+		assertTrue(result.getRowsExamined() < 100, "examined " + result.getRowsExamined());
+		assertArrayEquals(expected(query), result.getProducts());
+	}
+
+	@Test
+	void walksRangeOnSortField() {
+		ProductQuery query = ProductQuery.where(ProductFilter.quantityAtMost(3))
+				.orderBy(ProductSortableFields.QUANTITY, SortOrder.DESC)
+				.orderBy(ProductSortableFields.NAME, SortOrder.ASC)
+				.page(1, 5);
+
+		QueryResult result = planner.execute(query);
+
+		assertEquals(QueryAccessPath.QUANTITY_INDEX, result.getPlan().getAccess());
+		assertTrue(result.getPlan().isOrdered());
+		assertArrayEquals(expected(query), result.getProducts());
+		assertTrue(result.explain().contains("QUANTITY_INDEX walk DESC over quantity in"), result.explain());
+	}
+
+	@Test
+	void scansDisjunctions() {
+		ProductQuery query = ProductQuery.where(ProductFilter.or(ProductFilter.inCategory(99),
+				ProductFilter.nameContains("item 19")));
+
+		QueryResult result = planner.execute(query);
+
+		assertEquals(QueryAccessPath.FULL_SCAN, result.getPlan().getAccess());
+		assertEquals(PRODUCTS, result.getRowsExamined());
+		assertArrayEquals(expected(query), result.getProducts());
+	}
+
+	@Test
+	void matchesBruteForceOnRandomQueries() {
+		Random random = new Random(11);
+		ProductSortableFields[] fields = ProductSortableFields.values();
+		for (int round = 0; round < 300; round++) {
+			List<ProductFilter> terms = new ArrayList<>();
+			if (random.nextBoolean())
+				terms.add(ProductFilter.inCategory(1 + random.nextInt(2)));
+			if (random.nextBoolean()) {
+				double low = random.nextInt(100);
+				terms.add(ProductFilter.priceBetween(low, low + random.nextInt(60)));
+			}
+			if (random.nextBoolean())
+				terms.add(ProductFilter.quantityAtMost(random.nextInt(50)));
+			if (random.nextInt(4) == 0)
+				terms.add(ProductFilter.nameContains("item " + random.nextInt(20)));
+
+			ProductQuery query = ProductQuery.where(ProductFilter.and(terms.toArray(new ProductFilter[0])));
+			for (int keys = random.nextInt(3); keys > 0; keys--)
+				query = query.orderBy(fields[random.nextInt(fields.length)],
+						random.nextBoolean() ? SortOrder.ASC : SortOrder.DESC);
+			// Names are unique, so a final name key makes the order total.
+			query = query.orderBy(ProductSortableFields.NAME, SortOrder.ASC);
+			if (random.nextBoolean())
+				query = query.page(1 + random.nextInt(3), 1 + random.nextInt(20));
+
+			QueryResult result = planner.execute(query);
+			assertArrayEquals(expected(query), result.getProducts(), query + "\n" + result.explain());
+		}
+	}
+
+	@Test
+	void pagesAcrossPlanSwitch() {
+		// Re-added rows index after rows with higher ids, so index order and
+		// id order disagree on ties.
+		for (long id = 1; id <= PRODUCTS; id += 7) {
+			Product product = repository.findById(id);
+			repository.remove(id);
+			repository.add(new Product(id, product.getName(), product.getPrice(), product.getQuantity(),
+					product.getCategoryId(), ""));
+		}
+		// Quantities repeat, so most rows tie on the only sort key.
+		ProductQuery query = ProductQuery.where(ProductFilter.inCategory(1))
+				.orderBy(ProductSortableFields.QUANTITY, SortOrder.DESC);
+		Product[] all = expected(query);
+		List<Product> paged = new ArrayList<>();
+		Set<QueryAccessPath> paths = EnumSet.noneOf(QueryAccessPath.class);
+		for (int page = 1; (page - 1) * 10 < all.length; page++) {
+			QueryResult result = planner.execute(query.page(page, 10));
+			paths.add(result.getPlan().getAccess());
+			paged.addAll(Arrays.asList(result.getProducts()));
+		}
+
+		assertEquals(EnumSet.of(QueryAccessPath.QUANTITY_INDEX, QueryAccessPath.CATEGORY_INDEX), paths);
+		assertArrayEquals(all, paged.toArray(new Product[0]));
+	}
+
+	@Test
+	void ordersNamesLikeNameIndex() {
+		repository.addAll(new Product[] { new Product(5001L, "  zeta", 1.0, 1, 99, ""),
+				new Product(5002L, " Alpha", 1.0, 1, 99, ""), new Product(5003L, "beta ", 1.0, 1, 99, "") });
+		ProductQuery query = ProductQuery.where(ProductFilter.all())
+				.orderBy(ProductSortableFields.NAME, SortOrder.ASC);
+
+		QueryResult walked = planner.execute(query.page(1, 3));
+		QueryResult looked = planner.execute(ProductQuery.where(ProductFilter.inCategory(99))
+				.orderBy(ProductSortableFields.NAME, SortOrder.ASC));
+
+		assertTrue(walked.getPlan().isOrdered());
+		assertFalse(looked.getPlan().isOrdered());
+		assertArrayEquals(expected(query.page(1, 3)), walked.getProducts());
+		assertEquals(" Alpha", walked.getProducts()[0].getName());
+		assertEquals(" Alpha", looked.getProducts()[0].getName());
+		assertEquals("beta ", looked.getProducts()[1].getName());
+		assertEquals("  zeta", looked.getProducts()[looked.getProducts().length - 1].getName());
+	}
+
+	@Test
+	void explainsWithoutRunning() {
+		ProductQuery query = ProductQuery.where(ProductFilter.nameContains("item 1")
+				.and(ProductFilter.priceBetween(10, 20)))
+				.orderBy(ProductSortableFields.NAME, SortOrder.ASC)
+				.page(1, 3);
+
+		QueryPlan plan = planner.plan(query);
+		String explain = plan.explain();
+
+		assertTrue(explain.startsWith("Query:  WHERE (name contains \"item 1\" AND price in [10.0, 20.0])"), explain);
+		assertTrue(explain.contains("Considered: FULL_SCAN " + PRODUCTS), explain);
+		assertTrue(explain.contains("NAME_SEARCH_INDEX"), explain);
+		assertTrue(explain.contains("PRICE_INDEX"), explain);
+	}
+
+	@Test
+	void buildsFilterTrees() {
+		ProductFilter filter = ProductFilter.and(ProductFilter.inCategory(1),
+				ProductFilter.and(ProductFilter.quantityAtLeast(2), ProductFilter.all()));
+		assertEquals("(categoryId = 1 AND quantity in [2, 2147483647])", filter.toString());
+		assertSame(ProductFilter.all(), ProductFilter.and());
+		assertSame(ProductFilter.all(), ProductFilter.or(ProductFilter.inCategory(1), ProductFilter.all()));
+
+		Product product = new Product(1L, "Desk Lamp", 0.0, 2, 1, "");
+		assertTrue(filter.test(product));
+		assertTrue(ProductFilter.priceBetween(0, 0).test(new Product(2L, "Free", -0.0, 1)));
+		assertFalse(ProductFilter.nameContains("LAMPS").test(product));
+		assertTrue(ProductFilter.or(ProductFilter.inCategory(3), ProductFilter.nameContains("lamp")).test(product));
+
+		assertThrows(BadRequestException.class, () -> ProductFilter.priceBetween(2, 1));
+		assertThrows(BadRequestException.class, () -> ProductFilter.or());
+		assertThrows(BadRequestException.class, () -> ProductFilter.and(ProductFilter.all(), null));
+		assertThrows(BadRequestException.class, () -> ProductQuery.all().page(0, 10));
+		assertThrows(BadRequestException.class, () -> ProductQuery.all().orderBy(null, SortOrder.ASC));
+	}
+
+	// Filters and stable-sorts the whole catalog, ties left in id order, then
+	// cuts the page.
+	private Product[] expected(ProductQuery query) {
+		Product[] all = repository.findAll();
+		Arrays.sort(all, Comparator.comparingLong(Product::getId));
+		Product[] matches = Arrays.stream(all).filter(query.getFilter()::test).toArray(Product[]::new);
+		Comparator<Product> comparator = null;
+		for (ProductQuery.SortKey key : query.getSortKeys()) {
+			Comparator<Product> next = switch (key.getField()) {
+				case NAME -> Comparator.comparing(p -> p.getName().trim(), String.CASE_INSENSITIVE_ORDER);
+				case CREATED_AT -> Comparator.comparing(Product::getCreatedAt);
+				case PRICE -> Comparator.comparingDouble(Product::getPrice);
+				case QUANTITY -> Comparator.comparingInt(Product::getQuantity);
+			};
+			if (key.getOrder() == SortOrder.DESC)
+				next = next.reversed();
+			comparator = comparator == null ? next : comparator.thenComparing(next);
+		}
+		if (comparator != null)
+			Arrays.sort(matches, comparator);
+		long from = (long) (query.getPage() - 1) * query.getLimit();
+		if (from >= matches.length)
+			return new Product[0];
+		return Arrays.copyOfRange(matches, (int) from, (int) Math.min(matches.length, from + query.getLimit()));
+	}
+}
@@ -340,4 +340,41 @@ public class CategoryRepositoryTest {
         assertEquals(1, filtered.length);
         assertEquals(category3, filtered[0]);
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("Should find category by name after rename")
+    void testFindByNameAfterUpdate() {
+        repository.add(category1);
+        category1.setName("Gadgets");
+        repository.update(category1);
+
+        assertEquals(category1, repository.findByName("GADGETS"));
+        assertThrows(NotFoundException.class, () -> repository.findByName("Electronics"));
+    }
+
+    @Test
+    @DisplayName("Should find categories by name prefix in name order")
+    void testFindByNamePrefix() {
+        repository.add(new Category(4L, "Books for Kids"));
+        repository.add(category1);
+        repository.add(category2);
+        repository.add(new Category(5L, "Bookmarks"));
+
+        Category[] result = repository.findByNamePrefix("book").getResult();
+        assertEquals(3, result.length);
+        assertEquals("Bookmarks", result[0].getName());
+        assertEquals("Books", result[1].getName());
+        assertEquals("Books for Kids", result[2].getName());
+
+        assertEquals(2, repository.findByNamePrefix("BOOK", 2).getSize());
+        assertEquals(0, repository.findByNamePrefix("Toys").getSize());
+    }
+
+    @Test
+    @DisplayName("Should reject empty name prefix")
+    void testFindByNamePrefixEmpty() {
+        BadRequestException exception = assertThrows(BadRequestException.class,
+                () -> repository.findByNamePrefix(""));
+        assertEquals("Prefix cannot be null or empty.", exception.getMessage());
+    }
+}
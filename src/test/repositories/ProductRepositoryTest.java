@@ -2,13 +2,31 @@ package test.repositories;
 
 import main.repositories.ProductRepository;
 import main.models.Product;
+import main.persistence.BinaryWriter;
+import main.persistence.FsyncPolicy;
+import main.persistence.ProductCodec;
+import main.persistence.WriteAheadLog;
+import main.query.ProductFilter;
+import main.query.ProductQuery;
+import main.query.ProductQueryPlanner;
+import main.enumerations.ProductSortableFields;
+import main.enumerations.ProductStorageMode;
 import main.enumerations.SortOrder;
 import main.errors.BadRequestException;
+import main.errors.InternalAppException;
 import main.errors.NotFoundException;
+import main.utils.CapacityPolicy;
 import main.utils.Query;
+import main.utils.StorageMetrics;
 import org.junit.jupiter.api.*;
 import static org.junit.jupiter.api.Assertions.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class ProductRepositoryTest {
     private ProductRepository repository;
@@ -110,6 +128,34 @@ public class ProductRepositoryTest {
         assertEquals(product2, repository.findById(2L));
     }
 
+    @Test
+    void testRemoveKeepsLookupsConsistent() {
+        repository.add(product1);
+        repository.add(product2);
+        repository.add(product3);
+
+        repository.remove(2L);
+        assertEquals(product1, repository.findById(1L));
+        assertEquals(product3, repository.findById(3L));
+
+        repository.remove(1L);
+        assertEquals(product3, repository.findById(3L));
+        assertEquals(product3, repository.findAll()[0]);
+    }
+
+    @Test
+    void testRemoveDuplicatedIdExposesNextEntry() {
+        Product duplicate = new Product(1L, "Laptop Copy", 10.0, 1);
+        repository.add(product1);
+        repository.add(duplicate);
+
+        assertEquals(product1, repository.findById(1L));
+        repository.remove(1L);
+        assertEquals(duplicate, repository.findById(1L));
+        repository.remove(1L);
+        assertFalse(repository.exists(1L));
+    }
+
     @Test
     void testRemoveNonExistent() {
         assertThrows(NotFoundException.class, () -> repository.remove(999L));
@@ -325,6 +371,48 @@ public class ProductRepositoryTest {
         assertEquals(product3, result[2]);
     }
 
+    @Test
+    void testSortedPageFollowsUpdates() {
+        repository.add(product1);
+        repository.add(product2);
+        repository.add(product3);
+
+        Product[] cheapest = repository.sortedPage(ProductSortableFields.PRICE, SortOrder.ASC, 1, 2);
+        assertArrayEquals(new Product[] { product2, product3 }, cheapest);
+
+        product2.setPrice(5000.0);
+        repository.update(product2);
+        cheapest = repository.sortedPage(ProductSortableFields.PRICE, SortOrder.ASC, 1, 2);
+        assertArrayEquals(new Product[] { product3, product1 }, cheapest);
+
+        repository.remove(3L);
+        Product[] mostExpensive = repository.sortedPage(ProductSortableFields.PRICE, SortOrder.DESC, 1, 5);
+        assertArrayEquals(new Product[] { product2, product1 }, mostExpensive);
+        assertEquals(0, repository.sortedPage(ProductSortableFields.PRICE, SortOrder.DESC, 2, 5).length);
+    }
+
+    @Test
+    void testSortedPageMatchesFullSortForEveryField() {
+        for (int i = 1; i <= 40; i++) {
+            Product p = new Product((long) i, "Item " + (i * 7) % 13, (i * 31) % 17, (i * 11) % 9);
+            p.setCreatedAt(LocalDateTime.now().minusMinutes((i * 3) % 10));
+            repository.add(p);
+        }
+
+        for (ProductSortableFields field : ProductSortableFields.values()) {
+            for (SortOrder order : SortOrder.values()) {
+                Comparator<Product> comparator = switch (field) {
+                    case NAME -> repository.nameComparator(order);
+                    case CREATED_AT -> repository.createdAtComparator(order);
+                    case PRICE -> repository.priceComparator(order);
+                    case QUANTITY -> repository.quantityComparator(order);
+                };
+                Product[] expected = repository.query().sort(comparator).paginate(3, 7).getResult();
+                assertArrayEquals(expected, repository.sortedPage(field, order, 3, 7));
+            }
+        }
+    }
+
     @Test
     void testQuery() {
         repository.add(product1);
@@ -375,10 +463,826 @@ public class ProductRepositoryTest {
         assertEquals(0, sorted.getSize());
     }
 
+    @Test
+    void testQueryFailsAfterRemoval() {
+        repository.add(product1);
+        repository.add(product2);
+
+        Query<Product> query = repository.query();
+        repository.remove(1L);
+        assertThrows(InternalAppException.class, query::getResult);
+    }
+
+    @Test
+    void testQueryIgnoresLaterAdds() {
+        repository.add(product1);
+
+        Query<Product> query = repository.query();
+        repository.add(product2);
+        assertEquals(1, query.getResult().length);
+        assertEquals(2, repository.query().getSize());
+    }
+
     @Test
     void testQueryEmptyRepository() {
         Query<Product> query = repository.query();
         assertEquals(0, query.getSize());
     }
 
+    @Test
+    void testConcurrentWritersAndReaders() throws InterruptedException {
+        int writers = 4;
+        int perWriter = 2000;
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] threads = new Thread[writers + 2];
+
+        for (int w = 0; w < writers; w++) {
+            long base = (long) w * perWriter;
+            threads[w] = new Thread(() -> {
+                try {
+                    for (long id = base; id < base + perWriter; id++) {
+                        repository.add(new Product(id, "Product " + id, id % 97, (int) (id % 13)));
+                        if (id % 2 == 1)
+                            repository.remove(id);
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+        }
+        for (int r = writers; r < threads.length; r++) {
+            threads[r] = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 2000; i++) {
+                        if (repository.exists(0L))
+                            assertEquals(0L, repository.findById(0L).getId());
+                        Product[] page = repository.sortedPage(ProductSortableFields.PRICE, SortOrder.ASC, 1, 20);
+                        for (int j = 1; j < page.length; j++)
+                            assertTrue(page[j - 1].getPrice() <= page[j].getPrice());
+                        for (Product product : repository.findAll())
+                            assertNotNull(product);
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+        }
+
+        for (Thread thread : threads)
+            thread.start();
+        for (Thread thread : threads)
+            thread.join();
+
+        assertNull(failure.get());
+        int expected = writers * perWriter / 2;
+        assertEquals(expected, repository.getSize());
+        for (long id = 0; id < (long) writers * perWriter; id++)
+            assertEquals(id % 2 == 0, repository.exists(id));
+        assertEquals(expected, repository.sortBy(ProductSortableFields.PRICE, SortOrder.ASC).getSize());
+        assertEquals(expected, repository.sortByName().getSize());
+    }
+
+    @Test
+    void testScanningQueriesRunWhileOthersWrite() throws InterruptedException {
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        ProductQueryPlanner planner = new ProductQueryPlanner(repository);
+        ProductQuery disjunction = ProductQuery.where(ProductFilter.or(ProductFilter.inCategory(1),
+                ProductFilter.nameContains("7")));
+        Thread writer = new Thread(() -> {
+            try {
+                for (long id = 0; id < 4000; id++) {
+                    repository.add(new Product(id, "Product " + id, id % 97, (int) (id % 13)));
+                    if (id % 3 == 0)
+                        repository.remove(id / 2);
+                }
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+            }
+        });
+        Thread reader = new Thread(() -> {
+            try {
+                while (writer.isAlive()) {
+                    assertTrue(repository.query(q -> q.paginate(1, 20).getResult()).length <= 20);
+                    repository.searchByName("7").getResult();
+                    repository.filterByPrice(10, 20).getResult();
+                    repository.filterByQuantity(0, 3).getResult();
+                    repository.sortByCreatedAt(SortOrder.DESC).getResult();
+                    planner.execute(disjunction);
+                }
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+            }
+        });
+
+        writer.start();
+        reader.start();
+        writer.join();
+        reader.join();
+
+        assertNull(failure.get());
+    }
+
+    @Test
+    void testRemoveLeavesTombstoneUntilCompacted() {
+        repository.add(product1);
+        repository.add(product2);
+        repository.add(product3);
+
+        repository.remove(2L);
+        assertEquals(2, repository.getSize());
+        assertEquals(1, repository.getTombstones());
+        assertArrayEquals(new Product[] { product1, product3 }, repository.findAll());
+        assertEquals(2, repository.query().count());
+        assertEquals(product3, repository.findById(3L));
+
+        repository.compact();
+        assertEquals(0, repository.getTombstones());
+        assertArrayEquals(new Product[] { product1, product3 }, repository.findAll());
+        assertEquals(product3, repository.findById(3L));
+    }
+
+    @Test
+    void testAddGrowsWhenCompactionFreesNoSlot() {
+        repository.setCapacityPolicy(CapacityPolicy.DEFAULT.withInitialCapacity(1));
+        repository.add(product1);
+        repository.remove(1L);
+        repository.add(product2);
+        repository.add(product3);
+
+        assertEquals(0, repository.getTombstones());
+        assertArrayEquals(new Product[] { product2, product3 }, repository.findAll());
+        assertEquals(product3, repository.findById(3L));
+        repository.setCapacityPolicy(CapacityPolicy.DEFAULT);
+    }
+
+    @Test
+    void testBulkRemovalCompactsAutomatically() {
+        for (long id = 0; id < 1000; id++)
+            repository.add(new Product(id, "Product " + id, id, 1));
+        for (long id = 0; id < 1000; id += 2)
+            repository.remove(id);
+
+        assertEquals(500, repository.getSize());
+        assertTrue(repository.getTombstones() < 500);
+        Product[] all = repository.findAll();
+        assertEquals(500, all.length);
+        for (int i = 0; i < all.length; i++)
+            assertEquals(2L * i + 1, all[i].getId());
+        for (long id = 1; id < 1000; id += 2)
+            assertEquals(id, repository.findById(id).getId());
+    }
+
+    @Test
+    void testDuplicateIdPromotedAfterTombstone() {
+        Product shadow = new Product(1L, "Shadow", 1.0, 1);
+        repository.add(product1);
+        repository.add(product2);
+        repository.add(shadow);
+
+        repository.remove(1L);
+        assertEquals(shadow, repository.findById(1L));
+        repository.compact();
+        assertEquals(shadow, repository.findById(1L));
+        repository.remove(1L);
+        assertFalse(repository.exists(1L));
+    }
+
+    @Test
+    void testUpsertAllRollsBackWhenIndexingFails() {
+        repository.add(product1);
+        Product broken = new Product(9L, "Broken", 1.0, 1) {
+            @Override
+            public String getName() {
+                return null;
+            }
+        };
+        Product replacement = new Product(1L, "Replacement", 5.0, 5);
+
+        assertThrows(InternalAppException.class,
+                () -> repository.upsertAll(new Product[] { replacement, product2, broken }));
+
+        assertEquals(1, repository.getSize());
+        assertEquals(product1, repository.findById(1L));
+        assertFalse(repository.exists(2L));
+        assertEquals(product1, repository.findByName("Laptop"));
+        assertThrows(NotFoundException.class, () -> repository.findByName("Replacement"));
+        assertEquals(1, repository.sortBy(ProductSortableFields.PRICE, SortOrder.ASC).getSize());
+        assertEquals(0, repository.searchByName("Mouse").getSize());
+    }
+
+    @Test
+    void testZeroCapacityStartsFromOne() throws Exception {
+        resetInstance();
+        repository = ProductRepository.getInstance(0);
+        assertEquals(1, repository.getCapacity());
+        repository.add(product1);
+        repository.add(product2);
+        repository.add(product3);
+        assertArrayEquals(new Product[] { product1, product2, product3 }, repository.findAll());
+
+        // The default policy gives the array back on clear.
+        repository.clear();
+        assertEquals(1, repository.getCapacity());
+    }
+
+    @Test
+    void testCapacityPolicyShrinksOnClear() {
+        repository.setCapacityPolicy(CapacityPolicy.DEFAULT.withInitialCapacity(8).withShrinkOnClear(true));
+        assertEquals(8, repository.getCapacity());
+        for (long id = 0; id < 100; id++)
+            repository.add(new Product(id, "Product " + id, id, 1));
+        assertTrue(repository.getCapacity() >= 100);
+
+        repository.clear();
+        assertEquals(8, repository.getCapacity());
+        repository.add(product1);
+        assertEquals(product1, repository.findById(1L));
+        repository.setCapacityPolicy(CapacityPolicy.DEFAULT);
+    }
+
+    @Test
+    void testCapacityPolicyShrinksWhenSparse() {
+        repository.setCapacityPolicy(CapacityPolicy.DEFAULT.withChunkSize(64).withShrinkLoadFactor(0.25));
+        for (long id = 0; id < 256; id++)
+            repository.add(new Product(id, "Product " + id, id, 1));
+        assertEquals(256, repository.getCapacity());
+
+        for (long id = 0; id < 240; id++)
+            repository.remove(id);
+        assertTrue(repository.getCapacity() < 256);
+        assertEquals(16, repository.getSize());
+        assertEquals(240L, repository.findById(240L).getId());
+        assertEquals(16, repository.findAll().length);
+        repository.setCapacityPolicy(CapacityPolicy.DEFAULT);
+    }
+
+    @Test
+    void testStorageMetrics() {
+        repository.add(product1);
+        repository.add(product2);
+        repository.remove(1L);
+
+        StorageMetrics metrics = repository.getStorageMetrics();
+        assertEquals(1, metrics.getSize());
+        assertEquals(repository.getCapacity(), metrics.getCapacity());
+        assertEquals(1, metrics.getTombstones());
+        assertTrue(metrics.getEstimatedBytes() > metrics.getStorageBytes());
+    }
+
+    @Test
+    void testSegmentedStorage() {
+        repository.add(product1);
+        repository.setCapacityPolicy(CapacityPolicy.DEFAULT.withChunkSize(64));
+        for (long id = 10; id < 1010; id++)
+            repository.add(new Product(id, "Product " + id, id, 1));
+
+        assertEquals(0, repository.getCapacity() % 64);
+        assertEquals(1001, repository.getSize());
+        assertEquals(product1, repository.findById(1L));
+        assertEquals(500L, repository.findById(500L).getId());
+
+        for (long id = 10; id < 500; id++)
+            repository.remove(id);
+        Product[] all = repository.findAll();
+        assertEquals(511, all.length);
+        assertEquals(product1, all[0]);
+        assertEquals(500L, all[1].getId());
+        assertEquals(511, repository.query().parallel().filter(p -> p.getPrice() > 0).count());
+
+        repository.setCapacityPolicy(CapacityPolicy.DEFAULT);
+        assertArrayEquals(all, repository.findAll());
+    }
+
+    @Test
+    void testColumnarStorageKeepsProductValues() {
+        repository.setStorageMode(ProductStorageMode.COLUMNAR);
+        Product described = new Product(4L, "Monitor", 150.0, 7, 3, "27 inch");
+        repository.add(product1);
+        repository.add(described);
+
+        Product stored = repository.findById(4L);
+        assertNotSame(described, stored);
+        assertEquals("Monitor", stored.getName());
+        assertEquals(150.0, stored.getPrice());
+        assertEquals(7, stored.getQuantity());
+        assertEquals(3, stored.getCategoryId());
+        assertEquals("27 inch", stored.getDescription());
+        assertNull(repository.findById(1L).getCategoryId());
+        assertEquals(product1.getCreatedAt().withNano(product1.getCreatedAt().getNano() / 1_000_000 * 1_000_000),
+                repository.findById(1L).getCreatedAt());
+
+        stored.decreaseQuantity(2);
+        assertEquals(5, repository.findById(4L).getQuantity());
+        assertEquals("Monitor", repository.searchByName("Moni").getResult()[0].getName());
+        assertThrows(BadRequestException.class, () -> repository.setStorageMode(ProductStorageMode.OBJECTS));
+    }
+
+    @Test
+    void testColumnarRowsDetachWhenReleased() {
+        repository.setStorageMode(ProductStorageMode.COLUMNAR);
+        for (long id = 0; id < 40; id++)
+            repository.add(new Product(id, "Product " + id, id, (int) id));
+        Product kept = repository.findById(39L);
+        Product removed = repository.findById(0L);
+
+        for (long id = 0; id < 30; id++)
+            repository.remove(id);
+        repository.compact();
+        repository.add(new Product(100L, "Newcomer", 1.0, 1));
+
+        assertEquals("Product 0", removed.getName());
+        assertEquals(0.0, removed.getPrice());
+        assertEquals(39L, kept.getId());
+        assertEquals(39.0, kept.getPrice());
+        assertEquals(kept, repository.findById(39L));
+
+        repository.update(new Product(39L, "Renamed", 2.0, 2));
+        assertEquals("Product 39", kept.getName());
+        assertEquals("Renamed", repository.findById(39L).getName());
+        assertEquals(11, repository.findAll().length);
+    }
+
+    @Test
+    void testColumnarRowsReadWhileRemovedAndCompacted() throws InterruptedException {
+        repository.setStorageMode(ProductStorageMode.COLUMNAR);
+        readRowsWhileReplacing(1000, "");
+    }
+
+    @Test
+    void testMappedRowsReadWhileRemovedAndCompacted() throws Exception {
+        Path directory = Files.createTempDirectory("products");
+        try {
+            repository.openMappedStorage(directory);
+            // Long enough for the strings file to grow by a few chunks meanwhile.
+            readRowsWhileReplacing(1000, "x".repeat(300));
+        } finally {
+            repository.clear();
+            repository.setStorageMode(ProductStorageMode.OBJECTS);
+            try (var files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator)
+                    Files.delete(file);
+            }
+            Files.delete(directory);
+        }
+    }
+
+    // Keeps `live` products while a writer replaces them one by one and
+    // readers check every row they were handed still reads as one product.
+    private void readRowsWhileReplacing(int live, String description) throws InterruptedException {
+        for (long id = 0; id < live; id++)
+            repository.add(new Product(id, "Product " + id, id, (int) (id % 50), null, description + id));
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            try {
+                // Each round drops the oldest product and appends a new one, so
+                // slots are released, moved down by compaction and reused.
+                for (long id = live; id < 30L * live; id++) {
+                    repository.remove(id - live);
+                    Product product = new Product(id, "Product " + id, id, (int) (id % 50), null, description + id);
+                    repository.add(product);
+                    if (id % 5 == 0)
+                        repository.update(product);
+                    if (id % 300 == 0)
+                        repository.compact();
+                }
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+            }
+        });
+        Thread[] readers = new Thread[2];
+        for (int r = 0; r < readers.length; r++) {
+            readers[r] = new Thread(() -> {
+                try {
+                    while (writer.isAlive()) {
+                        for (Product product : repository.findAll()) {
+                            long id = product.getId();
+                            assertEquals("Product " + id, product.getName());
+                            assertEquals((double) id, product.getPrice());
+                            assertEquals((int) (id % 50), product.getQuantity());
+                            assertEquals(description + id, product.getDescription());
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+        }
+
+        writer.start();
+        for (Thread reader : readers)
+            reader.start();
+        writer.join();
+        for (Thread reader : readers)
+            reader.join();
+
+        assertNull(failure.get());
+        assertEquals(live, repository.getSize());
+    }
+
+    @Test
+    void testColumnarSortsAndRangesMatchObjectMode() {
+        java.util.Random random = new java.util.Random(7);
+        Product[] catalog = new Product[500];
+        for (int i = 0; i < catalog.length; i++)
+            catalog[i] = new Product((long) i, "Item " + i, random.nextInt(50), random.nextInt(20));
+
+        repository.addAll(catalog);
+        long[][] expected = new long[6][];
+        expected[0] = ids(repository.sortBy(ProductSortableFields.PRICE, SortOrder.ASC));
+        expected[1] = ids(repository.sortBy(ProductSortableFields.PRICE, SortOrder.DESC));
+        expected[2] = ids(repository.sortBy(ProductSortableFields.QUANTITY, SortOrder.ASC));
+        expected[3] = ids(repository.sortBy(ProductSortableFields.QUANTITY, SortOrder.DESC));
+        expected[4] = ids(repository.filterByPrice(10, 20));
+        expected[5] = ids(repository.filterByQuantity(5, 5));
+
+        repository.clear();
+        repository.setStorageMode(ProductStorageMode.COLUMNAR);
+        repository.addAll(catalog);
+        assertArrayEquals(expected[0], ids(repository.sortBy(ProductSortableFields.PRICE, SortOrder.ASC)));
+        assertArrayEquals(expected[1], ids(repository.sortBy(ProductSortableFields.PRICE, SortOrder.DESC)));
+        assertArrayEquals(expected[2], ids(repository.sortBy(ProductSortableFields.QUANTITY, SortOrder.ASC)));
+        assertArrayEquals(expected[3], ids(repository.sortBy(ProductSortableFields.QUANTITY, SortOrder.DESC)));
+        assertArrayEquals(expected[4], ids(repository.filterByPrice(10, 20)));
+        assertArrayEquals(expected[5], ids(repository.filterByQuantity(5, 5)));
+        assertThrows(BadRequestException.class, () -> repository.filterByPrice(5, 1));
+    }
+
+    @Test
+    void testMappedStorageSurvivesReopen() throws Exception {
+        Path directory = Files.createTempDirectory("products");
+        try {
+            assertThrows(BadRequestException.class, () -> repository.setStorageMode(ProductStorageMode.MAPPED));
+            repository.openMappedStorage(directory);
+            assertEquals(ProductStorageMode.MAPPED, repository.getStorageMode());
+            repository.add(product1);
+            repository.add(product2);
+            repository.add(product3);
+            repository.add(new Product(4L, "Monitor", 150.0, 7, 3, "27 inch"));
+            repository.remove(2L);
+            repository.findById(3L).setQuantity(9);
+            repository.flush();
+
+            resetInstance();
+            repository = ProductRepository.getInstance();
+            repository.openMappedStorage(directory);
+
+            assertEquals(3, repository.getSize());
+            assertFalse(repository.exists(2L));
+            Product monitor = repository.findById(4L);
+            assertEquals("Monitor", monitor.getName());
+            assertEquals(150.0, monitor.getPrice());
+            assertEquals(3, monitor.getCategoryId());
+            assertEquals("27 inch", monitor.getDescription());
+            assertEquals(9, repository.findById(3L).getQuantity());
+            assertArrayEquals(new long[] { 3L, 4L, 1L },
+                    ids(repository.sortBy(ProductSortableFields.PRICE, SortOrder.ASC)));
+            assertEquals("Keyboard", repository.searchByName("keyb").getResult()[0].getName());
+            assertEquals("Laptop", repository.findByName("laptop").getName());
+
+            repository.add(new Product(5L, "Webcam", 60.0, 4));
+            assertEquals(4, repository.getSize());
+        } finally {
+            repository.clear();
+            repository.setStorageMode(ProductStorageMode.OBJECTS);
+            try (var files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator)
+                    Files.delete(file);
+            }
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    void testMappedUpdateKeepsRecordLive() throws Exception {
+        Path directory = Files.createTempDirectory("products");
+        try {
+            repository.openMappedStorage(directory);
+            repository.add(product1);
+            // Reads the flags of slot 0 as they are on disk while the update
+            // writes its last field.
+            int[] flags = { -1 };
+            repository.update(new Product(1L, "Gaming Laptop", 1500.0, 3) {
+                @Override
+                public String getDescription() {
+                    try {
+                        byte[] records = Files.readAllBytes(directory.resolve("products.dat"));
+                        flags[0] = ByteBuffer.wrap(records).getInt(64 + 56);
+                    } catch (IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    return "Upgraded";
+                }
+            });
+            assertEquals(1, flags[0]);
+            repository.flush();
+
+            resetInstance();
+            repository = ProductRepository.getInstance();
+            repository.openMappedStorage(directory);
+            assertEquals(1, repository.getSize());
+            assertEquals("Gaming Laptop", repository.findById(1L).getName());
+            assertEquals("Upgraded", repository.findById(1L).getDescription());
+        } finally {
+            repository.clear();
+            repository.setStorageMode(ProductStorageMode.OBJECTS);
+            try (var files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator)
+                    Files.delete(file);
+            }
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    void testMappedStorageRejectsForeignFiles() throws Exception {
+        Path directory = Files.createTempDirectory("products");
+        Path records = directory.resolve("products.dat");
+        Files.write(records, new byte[128]);
+        try {
+            assertThrows(InternalAppException.class, () -> repository.openMappedStorage(directory));
+            assertEquals(ProductStorageMode.OBJECTS, repository.getStorageMode());
+            repository.add(product1);
+            assertThrows(BadRequestException.class, () -> repository.openMappedStorage(directory));
+        } finally {
+            try (var files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator)
+                    Files.delete(file);
+            }
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    void testLogReplaysMutations() throws Exception {
+        Path directory = Files.createTempDirectory("wal");
+        Path file = directory.resolve("products.wal");
+        try {
+            repository.openLog(WriteAheadLog.open(file, new ProductCodec(), FsyncPolicy.ALWAYS));
+            repository.add(product1);
+            repository.addAll(new Product[] { product2, product3 });
+            repository.update(new Product(1L, "Laptop Pro", 1299.0, 4));
+            repository.remove(2L);
+            repository.upsertAll(new Product[] { new Product(3L, "Keyboard", 80.0, 5), new Product(4L, "Pad", 9.0, 1) });
+            repository.closeLog();
+
+            resetInstance();
+            repository = ProductRepository.getInstance();
+            repository.openLog(WriteAheadLog.open(file, new ProductCodec(), FsyncPolicy.ALWAYS));
+            assertEquals(3, repository.getSize());
+            assertEquals("Laptop Pro", repository.findById(1L).getName());
+            assertFalse(repository.exists(2L));
+            assertEquals(80.0, repository.findById(3L).getPrice());
+            assertEquals("Pad", repository.findByName("pad").getName());
+            assertThrows(BadRequestException.class,
+                    () -> repository.openLog(WriteAheadLog.open(file, new ProductCodec(), FsyncPolicy.NEVER)));
+
+            repository.clear();
+            repository.closeLog();
+            resetInstance();
+            repository = ProductRepository.getInstance();
+            repository.openLog(WriteAheadLog.open(file, new ProductCodec(), FsyncPolicy.NEVER));
+            assertEquals(0, repository.getSize());
+        } finally {
+            repository.closeLog();
+            Files.deleteIfExists(file);
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    void testFailedLogAppendLeavesStateUnchanged() throws Exception {
+        Path directory = Files.createTempDirectory("wal");
+        Path file = directory.resolve("products.wal");
+        try {
+            repository.openLog(WriteAheadLog.open(file, new ProductCodec(), FsyncPolicy.NEVER));
+            repository.addAll(new Product[] { product1, product2 });
+            // Closing the log under the repository makes every append fail.
+            repository.getLog().close();
+
+            assertThrows(InternalAppException.class, () -> repository.add(product3));
+            assertThrows(InternalAppException.class,
+                    () -> repository.update(new Product(1L, "Laptop Pro", 1299.0, 4)));
+            assertThrows(InternalAppException.class, () -> repository.remove(2L));
+            assertThrows(InternalAppException.class, () -> repository.removeAll(new long[] { 1L, 2L }));
+            assertThrows(InternalAppException.class,
+                    () -> repository.upsertAll(new Product[] { new Product(2L, "Mouse", 1.0, 1), product3 }));
+            assertThrows(InternalAppException.class, () -> repository.clear());
+
+            assertEquals(2, repository.getSize());
+            assertFalse(repository.exists(3L));
+            assertEquals("Laptop", repository.findById(1L).getName());
+            assertEquals(999.99, repository.findById(1L).getPrice());
+            assertEquals(25.50, repository.findById(2L).getPrice());
+            assertEquals("Mouse", repository.findByName("mouse").getName());
+            assertThrows(NotFoundException.class, () -> repository.findByName("keyboard"));
+            assertArrayEquals(new long[] { 2L, 1L }, ids(repository.sortByPrice()));
+        } finally {
+            repository.closeLog();
+            Files.deleteIfExists(file);
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    void testFailedApplyIsRolledBackAndNotLogged() throws Exception {
+        Path directory = Files.createTempDirectory("wal");
+        Path file = directory.resolve("products.wal");
+        try {
+            repository.openLog(WriteAheadLog.open(file, new ProductCodec(), FsyncPolicy.NEVER));
+            repository.add(product1);
+            // Indexing gets halfway through this product before it fails.
+            Product broken = new Product(1L, "Broken", 5.0, 1) {
+                @Override
+                public Integer getQuantity() {
+                    throw new IllegalStateException("unreadable quantity");
+                }
+            };
+
+            assertThrows(InternalAppException.class, () -> repository.add(broken));
+            assertThrows(InternalAppException.class, () -> repository.update(broken));
+
+            assertEquals(1, repository.getSize());
+            assertEquals("Laptop", repository.findById(1L).getName());
+            assertThrows(NotFoundException.class, () -> repository.findByName("broken"));
+            assertArrayEquals(new long[] { 1L }, ids(repository.sortByPrice()));
+            assertEquals(10, repository.sortBy(ProductSortableFields.QUANTITY, SortOrder.ASC).getResult()[0]
+                    .getQuantity());
+            repository.closeLog();
+
+            resetInstance();
+            repository = ProductRepository.getInstance();
+            repository.openLog(WriteAheadLog.open(file, new ProductCodec(), FsyncPolicy.NEVER));
+            assertEquals(1, repository.getSize());
+            assertEquals("Laptop", repository.findById(1L).getName());
+        } finally {
+            repository.closeLog();
+            Files.deleteIfExists(file);
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    void testSnapshotLimitsLogReplay() throws Exception {
+        Path directory = Files.createTempDirectory("snapshot");
+        Path log = directory.resolve("products.wal");
+        Path snapshot = directory.resolve("products.snap");
+        try {
+            repository.openLog(WriteAheadLog.open(log, new ProductCodec(), FsyncPolicy.NEVER));
+            repository.addAll(new Product[] { product1, product2, product3 });
+            repository.snapshot(snapshot, new ProductCodec()).get();
+            // Only mutations after the snapshot remain in the log.
+            repository.remove(2L);
+            repository.add(new Product(4L, "Monitor", 150.0, 2));
+            repository.closeLog();
+
+            resetInstance();
+            repository = ProductRepository.getInstance();
+            assertTrue(repository.loadSnapshot(snapshot, new ProductCodec()));
+            assertEquals(3, repository.getSize());
+            repository.openLog(WriteAheadLog.open(log, new ProductCodec(), FsyncPolicy.NEVER));
+            assertEquals(3, repository.getSize());
+            assertFalse(repository.exists(2L));
+            assertEquals("Monitor", repository.findById(4L).getName());
+            assertEquals("Laptop", repository.findByName("laptop").getName());
+            assertArrayEquals(new long[] { 3L, 4L, 1L },
+                    ids(repository.sortByPrice()));
+            assertThrows(BadRequestException.class,
+                    () -> repository.loadSnapshot(snapshot, new ProductCodec()));
+        } finally {
+            repository.closeLog();
+            Files.deleteIfExists(log);
+            Files.deleteIfExists(snapshot);
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    void testSnapshotKeepsValuesAtItsLogPosition() throws Exception {
+        Path directory = Files.createTempDirectory("snapshot");
+        Path snapshot = directory.resolve("products.snap");
+        try {
+            repository.setStorageMode(ProductStorageMode.COLUMNAR);
+            repository.addAll(new Product[] { product1, product2, product3 });
+            Product keyboard = repository.findById(3L);
+            // Another thread writes through a row while the first product is
+            // encoded, and gets its turn well before the last one otherwise.
+            Thread writer = new Thread(() -> keyboard.setQuantity(99));
+            ProductCodec codec = new ProductCodec() {
+                @Override
+                public void encode(Product product, BinaryWriter out) {
+                    if (product.getId() == 1L && writer.getState() == Thread.State.NEW) {
+                        writer.start();
+                        try {
+                            writer.join(200);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    super.encode(product, out);
+                }
+            };
+            repository.snapshot(snapshot, codec).get();
+            writer.join();
+            assertEquals(99, keyboard.getQuantity());
+
+            resetInstance();
+            repository = ProductRepository.getInstance();
+            assertTrue(repository.loadSnapshot(snapshot, new ProductCodec()));
+            assertEquals(5, repository.findById(3L).getQuantity());
+        } finally {
+            Files.deleteIfExists(snapshot);
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    void testFindAllInChunksSkipsRemoved() {
+        repository.addAll(new Product[] { product1, product2, product3, new Product(4L, "Monitor", 150.0, 2) });
+        repository.remove(2L);
+
+        java.util.List<Product[]> chunks = repository.findAllInChunks(2);
+        assertEquals(2, chunks.size());
+        assertEquals(2, chunks.get(0).length);
+        assertEquals(1, chunks.get(1).length);
+        assertEquals(4L, chunks.get(1)[0].getId());
+        assertThrows(BadRequestException.class, () -> repository.findAllInChunks(0));
+    }
+
+    @Test
+    void testFindByCategoryFollowsMutations() {
+        Product laptop = new Product(1L, "Laptop", 999.99, 10, 1, "");
+        Product mouse = new Product(2L, "Mouse", 25.50, 50, 2, "");
+        Product keyboard = new Product(3L, "Keyboard", 75.00, 5, 1, "");
+        repository.addAll(new Product[] { laptop, mouse, keyboard, new Product(4L, "Cable", 5, 1) });
+        repository.add(new Product(5L, "Dock", 150.0, 2, 1, ""));
+
+        assertArrayEquals(new long[] { 1L, 3L, 5L }, ids(repository.findByCategory(1)));
+        assertEquals(1, repository.countByCategory(2));
+
+        repository.update(new Product(3L, "Keyboard", 75.00, 5, 2, ""));
+        repository.remove(5L);
+        assertArrayEquals(new long[] { 1L }, ids(repository.findByCategory(1)));
+        assertArrayEquals(new long[] { 2L, 3L }, ids(repository.findByCategory(2)));
+
+        repository.upsertAll(new Product[] { new Product(1L, "Laptop", 999.99, 10, 2, ""),
+                new Product(6L, "Stand", 30.0, 3, 1, "") });
+        assertArrayEquals(new long[] { 1L, 2L, 3L }, ids(repository.findByCategory(2)));
+        assertArrayEquals(new long[] { 6L }, ids(repository.findByCategory(1)));
+        assertEquals(0, repository.findByCategory(99).getSize());
+        assertThrows(BadRequestException.class, () -> repository.findByCategory(null));
+
+        repository.clear();
+        assertEquals(0, repository.countByCategory(2));
+    }
+
+    @Test
+    void testFindByPriceRangeWalksIndexInOrder() {
+        repository.addAll(new Product[] {
+                new Product(1L, "A", 30.0, 1), new Product(2L, "B", 10.0, 1), new Product(3L, "C", 20.0, 1),
+                new Product(4L, "D", 20.0, 1), new Product(5L, "E", 50.0, 1), new Product(6L, "F", -0.0, 1) });
+
+        assertArrayEquals(new long[] { 2L, 3L, 4L, 1L }, ids(repository.findByPriceRange(10.0, 30.0)));
+        assertArrayEquals(new long[] { 1L, 3L, 4L },
+                ids(repository.findByPriceRange(15.0, 40.0, SortOrder.DESC, 1, 10)));
+        assertArrayEquals(new long[] { 4L, 1L }, ids(repository.findByPriceRange(10.0, 30.0, SortOrder.ASC, 2, 2)));
+        assertArrayEquals(new long[] { 2L, 6L }, ids(repository.findByPriceRange(0.0, 20.0, SortOrder.DESC, 2, 2)));
+        assertEquals(0, repository.findByPriceRange(10.0, 30.0, SortOrder.ASC, 3, 2).getSize());
+        assertArrayEquals(new long[] { 6L }, ids(repository.findByPriceRange(0.0, 0.0)));
+        assertEquals(4, repository.countByPriceRange(10.0, 30.0));
+        assertEquals(0, repository.countByPriceRange(60.0, 70.0));
+
+        repository.update(new Product(5L, "E", 15.0, 1));
+        repository.remove(3L);
+        assertArrayEquals(new long[] { 2L, 5L, 4L }, ids(repository.findByPriceRange(10.0, 20.0)));
+        assertThrows(BadRequestException.class, () -> repository.findByPriceRange(5.0, 1.0));
+        assertThrows(BadRequestException.class, () -> repository.findByPriceRange(Double.NaN, 1.0));
+        assertThrows(BadRequestException.class, () -> repository.findByPriceRange(1.0, 5.0, SortOrder.ASC, 0, 1));
+    }
+
+    @Test
+    void testFindByQuantityRangeListsLowStock() {
+        repository.addAll(new Product[] {
+                new Product(1L, "A", 1, 40), new Product(2L, "B", 1, 0), new Product(3L, "C", 1, 3),
+                new Product(4L, "D", 1, 7), new Product(5L, "E", 1, 3) });
+
+        assertArrayEquals(new long[] { 2L, 3L, 5L }, ids(repository.findByQuantityRange(0, 4)));
+        assertArrayEquals(new long[] { 4L, 3L }, ids(repository.findByQuantityRange(0, 9, SortOrder.DESC, 1, 2)));
+        assertEquals(4, repository.countByQuantityRange(Integer.MIN_VALUE, 9));
+        assertEquals(0, repository.countByQuantityRange(9, 0));
+    }
+
+    private static void resetInstance() throws Exception {
+        java.lang.reflect.Field instanceField = ProductRepository.class.getDeclaredField("instance");
+        instanceField.setAccessible(true);
+        instanceField.set(null, null);
+    }
+
+    private static long[] ids(Query<Product> query) {
+        Product[] products = query.getResult();
+        long[] ids = new long[products.length];
+        for (int i = 0; i < products.length; i++)
+            ids[i] = products[i].getId();
+        return ids;
+    }
+
 }
\ No newline at end of file
@@ -88,4 +88,20 @@ class UserRepositoryTest {
         assertTrue(repo.getCapacity() >= 15);
         assertEquals(15, repo.getSize());
     }
+
+    @Test
+    void testEmailLookupFollowsUpdateAndRemove() {
+        User user = new User(20L, "first@domain.com", "pass012938012938210", "First", Role.USER);
+        repo.add(user);
+        assertTrue(repo.existsByEmail("FIRST@domain.com"));
+
+        user.setEmail("second@domain.com");
+        repo.update(user);
+        assertFalse(repo.existsByEmail("first@domain.com"));
+        assertEquals(user, repo.findByEmail("Second@Domain.com"));
+
+        repo.remove(20L);
+        assertFalse(repo.existsByEmail("second@domain.com"));
+        assertNull(repo.findByEmail("second@domain.com"));
+    }
 }
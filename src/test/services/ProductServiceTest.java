@@ -5,7 +5,11 @@ import main.services.ProductService;
 import main.enumerations.ProductSortableFields;
 import main.enumerations.ProductSearchableFields;
 import main.enumerations.SortOrder;
+import main.errors.BadRequestException;
 import main.errors.NotFoundException;
+import main.query.ProductFilter;
+import main.query.ProductQuery;
+import main.query.QueryResult;
 import org.junit.jupiter.api.*;
 
 import java.time.LocalDateTime;
@@ -121,4 +125,142 @@ public class ProductServiceTest {
         assertEquals(10, result[1].getPrice());
         assertEquals(20, result[2].getPrice());
     }
+
+    @Test
+    void testGetListSortedPagesMatchFullSort() {
+        for (int i = 1; i <= 23; i++) {
+            productService.add(createProduct(i, "P" + i, (i * 37) % 11, i));
+        }
+        Product[] page2 = productService.getList(2, 5, ProductSortableFields.PRICE, SortOrder.ASC);
+        assertEquals(5, page2.length);
+        for (int i = 1; i < page2.length; i++) {
+            assertTrue(page2[i - 1].getPrice() <= page2[i].getPrice());
+        }
+        Product[] page1 = productService.getList(1, 5, ProductSortableFields.PRICE, SortOrder.ASC);
+        assertTrue(page1[4].getPrice() <= page2[0].getPrice());
+        Product[] last = productService.getList(5, 5, ProductSortableFields.PRICE, SortOrder.ASC);
+        assertEquals(3, last.length);
+    }
+
+    @Test
+    void testSearchReflectsUpdatesAndDeletes() {
+        Product p = createProduct(1, "Coffee Maker", 10, 1);
+        productService.add(p);
+        productService.add(createProduct(2, "Coffee Beans", 5, 1));
+        assertEquals(2, productService.search("coffee", ProductSearchableFields.NAME, 1, 10).length);
+
+        p.setName("Tea Kettle");
+        productService.update(p);
+        Product[] coffee = productService.search("coffee", ProductSearchableFields.NAME, 1, 10);
+        assertEquals(1, coffee.length);
+        assertEquals("Coffee Beans", coffee[0].getName());
+        assertEquals(1, productService.search("kettle", ProductSearchableFields.NAME, 1, 10).length);
+
+        productService.delete(2L);
+        assertEquals(0, productService.search("coffee", ProductSearchableFields.NAME, 1, 10).length);
+        assertEquals(1, productService.search("e", ProductSearchableFields.NAME, 1, 10).length);
+    }
+
+    @Test
+    void testAddAllAndDeleteAllByIds() {
+        Product[] batch = new Product[100];
+        for (int i = 0; i < batch.length; i++)
+            batch[i] = createProduct(i + 1, "Item " + i, i, i);
+        productService.addAll(batch);
+
+        assertEquals("Item 41", productService.getById(42L).getName());
+        assertEquals(100, productService.getList(1, 200).length);
+
+        productService.deleteAll(new long[] { 1L, 2L, 3L });
+        assertEquals(97, productService.getList(1, 200).length);
+        assertThrows(NotFoundException.class, () -> productService.getById(2L));
+    }
+
+    @Test
+    void testBatchesAreAllOrNothing() {
+        productService.add(createProduct(1, "Kept", 1.0, 1));
+
+        Product[] withNull = { createProduct(2, "A", 1.0, 1), null };
+        assertThrows(BadRequestException.class, () -> productService.addAll(withNull));
+        assertEquals(1, productService.getList(1, 10).length);
+
+        assertThrows(NotFoundException.class, () -> productService.deleteAll(new long[] { 1L, 99L }));
+        assertEquals("Kept", productService.getById(1L).getName());
+    }
+
+    @Test
+    void testUpsertAll() {
+        productService.add(createProduct(1, "Old", 1.0, 1));
+        productService.upsertAll(new Product[] {
+                createProduct(1, "New", 2.0, 2),
+                createProduct(2, "Added", 3.0, 3)
+        });
+
+        assertEquals("New", productService.getById(1L).getName());
+        assertEquals("Added", productService.getById(2L).getName());
+        assertEquals(2, productService.getList(1, 10).length);
+        assertEquals(1, productService.search("new", ProductSearchableFields.NAME, 1, 10).length);
+        assertEquals(0, productService.search("old", ProductSearchableFields.NAME, 1, 10).length);
+    }
+
+    @Test
+    void testGetByCategory() {
+        productService.addAll(new Product[] {
+                new Product(1L, "Pen", 2.0, 100, 7, ""),
+                new Product(2L, "Desk", 120.0, 3, 8, ""),
+                new Product(3L, "Ink", 9.5, 40, 7, ""),
+                new Product(4L, "Notebook", 4.0, 60, 7, "")
+        });
+
+        Product[] byPrice = productService.getByCategory(7, 1, 2, ProductSortableFields.PRICE, SortOrder.DESC);
+        assertEquals(2, byPrice.length);
+        assertEquals(3L, byPrice[0].getId());
+        assertEquals(4L, byPrice[1].getId());
+        Product[] second = productService.getByCategory(7, 2, 2, ProductSortableFields.PRICE, SortOrder.DESC);
+        assertEquals(1, second.length);
+        assertEquals(1L, second[0].getId());
+
+        assertEquals("Ink", productService.getByCategory(7, 1, 10)[0].getName());
+        assertEquals(0, productService.getByCategory(9, 1, 10).length);
+        assertThrows(BadRequestException.class, () -> productService.getByCategory(null, 1, 10));
+        assertThrows(BadRequestException.class, () -> productService.getByCategory(7, 0, 10));
+    }
+
+    @Test
+    void testGetByPriceAndQuantityRange() {
+        productService.addAll(new Product[] {
+                createProduct(1, "Cheap", 5.0, 2),
+                createProduct(2, "Mid", 50.0, 20),
+                createProduct(3, "Dear", 500.0, 1)
+        });
+
+        Product[] band = productService.getByPriceRange(1.0, 100.0, 1, 10, SortOrder.DESC);
+        assertEquals(2, band.length);
+        assertEquals("Mid", band[0].getName());
+        Product[] lowStock = productService.getByQuantityRange(0, 5, 1, 10, SortOrder.ASC);
+        assertEquals(2, lowStock.length);
+        assertEquals("Dear", lowStock[0].getName());
+        assertThrows(BadRequestException.class, () -> productService.getByPriceRange(1.0, 2.0, 1, 10, null));
+    }
+
+    @Test
+    void testQueryAndExplain() {
+        productService.addAll(new Product[] {
+                new Product(1L, "Pen", 2.0, 100, 7, ""),
+                new Product(2L, "Desk", 120.0, 3, 8, ""),
+                new Product(3L, "Ink", 9.5, 4, 7, ""),
+                new Product(4L, "Pencil", 1.0, 2, 7, "")
+        });
+        ProductQuery query = ProductQuery
+                .where(ProductFilter.inCategory(7).and(ProductFilter.quantityAtMost(10)))
+                .orderBy(ProductSortableFields.PRICE, SortOrder.DESC)
+                .page(1, 10);
+
+        QueryResult result = productService.query(query);
+        assertEquals(2, result.getProducts().length);
+        assertEquals("Ink", result.getProducts()[0].getName());
+        assertEquals("Pencil", result.getProducts()[1].getName());
+        assertTrue(productService.explain(query).contains("Access:"));
+    }
+
 }